@@ -0,0 +1,393 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvableDependencies;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Aggregates applications, typically from many projects, into a single directory that can be used as the contents
+ * of a distribution. The application JARs are placed at the root of the directory, and the dependency artifact files
+ * of all applications go into a single dependency directory, where every distinct file content is stored only once.
+ * </p>
+ * <p>Within the dependency directory, a dependency artifact file is stored at the same relative path as in the
+ * distribution of its application (see {@link ApplicationJar#applicationCopySpec}), unless a different file has
+ * already been stored there; in that case, it goes into a subdirectory named after the SHA-256 hash of its content.
+ * The {@code Class-Path} attribute in the manifest of every application JAR is rewritten to point to the stored files.
+ * Every other entry of the application JARs is transferred as it is, without extraction or recompression.</p>
+ * <p>Applications are added via {@link #aggregate}, which expects a {@link Configuration} that resolves an
+ * application JAR (through the outgoing variant of an {@link Application}) along with its dependencies. The
+ * {@link ApplicationAggregationPlugin} sets this up for every dependency declared in its
+ * {@value ApplicationAggregationPlugin#CONFIGURATION_NAME} configuration. Note that applications packaged in
+ * {@link ApplicationJar.PackagingMode#LAUNCHER LAUNCHER} mode are not supported, because their raw JAR is not part of
+ * their outgoing variant.</p>
+ */
+public abstract class AggregateApplications extends DefaultTask {
+
+    /**
+     * Name of the build directory where applications will be aggregated.
+     */
+    public static final String AGGREGATE_DIRECTORY_NAME = "aggregatedApplications";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Number of hexadecimal digits of the content hash used to name the directory of a dependency artifact file that
+     * can't be stored at its usual relative path.
+     */
+    private static final int HASH_DIRECTORY_NAME_LENGTH = 12;
+
+    @Nonnull
+    private final List<AggregatedApplication> applications = new ArrayList<>();
+
+    /**
+     * Creates an {@link AggregateApplications} task.
+     */
+    @Inject
+    public AggregateApplications() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        setDescription("Aggregates applications along with their deduplicated dependencies.");
+        getDependencyDirectoryName().convention(ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        getDestinationDirectory().convention(
+                getProject().getLayout().getBuildDirectory().dir(AGGREGATE_DIRECTORY_NAME));
+    }
+
+    /**
+     * Name of the directory (relative to the {@link #getDestinationDirectory destinationDirectory}) where the
+     * dependency artifact files of the applications will be stored. The default is
+     * {@value ApplicationJar#DEPENDENCY_DIRECTORY_NAME}.
+     *
+     * @return {@link Property} object specifying the name of the dependency directory.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getDependencyDirectoryName();
+
+    /**
+     * The directory to aggregate the applications into. Its previous contents are deleted when the task is executed.
+     *
+     * @return {@link DirectoryProperty} object specifying the destination directory.
+     */
+    @OutputDirectory
+    @Nonnull
+    public abstract DirectoryProperty getDestinationDirectory();
+
+    /**
+     * The applications to aggregate, in the order they have been added (read-only).
+     *
+     * @return The applications to aggregate.
+     */
+    @Nested
+    @Nonnull
+    public List<AggregatedApplication> getApplications() {
+        return Collections.unmodifiableList(applications);
+    }
+
+    /**
+     * Adds an application to aggregate. The given {@link Configuration} must resolve the application JAR through a
+     * dependency declared directly in it, and the dependency artifact files of the application through that
+     * dependency. The {@link Configuration} doesn't get resolved until the task needs it.
+     *
+     * @param configuration The {@link Configuration} resolving the application.
+     */
+    public void aggregate(@Nonnull Configuration configuration) {
+        ResolvableDependencies incoming = configuration.getIncoming();
+        applications.add(new AggregatedApplication(
+                getObjects().fileCollection().from(incoming.getArtifacts().getArtifactFiles()),
+                ApplicationJar.resolvedArtifacts(getProviders(), incoming.getArtifacts())
+                        .map(artifacts -> AggregatedApplication.resolve(incoming, artifacts))));
+    }
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ProviderFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ProviderFactory getProviders();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void assemble() {
+        Path destinationDir = getDestinationDirectory().get().getAsFile().toPath();
+        String dependencyDirectoryName = Utils.nonEmpty(getDependencyDirectoryName().get(), "dependencyDirectoryName");
+        try {
+            Utils.deleteRecursively(destinationDir);
+            Files.createDirectories(destinationDir);
+            DependencyStore store = new DependencyStore(destinationDir.resolve(dependencyDirectoryName),
+                    MessageDigest.getInstance(HASH_ALGORITHM));
+            Set<String> applicationJarNames = new HashSet<>();
+            for (AggregatedApplication application : applications) {
+                Resolved resolved = application.resolved.get();
+                String applicationJarName = resolved.applicationJar.getName();
+                if (!applicationJarNames.add(applicationJarName)) {
+                    throw new GradleException(String.format(
+                            "Could not aggregate applications: more than one application JAR is named '%s'",
+                            applicationJarName));
+                }
+                List<String> classpath = new ArrayList<>(resolved.dependencies.size());
+                for (Map.Entry<File, ApplicationJar.Dependency> dependency : resolved.dependencies.entrySet()) {
+                    RelativePath relativePath = store.store(dependency.getKey(), dependency.getValue());
+                    classpath.add(ApplicationJar.Dependency.classpathEntry(dependencyDirectoryName, relativePath));
+                }
+                writeApplicationJar(resolved.applicationJar, destinationDir.resolve(applicationJarName),
+                        String.join(" ", classpath));
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GradleException("Could not aggregate applications into " + destinationDir, e);
+        }
+    }
+
+    /**
+     * Writes an application JAR with a new {@code Class-Path}. The manifest directory and the manifest file come
+     * first, followed by all other entries of the original application JAR in their original order, just like in
+     * {@link ApplicationJar.PackagingMode#TRANSFER TRANSFER} mode.
+     *
+     * @param source The original application JAR.
+     * @param target The application JAR to write.
+     * @param classpath The new {@code Class-Path}.
+     * @throws IOException If the application JAR can't be read or written.
+     */
+    private static void writeApplicationJar(@Nonnull File source, @Nonnull Path target, @Nonnull String classpath)
+            throws IOException {
+        Manifest manifest;
+        try (JarFile jarFile = new JarFile(source)) {
+            Manifest sourceManifest = jarFile.getManifest();
+            manifest = sourceManifest != null ? sourceManifest : new Manifest();
+        }
+        manifest.getMainAttributes().putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classpath);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        manifest.write(content);
+
+        try (FileChannel sourceChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel targetChannel = ApplicationJar.openForWriting(target.toFile())) {
+            List<ZipFormat.Entry> entries = ZipFormat.readCentralDirectory(sourceChannel);
+            ZipFormat.Entry manifestEntry = ApplicationJar.findEntry(entries, ApplicationJar.MANIFEST_PATH);
+            ZipFormat.CompressedFile manifestFile = new ZipFormat.CompressedFile(ApplicationJar.MANIFEST_PATH,
+                    manifestEntry != null ? manifestEntry.getDosTime() : ZipFormat.CONSTANT_DOS_TIME,
+                    ZipFormat.METHOD_DEFLATED, content.toByteArray());
+            ZipFormat.Writer writer = new ZipFormat.Writer(targetChannel);
+            ApplicationJar.transferEntries(sourceChannel, entries, manifestFile, writer);
+            writer.close();
+        }
+    }
+
+    /**
+     * An application to aggregate. Its artifact files are the inputs of the task, while the details of how they have
+     * been resolved are only needed at execution time.
+     */
+    public static final class AggregatedApplication {
+
+        @Nonnull
+        private final FileCollection artifactFiles;
+        @Nonnull
+        private final Provider<Resolved> resolved;
+
+        AggregatedApplication(@Nonnull FileCollection artifactFiles, @Nonnull Provider<Resolved> resolved) {
+            this.artifactFiles = artifactFiles;
+            this.resolved = resolved;
+        }
+
+        /**
+         * The application JAR and the dependency artifact files of the application (read-only).
+         *
+         * @return {@link FileCollection} of the artifact files of the application.
+         */
+        @Classpath
+        @Nonnull
+        @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+        public FileCollection getArtifactFiles() {
+            return artifactFiles;
+        }
+
+        /**
+         * The name of the application JAR, followed by the relative paths of the dependency artifact files within the
+         * dependency directory, before deduplication (read-only). These depend on the groups of the dependencies,
+         * which are not reflected by the {@link #getArtifactFiles artifactFiles}.
+         *
+         * @return {@link Provider} of the relative paths of the artifact files of the application.
+         */
+        @Input
+        @Nonnull
+        public Provider<List<String>> getArtifactPaths() {
+            return resolved.map(resolvedApplication -> {
+                List<String> paths = new ArrayList<>(resolvedApplication.dependencies.size() + 1);
+                paths.add(resolvedApplication.applicationJar.getName());
+                resolvedApplication.dependencies.values().stream()
+                        .map(dependency -> dependency.getRelativePath().getPathString())
+                        .forEach(paths::add);
+                return paths;
+            });
+        }
+
+        /**
+         * Splits the resolved artifacts into the application JAR and its dependencies. The application JAR is the
+         * artifact of the component selected for the dependency declared directly in the configuration.
+         *
+         * @param incoming The resolved dependencies of the application.
+         * @param artifacts The resolved artifacts of the application.
+         * @return The application JAR, along with the dependency artifact files of the application in classpath order.
+         */
+        @Nonnull
+        static Resolved resolve(@Nonnull ResolvableDependencies incoming,
+                @Nonnull Set<ResolvedArtifactResult> artifacts) {
+            Set<ComponentIdentifier> applicationIds = incoming.getResolutionResult().getRoot().getDependencies()
+                    .stream()
+                    .filter(ResolvedDependencyResult.class::isInstance)
+                    .map(dependency -> ((ResolvedDependencyResult) dependency).getSelected().getId())
+                    .collect(Collectors.toSet());
+            List<File> applicationJars = artifacts.stream()
+                    .filter(artifact -> applicationIds.contains(artifact.getId().getComponentIdentifier()))
+                    .map(ResolvedArtifactResult::getFile)
+                    .collect(Collectors.toList());
+            Utils.argument(applicationJars.size() == 1,
+                    "%s must resolve exactly one application JAR: %s", incoming.getPath(), applicationJars);
+
+            Map<File, ApplicationJar.Dependency> dependencies =
+                    new LinkedHashMap<>(ApplicationJar.resolveDependencies(incoming, artifacts));
+            dependencies.remove(applicationJars.get(0));
+            return new Resolved(applicationJars.get(0), dependencies);
+        }
+    }
+
+    /**
+     * An application JAR, along with the dependency artifact files of the application in classpath order.
+     */
+    static final class Resolved {
+
+        @Nonnull
+        private final File applicationJar;
+        @Nonnull
+        private final Map<File, ApplicationJar.Dependency> dependencies;
+
+        Resolved(@Nonnull File applicationJar, @Nonnull Map<File, ApplicationJar.Dependency> dependencies) {
+            this.applicationJar = applicationJar;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Stores dependency artifact files in the dependency directory, every distinct content only once.
+     */
+    private static final class DependencyStore {
+
+        @Nonnull
+        private final Path dependencyDir;
+        @Nonnull
+        @SuppressWarnings("PMD.AvoidMessageDigestField") // Every execution of the task uses a store of its own
+        private final MessageDigest digest;
+        @Nonnull
+        private final Map<String, RelativePath> storedHashes = new HashMap<>();
+        @Nonnull
+        private final Set<RelativePath> storedPaths = new HashSet<>();
+
+        DependencyStore(@Nonnull Path dependencyDir, @Nonnull MessageDigest digest) {
+            this.dependencyDir = dependencyDir;
+            this.digest = digest;
+        }
+
+        /**
+         * Stores a dependency artifact file, unless a file with the same content has already been stored.
+         *
+         * @param file The dependency artifact file.
+         * @param dependency The dependency that the file belongs to.
+         * @return The relative path of the stored file within the dependency directory.
+         * @throws IOException If the file can't be read or stored.
+         */
+        @Nonnull
+        RelativePath store(@Nonnull File file, @Nonnull ApplicationJar.Dependency dependency) throws IOException {
+            String hash = hash(file);
+            RelativePath relativePath = storedHashes.get(hash);
+            if (relativePath == null) {
+                relativePath = dependency.getRelativePath();
+                if (storedPaths.contains(relativePath)) {
+                    relativePath = Utils.nonNull(relativePath.getParent(), "parent")
+                            .append(false, hash.substring(0, HASH_DIRECTORY_NAME_LENGTH))
+                            .append(true, relativePath.getLastName());
+                }
+                Path target = dependencyDir.resolve(relativePath.getPathString());
+                Files.createDirectories(Utils.nonNull(target.getParent(), "target.parent"));
+                Files.copy(file.toPath(), target);
+                storedHashes.put(hash, relativePath);
+                storedPaths.add(relativePath);
+            }
+            return relativePath;
+        }
+
+        @Nonnull
+        private String hash(@Nonnull File file) throws IOException {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream input = Files.newInputStream(file.toPath())) {
+                for (int count = input.read(buffer); count >= 0; count = input.read(buffer)) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+            return Utils.hex(digest.digest());
+        }
+    }
+}
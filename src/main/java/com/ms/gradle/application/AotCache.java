@@ -0,0 +1,284 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.process.ExecOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Creates an ahead-of-time (AOT) cache of an application: a {@code .aot} file with the classes that the application
+ * loads, already loaded and linked, which the JVM maps into memory at startup instead of loading and linking the
+ * classes from the JARs again. Starting the application with {@code java -XX:AOTCache=<cache> -jar <application JAR>}
+ * takes a fraction of the time it takes without it.</p>
+ * <p>The cache is created in two steps: a training run of the application with {@code -XX:AOTMode=record}, which
+ * records the classes it loads into an AOT configuration, then a run of the JVM alone with {@code -XX:AOTMode=create},
+ * which turns that configuration into the cache. The application JAR and its dependencies are laid out in the
+ * {@linkplain #getTemporaryDir temporary directory} of the task just like in the distribution, and the application
+ * runs from there with the {@linkplain #getTrainingArguments training arguments} until it exits. It must exit by
+ * itself, with an exit value of zero. The training run should exercise the startup of the application.</p>
+ * <p>The JVM only uses the cache with the Java installation that created it, and with the same classpath (down to the
+ * sizes of the JARs), so the cache gets created again whenever the {@linkplain #getJavaRelease Java installation}, the
+ * application JAR, or any of its dependencies or their {@linkplain #getDependencyPaths paths} change. The classpath is
+ * recorded relative to the directory that the training run starts in, so the application must be started from its
+ * installation directory, in the same way as the training run. This takes a Java installation of version
+ * {@value #MINIMUM_JAVA_VERSION} or later; {@link CdsArchive} works with earlier versions.</p>
+ * <p>Applications register a task of this type (see {@link Application#getAotCache}).</p>
+ *
+ * @see <a href="https://openjdk.org/jeps/483">JEP 483: Ahead-of-Time Class Loading &amp; Linking</a>
+ */
+public abstract class AotCache extends DefaultTask {
+
+    /**
+     * Name of the build directory where the AOT caches of applications will be placed.
+     */
+    public static final String CACHE_DIRECTORY_NAME = "aot";
+
+    /**
+     * Extension of the AOT caches.
+     */
+    public static final String CACHE_EXTENSION = "aot";
+
+    /**
+     * The first Java version able to create AOT caches, with {@code -XX:AOTMode}.
+     */
+    public static final int MINIMUM_JAVA_VERSION = 24;
+
+    /**
+     * Name of the directory in the {@linkplain #getTemporaryDir temporary directory} of the task that the training run
+     * starts in.
+     */
+    static final String TRAINING_DIRECTORY_NAME = "training";
+
+    /**
+     * Extension of the AOT configuration recorded by the training run.
+     */
+    static final String CONFIGURATION_EXTENSION = "aotconf";
+
+    @Nonnull
+    private final ConfigurableFileCollection dependencyFiles;
+    @Nonnull
+    private final MapProperty<File, RelativePath> dependencyDestinations;
+
+    /**
+     * Creates an {@link AotCache} task.
+     */
+    @Inject
+    public AotCache() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        ObjectFactory objects = getObjects();
+        dependencyFiles = objects.fileCollection();
+        dependencyDestinations = objects.mapProperty(File.class, RelativePath.class);
+    }
+
+    /**
+     * Takes the application JAR and its dependencies from an {@link ApplicationJar} task, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     */
+    void from(@Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        getApplicationJarFile().set(applicationJar.flatMap(ApplicationJar::getArchiveFile));
+        dependencyFiles.from(ApplicationJar.resolvedDependencies(applicationJar).map(Map::keySet))
+                .builtBy(applicationJar);
+        dependencyDestinations.set(ApplicationJar.dependencyDestinations(applicationJar));
+    }
+
+    /**
+     * The application JAR to run.
+     *
+     * @return {@link RegularFileProperty} object specifying the application JAR.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    @Nonnull
+    public abstract RegularFileProperty getApplicationJarFile();
+
+    /**
+     * The dependency artifact files of the application (read-only).
+     *
+     * @return {@link FileCollection} of the dependency artifact files.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+    public FileCollection getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * The relative paths of the dependency artifact files within the distribution, in classpath order (read-only).
+     * These are the entries of the {@code Class-Path} of the application JAR.
+     *
+     * @return {@link Provider} of the relative paths of the dependency artifact files.
+     */
+    @Input
+    @Nonnull
+    public Provider<List<String>> getDependencyPaths() {
+        return dependencyDestinations.map(destinations -> {
+            List<String> paths = new ArrayList<>(destinations.size());
+            destinations.values().forEach(relativePath -> paths.add(relativePath.getPathString()));
+            return paths;
+        });
+    }
+
+    /**
+     * The home directory of the Java installation to run the training run with. The default is the one of the Java
+     * toolchain of the project (or the one running Gradle, with versions of Gradle before 6.7). Only its
+     * {@link #getJavaRelease release} file is an input of this task.
+     *
+     * @return {@link DirectoryProperty} object specifying the home directory of the Java installation.
+     */
+    @Internal
+    @Nonnull
+    public abstract DirectoryProperty getJavaHome();
+
+    /**
+     * The {@code release} file of the {@linkplain #getJavaHome Java installation} (read-only), which states its
+     * version, vendor and build.
+     *
+     * @return {@link Provider} of the release file of the Java installation.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public Provider<RegularFile> getJavaRelease() {
+        return getJavaHome().file(JavaInstallation.RELEASE_FILE_NAME);
+    }
+
+    /**
+     * The arguments to pass to the application in the training run. Empty by default.
+     *
+     * @return {@link ListProperty} object specifying the arguments of the training run.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getTrainingArguments();
+
+    /**
+     * Additional JVM options for the training run, e.g. system properties that make the application exit once it
+     * has started. Empty by default. They are also used to create the cache from the training run, and options that
+     * affect class loading (e.g. {@code --add-opens}) should also be used when the application runs with the cache.
+     *
+     * @return {@link ListProperty} object specifying the JVM options of the training run.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getTrainingJvmArguments();
+
+    /**
+     * The AOT cache to create.
+     *
+     * @return {@link RegularFileProperty} object specifying the AOT cache.
+     */
+    @OutputFile
+    @Nonnull
+    public abstract RegularFileProperty getCacheFile();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Services used by this task (see {@link #getObjects}).
+     *
+     * @return The {@link ExecOperations} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ExecOperations getExecOperations();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void create() {
+        File cacheFile = getCacheFile().get().getAsFile();
+        try {
+            File javaHome = getJavaHome().get().getAsFile();
+            int javaVersion = JavaInstallation.featureVersion(javaHome);
+            Utils.argument(javaVersion >= MINIMUM_JAVA_VERSION,
+                    "The Java installation in %s is of version %s, but AOT caches take version %s or later",
+                    javaHome, javaVersion, MINIMUM_JAVA_VERSION);
+
+            Path trainingDirectory = getTemporaryDir().toPath().resolve(TRAINING_DIRECTORY_NAME);
+            TrainingRun.stage(trainingDirectory, getApplicationJarFile().get().getAsFile(),
+                    dependencyDestinations.get());
+            String applicationJarName = getApplicationJarFile().get().getAsFile().getName();
+            String trainingCacheName = cacheFile.getName();
+            String configurationName = trainingCacheName.replaceFirst("\\.[^.]*$", "") + "." + CONFIGURATION_EXTENSION;
+            Path trainingCache = trainingDirectory.resolve(trainingCacheName);
+
+            // Relative paths, so that the cache doesn't depend on where the application gets installed
+            List<String> recordArguments = new ArrayList<>(getTrainingJvmArguments().get());
+            recordArguments.add("-XX:AOTMode=record");
+            recordArguments.add("-XX:AOTConfiguration=" + configurationName);
+            recordArguments.add("-jar");
+            recordArguments.add(applicationJarName);
+            recordArguments.addAll(getTrainingArguments().get());
+            TrainingRun.run(getExecOperations(), javaHome, trainingDirectory, "training run", recordArguments);
+            Utils.argument(Files.isRegularFile(trainingDirectory.resolve(configurationName)),
+                    "The training run didn't create the AOT configuration");
+
+            // Same classpath as the training run, but the application doesn't run this time
+            List<String> createArguments = new ArrayList<>(getTrainingJvmArguments().get());
+            createArguments.add("-XX:AOTMode=create");
+            createArguments.add("-XX:AOTConfiguration=" + configurationName);
+            createArguments.add("-XX:AOTCache=" + trainingCacheName);
+            createArguments.add("-cp");
+            createArguments.add(applicationJarName);
+            TrainingRun.run(getExecOperations(), javaHome, trainingDirectory, "cache creation", createArguments);
+            Utils.argument(Files.isRegularFile(trainingCache), "The cache creation didn't create the cache");
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            Files.move(trainingCache, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new GradleException("Could not create AOT cache " + cacheFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException("Could not create AOT cache " + cacheFile + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -26,14 +26,24 @@ import org.gradle.api.attributes.Usage;
 import org.gradle.api.distribution.Distribution;
 import org.gradle.api.distribution.DistributionContainer;
 import org.gradle.api.distribution.plugins.DistributionPlugin;
+import org.gradle.api.file.Directory;
 import org.gradle.api.java.archives.Manifest;
 import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Sync;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
 import org.gradle.util.Path;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -65,6 +75,52 @@ public abstract class Application implements ApplicationSpec, Named {
     public static final String MAIN_APPLICATION_JAR_TASK_NAME =
             APPLICATION + Utils.capitalize(JavaPlugin.JAR_TASK_NAME);
 
+    /**
+     * Name of the main application's {@link IncrementalInstall} task.
+     */
+    public static final String MAIN_INCREMENTAL_INSTALL_TASK_NAME =
+            "incremental" + Utils.capitalize(DistributionPlugin.TASK_INSTALL_NAME);
+
+    /**
+     * Name of the {@link ParallelDistributionZip} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_PARALLEL_DIST_ZIP_TASK_NAME = "distParallelZip";
+
+    /**
+     * Name of the {@link DistributionTarZst} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_DIST_TAR_ZST_TASK_NAME = "distTarZst";
+
+    /**
+     * Name of the {@link DistributionDelta} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_DIST_DELTA_TASK_NAME = "distDelta";
+
+    /**
+     * Name of the {@link OciImage} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_OCI_IMAGE_TASK_NAME = "ociImage";
+
+    /**
+     * Name of the {@link CdsArchive} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_CDS_ARCHIVE_TASK_NAME = "cdsArchive";
+
+    /**
+     * Name of the {@link AotCache} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_AOT_CACHE_TASK_NAME = "aotCache";
+
+    /**
+     * Name of the {@link JlinkRuntime} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_JLINK_RUNTIME_TASK_NAME = "jlinkRuntime";
+
+    /**
+     * Name of the {@link JvmArgumentFiles} task for the {@value #MAIN_APPLICATION_NAME} application.
+     */
+    public static final String MAIN_JVM_ARGUMENT_FILES_TASK_NAME = "jvmArgumentFiles";
+
     /**
      * Name of the main application configuration.
      */
@@ -79,6 +135,11 @@ public abstract class Application implements ApplicationSpec, Named {
      */
     public static final String LIBRARY_ELEMENTS_APPLICATION_JAR = APPLICATION + "-" + LibraryElements.JAR;
 
+    /**
+     * Default value of {@link #getStoredEntryPatterns()}, matching all JAR files.
+     */
+    public static final String DEFAULT_STORED_ENTRY_PATTERN = "**/*.jar";
+
     @Nonnull
     private final Project project;
     @Nonnull
@@ -94,6 +155,24 @@ public abstract class Application implements ApplicationSpec, Named {
     private final NamedDomainObjectProvider<Configuration> configuration;
     @Nonnull
     private final NamedDomainObjectProvider<Distribution> distribution;
+    @Nonnull
+    private final TaskProvider<IncrementalInstall> incrementalInstall;
+    @Nonnull
+    private final TaskProvider<ParallelDistributionZip> parallelDistZip;
+    @Nonnull
+    private final TaskProvider<DistributionTarZst> distTarZst;
+    @Nonnull
+    private final TaskProvider<DistributionDelta> distDelta;
+    @Nonnull
+    private final TaskProvider<OciImage> ociImage;
+    @Nonnull
+    private final TaskProvider<CdsArchive> cdsArchive;
+    @Nonnull
+    private final TaskProvider<AotCache> aotCache;
+    @Nonnull
+    private final TaskProvider<JlinkRuntime> jlinkRuntime;
+    @Nonnull
+    private final TaskProvider<JvmArgumentFiles> jvmArgumentFiles;
 
     /**
      * Creates an {@link Application} instance.
@@ -109,9 +188,26 @@ public abstract class Application implements ApplicationSpec, Named {
         setDescription("The " + this.name + " application.");
 
         getApplicationBaseName().convention(defaultApplicationBaseName());
+        getDependencyDirectoryName().convention(ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        getDependencyLayout().convention(ApplicationJar.DependencyLayout.GROUPED);
+        getInstallMode().convention(InstallMode.COPY);
+        getStoredEntryPatterns().convention(Collections.singletonList(DEFAULT_STORED_ENTRY_PATTERN));
+        getClassDataSharing().convention(false);
+        getAheadOfTimeCache().convention(false);
+        getTrimmedRuntime().convention(false);
         this.applicationJar = registerApplicationJar();
         this.configuration = registerConfiguration();
         this.distribution = registerDistribution();
+        configureInstallTask();
+        this.incrementalInstall = registerIncrementalInstall();
+        this.parallelDistZip = registerParallelDistZip();
+        this.distTarZst = registerDistTarZst();
+        this.distDelta = registerDistDelta();
+        this.ociImage = registerOciImage();
+        this.cdsArchive = registerCdsArchive();
+        this.aotCache = registerAotCache();
+        this.jlinkRuntime = registerJlinkRuntime();
+        this.jvmArgumentFiles = registerJvmArgumentFiles();
     }
 
     @Nonnull
@@ -198,7 +294,192 @@ public abstract class Application implements ApplicationSpec, Named {
                 .map(baseName -> baseName.isEmpty() ? defaultApplicationBaseName() : baseName)
                 .orElse(project.getProviders().provider(this::defaultApplicationBaseName));
         distribution.getDistributionBaseName().convention(distributionBaseName);
-        distribution.contents(contents -> contents.with(getApplicationJar().get().applicationCopySpec()));
+        // Don't realize the application JAR task here: it only needs to exist if the distribution is actually built
+        distribution.contents(contents -> contents.with(ApplicationJar.applicationCopySpec(project, applicationJar)));
+    }
+
+    /**
+     * Sets up the {@linkplain #getInstallMode install mode} on the install task of the application's distribution,
+     * whenever that task gets created.
+     */
+    private void configureInstallTask() {
+        String installTaskName = installTaskName();
+        Provider<Boolean> linkDependencies = getInstallMode().map(InstallMode.LINK::equals);
+        project.getTasks().withType(Sync.class).configureEach(installTask -> {
+            if (installTaskName.equals(installTask.getName())) {
+                DependencyInstaller installer = new DependencyInstaller(
+                        ApplicationJar.externalDependencyDestinations(applicationJar), linkDependencies,
+                        Runtime.getRuntime().availableProcessors());
+                installTask.getInputs().property("installMode", getInstallMode());
+                installTask.eachFile(installer.excluder());
+                installTask.doLast(installer);
+            }
+        });
+    }
+
+    @Nonnull
+    private String installTaskName() {
+        return MAIN_APPLICATION_NAME.equals(name) ?
+                DistributionPlugin.TASK_INSTALL_NAME :
+                "install" + Utils.capitalize(name) + "Dist";
+    }
+
+    @Nonnull
+    private TaskProvider<IncrementalInstall> registerIncrementalInstall() {
+        String incrementalInstallTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_INCREMENTAL_INSTALL_TASK_NAME :
+                "incremental" + Utils.capitalize(installTaskName());
+        return project.getTasks().register(incrementalInstallTaskName, IncrementalInstall.class, task -> {
+            // Same group as the tasks added by the DistributionPlugin
+            task.setGroup("distribution");
+            task.setDescription("Installs the " + name + " distribution incrementally.");
+            task.with(distribution.get().getContents());
+            task.into(project.getLayout().getBuildDirectory().dir(distribution
+                    .flatMap(Distribution::getDistributionBaseName)
+                    .map(baseName -> IncrementalInstall.INSTALL_DIRECTORY_NAME + "/" + baseName)));
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<ParallelDistributionZip> registerParallelDistZip() {
+        String parallelDistZipTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_PARALLEL_DIST_ZIP_TASK_NAME :
+                name + "DistParallelZip";
+        return project.getTasks().register(parallelDistZipTaskName, ParallelDistributionZip.class, task -> {
+            // Same group as the tasks added by the DistributionPlugin
+            task.setGroup("distribution");
+            task.setDescription("Bundles the " + name + " distribution as a ZIP archive on multiple threads.");
+            task.getArchiveBaseName().convention(distribution.flatMap(Distribution::getDistributionBaseName));
+            task.getDestinationDirectory().convention(
+                    project.getLayout().getBuildDirectory().dir(ParallelDistributionZip.ARCHIVE_DIRECTORY_NAME));
+            task.getStoredEntryPatterns().convention(getStoredEntryPatterns());
+            bundleDistribution(task);
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<DistributionTarZst> registerDistTarZst() {
+        String distTarZstTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_DIST_TAR_ZST_TASK_NAME :
+                name + "DistTarZst";
+        return project.getTasks().register(distTarZstTaskName, DistributionTarZst.class, task -> {
+            // Same group as the tasks added by the DistributionPlugin
+            task.setGroup("distribution");
+            task.setDescription("Bundles the " + name + " distribution as a Zstandard-compressed TAR archive.");
+            task.getArchiveBaseName().convention(distribution.flatMap(Distribution::getDistributionBaseName));
+            bundleDistribution(task);
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<DistributionDelta> registerDistDelta() {
+        String distDeltaTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_DIST_DELTA_TASK_NAME :
+                name + "DistDelta";
+        return project.getTasks().register(distDeltaTaskName, DistributionDelta.class, task -> {
+            // Same group as the tasks added by the DistributionPlugin
+            task.setGroup("distribution");
+            task.setDescription("Bundles the changes to the " + name + " distribution since a previous release.");
+            task.getArchiveBaseName().convention(distribution.flatMap(Distribution::getDistributionBaseName));
+            task.getStoredEntryPatterns().convention(getStoredEntryPatterns());
+            // Paths are relative to the installation directory that the delta gets applied to
+            task.with(distribution.get().getContents());
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<OciImage> registerOciImage() {
+        String ociImageTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_OCI_IMAGE_TASK_NAME :
+                name + "OciImage";
+        return project.getTasks().register(ociImageTaskName, OciImage.class, task -> {
+            task.setDescription("Builds a container image of the " + name + " application.");
+            task.from(applicationJar);
+            Provider<String> baseName = distribution.flatMap(Distribution::getDistributionBaseName);
+            // Image names must be lowercase
+            task.getImageReference().convention(baseName.map(value -> value.toLowerCase(Locale.ROOT) + ":latest"));
+            task.getImageFile().convention(project.getLayout().getBuildDirectory().file(
+                    baseName.map(value -> OciImage.IMAGE_DIRECTORY_NAME + "/" + value + ".tar")));
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<CdsArchive> registerCdsArchive() {
+        String cdsArchiveTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_CDS_ARCHIVE_TASK_NAME :
+                name + "CdsArchive";
+        return project.getTasks().register(cdsArchiveTaskName, CdsArchive.class, task -> {
+            task.setDescription("Creates a CDS archive of the " + name + " application with a training run.");
+            task.from(applicationJar);
+            task.getJavaHome().convention(JavaInstallation.javaHome(project));
+            // Named after the application JAR, which it goes next to in the distribution
+            task.getArchiveFile().convention(project.getLayout().getBuildDirectory().file(
+                    applicationJar.flatMap(ApplicationJar::getArchiveFileName).map(fileName ->
+                            CdsArchive.ARCHIVE_DIRECTORY_NAME + "/" + fileName.replaceFirst("\\.jar$", "") +
+                                    "." + CdsArchive.ARCHIVE_EXTENSION)));
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<AotCache> registerAotCache() {
+        String aotCacheTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_AOT_CACHE_TASK_NAME :
+                name + "AotCache";
+        return project.getTasks().register(aotCacheTaskName, AotCache.class, task -> {
+            task.setDescription("Creates an AOT cache of the " + name + " application with a training run.");
+            task.from(applicationJar);
+            task.getJavaHome().convention(JavaInstallation.javaHome(project));
+            // Named after the application JAR, which it goes next to in the distribution
+            task.getCacheFile().convention(project.getLayout().getBuildDirectory().file(
+                    applicationJar.flatMap(ApplicationJar::getArchiveFileName).map(fileName ->
+                            AotCache.CACHE_DIRECTORY_NAME + "/" + fileName.replaceFirst("\\.jar$", "") +
+                                    "." + AotCache.CACHE_EXTENSION)));
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<JlinkRuntime> registerJlinkRuntime() {
+        String jlinkRuntimeTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_JLINK_RUNTIME_TASK_NAME :
+                name + "JlinkRuntime";
+        return project.getTasks().register(jlinkRuntimeTaskName, JlinkRuntime.class, task -> {
+            task.setDescription("Creates a runtime image with the Java modules that the " + name +
+                    " application needs.");
+            task.from(applicationJar);
+            task.getJavaHome().convention(JavaInstallation.javaHome(project));
+            task.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir(
+                    JlinkRuntime.RUNTIME_DIRECTORY_NAME + "/" + name));
+        });
+    }
+
+    @Nonnull
+    private TaskProvider<JvmArgumentFiles> registerJvmArgumentFiles() {
+        String jvmArgumentFilesTaskName = MAIN_APPLICATION_NAME.equals(name) ?
+                MAIN_JVM_ARGUMENT_FILES_TASK_NAME :
+                name + "JvmArgumentFiles";
+        return project.getTasks().register(jvmArgumentFilesTaskName, JvmArgumentFiles.class, task -> {
+            task.setDescription("Writes the JVM options of the " + name + " application into argument files.");
+            // Named after the application JAR, which they go next to in the distribution
+            task.getBaseName().convention(applicationJar.flatMap(ApplicationJar::getArchiveFileName)
+                    .map(fileName -> fileName.replaceFirst("\\.jar$", "")));
+            task.getJvmArguments().convention(getJvmArguments());
+            task.getProfiles().convention(getJvmProfiles());
+            task.getJavaHome().convention(JavaInstallation.javaHome(project));
+            task.getDestinationDirectory().convention(project.getLayout().getBuildDirectory().dir(
+                    JvmArgumentFiles.DIRECTORY_NAME + "/" + name));
+        });
+    }
+
+    /**
+     * Sets up an archive task to bundle the contents of the application's distribution.
+     *
+     * @param task The archive task.
+     */
+    private void bundleDistribution(@Nonnull AbstractArchiveTask task) {
+        // Like in the archives of the DistributionPlugin, everything goes into a directory named after the archive
+        task.into(task.getArchiveExtension().flatMap(extension -> task.getArchiveFileName()
+                .map(fileName -> fileName.substring(0, fileName.length() - extension.length() - 1))),
+                contents -> contents.with(distribution.get().getContents()));
     }
 
     /**
@@ -268,6 +549,97 @@ public abstract class Application implements ApplicationSpec, Named {
     @Nonnull
     public abstract Property<String> getApplicationBaseName();
 
+    /**
+     * <p>Specifies how the install task of the application's distribution puts the dependencies of the application
+     * into place. See {@link InstallMode} for the available modes.</p>
+     * <p>The default value is {@link InstallMode#COPY COPY}.</p>
+     *
+     * @return {@link Property} object specifying the install mode.
+     */
+    @Nonnull
+    public abstract Property<InstallMode> getInstallMode();
+
+    /**
+     * <p>Patterns of the files that the ZIP archive of the application's distribution stores without compression,
+     * like JARs, which are compressed already. All other files get deflated as usual. The patterns are in the format
+     * of {@link org.gradle.api.tasks.util.PatternFilterable#include(Iterable) PatternFilterable.include}, and get
+     * matched against the paths of the files within the archive (including the top-level directory).</p>
+     * <p>If the list is empty, if the archive task is configured to store all of its entries anyway (see
+     * {@link Zip#getEntryCompression}), or if it uses ZIP64 extensions (see {@link Zip#isZip64}), which the
+     * compression of the archive doesn't support, the archive task is left as it is.</p>
+     * <p>The default value is <code>["{@value #DEFAULT_STORED_ENTRY_PATTERN}"]</code>.</p>
+     *
+     * @return {@link ListProperty} object specifying the patterns of the files to store without compression.
+     */
+    @Nonnull
+    public abstract ListProperty<String> getStoredEntryPatterns();
+
+    /**
+     * <p>Whether the application's distribution contains a CDS archive of the application, created by its
+     * {@link #getCdsArchive CdsArchive} task. The archive goes next to the application JAR, with the same name but the
+     * {@value CdsArchive#ARCHIVE_EXTENSION} extension, and makes the application start faster when run from its
+     * installation directory with {@code java -XX:SharedArchiveFile=<name>.jsa -jar <name>.jar}.</p>
+     * <p>Building the distribution then takes a training run of the application, which must exit by itself (see
+     * {@link CdsArchive}). The default value is {@code false}.</p>
+     *
+     * @return {@link Property} object specifying whether the distribution contains a CDS archive.
+     */
+    @Nonnull
+    public abstract Property<Boolean> getClassDataSharing();
+
+    /**
+     * <p>Whether the application's distribution contains an AOT cache of the application, created by its
+     * {@link #getAotCache AotCache} task. The cache goes next to the application JAR, with the same name but the
+     * {@value AotCache#CACHE_EXTENSION} extension, and makes the application start faster when run from its
+     * installation directory with {@code java -XX:AOTCache=<name>.aot -jar <name>.jar}.</p>
+     * <p>Building the distribution then takes a training run of the application, which must exit by itself, with a
+     * Java installation of version {@value AotCache#MINIMUM_JAVA_VERSION} or later (see {@link AotCache}). The default
+     * value is {@code false}.</p>
+     *
+     * @return {@link Property} object specifying whether the distribution contains an AOT cache.
+     */
+    @Nonnull
+    public abstract Property<Boolean> getAheadOfTimeCache();
+
+    /**
+     * <p>Whether the application's distribution contains a Java runtime image with just the modules that the
+     * application needs, created by its {@link #getJlinkRuntime JlinkRuntime} task. The runtime goes into the
+     * {@value JlinkRuntime#DISTRIBUTION_DIRECTORY_NAME} directory, and runs the application from its installation
+     * directory with {@code runtime/bin/java -jar <name>.jar}. The CDS archive and the AOT cache of the application,
+     * if any, are then created with that runtime (unless their tasks are configured with another Java installation),
+     * since the JVM only uses them with the Java installation that created them.</p>
+     * <p>Modules that the application only uses through reflection or service loading must be added to the runtime
+     * explicitly (see {@link JlinkRuntime}). The default value is {@code false}.</p>
+     *
+     * @return {@link Property} object specifying whether the distribution contains a runtime image.
+     */
+    @Nonnull
+    public abstract Property<Boolean> getTrimmedRuntime();
+
+    /**
+     * <p>JVM options of the application, e.g. the heap size. If there are any, or any {@link #getJvmProfiles
+     * jvmProfiles}, the application's distribution contains argument files with them, written by its
+     * {@link #getJvmArgumentFiles JvmArgumentFiles} task, next to the application JAR: the application then runs
+     * from its installation directory with {@code java @<name>.args -jar <name>.jar}. The argument files also make
+     * the JVM use the CDS archive or the AOT cache of the application, if the distribution contains one. Empty by
+     * default.</p>
+     *
+     * @return {@link ListProperty} object specifying the JVM options.
+     */
+    @Nonnull
+    public abstract ListProperty<String> getJvmArguments();
+
+    /**
+     * <p>Additional JVM options of the application for specific purposes, by profile name, e.g. garbage collector
+     * options for {@code latency} or {@code throughput}. The application runs with the options of a profile, after
+     * the common {@link #getJvmArguments jvmArguments}, with {@code java @<name>-<profile>.args -jar <name>.jar}
+     * (see {@link JvmArgumentFiles}). Empty by default.</p>
+     *
+     * @return {@link MapProperty} object specifying the JVM options of the profiles.
+     */
+    @Nonnull
+    public abstract MapProperty<String, List<String>> getJvmProfiles();
+
     /**
      * Returns the {@link ApplicationJar} for the application.
      *
@@ -328,6 +700,217 @@ public abstract class Application implements ApplicationSpec, Named {
         distribution.configure(action);
     }
 
+    /**
+     * <p>Returns the {@link IncrementalInstall} task for the application, which installs the contents of its
+     * {@linkplain #getDistribution distribution} into the
+     * <code>build/{@value IncrementalInstall#INSTALL_DIRECTORY_NAME}/<i>distributionBaseName</i></code> directory,
+     * only writing the files that have changed since the previous installation.</p>
+     * <p>Its name is {@value #MAIN_INCREMENTAL_INSTALL_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME}
+     * application, and <code>incrementalInstall<i>Name</i>Dist</code> for other applications.</p>
+     *
+     * @return The {@link IncrementalInstall} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<IncrementalInstall> getIncrementalInstall() {
+        return incrementalInstall;
+    }
+
+    /**
+     * Configures the {@link #getIncrementalInstall IncrementalInstall} task for the application.
+     *
+     * @param action Action to configure the {@link IncrementalInstall} task.
+     */
+    public void incrementalInstall(@Nonnull Action<? super IncrementalInstall> action) {
+        incrementalInstall.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link ParallelDistributionZip} task for the application, which bundles the contents of its
+     * {@linkplain #getDistribution distribution} as a ZIP archive in the
+     * <code>build/{@value ParallelDistributionZip#ARCHIVE_DIRECTORY_NAME}</code> directory, reading and compressing
+     * files on multiple threads.</p>
+     * <p>Its name is {@value #MAIN_PARALLEL_DIST_ZIP_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application,
+     * and <code><i>name</i>DistParallelZip</code> for other applications.</p>
+     *
+     * @return The {@link ParallelDistributionZip} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<ParallelDistributionZip> getParallelDistZip() {
+        return parallelDistZip;
+    }
+
+    /**
+     * Configures the {@link #getParallelDistZip ParallelDistributionZip} task for the application.
+     *
+     * @param action Action to configure the {@link ParallelDistributionZip} task.
+     */
+    public void parallelDistZip(@Nonnull Action<? super ParallelDistributionZip> action) {
+        parallelDistZip.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link DistributionTarZst} task for the application, which bundles the contents of its
+     * {@linkplain #getDistribution distribution} as a Zstandard-compressed TAR archive, next to the archives of the
+     * distribution.</p>
+     * <p>Its name is {@value #MAIN_DIST_TAR_ZST_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>DistTarZst</code> for other applications.</p>
+     *
+     * @return The {@link DistributionTarZst} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<DistributionTarZst> getDistTarZst() {
+        return distTarZst;
+    }
+
+    /**
+     * Configures the {@link #getDistTarZst DistributionTarZst} task for the application.
+     *
+     * @param action Action to configure the {@link DistributionTarZst} task.
+     */
+    public void distTarZst(@Nonnull Action<? super DistributionTarZst> action) {
+        distTarZst.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link DistributionDelta} task for the application, which bundles the changes to the contents of
+     * its {@linkplain #getDistribution distribution} since a
+     * {@linkplain DistributionDelta#getPreviousDistribution previous release} as a self-applying archive, next to the
+     * archives of the distribution. The previous release has to be set before the task can run.</p>
+     * <p>Its name is {@value #MAIN_DIST_DELTA_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>DistDelta</code> for other applications.</p>
+     *
+     * @return The {@link DistributionDelta} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<DistributionDelta> getDistDelta() {
+        return distDelta;
+    }
+
+    /**
+     * Configures the {@link #getDistDelta DistributionDelta} task for the application.
+     *
+     * @param action Action to configure the {@link DistributionDelta} task.
+     */
+    public void distDelta(@Nonnull Action<? super DistributionDelta> action) {
+        distDelta.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link OciImage} task for the application, which builds a container image of the application
+     * JAR and its dependencies, with the dependencies in separate layers from the application JAR. The image is
+     * written into the <code>build/{@value OciImage#IMAGE_DIRECTORY_NAME}</code> directory, and tagged as
+     * <code><i>distributionBaseName</i>:latest</code> (in lowercase) by default.</p>
+     * <p>Its name is {@value #MAIN_OCI_IMAGE_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>OciImage</code> for other applications.</p>
+     *
+     * @return The {@link OciImage} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<OciImage> getOciImage() {
+        return ociImage;
+    }
+
+    /**
+     * Configures the {@link #getOciImage OciImage} task for the application.
+     *
+     * @param action Action to configure the {@link OciImage} task.
+     */
+    public void ociImage(@Nonnull Action<? super OciImage> action) {
+        ociImage.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link CdsArchive} task for the application, which creates a CDS archive of the application JAR
+     * and its dependencies with a training run. The archive goes into the application's distribution if
+     * {@link #getClassDataSharing classDataSharing} is enabled.</p>
+     * <p>Its name is {@value #MAIN_CDS_ARCHIVE_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>CdsArchive</code> for other applications.</p>
+     *
+     * @return The {@link CdsArchive} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<CdsArchive> getCdsArchive() {
+        return cdsArchive;
+    }
+
+    /**
+     * Configures the {@link #getCdsArchive CdsArchive} task for the application.
+     *
+     * @param action Action to configure the {@link CdsArchive} task.
+     */
+    public void cdsArchive(@Nonnull Action<? super CdsArchive> action) {
+        cdsArchive.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link AotCache} task for the application, which creates an AOT cache of the application JAR and
+     * its dependencies with a training run. The cache goes into the application's distribution if
+     * {@link #getAheadOfTimeCache aheadOfTimeCache} is enabled.</p>
+     * <p>Its name is {@value #MAIN_AOT_CACHE_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>AotCache</code> for other applications.</p>
+     *
+     * @return The {@link AotCache} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<AotCache> getAotCache() {
+        return aotCache;
+    }
+
+    /**
+     * Configures the {@link #getAotCache AotCache} task for the application.
+     *
+     * @param action Action to configure the {@link AotCache} task.
+     */
+    public void aotCache(@Nonnull Action<? super AotCache> action) {
+        aotCache.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link JlinkRuntime} task for the application, which creates a Java runtime image with the
+     * modules that the application JAR and its dependencies need. The runtime goes into the application's
+     * distribution if {@link #getTrimmedRuntime trimmedRuntime} is enabled.</p>
+     * <p>Its name is {@value #MAIN_JLINK_RUNTIME_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application, and
+     * <code><i>name</i>JlinkRuntime</code> for other applications.</p>
+     *
+     * @return The {@link JlinkRuntime} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<JlinkRuntime> getJlinkRuntime() {
+        return jlinkRuntime;
+    }
+
+    /**
+     * Configures the {@link #getJlinkRuntime JlinkRuntime} task for the application.
+     *
+     * @param action Action to configure the {@link JlinkRuntime} task.
+     */
+    public void jlinkRuntime(@Nonnull Action<? super JlinkRuntime> action) {
+        jlinkRuntime.configure(action);
+    }
+
+    /**
+     * <p>Returns the {@link JvmArgumentFiles} task for the application, which writes its JVM options into argument
+     * files. The argument files go into the application's distribution if there are any
+     * {@link #getJvmArguments jvmArguments} or {@link #getJvmProfiles jvmProfiles}.</p>
+     * <p>Its name is {@value #MAIN_JVM_ARGUMENT_FILES_TASK_NAME} for the {@value #MAIN_APPLICATION_NAME} application,
+     * and <code><i>name</i>JvmArgumentFiles</code> for other applications.</p>
+     *
+     * @return The {@link JvmArgumentFiles} task for the application.
+     */
+    @Nonnull
+    public TaskProvider<JvmArgumentFiles> getJvmArgumentFiles() {
+        return jvmArgumentFiles;
+    }
+
+    /**
+     * Configures the {@link #getJvmArgumentFiles JvmArgumentFiles} task for the application.
+     *
+     * @param action Action to configure the {@link JvmArgumentFiles} task.
+     */
+    public void jvmArgumentFiles(@Nonnull Action<? super JvmArgumentFiles> action) {
+        jvmArgumentFiles.configure(action);
+    }
+
     /**
      * Finalizes and validates the properties of this application. Any further attempts to make changes will result in
      * an {@code IllegalStateException}.
@@ -351,6 +934,99 @@ public abstract class Application implements ApplicationSpec, Named {
         Utils.finalizeValues(
                 getRawJar(),
                 getDependencyDirectoryName(),
-                getMainClass());
+                getDependencyLayout(),
+                getMainClass(),
+                getInstallMode());
+        getStoredEntryPatterns().finalizeValue();
+        configureArchiveTask();
+        if (Utils.getFinalizedValue(getTrimmedRuntime()).orElse(false)) {
+            distribution.configure(dist -> dist.getContents().from(jlinkRuntime,
+                    spec -> spec.into(JlinkRuntime.DISTRIBUTION_DIRECTORY_NAME)));
+            // The archives only work with the runtime that created them
+            Provider<Directory> runtimeHome = jlinkRuntime.flatMap(JlinkRuntime::getOutputDirectory);
+            cdsArchive.configure(task -> task.getJavaHome().convention(runtimeHome));
+            aotCache.configure(task -> task.getJavaHome().convention(runtimeHome));
+            jvmArgumentFiles.configure(task -> task.getJavaHome().convention(runtimeHome));
+        }
+        // The argument files use the archive that the distribution contains, made with their Java installation
+        if (Utils.getFinalizedValue(getAheadOfTimeCache()).orElse(false)) {
+            distribution.configure(dist -> dist.getContents().from(aotCache));
+            jvmArgumentFiles.configure(task -> {
+                // Only the name of the cache: the argument files don't depend on the cache itself
+                task.getAotCacheFileName().convention(project.provider(() ->
+                        aotCache.get().getCacheFile().get().getAsFile().getName()));
+                task.getJavaHome().convention(aotCache.flatMap(AotCache::getJavaHome));
+            });
+        }
+        if (Utils.getFinalizedValue(getClassDataSharing()).orElse(false)) {
+            distribution.configure(dist -> dist.getContents().from(cdsArchive));
+            if (!getAheadOfTimeCache().get()) {
+                jvmArgumentFiles.configure(task -> {
+                    task.getSharedArchiveFileName().convention(project.provider(() ->
+                            cdsArchive.get().getArchiveFile().get().getAsFile().getName()));
+                    task.getJavaHome().convention(cdsArchive.flatMap(CdsArchive::getJavaHome));
+                });
+            }
+        }
+        getJvmArguments().finalizeValue();
+        getJvmProfiles().finalizeValue();
+        if (!getJvmArguments().get().isEmpty() || !getJvmProfiles().get().isEmpty()) {
+            distribution.configure(dist -> dist.getContents().from(jvmArgumentFiles));
+        }
+    }
+
+    /**
+     * Sets up the {@linkplain #getStoredEntryPatterns stored entry patterns} on the ZIP archive task of the
+     * application's distribution, whenever that task gets created. Tasks configured to store all entries anyway, or to
+     * use ZIP64 extensions, are left alone.
+     */
+    private void configureArchiveTask() {
+        List<String> storedEntryPatterns = getStoredEntryPatterns().get();
+        if (storedEntryPatterns.isEmpty()) {
+            return;
+        }
+        String archiveTaskName = archiveTaskName();
+        project.getTasks().withType(Zip.class).configureEach(archiveTask -> {
+            if (archiveTaskName.equals(archiveTask.getName()) &&
+                    archiveTask.getEntryCompression() == ZipEntryCompression.DEFLATED && !archiveTask.isZip64()) {
+                SelectiveZipCompressor compressor = new SelectiveZipCompressor(storedEntryPatterns);
+                archiveTask.setEntryCompression(ZipEntryCompression.STORED);
+                archiveTask.getInputs().property("storedEntryPatterns", storedEntryPatterns);
+                archiveTask.eachFile(compressor.recorder());
+                archiveTask.doLast(compressor);
+            }
+        });
+    }
+
+    @Nonnull
+    private String archiveTaskName() {
+        return MAIN_APPLICATION_NAME.equals(name) ?
+                "distZip" :
+                name + "DistZip";
+    }
+
+    /**
+     * The ways in which the install task of an application's distribution can put the dependencies of the application
+     * into place. Only the install task is affected: distribution archives always contain copies of the dependencies.
+     */
+    public enum InstallMode {
+
+        /**
+         * Copies the dependency artifact files, like any other file of the distribution.
+         */
+        COPY,
+
+        /**
+         * <p>{@linkplain java.nio.file.Files#createLink Hard-links} the artifact files of external modules (which are
+         * located in Gradle's dependency cache) into the installation directory, so their content doesn't have to be
+         * copied at all. Files that can't be linked (e.g. because they are on a different file system than the
+         * installation directory) get copied on multiple threads instead, letting the operating system transfer the
+         * content directly. The artifacts of projects, local files, and the raw JAR in
+         * {@link ApplicationJar.PackagingMode#LAUNCHER LAUNCHER} mode are always copied: they may be rebuilt in place,
+         * which would change the installation too.</p>
+         * <p>Note that linked files share their content with the cached files: they must not be modified in
+         * place.</p>
+         */
+        LINK
     }
 }
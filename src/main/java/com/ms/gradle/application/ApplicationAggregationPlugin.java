@@ -0,0 +1,149 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Named;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.attributes.Bundling;
+import org.gradle.api.attributes.Category;
+import org.gradle.api.attributes.LibraryElements;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.distribution.DistributionContainer;
+import org.gradle.api.distribution.plugins.DistributionPlugin;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.TaskProvider;
+
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Gradle {@link Plugin} class that aggregates {@linkplain Application applications} from other projects into a
+ * single distribution, where the dependencies of all applications are stored only once (see
+ * {@link AggregateApplications}).</p>
+ * <p>Applications are declared as dependencies in the {@value #CONFIGURATION_NAME} configuration, typically on other
+ * projects of the same build. Each of them gets resolved on its own, through the outgoing variant of the application
+ * (see {@link Application#getConfiguration}), so the dependency versions of one application are not affected by those
+ * of the others. The {@link ApplicationName} attribute of a dependency selects the application of the project;
+ * if it is not set, the {@linkplain Application#MAIN_APPLICATION_NAME main} application is selected.</p>
+ * <p>The aggregated applications make up the contents of the {@linkplain DistributionPlugin#MAIN_DISTRIBUTION_NAME
+ * main} distribution of the project. Class data sharing archives shared by the aggregated applications can be added
+ * to it with the {@value #SHARED_CDS_ARCHIVES_TASK_NAME} task (see {@link SharedCdsArchives}).</p>
+ */
+public class ApplicationAggregationPlugin implements Plugin<Project> {
+
+    /**
+     * Name of the configuration where the applications to aggregate are declared as dependencies.
+     */
+    public static final String CONFIGURATION_NAME = "aggregatedApplications";
+
+    /**
+     * Name of the {@link AggregateApplications} task that this plugin registers.
+     */
+    public static final String TASK_NAME = "aggregateApplications";
+
+    /**
+     * Name of the {@link SharedCdsArchives} task that this plugin registers, for the aggregated applications.
+     */
+    public static final String SHARED_CDS_ARCHIVES_TASK_NAME = "sharedCdsArchives";
+
+    /**
+     * Name prefix of the configurations that resolve the applications one by one.
+     */
+    static final String APPLICATION_CONFIGURATION_NAME_PREFIX = "aggregatedApplication";
+
+    private int applicationCount;
+
+    /**
+     * Apply this plugin to the given project.
+     *
+     * @param project The project to apply this plugin to.
+     */
+    @Override
+    public void apply(@Nonnull Project project) {
+        project.getPluginManager().apply(DistributionPlugin.class);
+
+        Configuration applications = project.getConfigurations().create(CONFIGURATION_NAME, configuration -> {
+            configuration.setDescription("The applications to aggregate.");
+            configuration.setVisible(false);
+            configuration.setCanBeConsumed(false);
+            configuration.setCanBeResolved(false);
+        });
+        TaskProvider<AggregateApplications> aggregate =
+                project.getTasks().register(TASK_NAME, AggregateApplications.class);
+
+        // Dependencies are configured before they are added to the configuration, so their attributes are set by now
+        applications.getDependencies().withType(ModuleDependency.class).all(dependency -> {
+            Configuration application = createApplicationConfiguration(project, dependency);
+            aggregate.configure(task -> task.aggregate(application));
+        });
+
+        project.getTasks().register(SHARED_CDS_ARCHIVES_TASK_NAME, SharedCdsArchives.class, task -> {
+            task.setDescription("Creates CDS archives shared by the aggregated applications with training runs.");
+            task.getApplicationsDirectory().convention(
+                    aggregate.flatMap(AggregateApplications::getDestinationDirectory));
+            task.getJavaHome().convention(JavaInstallation.javaHome(project));
+        });
+
+        project.getExtensions().getByType(DistributionContainer.class)
+                .named(DistributionPlugin.MAIN_DISTRIBUTION_NAME)
+                .configure(distribution -> distribution.getContents().from(aggregate));
+    }
+
+    /**
+     * Creates a {@link Configuration} that resolves a single application, along with its dependencies. The
+     * {@link Configuration} requests the same attributes as the {@code runtimeClasspath} of a Java project, so the
+     * dependencies of the application are resolved as they would be for the application itself; only the
+     * application's own dependency is redirected to the outgoing variant of the application.
+     *
+     * @param project The project to create the {@link Configuration} in.
+     * @param dependency The dependency on the application.
+     * @return The new {@link Configuration}.
+     */
+    @Nonnull
+    private Configuration createApplicationConfiguration(@Nonnull Project project,
+            @Nonnull ModuleDependency dependency) {
+        ObjectFactory objects = project.getObjects();
+        ModuleDependency applicationDependency = dependency.copy();
+        applicationDependency.attributes(attributes -> {
+            setAttribute(objects, attributes, LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE,
+                    Application.LIBRARY_ELEMENTS_APPLICATION_JAR);
+            if (!attributes.contains(ApplicationName.APPLICATION_NAME_ATTRIBUTE)) {
+                setAttribute(objects, attributes, ApplicationName.APPLICATION_NAME_ATTRIBUTE,
+                        Application.MAIN_APPLICATION_NAME);
+            }
+        });
+
+        applicationCount++;
+        return project.getConfigurations().create(APPLICATION_CONFIGURATION_NAME_PREFIX + applicationCount,
+                configuration -> {
+                    configuration.setDescription("Resolves the aggregated application " + dependency + ".");
+                    configuration.setVisible(false);
+                    configuration.setCanBeConsumed(false);
+                    configuration.setCanBeResolved(true);
+                    configuration.attributes(attributes -> {
+                        setAttribute(objects, attributes, Usage.USAGE_ATTRIBUTE, Usage.JAVA_RUNTIME);
+                        setAttribute(objects, attributes, Category.CATEGORY_ATTRIBUTE, Category.LIBRARY);
+                        setAttribute(objects, attributes, Bundling.BUNDLING_ATTRIBUTE, Bundling.EXTERNAL);
+                        setAttribute(objects, attributes, LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE,
+                                LibraryElements.JAR);
+                    });
+                    configuration.getDependencies().add(applicationDependency);
+                });
+    }
+
+    private static <T extends Named> void setAttribute(@Nonnull ObjectFactory objects,
+            @Nonnull AttributeContainer attributes, @Nonnull Attribute<T> key, @Nonnull String value) {
+        attributes.attribute(key, objects.named(key.getType(), value));
+    }
+}
@@ -9,44 +9,72 @@
 
 package com.ms.gradle.application;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ArtifactCollection;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
-import org.gradle.api.artifacts.ResolvedArtifact;
-import org.gradle.api.artifacts.ResolvedConfiguration;
+import org.gradle.api.artifacts.ResolvableDependencies;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.CopySpec;
 import org.gradle.api.file.DuplicatesStrategy;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileCopyDetails;
 import org.gradle.api.file.FileTree;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.java.archives.Attributes;
 import org.gradle.api.java.archives.Manifest;
 import org.gradle.api.java.archives.ManifestException;
 import org.gradle.api.java.archives.ManifestMergeSpec;
+import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.BasePlugin;
-import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.provider.HasConfigurableValue;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.specs.Specs;
 import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskCollection;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.zip.ZipException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -67,6 +95,61 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
      */
     public static final String DEPENDENCY_DIRECTORY_NAME = "lib";
 
+    /**
+     * Path of the manifest file within JAR archives.
+     */
+    static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
+
+    /**
+     * Path of the directory containing the manifest file within JAR archives.
+     */
+    private static final String MANIFEST_DIRECTORY_PATH = "META-INF/";
+
+    /**
+     * In {@link PackagingMode#TRANSFER TRANSFER} mode, the manifest entry gets padded to a multiple of this size, so
+     * that a new manifest (e.g. with a slightly different {@code Class-Path}) can usually be written over the previous
+     * one in place.
+     */
+    private static final int MANIFEST_BLOCK_SIZE = 4096;
+
+    /**
+     * Suffix of the versions of external modules that may change without their version changing.
+     */
+    static final String SNAPSHOT_VERSION_SUFFIX = "-SNAPSHOT";
+
+    /**
+     * <p>This property has a convention, so its value can be queried without a {@link Provider#orElse} fallback.</p>
+     *
+     * @return The {@link #getPackagingMode packagingMode} property presented as a provider that finalizes the
+     * underlying property when queried.
+     */
+    @Nonnull
+    private Provider<PackagingMode> packagingMode() {
+        return withFinalizeValueOnRead(getPackagingMode());
+    }
+
+    /**
+     * <p>This property has a convention too, so no {@link Provider#orElse} fallback is needed either.</p>
+     *
+     * @return The {@link #getParallelCompression parallelCompression} property presented as a provider that finalizes
+     * the underlying property when queried.
+     */
+    @Nonnull
+    private Provider<Boolean> parallelCompression() {
+        return withFinalizeValueOnRead(getParallelCompression());
+    }
+
+    /**
+     * <p>This property has a convention too, so no {@link Provider#orElse} fallback is needed either.</p>
+     *
+     * @return The {@link #getCompressionThreads compressionThreads} property presented as a provider that finalizes
+     * the underlying property when queried.
+     */
+    @Nonnull
+    private Provider<Integer> compressionThreads() {
+        return withFinalizeValueOnRead(getCompressionThreads());
+    }
+
     /**
      * <p><b>IMPORTANT:</b> This is an {@link Optional} property, so wherever we query its value, we must specify a
      * {@link Provider#orElse} fallback.</p>
@@ -110,6 +193,18 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
         return withFinalizeValueOnRead(getDependencyDirectoryName());
     }
 
+    /**
+     * <p><b>IMPORTANT:</b> The convention of this property may be cleared, so wherever we query its value, we must
+     * specify a {@link Provider#orElse} fallback.</p>
+     *
+     * @return The {@link #getDependencyLayout dependencyLayout} property presented as a provider that finalizes the
+     * underlying property when queried.
+     */
+    @Nonnull
+    private Provider<DependencyLayout> dependencyLayout() {
+        return withFinalizeValueOnRead(getDependencyLayout());
+    }
+
     /**
      * <p><b>IMPORTANT:</b> Wherever we query the value of this property, we should add a no-op {@link Provider#orElse}
      * fallback, so that if the user leaves the property empty, Gradle can still reach the input validation step and
@@ -135,16 +230,97 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
         return withFinalizeValueOnRead(resolvedDependencies);
     }
 
+    /**
+     * Returns the resolved dependencies of the task, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     * @return The dependency artifact files in classpath order, along with their respective {@link Dependency} objects.
+     * In {@link PackagingMode#LAUNCHER LAUNCHER} mode, the raw JAR comes first.
+     */
+    @Nonnull
+    static Provider<Map<File, Dependency>> resolvedDependencies(
+            @Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        return applicationJar.flatMap(ApplicationJar::resolvedDependencies);
+    }
+
+    /**
+     * <p>The value of this property is derived from {@link #resolvedDependencies()}, so the same care must be taken
+     * not to query it too early.</p>
+     *
+     * @return The {@link #classpath} property presented as a provider that finalizes the underlying property when
+     * queried.
+     */
+    @Nonnull
+    private Provider<String> classpath() {
+        return withFinalizeValueOnRead(classpath);
+    }
+
     /**
      * <p>The application's dependencies in the format needed by this task. This is a read-only {@link Property} that
-     * {@linkplain Configuration#getResolvedConfiguration resolves} the {@link #getDependencies dependencies}
-     * configuration when queried, and returns a map that lists the dependency artifact files in classpath order along
-     * with their respective {@link Dependency Dependency} objects. Using a {@link Provider} would make more sense
-     * semantically, but a {@link Property} allows us to memoize the result.</p>
+     * {@linkplain ResolvableDependencies#getArtifacts resolves the artifacts} of the
+     * {@link #getDependencies dependencies} configuration when queried, and returns a map that lists the dependency
+     * artifact files in classpath order along with their respective {@link Dependency Dependency} objects. In
+     * {@link PackagingMode#LAUNCHER LAUNCHER} mode, the raw JAR comes first. Using a {@link Provider} would make more
+     * sense semantically, but a {@link Property} allows us to memoize the result.</p>
      */
     @Nonnull
     private final MapProperty<File, Dependency> resolvedDependencies;
 
+    /**
+     * The {@code Class-Path} attribute of the application JAR's manifest, built from the
+     * {@link #resolvedDependencies}. This is a read-only {@link Property}, so that the result is memoized.
+     */
+    @Nonnull
+    private final Property<String> classpath;
+
+    /**
+     * The {@link #getRawJar rawJar} property. It is only used at configuration time, so it is {@code transient}: a
+     * {@link Jar} task can't be stored in the configuration cache. Everything needed at execution time is derived
+     * from it through providers instead (e.g. {@link #rawJarFile} and {@link #rawJarPath}).
+     */
+    @Nonnull
+    private final transient Property<Jar> rawJar;
+
+    /**
+     * The {@link #getDependencies dependencies} property. It is only used at configuration time, so it is
+     * {@code transient}: a {@link Configuration} can't be stored in the configuration cache.
+     */
+    @Nonnull
+    private final transient Property<Configuration> dependencies;
+
+    @Nonnull
+    private final Property<String> dependencyDirectoryName;
+    @Nonnull
+    private final Property<DependencyLayout> dependencyLayout;
+    @Nonnull
+    private final Property<String> mainClass;
+
+    /**
+     * The archive file of the {@link #getRawJar rawJar} task, if any.
+     */
+    @Nonnull
+    private final Provider<RegularFile> rawJarFile;
+
+    /**
+     * The location of the archive file of the {@link #getRawJar rawJar} task, if any. Unlike {@link #rawJarFile}, this
+     * can be queried before the raw JAR task has completed (e.g. to build the {@code Class-Path}), because it doesn't
+     * carry the task dependency.
+     */
+    @Nonnull
+    private final Provider<File> rawJarPath;
+
+    /**
+     * The artifact files of the {@link #getDependencies dependencies}, in classpath order.
+     */
+    @Nonnull
+    private final ConfigurableFileCollection dependencyFiles;
+
+    /**
+     * The project directory, that relative paths passed to {@link Manifest#writeTo} are resolved against.
+     */
+    @Nonnull
+    private final File projectDir;
+
     /**
      * Creates an {@link ApplicationJar} task.
      */
@@ -156,27 +332,53 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
 
     /**
      * Creates an {@link ApplicationJar} task without configuring it completely. This constructor is not intended for
-     * regular use, it should only be called by other constructors. Once the dependent constructor has made all the
-     * {@link Property} objects available, it <b>must</b> call {@link #configureApplicationJar}.
+     * regular use, it should only be called by other constructors. Once the dependent constructor is ready, it
+     * <b>must</b> call {@link #configureApplicationJar}.
      *
-     * @param applicationName The name of the application assembled by this task.
+     * @param application The application assembled by this task, whose properties this task shares; or {@code null}
+     * if this task has properties of its own.
      */
-    private ApplicationJar(@Nullable String applicationName) {
+    private ApplicationJar(@Nullable Application application) {
         setGroup(ApplicationPlugin.TASK_GROUP);
-        setDescription(
-                "Assembles " + (applicationName != null ? "the " + applicationName : "an") + " application JAR.");
+        setDescription("Assembles " + (application != null ? "the " + application.getName() : "an") +
+                " application JAR.");
+
+        ObjectFactory objects = getProject().getObjects();
+        rawJar = application != null ? application.getRawJar() : objects.property(Jar.class);
+        dependencies = application != null ? application.getDependencies() : objects.property(Configuration.class);
+        dependencyDirectoryName = application != null ?
+                application.getDependencyDirectoryName() :
+                objects.property(String.class).convention(DEPENDENCY_DIRECTORY_NAME);
+        dependencyLayout = application != null ?
+                application.getDependencyLayout() :
+                objects.property(DependencyLayout.class).convention(DependencyLayout.GROUPED);
+        mainClass = application != null ? application.getMainClass() : objects.property(String.class);
 
-        resolvedDependencies = getProject().getObjects().mapProperty(File.class, Dependency.class);
+        resolvedDependencies = objects.mapProperty(File.class, Dependency.class);
+        classpath = objects.property(String.class);
+        rawJarFile = rawJar().flatMap(Jar::getArchiveFile);
+        rawJarPath = rawJar().map(jar -> jar.getArchiveFile().get().getAsFile());
+        dependencyFiles = objects.fileCollection().from(dependencies()
+                .map(configuration -> configuration.getIncoming().getArtifacts().getArtifactFiles())
+                .orElse(objects.fileCollection()));
+        projectDir = getProject().getProjectDir();
     }
 
     /**
      * Configures this task. Must be called during construction, once all {@link Property} objects are available.
      */
     protected void configureApplicationJar() {
-        getDependencyDirectoryName().convention(DEPENDENCY_DIRECTORY_NAME);
+        getPackagingMode().convention(PackagingMode.REPACK);
+        getParallelCompression().convention(false);
+        getCompressionThreads().convention(Runtime.getRuntime().availableProcessors());
 
         resolvedDependencies
-                .value(dependencies().map(this::resolveDependencies).orElse(Collections.emptyMap()))
+                .value(dependencies().map(Configuration::getIncoming).flatMap(incoming ->
+                                resolvedArtifacts(getProviders(), incoming.getArtifacts())
+                                        .map(artifacts -> resolveDependencies(incoming, artifacts)))
+                        .orElse(Collections.emptyMap())
+                        .map(this::prependLauncherRawJar)
+                        .map(this::applyDependencyLayout))
                 .disallowChanges();
 
         configureArchiveDefaults();
@@ -184,21 +386,227 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
         configureEnhanceRawJarManifest();
     }
 
+    /**
+     * How the application JAR should be packaged. The default is {@link PackagingMode#REPACK REPACK}.
+     *
+     * @return {@link Property} object specifying the packaging mode of the application JAR.
+     * @see PackagingMode
+     */
+    @Input
+    @Nonnull
+    public abstract Property<PackagingMode> getPackagingMode();
+
+    /**
+     * <p>Whether the entries of the application JAR should be compressed on multiple threads. The default is
+     * {@code false}.</p>
+     * <p>When enabled, the content of every file is split into 128 KiB blocks, which are compressed in parallel on
+     * {@link #getCompressionThreads compressionThreads} threads, then concatenated. The result is a standard JAR file
+     * that only depends on its contents, never on the number of threads, but it is not byte for byte the same as what
+     * sequential compression produces, and it is slightly larger. This is most useful for large raw JARs in
+     * {@link PackagingMode#REPACK REPACK} mode; in {@link PackagingMode#TRANSFER TRANSFER} mode, nothing gets
+     * compressed other than the manifest, so this setting has no effect. It also has no effect when the
+     * {@link #isZip64 zip64} extensions are enabled, or when file names are not encoded in UTF-8 (see
+     * {@link #getMetadataCharset metadataCharset}): the standard, sequential implementation is used in these cases.</p>
+     * <p>Note that parallel compression holds file contents in memory while they are being compressed, so files larger
+     * than 2 GiB are not supported.</p>
+     *
+     * @return {@link Property} object specifying whether to compress the application JAR on multiple threads.
+     * @see #getCompressionThreads()
+     */
+    @Input
+    @Nonnull
+    public abstract Property<Boolean> getParallelCompression();
+
+    /**
+     * The number of threads to compress the application JAR on, if {@link #getParallelCompression parallelCompression}
+     * is enabled. The default is the number of processors available to the JVM. This does not affect the output, so it
+     * is not an {@link Input} of this task.
+     *
+     * @return {@link Property} object specifying the number of threads to compress the application JAR on.
+     */
+    @Internal
+    @Nonnull
+    public abstract Property<Integer> getCompressionThreads();
+
+    /**
+     * {@inheritDoc}
+     * <p>The {@link Jar} task itself is not an input of this task, its {@link #getRawJarFile archive file} is.</p>
+     */
+    @Nonnull
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The property is meant to be configured")
+    public Property<Jar> getRawJar() {
+        return rawJar;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The {@link Configuration} itself is not an input of this task, its
+     * {@link #getDependencyFiles artifact files} are.</p>
+     */
     @Nonnull
-    private Map<File, Dependency> resolveDependencies(@Nonnull Configuration configuration) {
-        ResolvedConfiguration resolvedConfiguration = configuration.getResolvedConfiguration();
-        Set<File> files = resolvedConfiguration.getFiles();
-        Map<File, ModuleVersionIdentifier> fileToId = resolvedConfiguration.getResolvedArtifacts().stream()
-                .collect(Collectors.toMap(ResolvedArtifact::getFile, artifact -> artifact.getModuleVersion().getId()));
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The property is meant to be configured")
+    public Property<Configuration> getDependencies() {
+        return dependencies;
+    }
 
-        // We must retain the iteration order of `files`, and handle local dependencies that have no `ResolvedArtifact`
-        Map<File, Dependency> resolvedDependencies = new LinkedHashMap<>(files.size());
-        for (File file : files) {
-            resolvedDependencies.put(file, new Dependency(file, fileToId.get(file)));
+    @Nonnull
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The property is meant to be configured")
+    public Property<String> getDependencyDirectoryName() {
+        return dependencyDirectoryName;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The property is meant to be configured")
+    public Property<DependencyLayout> getDependencyLayout() {
+        return dependencyLayout;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The property is meant to be configured")
+    public Property<String> getMainClass() {
+        return mainClass;
+    }
+
+    /**
+     * The archive file of the {@link #getRawJar rawJar} task (read-only).
+     *
+     * @return {@link Provider} of the raw JAR file, or an empty {@link Provider} if there is no raw JAR.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Optional
+    @Nonnull
+    public Provider<RegularFile> getRawJarFile() {
+        return rawJarFile;
+    }
+
+    /**
+     * The artifact files resolved from the {@link #getDependencies dependencies} configuration (read-only).
+     *
+     * @return {@link FileCollection} of the application's dependency artifact files.
+     */
+    @Classpath
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+    public FileCollection getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * <p>Returns the artifacts of an {@link ArtifactCollection}, resolving them only when the returned {@link Provider}
+     * is queried.</p>
+     * <p>Note that {@link ArtifactCollection#getResolvedArtifacts} (Gradle 7.4+) is not suitable here: that
+     * {@link Provider} carries the tasks building the artifacts, and Gradle refuses to map it before those tasks have
+     * completed, while the {@code Class-Path} and the destinations of the artifacts only depend on their locations.</p>
+     *
+     * @param providers The {@link ProviderFactory} service.
+     * @param artifacts The artifacts to resolve.
+     * @return {@link Provider} of the resolved artifacts, in classpath order.
+     */
+    @Nonnull
+    static Provider<Set<ResolvedArtifactResult>> resolvedArtifacts(@Nonnull ProviderFactory providers,
+            @Nonnull ArtifactCollection artifacts) {
+        return providers.provider(artifacts::getArtifacts);
+    }
+
+    /**
+     * Maps the resolved artifacts of the given dependencies to {@link Dependency} objects in a single pass: the
+     * artifacts are in classpath order, each along with the identifier of the component it belongs to. Local
+     * dependencies (e.g. {@link Project#files files}) belong to components that have no group. Only artifacts of
+     * external modules with a version other than a {@value #SNAPSHOT_VERSION_SUFFIX} one are considered
+     * {@linkplain Dependency#isRelease releases}.
+     *
+     * @param dependencies The dependencies that the artifacts were resolved from.
+     * @param artifacts The resolved artifacts of the dependencies (see {@link #resolvedArtifacts}).
+     * @return The dependency artifact files in classpath order, along with their respective {@link Dependency} objects.
+     */
+    @Nonnull
+    static Map<File, Dependency> resolveDependencies(@Nonnull ResolvableDependencies dependencies,
+            @Nonnull Set<ResolvedArtifactResult> artifacts) {
+        Map<File, Dependency> resolvedDependencies = new LinkedHashMap<>(artifacts.size());
+        Map<ComponentIdentifier, String> projectGroups = null;
+        for (ResolvedArtifactResult artifact : artifacts) {
+            ComponentIdentifier componentId = artifact.getId().getComponentIdentifier();
+            String group = null;
+            Dependency.Tier tier = Dependency.Tier.PROJECT;
+            if (componentId instanceof ModuleComponentIdentifier) {
+                ModuleComponentIdentifier moduleId = (ModuleComponentIdentifier) componentId;
+                group = moduleId.getGroup();
+                tier = moduleId.getVersion().endsWith(SNAPSHOT_VERSION_SUFFIX) ?
+                        Dependency.Tier.SNAPSHOT :
+                        Dependency.Tier.RELEASE;
+            } else if (componentId instanceof ProjectComponentIdentifier) {
+                if (projectGroups == null) {
+                    projectGroups = projectGroups(dependencies);
+                }
+                group = projectGroups.get(componentId);
+            }
+            resolvedDependencies.putIfAbsent(artifact.getFile(), new Dependency(artifact.getFile(), group, tier));
         }
         return Collections.unmodifiableMap(resolvedDependencies);
     }
 
+    /**
+     * Collects the groups of the project components in the dependency graph, which has already been resolved to get
+     * the artifacts, so this doesn't resolve anything again.
+     *
+     * @param dependencies The resolved dependencies.
+     * @return The groups of the project components, by component identifier.
+     */
+    @Nonnull
+    private static Map<ComponentIdentifier, String> projectGroups(@Nonnull ResolvableDependencies dependencies) {
+        Map<ComponentIdentifier, String> projectGroups = new LinkedHashMap<>();
+        for (ResolvedComponentResult component : dependencies.getResolutionResult().getAllComponents()) {
+            ModuleVersionIdentifier moduleVersion = component.getModuleVersion();
+            if (component.getId() instanceof ProjectComponentIdentifier && moduleVersion != null) {
+                projectGroups.put(component.getId(), moduleVersion.getGroup());
+            }
+        }
+        return projectGroups;
+    }
+
+    /**
+     * In {@link PackagingMode#LAUNCHER LAUNCHER} mode, the raw JAR is treated as the first dependency of the
+     * application: it gets copied to the dependency directory, and listed first in the {@code Class-Path}.
+     *
+     * @param dependencies The resolved dependencies of the application.
+     * @return The dependencies of the application, including the raw JAR if needed.
+     */
+    @Nonnull
+    private Map<File, Dependency> prependLauncherRawJar(@Nonnull Map<File, Dependency> dependencies) {
+        File rawJarFile = rawJarPath.getOrNull();
+        if (packagingMode().getOrElse(PackagingMode.REPACK) != PackagingMode.LAUNCHER || rawJarFile == null) {
+            return dependencies;
+        }
+        Map<File, Dependency> launcherDependencies = new LinkedHashMap<>(dependencies.size() + 1);
+        launcherDependencies.put(rawJarFile, new Dependency(rawJarFile, null, Dependency.Tier.PROJECT));
+        launcherDependencies.putAll(dependencies);
+        return Collections.unmodifiableMap(launcherDependencies);
+    }
+
+    /**
+     * Lays out the dependencies of the application according to the {@link #getDependencyLayout dependencyLayout},
+     * keeping them in classpath order.
+     *
+     * @param dependencies The dependencies of the application, laid out in the default way.
+     * @return The dependencies of the application, laid out as requested.
+     */
+    @Nonnull
+    private Map<File, Dependency> applyDependencyLayout(@Nonnull Map<File, Dependency> dependencies) {
+        DependencyLayout layout = dependencyLayout().getOrElse(DependencyLayout.GROUPED);
+        if (layout == DependencyLayout.GROUPED) {
+            return dependencies;
+        }
+        Map<File, Dependency> laidOutDependencies = new LinkedHashMap<>(dependencies.size());
+        dependencies.forEach((file, dependency) -> laidOutDependencies.put(file, dependency.withLayout(layout)));
+        return Collections.unmodifiableMap(laidOutDependencies);
+    }
+
     /**
      * Configures the default location and name of the {@linkplain #getArchiveFile archive file} created by this task.
      * Unfortunately if we do this in the constructor, where it logically belongs, our settings will be overridden by
@@ -232,12 +640,17 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
 
     /**
      * Configures this task to copy the contents of the raw JAR. Called at construction, when properties are not yet
-     * set, so everything in here is done lazily through properties and providers.
+     * set, so everything in here is done lazily through properties and providers. In
+     * {@link PackagingMode#TRANSFER TRANSFER} mode, the raw JAR is not added as a source at all, because even just
+     * fingerprinting the contents of a {@linkplain org.gradle.api.Project#zipTree ZIP tree} requires extracting it.
      */
     private void configureCopyRawJarContents() {
+        FileTree emptyTree = getProject().files().getAsFileTree();
         Provider<FileTree> rawJarTree = rawJar()
-                .map(jar -> getProject().zipTree(jar.getArchiveFile()))
-                .orElse(getProject().files().getAsFileTree());
+                .map(jar -> packagingMode().getOrElse(PackagingMode.REPACK) == PackagingMode.REPACK ?
+                        getProject().zipTree(jar.getArchiveFile()) :
+                        emptyTree)
+                .orElse(emptyTree);
         from(rawJarTree);
     }
 
@@ -246,61 +659,212 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
      * set, so everything in here is done lazily through properties and providers.
      */
     private void configureEnhanceRawJarManifest() {
-        // Build classpath string
-        Provider<String> classpath = resolvedDependencies().map(resolvedDependencies -> {
+        // Build classpath string (only once, it can be long)
+        classpath.value(resolvedDependencies().map(resolvedDependencies -> {
             String dependencyDirectoryName = dependencyDirectoryName().getOrElse(DEPENDENCY_DIRECTORY_NAME);
             return resolvedDependencies.values().stream()
                     .map(dependency -> dependency.getClasspathEntry(dependencyDirectoryName))
                     .collect(Collectors.joining(" "));
-        });
+        })).disallowChanges();
 
-        // Create merged manifest
-        List<Provider<Manifest>> baseManifests = new ArrayList<>(2);
-        baseManifests.add(rawJar().map(Jar::getManifest).orElse(createManifest(null)));
-        baseManifests.add(getProject().getProviders().provider(() -> createManifest(manifest -> {
-            manifest.getAttributes().put("Class-Path", classpath.get());
-            manifest.getAttributes().put("Main-Class", mainClass()
+        // Create merged manifest (the manifest of the raw JAR is resolved eagerly when it's stored in the configuration
+        // cache, but the `Jar` task isn't needed at execution time that way)
+        List<Provider<? extends Manifest>> baseManifests = new ArrayList<>(2);
+        baseManifests.add(rawJar().map(jar -> ResolvedManifest.resolve(projectDir, jar.getManifest()))
+                .orElse(ResolvedManifest.of(projectDir, Collections.emptyMap())));
+        baseManifests.add(getProviders().provider(() -> {
+            Map<String, String> attributes = new LinkedHashMap<>(2);
+            attributes.put("Class-Path", classpath().get());
+            attributes.put("Main-Class", mainClass()
                     .map(mainClass -> Utils.nonEmpty(mainClass, "mainClass")).getOrElse("Main"));
-        })));
-        setManifest(new LazyMergeManifest(baseManifests, getManifest()));
+            return ResolvedManifest.of(projectDir, attributes);
+        }));
+        setManifest(new LazyMergeManifest(projectDir, baseManifests, getManifest()));
+    }
+
+    /**
+     * Executes this task.
+     */
+    @Override
+    protected void copy() {
+        // Also overridden to make the `@TaskAction` method visible to tests
+        PackagingMode packagingMode = packagingMode().getOrElse(PackagingMode.REPACK);
+        if (packagingMode == PackagingMode.REPACK) {
+            super.copy();
+        } else {
+            transferRawJarContents(packagingMode == PackagingMode.TRANSFER ?
+                    rawJarPath.getOrNull() :
+                    null);
+            setDidWork(true);
+        }
     }
 
     /**
-     * Creates a new {@link Manifest}, clears it from any defaults, then configures it with the given action.
+     * Creates the {@link CopyAction} that writes the application JAR in {@link PackagingMode#REPACK REPACK} mode.
      *
-     * @param configureAction The action to use to configure the manifest.
-     * @return A new manifest configured by the given configuration action.
+     * @return A {@link ParallelDeflateCopyAction} if {@link #getParallelCompression parallelCompression} is enabled
+     * and supported with the current settings, or the standard {@link CopyAction} of the {@link Jar} task otherwise.
      */
+    @Override
     @Nonnull
-    private Manifest createManifest(@Nullable Action<? super Manifest> configureAction) {
-        return getProject().getConvention().getPlugin(JavaPluginConvention.class).manifest(manifest -> {
-            clearManifest(manifest);
-            if (configureAction != null) {
-                configureAction.execute(manifest);
+    protected CopyAction createCopyAction() {
+        String metadataCharset = getMetadataCharset();
+        if (!parallelCompression().getOrElse(false) || isZip64() || metadataCharset == null ||
+                !StandardCharsets.UTF_8.equals(Charset.forName(metadataCharset))) {
+            return super.createCopyAction();
+        }
+        int threads = compressionThreads().get();
+        int method = getEntryCompression() == ZipEntryCompression.STORED ?
+                ZipFormat.METHOD_STORED :
+                ZipFormat.METHOD_DEFLATED;
+        // The entries mostly come from the raw JAR, so reading them concurrently would mean extracting them first
+        return new ParallelDeflateCopyAction("application JAR", getArchiveFile().get().getAsFile(), threads, method,
+                Specs.satisfyNone(), isPreserveFileTimestamps(), false);
+    }
+
+    /**
+     * Creates the application JAR in {@link PackagingMode#TRANSFER TRANSFER} or
+     * {@link PackagingMode#LAUNCHER LAUNCHER} mode. The manifest directory and the manifest file come first, followed
+     * by all other entries of the raw JAR (if any) in their original order. The timestamp of the generated entries is
+     * taken from the manifest of the raw JAR, so that the result is reproducible.
+     *
+     * @param rawJarFile The raw JAR to transfer the entries of, or {@code null} to create a JAR with a manifest only.
+     */
+    private void transferRawJarContents(@Nullable File rawJarFile) {
+        File archiveFile = getArchiveFile().get().getAsFile();
+        try {
+            if (rawJarFile != null) {
+                try (FileChannel source = FileChannel.open(rawJarFile.toPath(), StandardOpenOption.READ)) {
+                    List<ZipFormat.Entry> rawEntries = ZipFormat.readCentralDirectory(source);
+                    ZipFormat.CompressedFile manifestFile = manifestFile(findEntry(rawEntries, MANIFEST_PATH));
+                    if (!replaceManifest(archiveFile, rawEntries, manifestFile)) {
+                        try (FileChannel target = openForWriting(archiveFile)) {
+                            ZipFormat.Writer writer = new ZipFormat.Writer(target);
+                            transferEntries(source, rawEntries, manifestFile, writer);
+                            writer.close();
+                        }
+                    }
+                }
+            } else {
+                try (FileChannel target = openForWriting(archiveFile)) {
+                    ZipFormat.Writer writer = new ZipFormat.Writer(target);
+                    ZipFormat.CompressedFile manifestFile = manifestFile(null);
+                    writer.writeDirectory(MANIFEST_DIRECTORY_PATH, manifestFile.getDosTime());
+                    writer.writeFile(manifestFile, MANIFEST_BLOCK_SIZE);
+                    writer.close();
+                }
             }
-        });
+        } catch (IOException e) {
+            throw new GradleException("Could not create application JAR " + archiveFile, e);
+        }
+    }
+
+    @Nonnull
+    static FileChannel openForWriting(@Nonnull File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    static void transferEntries(@Nonnull FileChannel source, @Nonnull List<ZipFormat.Entry> rawEntries,
+            @Nonnull ZipFormat.CompressedFile manifestFile, @Nonnull ZipFormat.Writer writer) throws IOException {
+        ZipFormat.Entry directoryEntry = findEntry(rawEntries, MANIFEST_DIRECTORY_PATH);
+        if (directoryEntry != null) {
+            writer.transfer(source, directoryEntry);
+        } else {
+            writer.writeDirectory(MANIFEST_DIRECTORY_PATH, manifestFile.getDosTime());
+        }
+        writer.writeFile(manifestFile, MANIFEST_BLOCK_SIZE);
+        for (ZipFormat.Entry entry : otherEntries(rawEntries)) {
+            writer.transfer(source, entry);
+        }
     }
 
     /**
-     * Clears a manifest, so that it can be configured from an empty state. This is important, because when we merge a
-     * manifest into another, it will by default overwrite matching entries in the other. By clearing the manifest
-     * first, we can be sure that only the entries we specifically added will be merged in.
+     * <p>Tries to update the application JAR written by a previous execution of this task in place, by replacing its
+     * manifest only. This is possible if the raw JAR has not changed since (typically, when only the dependencies of
+     * the application have changed), and the new manifest fits in the same number of
+     * {@linkplain #MANIFEST_BLOCK_SIZE blocks} as the previous one. The result is byte for byte the same as what
+     * {@link #transferEntries} would write.</p>
+     * <p>The raw JAR is considered unchanged if every entry in the previous application JAR has the same metadata in
+     * the central directory (name, timestamp, CRC-32, sizes, etc.) as the corresponding entry in the raw JAR. Reading
+     * the central directories is cheap, even for large JARs.</p>
      *
-     * @param manifest The {@link Manifest} to clear.
-     * @see org.gradle.api.java.archives.internal.DefaultManifest#clear()
+     * @param archiveFile The application JAR to update.
+     * @param rawEntries The entries of the raw JAR.
+     * @param manifestFile The new manifest.
+     * @return {@code true} if the application JAR has been updated; {@code false} if it needs to be written again.
+     * @throws IOException If an I/O error occurs.
      */
-    private void clearManifest(@Nonnull Manifest manifest) {
-        manifest.getSections().clear();
-        manifest.getAttributes().clear();
+    private static boolean replaceManifest(@Nonnull File archiveFile, @Nonnull List<ZipFormat.Entry> rawEntries,
+            @Nonnull ZipFormat.CompressedFile manifestFile) throws IOException {
+        if (!archiveFile.isFile()) {
+            return false;
+        }
+        ZipFormat.Entry rawDirectoryEntry = findEntry(rawEntries, MANIFEST_DIRECTORY_PATH);
+        List<ZipFormat.Entry> expectedEntries = new ArrayList<>(rawEntries.size() + 1);
+        expectedEntries.add(rawDirectoryEntry != null ?
+                rawDirectoryEntry :
+                ZipFormat.directoryEntry(MANIFEST_DIRECTORY_PATH, manifestFile.getDosTime()));
+        expectedEntries.add(manifestFile.toEntry());
+        expectedEntries.addAll(otherEntries(rawEntries));
+
+        try (FileChannel target = FileChannel.open(archiveFile.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            List<ZipFormat.Entry> entries;
+            try {
+                entries = ZipFormat.readCentralDirectory(target);
+            } catch (ZipException e) {
+                return false;
+            }
+            if (entries.size() != expectedEntries.size()) {
+                return false;
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                // The content of the manifest (at index 1) is expected to be different
+                if (!entries.get(i).hasSameMetadata(expectedEntries.get(i), i != 1)) {
+                    return false;
+                }
+            }
+            return ZipFormat.replaceFile(target, entries, 1, manifestFile, MANIFEST_BLOCK_SIZE);
+        }
+    }
+
+    @Nonnull
+    private static List<ZipFormat.Entry> otherEntries(@Nonnull List<ZipFormat.Entry> rawEntries) {
+        ZipFormat.Entry directoryEntry = findEntry(rawEntries, MANIFEST_DIRECTORY_PATH);
+        ZipFormat.Entry manifestEntry = findEntry(rawEntries, MANIFEST_PATH);
+        return rawEntries.stream()
+                .filter(entry -> entry != directoryEntry && entry != manifestEntry)
+                .collect(Collectors.toList());
+    }
+
+    @Nonnull
+    private ZipFormat.CompressedFile manifestFile(@Nullable ZipFormat.Entry rawManifestEntry) throws IOException {
+        int dosTime = rawManifestEntry != null ? rawManifestEntry.getDosTime() : ZipFormat.CONSTANT_DOS_TIME;
+        int method = getEntryCompression() == ZipEntryCompression.STORED ?
+                ZipFormat.METHOD_STORED :
+                ZipFormat.METHOD_DEFLATED;
+        return new ZipFormat.CompressedFile(MANIFEST_PATH, dosTime, method, manifestContent());
+    }
+
+    @Nullable
+    static ZipFormat.Entry findEntry(@Nonnull List<ZipFormat.Entry> entries, @Nonnull String path) {
+        // Use the same case-insensitive matching as `Jar` does when it excludes the manifest of copied archives
+        return entries.stream().filter(entry -> path.equalsIgnoreCase(entry.getName())).findFirst().orElse(null);
     }
 
     /**
-     * Executes this task.
+     * Generates the content of the manifest file the same way {@link Jar} does: the effective manifest gets written in
+     * UTF-8 by {@link java.util.jar.Manifest}, then re-encoded if another
+     * {@linkplain #getManifestContentCharset manifest content charset} is specified.
+     *
+     * @return The content of the manifest file.
+     * @throws IOException If the manifest can't be written.
      */
-    @Override
-    protected void copy() {
-        // Only overridden here to make the `@TaskAction` method visible to tests
-        super.copy();
+    @Nonnull
+    private byte[] manifestContent() throws IOException {
+        return ResolvedManifest.resolve(projectDir, getManifest())
+                .toByteArray(getManifestContentCharset());
     }
 
     /**
@@ -309,7 +873,8 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
      * <p>The application JAR will be copied to the destination directory, while dependency artifact files will end up
      * in a subdirectory whose name can be set through the {@link #getDependencyDirectoryName dependencyDirectoryName}
      * property. Within that directory, the relative path of dependency artifact files is specified by
-     * {@link Dependency#getRelativePath Dependency.relativePath}.</p>
+     * {@link Dependency#getRelativePath Dependency.relativePath}. In {@link PackagingMode#LAUNCHER LAUNCHER} mode, the
+     * raw JAR is copied to the dependency directory too.</p>
      * <p>Note that in order to avoid resolving the {@link #getDependencies dependencies} configuration too early, the
      * destination paths of dependency artifact files are generated lazily using an {@link CopySpec#eachFile eachFile}
      * action. Since these actions are executed in the order they were registered in, if a custom one gets added to the
@@ -326,33 +891,104 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
      */
     @Nonnull
     public CopySpec applicationCopySpec() {
-        return getProject().copySpec(applicationCopy -> {
-            applicationCopy.from(this, resolvedDependencies().map(Map::keySet));
-            applicationCopy.eachFile(this::modifyDestinationOfDependencyArtifactFile);
+        return applicationCopySpec(getProject(), this, resolvedDependencies(), dependencyDirectoryName());
+    }
+
+    /**
+     * Creates the same {@link CopySpec} as {@link #applicationCopySpec()}, but without realizing the task: everything
+     * the {@link CopySpec} needs from the task is obtained through the {@link TaskProvider}, so the task only gets
+     * created when the {@link CopySpec} is actually resolved (i.e. when a task using it is about to be executed).
+     *
+     * @param project The project that the task belongs to.
+     * @param applicationJar The {@link TaskProvider} of the task.
+     * @return The new {@link CopySpec}.
+     */
+    @Nonnull
+    static CopySpec applicationCopySpec(
+            @Nonnull Project project, @Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        return applicationCopySpec(project, applicationJar,
+                applicationJar.flatMap(ApplicationJar::resolvedDependencies),
+                applicationJar.flatMap(ApplicationJar::dependencyDirectoryName));
+    }
+
+    @Nonnull
+    private static CopySpec applicationCopySpec(@Nonnull Project project, @Nonnull Object applicationJar,
+            @Nonnull Provider<Map<File, Dependency>> resolvedDependencies,
+            @Nonnull Provider<String> dependencyDirectoryName) {
+        Provider<String> directoryName = dependencyDirectoryName.orElse(DEPENDENCY_DIRECTORY_NAME);
+        return project.copySpec(applicationCopy -> {
+            applicationCopy.from(applicationJar, resolvedDependencies.map(Map::keySet));
+            applicationCopy.eachFile(new DependencyDestination(resolvedDependencies, directoryName));
             applicationCopy.setDuplicatesStrategy(DuplicatesStrategy.FAIL);
         });
     }
 
     /**
-     * This method gets run as late as possible (when a dependency artifact file is about to be copied), so it can
-     * safely evaluate {@link #resolvedDependencies()}.
+     * Returns where the {@link #applicationCopySpec} puts the dependency artifact files, relative to the directory it
+     * copies the application JAR to, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     * @return The dependency artifact files, along with their relative destination paths.
      */
-    private void modifyDestinationOfDependencyArtifactFile(@Nonnull FileCopyDetails copyDetails) {
-        Map<File, Dependency> resolvedDependencies = resolvedDependencies().get();
-        Dependency dependency = resolvedDependencies.get(copyDetails.getFile());
-        if (dependency != null) {
-            // Make sure not to lose the directory part of the original relative path: it contains all the path segments
-            // contributed by any encompassing specs
-            RelativePath relativeDir = Utils.nonNull(copyDetails.getRelativePath().getParent(), "relativeDir");
-            copyDetails.setRelativePath(relativeDir
-                    .append(false, dependencyDirectoryName().getOrElse(DEPENDENCY_DIRECTORY_NAME))
-                    .append(dependency.getRelativePath()));
-        }
+    @Nonnull
+    static Provider<Map<File, RelativePath>> dependencyDestinations(
+            @Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        return applicationJar.flatMap(task -> ((ApplicationJar) task).dependencyDestinations(dependency -> true));
+    }
+
+    @Nonnull
+    private Provider<Map<File, RelativePath>> dependencyDestinations(@Nonnull Predicate<Dependency> filter) {
+        return resolvedDependencies().map(dependencies -> {
+            RelativePath dependencyDirectory = RelativePath.EMPTY_ROOT
+                    .append(false, dependencyDirectoryName().getOrElse(DEPENDENCY_DIRECTORY_NAME));
+            Map<File, RelativePath> destinations = new LinkedHashMap<>(dependencies.size());
+            dependencies.forEach((file, dependency) -> {
+                if (filter.test(dependency)) {
+                    destinations.put(file, dependencyDirectory.append(dependency.getRelativePath()));
+                }
+            });
+            return Collections.unmodifiableMap(destinations);
+        });
+    }
+
+    /**
+     * Returns the subset of the {@link #dependencyDestinations} that belongs to {@linkplain Dependency#isExternal
+     * external modules}, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     * @return The artifact files of external modules, along with their relative destination paths.
+     */
+    @Nonnull
+    static Provider<Map<File, RelativePath>> externalDependencyDestinations(
+            @Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        return applicationJar.flatMap(task -> ((ApplicationJar) task).dependencyDestinations(Dependency::isExternal));
     }
 
+    /**
+     * Returns the location of the raw JAR file of the task, without realizing the task. Unlike the
+     * {@link #getRawJarFile rawJarFile}, this doesn't carry the dependency on the raw JAR task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     * @return The location of the raw JAR file, or an empty {@link Provider} if there is no raw JAR.
+     */
+    @Nonnull
+    static Provider<File> rawJarPath(@Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        return applicationJar.flatMap(task -> ((ApplicationJar) task).rawJarPath);
+    }
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ProviderFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ProviderFactory getProviders();
+
     @Nonnull
     private <T, P extends HasConfigurableValue & Provider<T>> Provider<T> withFinalizeValueOnRead(@Nonnull P property) {
-        return getProject().getProviders().provider(() -> {
+        return getProviders().provider(() -> {
             property.finalizeValue();
             return property.getOrNull();
         });
@@ -369,7 +1005,11 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
                 getRawJar(),
                 getDependencies(),
                 getDependencyDirectoryName(),
+                getDependencyLayout(),
                 getMainClass(),
+                getPackagingMode(),
+                getParallelCompression(),
+                getCompressionThreads(),
                 getDestinationDirectory(),
                 getArchiveBaseName(),
                 getArchiveAppendix(),
@@ -379,26 +1019,96 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
                 getArchiveFileName());
     }
 
+    /**
+     * The ways in which an {@link ApplicationJar} task can package the application JAR.
+     */
+    public enum PackagingMode {
+
+        /**
+         * Extracts the raw JAR, and packs its contents into the application JAR again, through the standard
+         * {@link Jar} pipeline. Every {@link CopySpec} setting of the task is honored (e.g. additional sources,
+         * exclusions, {@link CopySpec#eachFile eachFile} actions, {@link #getEntryCompression entryCompression}), but
+         * every entry gets inflated and deflated again, which can be slow for large raw JARs.
+         */
+        REPACK,
+
+        /**
+         * <p>Transfers the entries of the raw JAR into the application JAR as they are: compressed data, CRC-32 and
+         * sizes are copied byte for byte, without any extraction or recompression. Only the manifest gets generated
+         * (honoring the {@link #getEntryCompression entryCompression} and {@link #getManifestContentCharset
+         * manifestContentCharset} settings). Note that the raw JAR is the only source of entries in this mode; any
+         * other {@link CopySpec} setting of the task is ignored. Raw JARs using the ZIP64 format are not supported.</p>
+         * <p>When the raw JAR is unchanged since the previous execution of the task (e.g. only the version of a
+         * dependency has changed), the previous application JAR gets updated in place, by replacing its manifest only.
+         * To make this possible, the manifest entry is padded to a multiple of 4 KiB.</p>
+         */
+        TRANSFER,
+
+        /**
+         * <p>Creates a thin launcher JAR that contains a manifest only, and doesn't copy anything from the raw JAR.
+         * Instead, the raw JAR is treated as the first dependency of the application: it is listed first in the
+         * {@code Class-Path}, and the {@link #applicationCopySpec applicationCopySpec} places it into the
+         * {@linkplain #getDependencyDirectoryName dependency directory}, next to the other dependencies, so
+         * {@code java -jar} keeps working the same way. This skips repacking altogether, and keeps the output of this
+         * task tiny.</p>
+         * <p>Note that the application JAR alone is not enough to run the application in this mode, not even if it
+         * has no dependencies. Just like in {@link #TRANSFER TRANSFER} mode, any {@link CopySpec} setting of the task
+         * is ignored.</p>
+         */
+        LAUNCHER
+    }
+
+    /**
+     * The ways in which the dependencies of an application can be laid out within its
+     * {@linkplain #getDependencyDirectoryName dependency directory}. Whatever the layout, the {@code Class-Path} lists
+     * the dependencies in the order they have been resolved in.
+     */
+    public enum DependencyLayout {
+
+        /**
+         * Places every dependency in the directory of its group, e.g. {@code lib/org.slf4j/slf4j-api-2.0.3.jar}.
+         * Dependencies that have no group (e.g. local files) are placed directly in the dependency directory.
+         */
+        GROUPED,
+
+        /**
+         * <p>Splits the dependency directory by how often the dependencies change, then places every dependency in
+         * the directory of its group, just like {@link #GROUPED GROUPED} does. The directories are:</p>
+         * <ul>
+         * <li>{@code release}: release versions of external modules, whose content never changes, e.g.
+         * {@code lib/release/org.slf4j/slf4j-api-2.0.3.jar},</li>
+         * <li>{@code snapshot}: {@code -SNAPSHOT} versions of external modules, which may change at any time,</li>
+         * <li>{@code project}: artifacts of projects of the build and local files (as well as the raw JAR in
+         * {@link PackagingMode#LAUNCHER LAUNCHER} mode), which typically change with every build.</li>
+         * </ul>
+         * <p>Tools that synchronize installations (e.g. {@code rsync}) or build container images can then skip the
+         * {@code release} directory altogether whenever the set of release dependencies is unchanged.</p>
+         */
+        VOLATILITY
+    }
+
     /**
      * An {@link ApplicationJar} task that is bound to an {@link Application}.
      */
     @CacheableTask
-    static class Bound extends ApplicationJar {
+    abstract static class Bound extends ApplicationJar {
 
         /**
-         * The {@link Application} that this task is bound to.
+         * The {@link Application} that this task is bound to. It is only used at configuration time, so it is
+         * {@code transient}: it can't be stored in the configuration cache.
          */
         @Nonnull
-        private final Application application;
+        private final transient Application application;
 
         /**
-         * Creates an {@link ApplicationJar.Bound} task.
+         * Creates an {@link ApplicationJar.Bound} task. The properties that {@link ApplicationSpec} declares are shared
+         * with the {@link Application}.
          *
          * @param application The {@link Application} to bind the task to.
          */
         @Inject
         public Bound(@Nonnull Application application) {
-            super(application.getName());
+            super(application);
             Utils.argument(application.getProject().equals(getProject()),
                     "Must bind to an application in the same project as this task");
             this.application = application;
@@ -412,40 +1122,12 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
             // We can use our application's `applicationBaseName` as our default `archiveBaseName`
             getArchiveBaseName().convention(application.getApplicationBaseName());
         }
-
-        @Nonnull
-        @Override
-        @GeneratedDelegation
-        public Property<Jar> getRawJar() {
-            return application.getRawJar();
-        }
-
-        @Nonnull
-        @Override
-        @GeneratedDelegation
-        public Property<Configuration> getDependencies() {
-            return application.getDependencies();
-        }
-
-        @Nonnull
-        @Override
-        @GeneratedDelegation
-        public Property<String> getDependencyDirectoryName() {
-            return application.getDependencyDirectoryName();
-        }
-
-        @Nonnull
-        @Override
-        @GeneratedDelegation
-        public Property<String> getMainClass() {
-            return application.getMainClass();
-        }
     }
 
     /**
      * Contains necessary information about an application dependency.
      */
-    private static class Dependency {
+    static class Dependency {
 
         private static final Path BASE_PATH = Paths.get(".");
 
@@ -453,11 +1135,55 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
         private final File file;
         @Nullable
         private final String group;
+        @Nonnull
+        private final Tier tier;
+        @Nonnull
+        private final DependencyLayout layout;
 
-        public Dependency(@Nonnull File file, @Nullable ModuleVersionIdentifier id) {
+        public Dependency(@Nonnull File file, @Nullable String group, @Nonnull Tier tier) {
+            this(file, group, tier, DependencyLayout.GROUPED);
+        }
+
+        private Dependency(@Nonnull File file, @Nullable String group, @Nonnull Tier tier,
+                @Nonnull DependencyLayout layout) {
             this.file = Utils.nonNull(file, "file");
             Utils.nonEmpty(file.getName(), "file.name");
-            this.group = (id != null ? Utils.nonEmpty(id.getGroup(), "id.group") : null);
+            this.group = (group != null ? Utils.nonEmpty(group, "group") : null);
+            this.tier = Utils.nonNull(tier, "tier");
+            this.layout = Utils.nonNull(layout, "layout");
+        }
+
+        /**
+         * Returns a copy of this dependency that is laid out according to the given {@link DependencyLayout}.
+         *
+         * @param layout The layout of the dependency directory.
+         * @return A copy of this dependency, laid out according to the given layout.
+         */
+        @Nonnull
+        public Dependency withLayout(@Nonnull DependencyLayout layout) {
+            return new Dependency(file, group, tier, layout);
+        }
+
+        /**
+         * Returns whether the artifact file of this dependency belongs to a release of an external module, whose
+         * content never changes. Artifacts of projects, of snapshot versions, and local files may change from one build
+         * to the next.
+         *
+         * @return Whether the artifact file of this dependency belongs to a release.
+         */
+        public boolean isRelease() {
+            return tier == Tier.RELEASE;
+        }
+
+        /**
+         * Returns whether the artifact file of this dependency belongs to an external module (a release or a
+         * snapshot), which Gradle keeps in its dependency cache. Artifacts of projects and local files are built or
+         * modified in place.
+         *
+         * @return Whether the artifact file of this dependency belongs to an external module.
+         */
+        public boolean isExternal() {
+            return tier != Tier.PROJECT;
         }
 
         /**
@@ -469,6 +1195,9 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
         @Nonnull
         public RelativePath getRelativePath() {
             RelativePath relativePath = RelativePath.EMPTY_ROOT;
+            if (layout == DependencyLayout.VOLATILITY) {
+                relativePath = relativePath.append(false, tier.getDirectoryName());
+            }
             if (group != null) {
                 relativePath = relativePath.append(false, group);
             }
@@ -485,56 +1214,156 @@ public abstract class ApplicationJar extends Jar implements ApplicationSpec {
          */
         @Nonnull
         public String getClasspathEntry(@Nonnull String dependencyDirectoryName) {
+            return classpathEntry(dependencyDirectoryName, getRelativePath());
+        }
+
+        /**
+         * Returns the relative URL to use as the classpath entry for a file within the
+         * {@linkplain ApplicationJar#getDependencyDirectoryName dependency directory}.
+         *
+         * @param dependencyDirectoryName Name of the
+         * {@linkplain ApplicationJar#getDependencyDirectoryName dependency directory}. Must not be null or empty.
+         * @param relativePath Relative path of the file within the dependency directory.
+         * @return Relative URL to use as the classpath entry for the file.
+         */
+        @Nonnull
+        static String classpathEntry(@Nonnull String dependencyDirectoryName, @Nonnull RelativePath relativePath) {
             Path filePath = BASE_PATH.resolve(Utils.nonEmpty(dependencyDirectoryName, "dependencyDirectoryName"));
-            if (group != null) {
-                filePath = filePath.resolve(group);
+            for (String segment : relativePath.getSegments()) {
+                filePath = filePath.resolve(segment);
             }
-            filePath = filePath.resolve(file.getName());
             // We're creating a relative URI object to escape any special characters (such as spaces)
             return BASE_PATH.toUri().relativize(filePath.toUri()).toString();
         }
+
+        /**
+         * How often the artifact file of a dependency may change, from the least to the most often.
+         *
+         * @see DependencyLayout#VOLATILITY
+         */
+        enum Tier {
+
+            /**
+             * A release version of an external module.
+             */
+            RELEASE("release"),
+
+            /**
+             * A {@value ApplicationJar#SNAPSHOT_VERSION_SUFFIX} version of an external module.
+             */
+            SNAPSHOT("snapshot"),
+
+            /**
+             * An artifact of a project of the build, or a local file.
+             */
+            PROJECT("project");
+
+            @Nonnull
+            private final String directoryName;
+
+            Tier(@Nonnull String directoryName) {
+                this.directoryName = directoryName;
+            }
+
+            /**
+             * Returns the name of the directory of this tier in the {@link DependencyLayout#VOLATILITY VOLATILITY}
+             * layout.
+             *
+             * @return The name of the directory of this tier.
+             */
+            @Nonnull
+            String getDirectoryName() {
+                return directoryName;
+            }
+        }
+    }
+
+    /**
+     * Moves dependency artifact files to their destination within the
+     * {@linkplain ApplicationJar#getDependencyDirectoryName dependency directory}. This action gets run as late as
+     * possible (when a dependency artifact file is about to be copied), so it can safely evaluate the resolved
+     * dependencies. It doesn't reference the task, so that the {@link CopySpec} using it can be stored in the
+     * configuration cache.
+     */
+    private static class DependencyDestination implements Action<FileCopyDetails> {
+
+        @Nonnull
+        private final Provider<Map<File, Dependency>> resolvedDependencies;
+        @Nonnull
+        private final Provider<String> dependencyDirectoryName;
+
+        DependencyDestination(@Nonnull Provider<Map<File, Dependency>> resolvedDependencies,
+                @Nonnull Provider<String> dependencyDirectoryName) {
+            this.resolvedDependencies = resolvedDependencies;
+            this.dependencyDirectoryName = dependencyDirectoryName;
+        }
+
+        @Override
+        public void execute(@Nonnull FileCopyDetails copyDetails) {
+            Dependency dependency = resolvedDependencies.get().get(copyDetails.getFile());
+            if (dependency != null) {
+                // Make sure not to lose the directory part of the original relative path: it contains all the path
+                // segments contributed by any encompassing specs
+                RelativePath relativeDir = Utils.nonNull(copyDetails.getRelativePath().getParent(), "relativeDir");
+                copyDetails.setRelativePath(relativeDir
+                        .append(false, dependencyDirectoryName.get())
+                        .append(dependency.getRelativePath()));
+            }
+        }
     }
 
     /**
      * A simple delegating {@link Manifest} implementation that supports merging of manifests specified via
-     * {@link Provider}s. The {@link Provider}s only get resolved when {@link #getEffectiveManifest} is called.
+     * {@link Provider}s. The {@link Provider}s only get resolved when {@link #getEffectiveManifest} is called. The
+     * merged manifest is memoized, and only gets merged again if any of the underlying manifests has changed since.
      */
-    private class LazyMergeManifest implements Manifest {
+    private static class LazyMergeManifest implements Manifest {
 
         @Nonnull
-        private final List<Provider<Manifest>> baseManifests;
+        private final File projectDir;
+        @Nonnull
+        private final List<Provider<? extends Manifest>> baseManifests;
         @Nonnull
         private final Manifest visibleManifest;
+        @Nullable
+        private List<ResolvedManifest> mergedManifests;
+        @Nullable
+        private ResolvedManifest effectiveManifest;
 
         /**
          * Constructor. All underlying manifests have to be specified here, but apart from {@code visibleManifest}, they
          * won't be used until later. Merge behavior (when {@link #getEffectiveManifest} is called):
          * <ol>
-         * <li>Create an empty {@link Manifest},</li>
-         * <li>Resolve and merge in all {@code baseManifests} in order,</li>
-         * <li>Merge in {@code visibleManifest},</li>
-         * <li>Call {@link #getEffectiveManifest} on the result.</li>
+         * <li>Resolve the effective manifests of all {@code baseManifests} and {@code visibleManifest},</li>
+         * <li>If they are all the same as the last time, return the previous result,</li>
+         * <li>Otherwise merge them into a new {@link ResolvedManifest} in order.</li>
          * </ol>
          * Entries from latter manifests will overwrite matching ones from former manifests.
          *
+         * @param projectDir The directory that relative paths passed to {@link Manifest#writeTo} are resolved against.
          * @param baseManifests List of base manifest {@link Provider}s.
          * @param visibleManifest The visible manifest; this is the manifest that this instance simply delegates most
          * calls to (expect for {@link #getEffectiveManifest}).
          */
-        public LazyMergeManifest(@Nonnull List<Provider<Manifest>> baseManifests, @Nonnull Manifest visibleManifest) {
+        public LazyMergeManifest(@Nonnull File projectDir, @Nonnull List<Provider<? extends Manifest>> baseManifests,
+                @Nonnull Manifest visibleManifest) {
+            this.projectDir = projectDir;
             this.baseManifests = Utils.nonNullElements(baseManifests, "baseManifests");
             this.visibleManifest = Utils.nonNull(visibleManifest, "visibleManifest");
         }
 
         @Override
-        public Manifest getEffectiveManifest() {
-            Manifest mergerManifest = createManifest(manifest -> {
-                for (Provider<Manifest> baseManifest : baseManifests) {
-                    manifest.from(baseManifest.get());
-                }
-                manifest.from(visibleManifest);
-            });
-            return mergerManifest.getEffectiveManifest();
+        public synchronized Manifest getEffectiveManifest() {
+            List<ResolvedManifest> manifests = new ArrayList<>(baseManifests.size() + 1);
+            for (Provider<? extends Manifest> baseManifest : baseManifests) {
+                manifests.add(ResolvedManifest.resolve(projectDir, baseManifest.get()));
+            }
+            manifests.add(ResolvedManifest.resolve(projectDir, visibleManifest));
+            if (effectiveManifest == null || !manifests.equals(mergedManifests)) {
+                effectiveManifest = ResolvedManifest.merge(projectDir, manifests);
+                mergedManifests = manifests;
+            }
+            return effectiveManifest;
         }
 
         @Override
@@ -50,8 +50,29 @@ public class ApplicationPlugin implements Plugin<Project> {
     public static final TypeOf<NamedDomainObjectContainer<Application>> EXTENSION_TYPE =
             new TypeOf<NamedDomainObjectContainer<Application>>() {};
 
+    /**
+     * <p>Name of the project extension ({@link ApplicationSuite} container) that this plugin provides.</p>
+     * <p>Usage: {@code project.getExtensions().getByName(ApplicationPlugin.SUITES_EXTENSION_NAME)}</p>
+     *
+     * @see #getApplicationSuites()
+     * @see #SUITES_EXTENSION_TYPE
+     */
+    public static final String SUITES_EXTENSION_NAME = Application.APPLICATION + "Suites";
+
+    /**
+     * <p>Type of the project extension ({@link ApplicationSuite} container) that this plugin provides.</p>
+     * <p>Usage: {@code project.getExtensions().getByType(ApplicationPlugin.SUITES_EXTENSION_TYPE)}</p>
+     *
+     * @see #getApplicationSuites()
+     * @see #SUITES_EXTENSION_NAME
+     */
+    public static final TypeOf<NamedDomainObjectContainer<ApplicationSuite>> SUITES_EXTENSION_TYPE =
+            new TypeOf<NamedDomainObjectContainer<ApplicationSuite>>() {};
+
     @Nullable
     private NamedDomainObjectContainer<Application> applications;
+    @Nullable
+    private NamedDomainObjectContainer<ApplicationSuite> applicationSuites;
 
     /**
      * Apply this plugin to the given project.
@@ -67,9 +88,18 @@ public class ApplicationPlugin implements Plugin<Project> {
         // Finalize applications (based on: project.afterEvaluate in DistributionPlugin.apply)
         // - We must register our afterEvaluate callback before the plugins we rely on have a chance to register theirs:
         //   this way, ours will run first, allowing theirs to see the finalized configuration
-        // - We use configureEach to avoid forcing creation of any registered objects (configuration avoidance)
+        // - Applications that were only registered must be created at this point, as their tasks, configurations and
+        //   distributions don't exist until then, so every application gets realized here: registering one only
+        //   defers its creation. This is cheap: an application only registers those objects, without forcing their
+        //   creation.
+        // - We use configureEach for tasks to avoid forcing creation of any registered task (configuration avoidance)
+        // - Suites are finalized after applications, as they package the applications' JARs and dependencies
         project.afterEvaluate(preparedProject -> {
-            preparedProject.getExtensions().getByType(EXTENSION_TYPE).configureEach(Application::finalizeProperties);
+            NamedDomainObjectContainer<Application> finalizedApplications =
+                    preparedProject.getExtensions().getByType(EXTENSION_TYPE);
+            finalizedApplications.all(Application::finalizeProperties);
+            preparedProject.getExtensions().getByType(SUITES_EXTENSION_TYPE)
+                    .all(suite -> suite.finalizeProperties(finalizedApplications));
             preparedProject.getTasks().withType(ApplicationJar.class).configureEach(ApplicationJar::finalizeProperties);
         });
 
@@ -85,8 +115,13 @@ public class ApplicationPlugin implements Plugin<Project> {
                 name -> project.getObjects().newInstance(Application.class, project, name));
         project.getExtensions().add(EXTENSION_TYPE, EXTENSION_NAME, applications);
 
+        // Set up application suite container
+        applicationSuites = project.getObjects().domainObjectContainer(ApplicationSuite.class,
+                name -> project.getObjects().newInstance(ApplicationSuite.class, project, name));
+        project.getExtensions().add(SUITES_EXTENSION_TYPE, SUITES_EXTENSION_NAME, applicationSuites);
+
         // Set up main application
-        applications.create(Application.MAIN_APPLICATION_NAME, mainApplication -> mainApplication.fromSourceSet(
+        applications.register(Application.MAIN_APPLICATION_NAME, mainApplication -> mainApplication.fromSourceSet(
                 Utils.sourceSets(project).named(SourceSet.MAIN_SOURCE_SET_NAME)));
     }
 
@@ -105,4 +140,21 @@ public class ApplicationPlugin implements Plugin<Project> {
         }
         return applications;
     }
+
+    /**
+     * <p>This method allows type-safe programmatic access to the {@link ApplicationSuite} container used by this
+     * plugin.</p>
+     * <p>Usage: {@code project.getPlugins().getPlugin(ApplicationPlugin.class).getApplicationSuites()}</p>
+     *
+     * @return The {@link ApplicationSuite} container used by this plugin.
+     * @see #SUITES_EXTENSION_NAME
+     * @see #SUITES_EXTENSION_TYPE
+     */
+    @Nonnull
+    public NamedDomainObjectContainer<ApplicationSuite> getApplicationSuites() {
+        if (this.applicationSuites == null) {
+            throw new IllegalStateException("Plugin instance was not applied to a project");
+        }
+        return applicationSuites;
+    }
 }
@@ -13,13 +13,8 @@ import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
-import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
-import org.gradle.api.tasks.Optional;
-import org.gradle.api.tasks.PathSensitive;
-import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.bundling.Jar;
 
@@ -135,30 +130,29 @@ public interface ApplicationSpec {
     }
 
     /**
-     * {@link Jar} task whose output to enhance with the application's classpath and main class metadata.
+     * {@link Jar} task whose output to enhance with the application's classpath and main class metadata. Only used at
+     * configuration time: tasks depend on the archive file of the {@link Jar} task, rather than on the task itself.
      *
      * @return {@link Property} object specifying the application's raw JAR.
      * @see #locateRawJar(SourceSet)
      * @see #fromSourceSet(SourceSet)
      * @see #fromSourceSet(Provider)
      */
-    @InputFiles
-    @PathSensitive(PathSensitivity.NONE)
-    @Optional
+    @Internal
     @Nonnull
     Property<Jar> getRawJar();
 
     /**
      * {@link Configuration} to resolve the application's dependencies from. The application's classpath will consist of
-     * the resolved dependency artifact files.
+     * the resolved dependency artifact files. Only used at configuration time: tasks depend on the resolved artifact
+     * files, rather than on the {@link Configuration} itself.
      *
      * @return {@link Property} object specifying the application's dependencies.
      * @see #locateDependencies(SourceSet)
      * @see #fromSourceSet(SourceSet)
      * @see #fromSourceSet(Provider)
      */
-    @Classpath
-    @Optional
+    @Internal
     @Nonnull
     Property<Configuration> getDependencies();
 
@@ -171,6 +165,18 @@ public interface ApplicationSpec {
     @Nonnull
     Property<String> getDependencyDirectoryName();
 
+    /**
+     * How the application's dependencies are laid out within the
+     * {@linkplain #getDependencyDirectoryName dependency directory}. The default is
+     * {@link ApplicationJar.DependencyLayout#GROUPED GROUPED}.
+     *
+     * @return {@link Property} object specifying the layout of the application's dependency directory.
+     * @see ApplicationJar.DependencyLayout
+     */
+    @Input
+    @Nonnull
+    Property<ApplicationJar.DependencyLayout> getDependencyLayout();
+
     /**
      * The fully qualified name of the application's main class.
      *
@@ -0,0 +1,224 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Named;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.NamedDomainObjectProvider;
+import org.gradle.api.Project;
+import org.gradle.api.distribution.Distribution;
+import org.gradle.api.distribution.DistributionContainer;
+import org.gradle.api.distribution.plugins.DistributionPlugin;
+import org.gradle.api.file.CopySpec;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * <p>An {@link ApplicationSuite} packages several {@linkplain Application applications} of the same project into a
+ * single {@link Distribution}. The application JARs are placed side by side at the root of the distribution, so their
+ * {@code Class-Path} entries all point into the same dependency directory, which contains every dependency artifact
+ * file only once, no matter how many of the applications depend on it.</p>
+ * <p>Dependencies are only shared between applications that use the same
+ * {@linkplain Application#getDependencyDirectoryName dependency directory name} (which they do by default). Sharing
+ * relies on the relative paths of dependency artifact files being the same for all applications: if two applications
+ * depend on different files that would end up at the same path (e.g. two local JARs with the same name and no group),
+ * the distribution can't be built.</p>
+ * <p>The distribution of a suite works like that of an application: the {@link DistributionPlugin} sets up the usual
+ * tasks for it (e.g. <code>install<i>Name</i>Dist</code> and <code><i>name</i>DistZip</code>).</p>
+ */
+public abstract class ApplicationSuite implements Named {
+
+    @Nonnull
+    private final Project project;
+    @Nonnull
+    private final String name;
+
+    @Nonnull
+    private final NamedDomainObjectProvider<Distribution> distribution;
+
+    /**
+     * Creates an {@link ApplicationSuite} instance.
+     *
+     * @param project The project that the suite belongs to.
+     * @param name The name of the suite.
+     */
+    @Inject
+    public ApplicationSuite(@Nonnull Project project, @Nonnull String name) {
+        this.project = Utils.nonNull(project, "project");
+        this.name = Utils.nonEmpty(name, "name");
+        this.distribution = project.getExtensions().getByType(DistributionContainer.class).register(name,
+                suiteDistribution -> suiteDistribution.getDistributionBaseName()
+                        .convention(project.getName() + "-" + this.name));
+    }
+
+    /**
+     * Returns the project this suite belongs to.
+     *
+     * @return The project this suite belongs to.
+     */
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The project is not internal to this class")
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * Returns the name of this suite.
+     *
+     * @return The name of this suite.
+     */
+    @Nonnull
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * <p>The names of the {@linkplain Application applications} that make up this suite, which must be in the
+     * {@linkplain ApplicationPlugin#getApplications applications} container of the same project.</p>
+     * <p>A dependency artifact file needed by more than one application is copied along with the first one of them, in
+     * the order of this list.</p>
+     *
+     * @return {@link ListProperty} object specifying the names of the applications.
+     */
+    @Nonnull
+    public abstract ListProperty<String> getApplicationNames();
+
+    /**
+     * Returns the {@link Distribution} for the suite.
+     *
+     * @return The {@link Distribution} for the suite.
+     */
+    @Nonnull
+    public NamedDomainObjectProvider<Distribution> getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Configures the {@link #getDistribution Distribution} for the suite.
+     *
+     * @param action Action to configure the {@link Distribution}.
+     */
+    public void distribution(@Nonnull Action<? super Distribution> action) {
+        distribution.configure(action);
+    }
+
+    /**
+     * Finalizes and validates the properties of this suite, and sets up the contents of its
+     * {@linkplain #getDistribution distribution}. Any further attempts to make changes will result in an
+     * {@code IllegalStateException}.
+     *
+     * @param applications The applications of the project. They must have been finalized already.
+     * @throws GradleException If the suite's configuration is invalid.
+     * @see Application#finalizeProperties()
+     */
+    public void finalizeProperties(@Nonnull NamedDomainObjectContainer<Application> applications) {
+        getApplicationNames().finalizeValue();
+        List<String> applicationNames = getApplicationNames().getOrElse(Collections.emptyList());
+        if (applicationNames.isEmpty()) {
+            throw new GradleException(String.format("%s must have at least one application", this));
+        }
+        if (applications.getNames().contains(name)) {
+            throw new GradleException(String.format("%s must not have the same name as an application", this));
+        }
+
+        List<Provider<Map<File, RelativePath>>> sharedDestinations = new ArrayList<>(applicationNames.size());
+        for (String applicationName : new LinkedHashSet<>(applicationNames)) {
+            Application application = applications.findByName(applicationName);
+            if (application == null) {
+                throw new GradleException(String.format("%s has no application named '%s'", this, applicationName));
+            }
+            CopySpec applicationCopy = ApplicationJar.applicationCopySpec(project, application.getApplicationJar());
+            // Registered after the action that moves dependencies into place, so this one sees their final paths
+            applicationCopy.eachFile(new SharedDependencyExcluder(new ArrayList<>(sharedDestinations),
+                    ApplicationJar.dependencyDestinations(application.getApplicationJar())));
+            distribution.configure(suiteDistribution -> suiteDistribution.getContents().with(applicationCopy));
+            sharedDestinations.add(ApplicationJar.dependencyDestinations(application.getApplicationJar()));
+        }
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+        return "Application suite '" + name + "'";
+    }
+
+    /**
+     * Excludes the dependency artifact files of an application that an application before it in the suite has already
+     * put into the same place. It doesn't reference any task or project, so that the {@link CopySpec} using it can be
+     * stored in the configuration cache.
+     */
+    private static final class SharedDependencyExcluder implements Action<FileCopyDetails> {
+
+        @Nonnull
+        private final List<Provider<Map<File, RelativePath>>> sharedDestinations;
+        @Nonnull
+        private final Provider<Map<File, RelativePath>> destinations;
+        @Nullable
+        private transient volatile Map<File, RelativePath> sharedFiles;
+
+        /**
+         * Creates a {@link SharedDependencyExcluder}.
+         *
+         * @param sharedDestinations The dependency destinations of the applications before this one in the suite.
+         * @param destinations The dependency destinations of this application.
+         */
+        SharedDependencyExcluder(@Nonnull List<Provider<Map<File, RelativePath>>> sharedDestinations,
+                @Nonnull Provider<Map<File, RelativePath>> destinations) {
+            this.sharedDestinations = sharedDestinations;
+            this.destinations = destinations;
+        }
+
+        @Override
+        public void execute(@Nonnull FileCopyDetails copyDetails) {
+            // Calling getFile() is cheap: eachFile() actions only get the files, which are all regular files here
+            RelativePath sharedDestination = sharedFiles().get(copyDetails.getFile());
+            if (sharedDestination != null && sharedDestination.equals(destinations.get().get(copyDetails.getFile()))) {
+                copyDetails.exclude();
+            }
+        }
+
+        /**
+         * Merges the dependency destinations of the applications before this one the first time they are needed. This
+         * may happen concurrently, if several tasks using the same {@link CopySpec} are executed in parallel, but the
+         * result is always the same.
+         *
+         * @return The dependency artifact files of the applications before this one, along with their destinations.
+         */
+        @Nonnull
+        private Map<File, RelativePath> sharedFiles() {
+            Map<File, RelativePath> files = sharedFiles;
+            if (files == null) {
+                files = new HashMap<>();
+                for (Provider<Map<File, RelativePath>> shared : sharedDestinations) {
+                    shared.get().forEach(files::putIfAbsent);
+                }
+                sharedFiles = files;
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>Applies a delta archive created by a {@link DistributionDelta} task to an installation of the previous release
+ * of a distribution. This class is copied into every delta archive as its main class, so it must only depend on the
+ * Java runtime (and on Java 8 at most): it doesn't run within Gradle. The constants it uses from
+ * {@link DistributionDelta} are inlined by the compiler.</p>
+ * <p>Usage: {@code java -jar <delta archive> <installation directory>}</p>
+ * <p>Before anything gets modified, every file that the delta changes or removes is checked against the previous
+ * release (or against the new release, so that a delta that has been partially applied can be applied again). Files
+ * are replaced through atomic renames, so each file is either in its old or in its new state at any time.</p>
+ */
+final class ApplyDelta {
+
+    /**
+     * Marks a file that doesn't exist in the index of a delta archive.
+     */
+    static final String ABSENT = "-";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int MAX_REPORTED_CONFLICTS = 10;
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private ApplyDelta() {}
+
+    /**
+     * Applies the delta archive that contains this class, and exits with the status returned by {@link #run}.
+     *
+     * @param args The installation directory to apply the delta archive to.
+     */
+    @SuppressFBWarnings(value = "DM_EXIT", justification = "The exit status is what the command reports to its caller")
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Applies the delta archive that contains this class, reporting the outcome on the console.
+     *
+     * @param args The installation directory to apply the delta archive to.
+     * @return The exit status: {@code 0} on success, {@code 1} if the delta could not be applied, and {@code 2} if the
+     * arguments are invalid.
+     */
+    @SuppressWarnings("PMD.SystemPrintln") // The console is the only way to report to whoever runs the delta archive
+    static int run(String... args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java -jar <delta archive> <installation directory>");
+            return 2;
+        }
+        try {
+            Path deltaFile = Paths.get(ApplyDelta.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            System.out.println(apply(deltaFile, Paths.get(args[0])));
+            return 0;
+        } catch (IOException | GeneralSecurityException | URISyntaxException | RuntimeException e) {
+            System.err.println("Could not apply delta: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Applies a delta archive to an installation.
+     *
+     * @param deltaFile The delta archive.
+     * @param installation The installation directory.
+     * @return A summary of the changes made.
+     * @throws IOException If the installation is not of the release that the delta archive applies to, or an I/O error
+     * occurs.
+     * @throws GeneralSecurityException If the SHA-256 algorithm is not available.
+     */
+    static String apply(Path deltaFile, Path installation) throws IOException, GeneralSecurityException {
+        if (!Files.isDirectory(installation)) {
+            throw new IOException("Not a directory: " + installation);
+        }
+        Path root = installation.toAbsolutePath().normalize();
+        try (ZipFile delta = new ZipFile(deltaFile.toFile())) {
+            List<String[]> index = readIndex(delta);
+
+            // Check everything before changing anything
+            List<String> conflicts = new ArrayList<>();
+            List<String[]> pending = new ArrayList<>();
+            for (String[] entry : index) {
+                String actual = hash(resolve(root, entry[2]));
+                if (actual.equals(entry[1])) {
+                    continue;
+                }
+                if (actual.equals(entry[0])) {
+                    pending.add(entry);
+                } else if (conflicts.size() < MAX_REPORTED_CONFLICTS) {
+                    conflicts.add(entry[2]);
+                }
+            }
+            if (!conflicts.isEmpty()) {
+                throw new IOException("The installation in " + installation + " is not of the release that the delta" +
+                        " applies to, these files differ: " + String.join(", ", conflicts));
+            }
+
+            int updated = 0;
+            int removed = 0;
+            for (String[] entry : pending) {
+                Path file = resolve(root, entry[2]);
+                if (ABSENT.equals(entry[1])) {
+                    Files.deleteIfExists(file);
+                    deleteEmptyParents(root, file.getParent());
+                    removed++;
+                } else {
+                    ZipEntry content = delta.getEntry(DistributionDelta.CONTENT_DIRECTORY + entry[2]);
+                    if (content == null) {
+                        throw new IOException("The delta archive has no content for " + entry[2]);
+                    }
+                    // The temporary file goes next to the file (into its parent), so that it can be renamed atomically
+                    Path directory = file.resolveSibling("");
+                    Files.createDirectories(directory);
+                    Path temporaryFile = Files.createTempFile(directory, ".delta", ".tmp");
+                    try {
+                        try (InputStream input = delta.getInputStream(content)) {
+                            Files.copy(input, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        if (!hash(temporaryFile).equals(entry[1])) {
+                            throw new IOException("The content of " + entry[2] + " is corrupt in the delta archive");
+                        }
+                        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(temporaryFile);
+                    }
+                    updated++;
+                }
+            }
+            return "Updated " + updated + " and removed " + removed + " files in " + installation;
+        }
+    }
+
+    /**
+     * Reads the index of a delta archive: one line per file that the delta adds, changes or removes, with the
+     * SHA-256 hash of the file in the previous release, the one in the new release, and the path of the file, separated
+     * by spaces. Hashes are {@value #ABSENT} for files that don't exist.
+     */
+    private static List<String[]> readIndex(ZipFile delta) throws IOException {
+        ZipEntry indexEntry = delta.getEntry(DistributionDelta.INDEX_PATH);
+        if (indexEntry == null) {
+            throw new IOException("Not a delta archive: " + delta.getName());
+        }
+        List<String[]> index = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(delta.getInputStream(indexEntry), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] entry = line.split(" ", 3);
+                if (entry.length != 3) {
+                    throw new IOException("Invalid line in the index of the delta archive: " + line);
+                }
+                index.add(entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Resolves a path from the index against the installation directory, making sure it stays within it.
+     */
+    private static Path resolve(Path root, String path) throws IOException {
+        Path file = root.resolve(path.replace('/', File.separatorChar)).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IOException("Invalid path in the delta archive: " + path);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the SHA-256 hash of a file in hexadecimal, or {@value #ABSENT} if the file doesn't exist.
+     */
+    static String hash(Path file) throws IOException, GeneralSecurityException {
+        if (!Files.isRegularFile(file)) {
+            return ABSENT;
+        }
+        MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            while (input.read(buffer) >= 0) {
+                // Only digesting
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Formats a hash in hexadecimal, like {@link Utils#hex} does. This class can't use {@link Utils}, as it runs
+     * without the plugin and Gradle on the classpath.
+     *
+     * @param hash The hash.
+     * @return The hash in lowercase hexadecimal.
+     */
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteEmptyParents(Path root, Path directory) throws IOException {
+        Path current = directory;
+        while (current != null && !current.equals(root) && Files.isDirectory(current)) {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(current)) {
+                if (children.iterator().hasNext()) {
+                    return;
+                }
+            }
+            Files.delete(current);
+            current = current.getParent();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.process.ExecOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Creates a class data sharing (CDS) archive of an application: a {@code .jsa} file with the classes that the
+ * application loads, already parsed and verified, which the JVM maps into memory at startup instead of loading the
+ * classes from the JARs again. Starting the application with
+ * {@code java -XX:SharedArchiveFile=<archive> -jar <application JAR>} cuts its class loading time substantially.</p>
+ * <p>The archive is created by a training run of the application, with {@code -XX:ArchiveClassesAtExit}: the
+ * application JAR and its dependencies are laid out in the {@linkplain #getTemporaryDir temporary directory} of the
+ * task just like in the distribution, and the application runs from there with the
+ * {@linkplain #getTrainingArguments training arguments} until it exits. It must exit by itself, with an exit value
+ * of zero. The archive only holds the classes loaded during the training run, so the run should exercise the startup
+ * of the application.</p>
+ * <p>The JVM only uses the archive with the Java installation that created it, and with the same classpath (down to
+ * the sizes of the JARs), so the archive gets created again whenever the {@linkplain #getJavaRelease Java
+ * installation}, the application JAR, or any of its dependencies or their {@linkplain #getDependencyPaths paths}
+ * change. The classpath is recorded relative to the directory that the training run starts in, so the application must
+ * be started from its installation directory, in the same way as the training run. This takes a Java installation of
+ * version {@value #MINIMUM_JAVA_VERSION} or later.</p>
+ * <p>Applications register a task of this type (see {@link Application#getCdsArchive}).</p>
+ *
+ * @see <a href="https://docs.oracle.com/en/java/javase/21/vm/class-data-sharing.html">Class Data Sharing</a>
+ */
+public abstract class CdsArchive extends DefaultTask {
+
+    /**
+     * Name of the build directory where the CDS archives of applications will be placed.
+     */
+    public static final String ARCHIVE_DIRECTORY_NAME = "cds";
+
+    /**
+     * Extension of the CDS archives.
+     */
+    public static final String ARCHIVE_EXTENSION = "jsa";
+
+    /**
+     * The first Java version able to create dynamic CDS archives, with {@code -XX:ArchiveClassesAtExit}.
+     *
+     * @see <a href="https://openjdk.org/jeps/350">JEP 350: Dynamic CDS Archives</a>
+     */
+    public static final int MINIMUM_JAVA_VERSION = 13;
+
+    /**
+     * Name of the directory in the {@linkplain #getTemporaryDir temporary directory} of the task that the training run
+     * starts in.
+     */
+    static final String TRAINING_DIRECTORY_NAME = "training";
+
+    @Nonnull
+    private final ConfigurableFileCollection dependencyFiles;
+    @Nonnull
+    private final MapProperty<File, RelativePath> dependencyDestinations;
+
+    /**
+     * Creates a {@link CdsArchive} task.
+     */
+    @Inject
+    public CdsArchive() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        ObjectFactory objects = getObjects();
+        dependencyFiles = objects.fileCollection();
+        dependencyDestinations = objects.mapProperty(File.class, RelativePath.class);
+    }
+
+    /**
+     * Takes the application JAR and its dependencies from an {@link ApplicationJar} task, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     */
+    void from(@Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        getApplicationJarFile().set(applicationJar.flatMap(ApplicationJar::getArchiveFile));
+        dependencyFiles.from(ApplicationJar.resolvedDependencies(applicationJar).map(Map::keySet))
+                .builtBy(applicationJar);
+        dependencyDestinations.set(ApplicationJar.dependencyDestinations(applicationJar));
+    }
+
+    /**
+     * The application JAR to run.
+     *
+     * @return {@link RegularFileProperty} object specifying the application JAR.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    @Nonnull
+    public abstract RegularFileProperty getApplicationJarFile();
+
+    /**
+     * The dependency artifact files of the application (read-only).
+     *
+     * @return {@link FileCollection} of the dependency artifact files.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+    public FileCollection getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * The relative paths of the dependency artifact files within the distribution, in classpath order (read-only).
+     * These are the entries of the {@code Class-Path} of the application JAR.
+     *
+     * @return {@link Provider} of the relative paths of the dependency artifact files.
+     */
+    @Input
+    @Nonnull
+    public Provider<List<String>> getDependencyPaths() {
+        return dependencyDestinations.map(destinations -> {
+            List<String> paths = new ArrayList<>(destinations.size());
+            destinations.values().forEach(relativePath -> paths.add(relativePath.getPathString()));
+            return paths;
+        });
+    }
+
+    /**
+     * The home directory of the Java installation to run the training run with. The default is the one of the Java
+     * toolchain of the project (or the one running Gradle, with versions of Gradle before 6.7). Only its
+     * {@link #getJavaRelease release} file is an input of this task.
+     *
+     * @return {@link DirectoryProperty} object specifying the home directory of the Java installation.
+     */
+    @Internal
+    @Nonnull
+    public abstract DirectoryProperty getJavaHome();
+
+    /**
+     * The {@code release} file of the {@linkplain #getJavaHome Java installation} (read-only), which states its
+     * version, vendor and build.
+     *
+     * @return {@link Provider} of the release file of the Java installation.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public Provider<RegularFile> getJavaRelease() {
+        return getJavaHome().file(JavaInstallation.RELEASE_FILE_NAME);
+    }
+
+    /**
+     * The arguments to pass to the application in the training run. Empty by default.
+     *
+     * @return {@link ListProperty} object specifying the arguments of the training run.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getTrainingArguments();
+
+    /**
+     * Additional JVM options for the training run, e.g. system properties that make the application exit once it
+     * has started. Empty by default. Options that affect class loading (e.g. {@code --add-opens}) should also be used
+     * when the application runs with the archive.
+     *
+     * @return {@link ListProperty} object specifying the JVM options of the training run.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getTrainingJvmArguments();
+
+    /**
+     * The CDS archive to create.
+     *
+     * @return {@link RegularFileProperty} object specifying the CDS archive.
+     */
+    @OutputFile
+    @Nonnull
+    public abstract RegularFileProperty getArchiveFile();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Services used by this task (see {@link #getObjects}).
+     *
+     * @return The {@link ExecOperations} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ExecOperations getExecOperations();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void create() {
+        File archiveFile = getArchiveFile().get().getAsFile();
+        try {
+            File javaHome = getJavaHome().get().getAsFile();
+            int javaVersion = JavaInstallation.featureVersion(javaHome);
+            Utils.argument(javaVersion >= MINIMUM_JAVA_VERSION,
+                    "The Java installation in %s is of version %s, but CDS archives take version %s or later",
+                    javaHome, javaVersion, MINIMUM_JAVA_VERSION);
+
+            Path trainingDirectory = getTemporaryDir().toPath().resolve(TRAINING_DIRECTORY_NAME);
+            TrainingRun.stage(trainingDirectory, getApplicationJarFile().get().getAsFile(),
+                    dependencyDestinations.get());
+            String trainingArchiveName = archiveFile.getName();
+            Path trainingArchive = trainingDirectory.resolve(trainingArchiveName);
+            List<String> arguments = new ArrayList<>(getTrainingJvmArguments().get());
+            // Relative paths, so that the archive doesn't depend on where the application gets installed
+            arguments.add("-XX:ArchiveClassesAtExit=" + trainingArchiveName);
+            arguments.add("-jar");
+            arguments.add(getApplicationJarFile().get().getAsFile().getName());
+            arguments.addAll(getTrainingArguments().get());
+            TrainingRun.run(getExecOperations(), javaHome, trainingDirectory, "training run", arguments);
+            Utils.argument(Files.isRegularFile(trainingArchive), "The training run didn't create the archive");
+            Files.createDirectories(archiveFile.getParentFile().toPath());
+            Files.move(trainingArchive, archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new GradleException("Could not create CDS archive " + archiveFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException("Could not create CDS archive " + archiveFile + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link CopyAction} that writes a delta archive (see {@link DistributionDelta}): an executable JAR running
+ * {@link ApplyDelta}, with the files that differ from the previous release, and the index of the changes.
+ */
+final class DeltaCopyAction implements CopyAction {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Largest file content that can be held in a single array.
+     */
+    private static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final String APPLY_CLASS_PATH = ApplyDelta.class.getName().replace('.', '/') + ".class";
+
+    @Nonnull
+    private final File archiveFile;
+    @Nonnull
+    private final File previousDistribution;
+    @Nonnull
+    private final Spec<? super FileCopyDetails> storedFiles;
+    private final boolean preserveFileTimestamps;
+
+    /**
+     * Creates a {@link DeltaCopyAction}.
+     *
+     * @param archiveFile The archive file to create.
+     * @param previousDistribution The previous release of the distribution: a directory or an archive.
+     * @param storedFiles The files to store without compression.
+     * @param preserveFileTimestamps Whether to keep the last modification times of the files, instead of using a
+     * constant timestamp.
+     */
+    DeltaCopyAction(@Nonnull File archiveFile, @Nonnull File previousDistribution,
+            @Nonnull Spec<? super FileCopyDetails> storedFiles, boolean preserveFileTimestamps) {
+        this.archiveFile = archiveFile;
+        this.previousDistribution = previousDistribution;
+        this.storedFiles = storedFiles;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("PMD.PreserveStackTrace") // The UncheckedIOException only carries its cause out of the stream
+    public WorkResult execute(@Nonnull CopyActionProcessingStream stream) {
+        Map<String, String> previousHashes;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            previousHashes = readPrevious(previousDistribution.toPath());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GradleException("Could not read previous distribution " + previousDistribution, e);
+        }
+        try (FileChannel target = FileChannel.open(archiveFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(target);
+            writeLauncher(writer);
+            StringBuilder index = new StringBuilder();
+            Set<String> paths = new HashSet<>();
+            stream.process(details -> {
+                try {
+                    if (!details.isDirectory() && paths.add(details.getRelativePath().getPathString())) {
+                        write(writer, digest, index, previousHashes, details);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            previousHashes.forEach((path, hash) -> {
+                if (!paths.contains(path)) {
+                    index.append(hash).append(' ').append(ApplyDelta.ABSENT).append(' ').append(path).append('\n');
+                }
+            });
+            writer.writeFile(DistributionDelta.INDEX_PATH, ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED,
+                    index.toString().getBytes(StandardCharsets.UTF_8));
+            writer.close();
+        } catch (IOException e) {
+            throw new GradleException("Could not create delta archive " + archiveFile, e);
+        } catch (UncheckedIOException e) {
+            throw new GradleException("Could not create delta archive " + archiveFile, e.getCause());
+        }
+        return WorkResults.didWork(true);
+    }
+
+    /**
+     * Writes the manifest and the main class that make the archive apply itself.
+     */
+    private static void writeLauncher(@Nonnull ZipFormat.Writer writer) throws IOException {
+        String manifest = "Manifest-Version: 1.0\r\nMain-Class: " + ApplyDelta.class.getName() + "\r\n\r\n";
+        writer.writeDirectory("META-INF/", ZipFormat.CONSTANT_DOS_TIME);
+        writer.writeFile(ApplicationJar.MANIFEST_PATH, ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED,
+                manifest.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream applyClass = new ByteArrayOutputStream();
+        try (InputStream input = ApplyDelta.class.getResourceAsStream(ApplyDelta.class.getSimpleName() + ".class")) {
+            Utils.nonNull(input, APPLY_CLASS_PATH);
+            copy(input, applyClass);
+        }
+        writer.writeFile(APPLY_CLASS_PATH, ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED,
+                applyClass.toByteArray());
+    }
+
+    private void write(@Nonnull ZipFormat.Writer writer, @Nonnull MessageDigest digest, @Nonnull StringBuilder index,
+            @Nonnull Map<String, String> previousHashes, @Nonnull FileCopyDetails details) throws IOException {
+        String path = details.getRelativePath().getPathString();
+        long size = details.getSize();
+        if (size > MAX_FILE_SIZE) {
+            throw new ZipException("File is too large: " + path);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) size);
+        details.copyTo(content);
+        byte[] bytes = content.toByteArray();
+        String hash = Utils.hex(digest.digest(bytes));
+        String previousHash = previousHashes.getOrDefault(path, ApplyDelta.ABSENT);
+        if (hash.equals(previousHash)) {
+            return;
+        }
+        int dosTime = preserveFileTimestamps ?
+                ZipFormat.toDosTime(details.getLastModified()) :
+                ZipFormat.CONSTANT_DOS_TIME;
+        int method = storedFiles.isSatisfiedBy(details) ? ZipFormat.METHOD_STORED : ZipFormat.METHOD_DEFLATED;
+        writer.writeFile(DistributionDelta.CONTENT_DIRECTORY + path, dosTime, method, bytes);
+        index.append(previousHash).append(' ').append(hash).append(' ').append(path).append('\n');
+    }
+
+    /**
+     * Reads the hashes of the files of the previous release of the distribution, by their paths within the
+     * distribution.
+     *
+     * @param previous The previous release: a directory, or an archive.
+     * @return The hashes of the files, sorted by path.
+     * @throws IOException If the previous release can't be read.
+     * @throws GeneralSecurityException If the SHA-256 algorithm is not available.
+     */
+    @Nonnull
+    static Map<String, String> readPrevious(@Nonnull Path previous) throws IOException, GeneralSecurityException {
+        if (Files.isDirectory(previous)) {
+            Map<String, String> hashes = new TreeMap<>();
+            try (Stream<Path> files = Files.walk(previous)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    hashes.put(previous.relativize(file).toString().replace(File.separatorChar, '/'),
+                            ApplyDelta.hash(file));
+                }
+            }
+            return hashes;
+        }
+        Path fileName = Utils.nonNull(previous.getFileName(), "previous distribution file name");
+        String name = fileName.toString().toLowerCase(Locale.ROOT);
+        Map<String, String> hashes = new TreeMap<>();
+        if (name.endsWith(".zip") || name.endsWith(".jar")) {
+            try (ZipFile zip = new ZipFile(previous.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        try (InputStream input = zip.getInputStream(entry)) {
+                            hashes.put(entry.getName(), hash(input));
+                        }
+                    }
+                }
+            }
+        } else if (name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            try (InputStream file = Files.newInputStream(previous);
+                    InputStream input = name.endsWith(".tar") ? file : new GZIPInputStream(file, 64 * 1024)) {
+                TarFormat.Reader reader = new TarFormat.Reader(input);
+                for (TarFormat.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                    if (entry.isFile()) {
+                        hashes.put(entry.getName(), hash(reader.content()));
+                    }
+                }
+            }
+        } else {
+            throw new IOException("Unsupported archive format: " + fileName);
+        }
+        return stripTopLevelDirectory(hashes);
+    }
+
+    /**
+     * Leaves out the top-level directory of the files of an archive, if they are all in the same one.
+     */
+    @Nonnull
+    private static Map<String, String> stripTopLevelDirectory(@Nonnull Map<String, String> hashes) {
+        String topLevelDirectory = null;
+        for (String path : hashes.keySet()) {
+            String directory = topLevelDirectory(path);
+            if (directory == null || topLevelDirectory != null && !topLevelDirectory.equals(directory)) {
+                return hashes;
+            }
+            topLevelDirectory = directory;
+        }
+        if (topLevelDirectory == null) {
+            return hashes;
+        }
+        Map<String, String> stripped = new TreeMap<>();
+        int length = topLevelDirectory.length();
+        hashes.forEach((path, hash) -> stripped.put(path.substring(length), hash));
+        return stripped;
+    }
+
+    /**
+     * Returns the top-level directory of a path, including its trailing slash.
+     */
+    @Nullable
+    private static String topLevelDirectory(@Nonnull String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 ? path.substring(0, slash + 1) : null;
+    }
+
+    @Nonnull
+    private static String hash(@Nonnull InputStream input) throws IOException, GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        copy(new DigestInputStream(input, digest), null);
+        return Utils.hex(digest.digest());
+    }
+
+    private static void copy(@Nonnull InputStream input, @Nullable ByteArrayOutputStream output) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        for (int count = input.read(buffer); count >= 0; count = input.read(buffer)) {
+            if (output != null) {
+                output.write(buffer, 0, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>Installs the dependency artifact files of an application into the destination directory of a {@link Sync} task
+ * (normally the install task of the application's distribution) by {@linkplain Files#createLink hard-linking} them,
+ * instead of copying their content.</p>
+ * <p>The installer has two parts, both of which must be added to the same task: {@link #excluder()} keeps the task from
+ * copying the dependency artifact files (remembering where they would have been copied to), and {@link #execute} puts
+ * them into place once the task has done the rest of its work. Files that can't be linked (e.g. because the dependency
+ * cache and the destination directory are on different file systems) get copied on multiple threads instead, using
+ * {@link FileChannel#transferTo}, which lets the operating system copy the content without passing it through the
+ * JVM.</p>
+ * <p>It holds no reference to any task or project, so that it can be stored in the configuration cache.</p>
+ */
+final class DependencyInstaller implements Action<Task> {
+
+    @Nonnull
+    private final Provider<Map<File, RelativePath>> dependencyDestinations;
+    @Nonnull
+    private final Provider<Boolean> enabled;
+    private final int threads;
+    @Nonnull
+    private final Map<File, RelativePath> pendingDependencies = new LinkedHashMap<>();
+    @Nullable
+    private Set<String> dependencyNames;
+
+    /**
+     * Creates a {@link DependencyInstaller}.
+     *
+     * @param dependencyDestinations The dependency artifact files to install, along with their paths relative to the
+     * directory that the application JAR gets copied to.
+     * @param enabled Whether dependencies should be installed by this installer. If not, both parts of the installer
+     * do nothing, so the task copies the dependencies as usual.
+     * @param threads The number of threads to install dependencies on. Must be positive.
+     */
+    DependencyInstaller(@Nonnull Provider<Map<File, RelativePath>> dependencyDestinations,
+            @Nonnull Provider<Boolean> enabled, int threads) {
+        this.dependencyDestinations = dependencyDestinations;
+        this.enabled = enabled;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the action that excludes dependency artifact files from the copy, to be added to the task via
+     * {@link Sync#eachFile}.
+     *
+     * @return The action excluding dependency artifact files.
+     */
+    @Nonnull
+    Action<FileCopyDetails> excluder() {
+        return new Excluder(this);
+    }
+
+    private void exclude(@Nonnull FileCopyDetails copyDetails) {
+        if (!enabled.get()) {
+            return;
+        }
+        if (dependencyNames == null) {
+            dependencyNames = dependencyDestinations.get().keySet().stream()
+                    .map(File::getName)
+                    .collect(Collectors.toSet());
+        }
+        // Only call getFile() for potential dependencies, as it may have to extract files from archives
+        if (copyDetails.isDirectory() || !dependencyNames.contains(copyDetails.getSourceName())) {
+            return;
+        }
+        RelativePath destination = dependencyDestinations.get().get(copyDetails.getFile());
+        if (destination != null) {
+            // The directory part of the relative path contains the path segments contributed by encompassing specs
+            RelativePath relativeDir = Utils.nonNull(copyDetails.getRelativePath().getParent(), "relativeDir");
+            pendingDependencies.put(copyDetails.getFile(), relativeDir.append(destination));
+            copyDetails.exclude();
+        }
+    }
+
+    /**
+     * Installs the dependency artifact files that were excluded from the copy. To be added to the task via
+     * {@link Task#doLast}.
+     *
+     * @param task The {@link Sync} task that has excluded the dependency artifact files.
+     */
+    @Override
+    public void execute(@Nonnull Task task) {
+        try {
+            if (!pendingDependencies.isEmpty()) {
+                installAll(((Sync) task).getDestinationDir().toPath());
+            }
+        } finally {
+            pendingDependencies.clear();
+            dependencyNames = null;
+        }
+    }
+
+    @SuppressWarnings("PMD.PreserveStackTrace") // The CompletionException is replaced by the GradleException
+    private void installAll(@Nonnull Path destinationDir) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new InstallThreadFactory());
+        try {
+            List<CompletableFuture<Void>> installations = new ArrayList<>(pendingDependencies.size());
+            pendingDependencies.forEach((file, relativePath) -> {
+                Path target = relativePath.getFile(destinationDir.toFile()).toPath();
+                installations.add(CompletableFuture.runAsync(() -> install(file.toPath(), target), executor));
+            });
+            for (CompletableFuture<Void> installation : installations) {
+                installation.join();
+            }
+        } catch (CompletionException e) {
+            throw new GradleException("Could not install dependencies into " + destinationDir, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Installs a single file: hard-links it if possible, copies it otherwise.
+     *
+     * @param source The file to install.
+     * @param target The path to install the file at. Any existing file will be replaced.
+     * @throws GradleException If the file can't be installed.
+     */
+    static void install(@Nonnull Path source, @Nonnull Path target) {
+        try {
+            Files.createDirectories(Utils.nonNull(target.getParent(), "target.parent"));
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                copy(source, target);
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not install " + source + " to " + target, e);
+        }
+    }
+
+    /**
+     * Copies the content of a file, letting the operating system transfer the bytes directly, if it can.
+     *
+     * @param source The file to copy.
+     * @param target The path to copy the file to. Must not exist yet.
+     * @throws IOException If the file can't be copied.
+     */
+    static void copy(@Nonnull Path source, @Nonnull Path target) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(target,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                position += input.transferTo(position, size - position, output);
+            }
+        }
+    }
+
+    /**
+     * The part of the installer that gets added to the task via {@link Sync#eachFile}. It refers back to the installer,
+     * so that both parts of it share the files pending installation.
+     */
+    private static final class Excluder implements Action<FileCopyDetails> {
+
+        @Nonnull
+        private final DependencyInstaller installer;
+
+        Excluder(@Nonnull DependencyInstaller installer) {
+            this.installer = installer;
+        }
+
+        @Override
+        public void execute(@Nonnull FileCopyDetails copyDetails) {
+            installer.exclude(copyDetails);
+        }
+    }
+
+    /**
+     * Creates the daemon threads that install dependencies.
+     */
+    private static final class InstallThreadFactory implements ThreadFactory {
+
+        @Nonnull
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        @Nonnull
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "Installing dependencies #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Bundles the differences between a distribution and a previous release of it into a delta archive, so that an
+ * installation of the previous release can be updated without shipping the whole distribution again. The archive
+ * contains the files that have been added or changed since the previous release, along with the list of the files that
+ * have been removed.</p>
+ * <p>The archive is an executable JAR that applies itself:
+ * {@code java -jar <delta archive> <installation directory>}. It only needs a Java 8 (or later) runtime. Before
+ * changing anything, it checks that the installation is of the previous release, then replaces every changed file
+ * through an atomic rename, and deletes the removed files.</p>
+ * <p>The {@linkplain #getPreviousDistribution previous release} is compared with the contents of the distribution by
+ * the SHA-256 hashes of the files. Only files are compared: empty directories are neither added nor removed, and file
+ * permissions are not carried over. Changed files are held in memory while they are compressed, so files larger than
+ * 2 GiB are not supported.</p>
+ * <p>The archive is deterministic: by default, file timestamps are not preserved, and files are added in a
+ * reproducible order.</p>
+ * <p>Applications register a task of this type for their distribution (see {@link Application#getDistDelta}).</p>
+ */
+public abstract class DistributionDelta extends AbstractArchiveTask {
+
+    /**
+     * Extension of the archives.
+     */
+    public static final String ARCHIVE_EXTENSION = "jar";
+
+    /**
+     * Default classifier of the archives.
+     */
+    public static final String ARCHIVE_CLASSIFIER = "delta";
+
+    /**
+     * Path of the index of the changes within the archives (see {@link ApplyDelta}).
+     */
+    static final String INDEX_PATH = "META-INF/delta/index";
+
+    /**
+     * Directory within the archives that the added and changed files are stored in.
+     */
+    static final String CONTENT_DIRECTORY = "content/";
+
+    @Nonnull
+    private final ConfigurableFileCollection previousDistribution;
+
+    /**
+     * Creates a {@link DistributionDelta} task.
+     */
+    @Inject
+    public DistributionDelta() {
+        setPreserveFileTimestamps(false);
+        setReproducibleFileOrder(true);
+        previousDistribution = getObjects().fileCollection();
+        getArchiveExtension().convention(ARCHIVE_EXTENSION);
+        getArchiveClassifier().convention(ARCHIVE_CLASSIFIER);
+        getStoredEntryPatterns().convention(Collections.singletonList(Application.DEFAULT_STORED_ENTRY_PATTERN));
+    }
+
+    /**
+     * <p>The previous release of the distribution: either an installation directory, or a distribution archive in
+     * ZIP ({@code .zip}) or TAR ({@code .tar}, {@code .tar.gz} or {@code .tgz}) format. Archives usually have all of
+     * their files in a single top-level directory (e.g. {@code my-app-1.0/}): if so, that directory is left out of the
+     * comparison, so the archive of any version can be compared with the current distribution.</p>
+     * <p>It must contain exactly one file or directory when the task runs.</p>
+     *
+     * @return {@link ConfigurableFileCollection} object specifying the previous release of the distribution.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is meant to be configured")
+    public ConfigurableFileCollection getPreviousDistribution() {
+        return previousDistribution;
+    }
+
+    /**
+     * Patterns of the files to store in the archive without compression, in the format of
+     * {@link org.gradle.api.tasks.util.PatternFilterable#include(Iterable) PatternFilterable.include}, matched against
+     * the paths of the files within the distribution. The default value is
+     * <code>["{@value Application#DEFAULT_STORED_ENTRY_PATTERN}"]</code>.
+     *
+     * @return {@link ListProperty} object specifying the patterns of the files to store without compression.
+     * @see Application#getStoredEntryPatterns()
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getStoredEntryPatterns();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Creates the {@link CopyAction} that writes the archive.
+     *
+     * @return A {@link CopyAction} writing the delta archive.
+     */
+    @Override
+    @Nonnull
+    protected CopyAction createCopyAction() {
+        Set<File> previousFiles = previousDistribution.getFiles();
+        Utils.argument(previousFiles.size() == 1,
+                "previousDistribution must contain exactly one archive or directory: %s", previousFiles);
+        // A pattern set without any patterns would match every file
+        List<String> storedEntryPatterns = getStoredEntryPatterns().get();
+        Spec<FileTreeElement> storedFiles = storedEntryPatterns.isEmpty() ?
+                Specs.satisfyNone() :
+                new PatternSet().include(storedEntryPatterns).getAsSpec();
+        return new DeltaCopyAction(getArchiveFile().get().getAsFile(), previousFiles.iterator().next(), storedFiles,
+                isPreserveFileTimestamps());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+import org.gradle.api.tasks.bundling.Tar;
+
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Bundles a distribution as a TAR archive compressed with <a href="https://facebook.github.io/zstd/">Zstandard</a>,
+ * which decompresses several times faster than gzip. The compressor is written in plain Java, so no native library or
+ * tool is needed to build the archive; any {@code zstd} decoder (e.g. {@code tar --zstd -xf}) can extract it.</p>
+ * <p>The archive is compressed on multiple threads (see {@link #getCompressionThreads}), in independent frames of
+ * 1 MiB, so decompressing it takes little memory too.</p>
+ * <p>The archive is deterministic: by default, file timestamps are not preserved, and files are added in a
+ * reproducible order, so the archive only depends on the contents of the distribution, never on the number of
+ * threads.</p>
+ * <p>Applications register a task of this type for their distribution (see {@link Application#getDistTarZst}).</p>
+ */
+public abstract class DistributionTarZst extends AbstractArchiveTask {
+
+    /**
+     * Extension of the archives.
+     */
+    public static final String ARCHIVE_EXTENSION = "tar.zst";
+
+    /**
+     * Default value of {@link #getCompressionLevel()}, the same as the {@code zstd} command line tool's.
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+
+    /**
+     * Creates a {@link DistributionTarZst} task.
+     */
+    public DistributionTarZst() {
+        setPreserveFileTimestamps(false);
+        setReproducibleFileOrder(true);
+        getArchiveExtension().convention(ARCHIVE_EXTENSION);
+        getCompressionLevel().convention(DEFAULT_COMPRESSION_LEVEL);
+        getCompressionThreads().convention(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * The compression level, from 1 (fastest) to 19 (smallest). The default is {@value #DEFAULT_COMPRESSION_LEVEL}.
+     * The level only affects how hard the compressor looks for repetitions: decompression is just as fast at every
+     * level.
+     *
+     * @return {@link Property} object specifying the compression level.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<Integer> getCompressionLevel();
+
+    /**
+     * The number of threads to compress the archive on. The default is the number of processors available to the
+     * JVM. This does not affect the output, so it is not an {@link Input} of this task.
+     *
+     * @return {@link Property} object specifying the number of threads.
+     */
+    @Internal
+    @Nonnull
+    public abstract Property<Integer> getCompressionThreads();
+
+    /**
+     * Creates the {@link CopyAction} that writes the archive.
+     *
+     * @return A {@link CopyAction} writing the compressed TAR archive, with the same entries as the archive of a
+     * {@link Tar} task.
+     */
+    @Override
+    @Nonnull
+    protected CopyAction createCopyAction() {
+        return new TarZstCopyAction(getArchiveFile().get().getAsFile(), getCompressionLevel().get(),
+                getCompressionThreads().get(), isPreserveFileTimestamps());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.tasks.Copy;
+import org.gradle.api.tasks.Sync;
+
+import java.io.File;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Installs a distribution incrementally. Like a {@link Sync} task, it makes the destination directory contain
+ * exactly the files of its copy spec, but it avoids rewriting files whose content hasn't changed since the previous
+ * installation.</p>
+ * <p>The new installation is assembled in a staging directory next to the destination directory: files whose content
+ * hash matches that of the installed file are {@linkplain java.nio.file.Files#createLink hard-linked} from the previous
+ * installation (keeping their identity, and thus their residency in the page cache), and only new or changed files are
+ * written. The staging directory then replaces the destination directory via two atomic renames, so the destination
+ * directory never contains a partial installation. The content hashes of the installed files are kept in the
+ * {@linkplain #getTemporaryDir temporary directory} of the task. Every file of the copy spec is hashed again on each
+ * execution, as filters may change its content even if its source file is unchanged.</p>
+ * <p>Applications register a task of this type for their distribution (see {@link Application#getIncrementalInstall}).
+ * </p>
+ */
+public abstract class IncrementalInstall extends Copy {
+
+    /**
+     * Name of the build directory where the distributions of applications will be installed incrementally.
+     */
+    public static final String INSTALL_DIRECTORY_NAME = "incrementalInstall";
+
+    /**
+     * Name of the file in the {@linkplain #getTemporaryDir temporary directory} of the task that holds the content
+     * hashes of the installed files.
+     */
+    static final String INDEX_FILE_NAME = "installed-files.index";
+
+    /**
+     * Creates an {@link IncrementalInstall} task.
+     *
+     * @return An {@link IncrementalInstallAction} for the destination directory.
+     */
+    @Override
+    @Nonnull
+    protected CopyAction createCopyAction() {
+        File destinationDir = getDestinationDir();
+        if (destinationDir == null) {
+            throw new InvalidUserDataException("No install destination directory has been specified, " +
+                    "use 'into' to specify a target directory.");
+        }
+        return new IncrementalInstallAction(destinationDir.toPath(),
+                new File(getTemporaryDir(), INDEX_FILE_NAME).toPath());
+    }
+}
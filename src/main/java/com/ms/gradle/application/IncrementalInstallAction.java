@@ -0,0 +1,250 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>A {@link CopyAction} that installs files into a directory incrementally. The new installation is assembled in a
+ * staging directory, and then swapped in for the destination directory. Files whose content (and mode) is the same as
+ * that of the previously installed file are {@linkplain DependencyInstaller#install hard-linked} into the staging
+ * directory from the previous installation, so only new or changed files are written.</p>
+ * <p>The previous installation is described by an index file, mapping the relative path of every installed file to
+ * the SHA-256 hash of its content, its mode, and the size and last modification time it had when it was installed. An
+ * installed file is only reused if it still has that size and last modification time, so files that have been
+ * modified in the installation directory get replaced. A missing or unreadable index simply makes every file get
+ * written.</p>
+ * <p>Java offers no way to exchange two directories atomically, so the swap consists of two atomic renames: the
+ * destination directory to a {@value #PREVIOUS_SUFFIX} sibling, then the staging directory to the destination
+ * directory. The destination directory therefore never contains a partial installation, though it is briefly
+ * missing in between. Any leftovers of an interrupted execution are deleted the next time the action is executed.</p>
+ */
+final class IncrementalInstallAction implements CopyAction {
+
+    /**
+     * Suffix of the sibling directory that the new installation is assembled in.
+     */
+    static final String STAGING_SUFFIX = ".staging";
+
+    /**
+     * Suffix of the sibling directory that the previous installation is moved to during the swap.
+     */
+    static final String PREVIOUS_SUFFIX = ".previous";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    @Nonnull
+    private final Path destinationDir;
+    @Nonnull
+    private final Path indexFile;
+
+    /**
+     * Creates an {@link IncrementalInstallAction}.
+     *
+     * @param destinationDir The directory to install the files into.
+     * @param indexFile The file describing the files installed into the directory by the previous execution.
+     */
+    IncrementalInstallAction(@Nonnull Path destinationDir, @Nonnull Path indexFile) {
+        this.destinationDir = destinationDir;
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("PMD.PreserveStackTrace") // The UncheckedIOException only carries its cause out of the stream
+    public WorkResult execute(@Nonnull CopyActionProcessingStream stream) {
+        Path stagingDir = sibling(STAGING_SUFFIX);
+        Path previousDir = sibling(PREVIOUS_SUFFIX);
+        try {
+            Utils.deleteRecursively(stagingDir);
+            Utils.deleteRecursively(previousDir);
+            Map<String, IndexEntry> previousIndex = readIndex();
+            // If anything goes wrong from here on, the index may no longer describe the installation
+            Files.deleteIfExists(indexFile);
+
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            Map<String, IndexEntry> index = new HashMap<>();
+            Files.createDirectories(stagingDir);
+            stream.process(details -> {
+                try {
+                    install(details, stagingDir, digest, previousIndex, index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            swap(stagingDir, previousDir);
+            writeIndex(index);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GradleException("Could not install into " + destinationDir, e);
+        } catch (UncheckedIOException e) {
+            throw new GradleException("Could not install into " + destinationDir, e.getCause());
+        }
+        return WorkResults.didWork(true);
+    }
+
+    @Nonnull
+    private Path sibling(@Nonnull String suffix) {
+        return destinationDir.resolveSibling(destinationDir.getFileName() + suffix);
+    }
+
+    private void install(@Nonnull FileCopyDetails details, @Nonnull Path stagingDir, @Nonnull MessageDigest digest,
+            @Nonnull Map<String, IndexEntry> previousIndex, @Nonnull Map<String, IndexEntry> index) throws IOException {
+        String relativePath = details.getRelativePath().getPathString();
+        Path target = stagingDir.resolve(relativePath);
+        if (details.isDirectory()) {
+            Files.createDirectories(target);
+            return;
+        }
+
+        String hash = hash(details, digest);
+        int mode = details.getMode();
+        Path installed = destinationDir.resolve(relativePath);
+        IndexEntry previous = previousIndex.get(relativePath);
+        if (previous != null && previous.hash.equals(hash) && previous.mode == mode && previous.matches(installed)) {
+            DependencyInstaller.install(installed, target);
+        } else {
+            Files.createDirectories(Utils.nonNull(target.getParent(), "target.parent"));
+            details.copyTo(target.toFile());
+        }
+        BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        index.put(relativePath, new IndexEntry(hash, mode, attributes.size(), lastModified));
+    }
+
+    @Nonnull
+    private static String hash(@Nonnull FileCopyDetails details, @Nonnull MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = details.open()) {
+            for (int count = input.read(buffer); count >= 0; count = input.read(buffer)) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return Utils.hex(digest.digest());
+    }
+
+    private void swap(@Nonnull Path stagingDir, @Nonnull Path previousDir) throws IOException {
+        if (Files.exists(destinationDir, LinkOption.NOFOLLOW_LINKS)) {
+            Files.move(destinationDir, previousDir, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(stagingDir, destinationDir, StandardCopyOption.ATOMIC_MOVE);
+        Utils.deleteRecursively(previousDir);
+    }
+
+    @Nonnull
+    private Map<String, IndexEntry> readIndex() {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            // Without a usable index, every file gets written
+            return new HashMap<>();
+        }
+        Map<String, IndexEntry> index = new HashMap<>();
+        properties.stringPropertyNames().forEach(relativePath -> {
+            IndexEntry entry = IndexEntry.parse(properties.getProperty(relativePath));
+            if (entry != null) {
+                index.put(relativePath, entry);
+            }
+        });
+        return index;
+    }
+
+    private void writeIndex(@Nonnull Map<String, IndexEntry> index) throws IOException {
+        Properties properties = new Properties();
+        index.forEach((relativePath, entry) -> properties.setProperty(relativePath, entry.toString()));
+        Files.createDirectories(Utils.nonNull(indexFile.getParent(), "indexFile.parent"));
+        try (OutputStream output = Files.newOutputStream(indexFile);
+                Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+
+    /**
+     * What the index records about an installed file.
+     */
+    private static final class IndexEntry {
+
+        @Nonnull
+        private final String hash;
+        private final int mode;
+        private final long size;
+        private final long lastModified;
+
+        IndexEntry(@Nonnull String hash, int mode, long size, long lastModified) {
+            this.hash = hash;
+            this.mode = mode;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Nullable
+        static IndexEntry parse(@Nonnull String value) {
+            String[] parts = value.split(" ");
+            try {
+                return parts.length == 4 ?
+                        new IndexEntry(parts[0], Integer.parseInt(parts[1], 8),
+                                Long.parseLong(parts[2]), Long.parseLong(parts[3])) :
+                        null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Checks whether an installed file is still the way it was when it was installed.
+         *
+         * @param installed The installed file.
+         * @return Whether the installed file is a regular file with the recorded size and last modification time.
+         */
+        boolean matches(@Nonnull Path installed) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(installed, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                return attributes.isRegularFile() && attributes.size() == size &&
+                        attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        @Nonnull
+        public String toString() {
+            return hash + ' ' + Integer.toOctalString(mode) + ' ' + size + ' ' + lastModified;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.Provider;
+import org.gradle.jvm.toolchain.JavaToolchainService;
+import org.gradle.util.GradleVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Properties;
+import javax.annotation.Nonnull;
+
+/**
+ * Helpers for the Java installations that tasks run tools of, like the training runs of applications.
+ */
+final class JavaInstallation {
+
+    /**
+     * Name of the file describing a Java installation, in its home directory.
+     */
+    static final String RELEASE_FILE_NAME = "release";
+
+    /**
+     * The first Gradle version with Java toolchains.
+     *
+     * @see <a href="https://docs.gradle.org/6.7/release-notes.html#java-toolchain">Gradle 6.7 release notes</a>
+     */
+    private static final GradleVersion TOOLCHAINS_GRADLE_VERSION = GradleVersion.version("6.7");
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private JavaInstallation() {}
+
+    /**
+     * Returns the home directory of the Java installation of the project: the one of its Java toolchain, or the one
+     * running Gradle for projects without Java plugins, or with versions of Gradle that don't support toolchains.
+     *
+     * @param project The project.
+     * @return {@link Provider} of the home directory of the Java installation.
+     */
+    @Nonnull
+    static Provider<Directory> javaHome(@Nonnull Project project) {
+        if (GradleVersion.current().compareTo(TOOLCHAINS_GRADLE_VERSION) >= 0 &&
+                project.getExtensions().findByType(JavaPluginExtension.class) != null) {
+            return Toolchain.javaHome(project);
+        }
+        return project.getLayout().dir(project.provider(() -> new File(System.getProperty("java.home"))));
+    }
+
+    /**
+     * Returns the feature version of a Java installation (e.g. 8 for Java 1.8.0, 21 for Java 21.0.1), as stated by
+     * its {@value #RELEASE_FILE_NAME} file.
+     *
+     * @param javaHome The home directory of the Java installation.
+     * @return The feature version of the Java installation.
+     * @throws IOException If the {@value #RELEASE_FILE_NAME} file can't be read.
+     * @throws IllegalArgumentException If the {@value #RELEASE_FILE_NAME} file doesn't state a valid version.
+     */
+    static int featureVersion(@Nonnull File javaHome) throws IOException {
+        String version = releaseProperty(javaHome, "JAVA_VERSION");
+        String[] components = version.split("[^0-9]+", 3);
+        try {
+            int feature = Integer.parseInt(components[0]);
+            return feature == 1 && components.length > 1 ? Integer.parseInt(components[1]) : feature;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "The Java installation in " + javaHome + " has an invalid version: " + version, e);
+        }
+    }
+
+    /**
+     * Returns a property of a Java installation, as stated by its {@value #RELEASE_FILE_NAME} file.
+     *
+     * @param javaHome The home directory of the Java installation.
+     * @param key The key of the property, e.g. {@code JAVA_VERSION}.
+     * @return The value of the property, without quotes, or an empty string if the property is not stated.
+     * @throws IOException If the {@value #RELEASE_FILE_NAME} file can't be read.
+     */
+    @Nonnull
+    static String releaseProperty(@Nonnull File javaHome, @Nonnull String key) throws IOException {
+        Properties release = new Properties();
+        try (InputStream input = Files.newInputStream(new File(javaHome, RELEASE_FILE_NAME).toPath())) {
+            release.load(input);
+        }
+        // Values are quoted, e.g. JAVA_VERSION="21.0.1"
+        return release.getProperty(key, "").replace("\"", "");
+    }
+
+    /**
+     * Returns the executable file of a tool of a Java installation.
+     *
+     * @param javaHome The home directory of the Java installation.
+     * @param tool The name of the tool, e.g. {@code java}.
+     * @return The executable file of the tool.
+     */
+    @Nonnull
+    static File executable(@Nonnull File javaHome, @Nonnull String tool) {
+        boolean isWindows = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+        return new File(new File(javaHome, "bin"), isWindows ? tool + ".exe" : tool);
+    }
+
+    /**
+     * Looks up Java toolchains. A separate class, so that the toolchain API doesn't get loaded with older versions of
+     * Gradle.
+     */
+    private static final class Toolchain {
+
+        @Nonnull
+        static Provider<Directory> javaHome(@Nonnull Project project) {
+            JavaToolchainService toolchains = project.getExtensions().getByType(JavaToolchainService.class);
+            JavaPluginExtension java = project.getExtensions().getByType(JavaPluginExtension.class);
+            return toolchains.launcherFor(java.getToolchain())
+                    .map(launcher -> launcher.getMetadata().getInstallationPath());
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * <p>Creates a Java runtime image for an application with {@code jlink}, holding only the modules of the Java
+ * installation that the application needs: the ones that {@code jdeps} finds the application JAR and its dependencies
+ * to depend on, plus the {@linkplain #getAdditionalModules additional modules}. The runtime is a fraction of the size
+ * of the Java installation, and the application runs with {@code runtime/bin/java -jar <application JAR>} on hosts
+ * without a Java installation of their own.</p>
+ * <p>Every JAR is analysed on its own, as if it was on the classpath (ignoring any module descriptor), and the result
+ * is cached in the {@linkplain #getTemporaryDir temporary directory} of the task by the hash of the JAR content and of
+ * the {@linkplain #getJavaRelease Java installation}, so only new or changed JARs get analysed again. Note that
+ * {@code jdeps} can't see the modules that are only used through reflection or service loading (e.g.
+ * {@code jdk.crypto.ec} for elliptic curve TLS, or {@code jdk.localedata} for locales other than English): these must
+ * be added as {@linkplain #getAdditionalModules additional modules}.</p>
+ * <p>The runtime also gets a default CDS archive, like the Java installation, without which the JVM would start slower,
+ * and which {@linkplain CdsArchive dynamic CDS archives} build on: {@code jlink} creates it with Java
+ * {@value #CDS_ARCHIVE_JAVA_VERSION} or later, and the {@code java} command of the runtime with older versions. This
+ * takes a Java installation of version {@value #MINIMUM_JAVA_VERSION} or later.</p>
+ * <p>Applications register a task of this type (see {@link Application#getJlinkRuntime}).</p>
+ *
+ * @see <a href="https://docs.oracle.com/en/java/javase/21/docs/specs/man/jlink.html">jlink</a>
+ * @see <a href="https://docs.oracle.com/en/java/javase/21/docs/specs/man/jdeps.html">jdeps</a>
+ */
+public abstract class JlinkRuntime extends DefaultTask {
+
+    /**
+     * Name of the build directory where the runtime images of applications will be placed.
+     */
+    public static final String RUNTIME_DIRECTORY_NAME = "runtimes";
+
+    /**
+     * Name of the directory of the distribution where the runtime image goes.
+     */
+    public static final String DISTRIBUTION_DIRECTORY_NAME = "runtime";
+
+    /**
+     * The first Java version whose {@code jdeps} prints the modules that classes depend on, with
+     * {@code --print-module-deps}.
+     */
+    public static final int MINIMUM_JAVA_VERSION = 11;
+
+    /**
+     * The first Java version whose {@code jlink} creates a CDS archive in the runtime image, with
+     * {@code --generate-cds-archive}.
+     */
+    public static final int CDS_ARCHIVE_JAVA_VERSION = 21;
+
+    /**
+     * Name of the file in the {@linkplain #getTemporaryDir temporary directory} of the task that maps the hashes of the
+     * analysed JARs to the modules they depend on.
+     */
+    static final String JDEPS_INDEX_FILE_NAME = "jdeps.index";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * The module that every runtime image contains.
+     */
+    private static final String BASE_MODULE = "java.base";
+
+    @Nonnull
+    private final ConfigurableFileCollection dependencyFiles;
+
+    /**
+     * Creates a {@link JlinkRuntime} task.
+     */
+    @Inject
+    public JlinkRuntime() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        dependencyFiles = getObjects().fileCollection();
+        getJlinkArguments().convention(Arrays.asList("--no-header-files", "--no-man-pages"));
+    }
+
+    /**
+     * Takes the application JAR and its dependencies from an {@link ApplicationJar} task, without realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     */
+    void from(@Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        getApplicationJarFile().set(applicationJar.flatMap(ApplicationJar::getArchiveFile));
+        dependencyFiles.from(ApplicationJar.resolvedDependencies(applicationJar).map(Map::keySet))
+                .builtBy(applicationJar);
+    }
+
+    /**
+     * The application JAR to analyse.
+     *
+     * @return {@link RegularFileProperty} object specifying the application JAR.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public abstract RegularFileProperty getApplicationJarFile();
+
+    /**
+     * The dependency artifact files of the application to analyse (read-only).
+     *
+     * @return {@link FileCollection} of the dependency artifact files.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+    public FileCollection getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * The home directory of the Java installation to take the modules from, and to run {@code jdeps} and
+     * {@code jlink} of. The default is the one of the Java toolchain of the project (or the one running Gradle, with
+     * versions of Gradle before 6.7). Only its {@link #getJavaRelease release} file is an input of this task.
+     *
+     * @return {@link DirectoryProperty} object specifying the home directory of the Java installation.
+     */
+    @Internal
+    @Nonnull
+    public abstract DirectoryProperty getJavaHome();
+
+    /**
+     * The {@code release} file of the {@linkplain #getJavaHome Java installation} (read-only), which states its
+     * version, vendor and build.
+     *
+     * @return {@link Provider} of the release file of the Java installation.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public Provider<RegularFile> getJavaRelease() {
+        return getJavaHome().file(JavaInstallation.RELEASE_FILE_NAME);
+    }
+
+    /**
+     * Modules to add to the runtime image besides the ones found by {@code jdeps}, e.g. the ones that the
+     * application only uses through reflection or service loading. Empty by default.
+     *
+     * @return {@link ListProperty} object specifying the additional modules.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getAdditionalModules();
+
+    /**
+     * Additional arguments for {@code jlink}. The default is {@code --no-header-files --no-man-pages}. Debug
+     * information is kept by default, so that stack traces keep their line numbers; it can be removed with
+     * {@code --strip-debug}.
+     *
+     * @return {@link ListProperty} object specifying the additional arguments.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getJlinkArguments();
+
+    /**
+     * The directory to create the runtime image in. Its previous contents are deleted when the task is executed.
+     *
+     * @return {@link DirectoryProperty} object specifying the runtime image directory.
+     */
+    @OutputDirectory
+    @Nonnull
+    public abstract DirectoryProperty getOutputDirectory();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Services used by this task (see {@link #getObjects}).
+     *
+     * @return The {@link ExecOperations} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ExecOperations getExecOperations();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void create() {
+        Path outputDir = getOutputDirectory().get().getAsFile().toPath();
+        try {
+            File javaHome = getJavaHome().get().getAsFile();
+            int javaVersion = JavaInstallation.featureVersion(javaHome);
+            Utils.argument(javaVersion >= MINIMUM_JAVA_VERSION,
+                    "The Java installation in %s is of version %s, but runtime images take version %s or later",
+                    javaHome, javaVersion, MINIMUM_JAVA_VERSION);
+
+            List<File> jars = new ArrayList<>();
+            jars.add(getApplicationJarFile().get().getAsFile());
+            jars.addAll(dependencyFiles.getFiles());
+            JdepsCache cache = new JdepsCache(getTemporaryDir().toPath(), javaHome);
+            Set<String> modules = new TreeSet<>();
+            modules.add(BASE_MODULE);
+            for (File jar : jars) {
+                modules.addAll(cache.modules(jar, () -> analyse(javaHome, javaVersion, jar)));
+            }
+            cache.save();
+            modules.addAll(getAdditionalModules().get());
+
+            // jlink refuses to overwrite anything
+            Utils.deleteRecursively(outputDir);
+            List<String> arguments = new ArrayList<>();
+            arguments.add("--add-modules");
+            arguments.add(String.join(",", modules));
+            arguments.add("--output");
+            arguments.add(outputDir.toString());
+            if (javaVersion >= CDS_ARCHIVE_JAVA_VERSION) {
+                arguments.add("--generate-cds-archive");
+            }
+            arguments.addAll(getJlinkArguments().get());
+            run(javaHome, "jlink", arguments, null);
+            if (javaVersion < CDS_ARCHIVE_JAVA_VERSION) {
+                run(outputDir.toFile(), "java", Collections.singletonList("-Xshare:dump"), null);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GradleException("Could not create runtime image " + outputDir, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException("Could not create runtime image " + outputDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the modules of the Java installation that the classes of a JAR depend on.
+     *
+     * @param javaHome The home directory of the Java installation.
+     * @param javaVersion The version of the Java installation, to pick the classes of multi-release JARs.
+     * @param jar The JAR.
+     * @return The modules, as printed by {@code jdeps}, separated by commas.
+     * @throws IOException If the JAR can't be read.
+     */
+    @Nonnull
+    private String analyse(@Nonnull File javaHome, int javaVersion, @Nonnull File jar) throws IOException {
+        // The application runs on the classpath, where module descriptors don't count: jdeps would look for the
+        // modules that they require otherwise
+        Path classpathJar = Files.createTempFile(getTemporaryDir().toPath(), "jdeps", ".jar");
+        try {
+            copyWithoutModuleDescriptors(jar.toPath(), classpathJar);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            run(javaHome, "jdeps", Arrays.asList("--print-module-deps", "--ignore-missing-deps",
+                    "--multi-release", String.valueOf(javaVersion), classpathJar.toString()), output);
+            return new String(output.toByteArray(), StandardCharsets.UTF_8).trim();
+        } finally {
+            Files.delete(classpathJar);
+        }
+    }
+
+    private static void copyWithoutModuleDescriptors(@Nonnull Path source, @Nonnull Path target) throws IOException {
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(source));
+                ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(target))) {
+            for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                String name = entry.getName();
+                if (!"module-info.class".equals(name) && !name.endsWith("/module-info.class")) {
+                    output.putNextEntry(new ZipEntry(name));
+                    copy(input, output);
+                }
+            }
+        }
+    }
+
+    private static void copy(@Nonnull InputStream input, @Nonnull OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+    }
+
+    private void run(@Nonnull File javaHome, @Nonnull String tool, @Nonnull List<String> arguments,
+            @Nullable OutputStream output) {
+        ExecResult result = getExecOperations().exec(spec -> {
+            spec.setExecutable(JavaInstallation.executable(javaHome, tool));
+            spec.args(arguments);
+            if (output != null) {
+                spec.setStandardOutput(output);
+            }
+            spec.setIgnoreExitValue(true);
+        });
+        Utils.argument(result.getExitValue() == 0, "%s exited with value %s", tool, result.getExitValue());
+    }
+
+    /**
+     * Supplies the modules of a JAR, when they are not cached.
+     */
+    @FunctionalInterface
+    private interface Analysis {
+
+        @Nonnull
+        String modules() throws IOException;
+    }
+
+    /**
+     * Caches the modules that JARs depend on, as found by {@code jdeps}, between executions of the task. The cache is
+     * an index file, mapping the hash of the content of every JAR (and of the Java installation) to its modules.
+     */
+    private static final class JdepsCache {
+
+        @Nonnull
+        private final Path indexFile;
+        @Nonnull
+        private final byte[] javaRelease;
+        @Nonnull
+        private final Properties previousIndex = new Properties();
+        @Nonnull
+        private final Properties index = new Properties();
+
+        JdepsCache(@Nonnull Path temporaryDir, @Nonnull File javaHome) throws IOException {
+            this.indexFile = temporaryDir.resolve(JDEPS_INDEX_FILE_NAME);
+            this.javaRelease = Files.readAllBytes(new File(javaHome, JavaInstallation.RELEASE_FILE_NAME).toPath());
+            try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                previousIndex.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                // Without a usable index, every JAR gets analysed
+                previousIndex.clear();
+            }
+        }
+
+        /**
+         * Returns the modules that a JAR depends on, analysing it unless it is cached already.
+         *
+         * @param jar The JAR.
+         * @param analysis Analyses the JAR.
+         * @return The modules.
+         * @throws IOException If the JAR can't be read.
+         * @throws GeneralSecurityException If the hash algorithm is not available.
+         */
+        @Nonnull
+        List<String> modules(@Nonnull File jar, @Nonnull Analysis analysis)
+                throws IOException, GeneralSecurityException {
+            String key = key(jar);
+            String modules = previousIndex.getProperty(key);
+            if (modules == null) {
+                modules = analysis.modules();
+            }
+            index.setProperty(key, modules);
+            return modules.isEmpty() ? Collections.emptyList() : Arrays.asList(modules.split(","));
+        }
+
+        @Nonnull
+        private String key(@Nonnull File jar) throws IOException, GeneralSecurityException {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            digest.update(javaRelease);
+            try (InputStream input = Files.newInputStream(jar.toPath())) {
+                byte[] buffer = new byte[8192];
+                for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return Utils.hex(digest.digest());
+        }
+
+        /**
+         * Writes the index, with the JARs analysed by this execution only.
+         *
+         * @throws IOException If the index can't be written.
+         */
+        void save() throws IOException {
+            try (OutputStream output = Files.newOutputStream(indexFile);
+                    Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                index.store(writer, null);
+            }
+        }
+    }
+}
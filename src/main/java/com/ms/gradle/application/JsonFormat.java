@@ -0,0 +1,339 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>Minimal reader and writer for the JSON format, just enough to handle the metadata of container images.</p>
+ * <p>Values are represented by plain Java objects: objects by {@link Map}s (keeping the order of their members),
+ * arrays by {@link List}s, strings by {@link String}s, numbers by {@link BigDecimal}s (so they are written back
+ * without any loss of precision), and {@code true}, {@code false} and {@code null} by {@link Boolean}s and
+ * {@code null}. Any other {@link Number} can be written too. The output is compact, without any whitespace, so the
+ * same value is always written the same way.</p>
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc8259">The JavaScript Object Notation (JSON) Data Interchange
+ * Format</a>
+ */
+final class JsonFormat {
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private JsonFormat() {}
+
+    /**
+     * Parses a JSON text.
+     *
+     * @param text The JSON text.
+     * @return The value of the text.
+     * @throws IllegalArgumentException If the text is not valid JSON.
+     */
+    @Nullable
+    static Object parse(@Nonnull String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.value();
+        parser.skipWhitespace();
+        parser.check(parser.position == text.length(), "Unexpected content");
+        return value;
+    }
+
+    /**
+     * Parses a JSON text that must contain an object.
+     *
+     * @param text The JSON text.
+     * @return The object of the text.
+     * @throws IllegalArgumentException If the text is not valid JSON, or doesn't contain an object.
+     */
+    @Nonnull
+    static Map<String, Object> parseObject(@Nonnull String text) {
+        return asObject(parse(text), "JSON text");
+    }
+
+    /**
+     * Casts a value to a JSON object.
+     *
+     * @param value The value.
+     * @param name The name of the value, used in the error message.
+     * @return The value as a JSON object.
+     * @throws IllegalArgumentException If the value is not a JSON object.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asObject(@Nullable Object value, @Nonnull String name) {
+        if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        throw new IllegalArgumentException(String.format("%s must be an object: %s", name, value));
+    }
+
+    /**
+     * Casts a value to a JSON array.
+     *
+     * @param value The value.
+     * @param name The name of the value, used in the error message.
+     * @return The value as a JSON array.
+     * @throws IllegalArgumentException If the value is not a JSON array.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static List<Object> asArray(@Nullable Object value, @Nonnull String name) {
+        if (value instanceof List) {
+            return (List<Object>) value;
+        }
+        throw new IllegalArgumentException(String.format("%s must be an array: %s", name, value));
+    }
+
+    /**
+     * Casts a value to a JSON string.
+     *
+     * @param value The value.
+     * @param name The name of the value, used in the error message.
+     * @return The value as a string.
+     * @throws IllegalArgumentException If the value is not a JSON string.
+     */
+    @Nonnull
+    static String asString(@Nullable Object value, @Nonnull String name) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        throw new IllegalArgumentException(String.format("%s must be a string: %s", name, value));
+    }
+
+    /**
+     * Writes a value as a compact JSON text.
+     *
+     * @param value The value.
+     * @return The JSON text.
+     * @throws IllegalArgumentException If the value (or anything within it) can't be represented in JSON.
+     */
+    @Nonnull
+    static String write(@Nullable Object value) {
+        StringBuilder text = new StringBuilder();
+        write(text, value);
+        return text.toString();
+    }
+
+    private static void write(@Nonnull StringBuilder text, @Nullable Object value) {
+        if (value == null || value instanceof Boolean || value instanceof BigDecimal || value instanceof Integer ||
+                value instanceof Long) {
+            text.append(value);
+        } else if (value instanceof String) {
+            writeString(text, (String) value);
+        } else if (value instanceof Map) {
+            text.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                Utils.argument(member.getKey() instanceof String, "Member names must be strings: %s", member.getKey());
+                text.append(first ? "" : ",");
+                writeString(text, (String) member.getKey());
+                text.append(':');
+                write(text, member.getValue());
+                first = false;
+            }
+            text.append('}');
+        } else if (value instanceof List) {
+            text.append('[');
+            boolean first = true;
+            for (Object element : (List<?>) value) {
+                text.append(first ? "" : ",");
+                write(text, element);
+                first = false;
+            }
+            text.append(']');
+        } else {
+            throw new IllegalArgumentException("Not a JSON value: " + value);
+        }
+    }
+
+    private static void writeString(@Nonnull StringBuilder text, @Nonnull String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append('"');
+    }
+
+    /**
+     * Parses a JSON text recursively.
+     */
+    private static final class Parser {
+
+        private static final String HEX_DIGITS = "0123456789abcdef";
+
+        @Nonnull
+        private final String text;
+        private int position;
+
+        Parser(@Nonnull String text) {
+            this.text = text;
+        }
+
+        @Nullable
+        Object value() {
+            skipWhitespace();
+            check(position < text.length(), "Unexpected end of text");
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        @Nonnull
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (consume('}')) {
+                return object;
+            }
+            do {
+                skipWhitespace();
+                check(position < text.length() && text.charAt(position) == '"', "Expected a member name");
+                String name = string();
+                skipWhitespace();
+                check(consume(':'), "Expected ':'");
+                object.put(name, value());
+                skipWhitespace();
+            } while (consume(','));
+            check(consume('}'), "Expected ',' or '}'");
+            return object;
+        }
+
+        @Nonnull
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (consume(']')) {
+                return array;
+            }
+            do {
+                array.add(value());
+                skipWhitespace();
+            } while (consume(','));
+            check(consume(']'), "Expected ',' or ']'");
+            return array;
+        }
+
+        @Nonnull
+        private String string() {
+            StringBuilder string = new StringBuilder();
+            position++;
+            while (true) {
+                check(position < text.length(), "Unterminated string");
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return string.toString();
+                } else if (c == '\\') {
+                    check(position < text.length(), "Unterminated string");
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case 'b':
+                            string.append('\b');
+                            break;
+                        case 'f':
+                            string.append('\f');
+                            break;
+                        case 'n':
+                            string.append('\n');
+                            break;
+                        case 'r':
+                            string.append('\r');
+                            break;
+                        case 't':
+                            string.append('\t');
+                            break;
+                        case 'u':
+                            check(position + 4 <= text.length(), "Invalid escape sequence");
+                            int code = 0;
+                            for (int end = position + 4; position < end; position++) {
+                                int digit = HEX_DIGITS.indexOf(Character.toLowerCase(text.charAt(position)));
+                                check(digit >= 0, "Invalid escape sequence");
+                                code = code * 16 + digit;
+                            }
+                            string.append((char) code);
+                            break;
+                        default:
+                            check(escaped == '"' || escaped == '\\' || escaped == '/', "Invalid escape sequence");
+                            string.append(escaped);
+                    }
+                } else {
+                    check(c >= 0x20, "Unescaped control character");
+                    string.append(c);
+                }
+            }
+        }
+
+        @Nullable
+        private Object literal(@Nonnull String literal, @Nullable Object value) {
+            check(text.startsWith(literal, position), "Unexpected character");
+            position += literal.length();
+            return value;
+        }
+
+        @Nonnull
+        private BigDecimal number() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            check(position > start, "Unexpected character");
+            String number = text.substring(start, position);
+            // BigDecimal accepts a few forms that JSON doesn't, like a leading '+' or a trailing '.'
+            check(number.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?"), "Invalid number");
+            return new BigDecimal(number);
+        }
+
+        private boolean consume(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && " \t\r\n".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+        }
+
+        void check(boolean isValid, @Nonnull String message) {
+            Utils.argument(isValid, "%s at position %s of JSON text", message, position);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Writes the JVM options of an application into argument files, which the {@code java} command reads with the
+ * {@code @} prefix, since an executable JAR can't carry JVM options itself: one file with the
+ * {@linkplain #getJvmArguments common options} ({@code <base name>.args}), and one file for every
+ * {@linkplain #getProfiles profile} ({@code <base name>-<profile>.args}) with the common options followed by the ones
+ * of the profile. The application then runs from its installation directory with e.g.
+ * {@code java @<base name>-latency.args -jar <base name>.jar}.</p>
+ * <p>Every file also gets the option that makes the JVM use the {@linkplain #getSharedArchiveFileName CDS archive} or
+ * the {@linkplain #getAotCacheFileName AOT cache} of the application, if any, and a comment stating the
+ * {@linkplain #getJavaRelease Java installation} that they were created with, which is the only one they work with.
+ * Argument files take a Java installation of version {@value #MINIMUM_JAVA_VERSION} or later.</p>
+ * <p>The JVM silently runs without an archive that it can't use, e.g. one created by another Java installation, so
+ * the files don't make it required: {@code -Xshare:on} and {@code -XX:AOTMode=on} are only meant for testing, as
+ * they may make the JVM fail to start. To check whether an installed application uses its archive, add one of them,
+ * or {@code -Xlog:cds}, to its {@code java} command.</p>
+ * <p>Applications register a task of this type (see {@link Application#getJvmArgumentFiles}).</p>
+ *
+ * @see <a href="https://docs.oracle.com/en/java/javase/21/docs/specs/man/java.html#java-command-line-argument-files">
+ * java Command-Line Argument Files</a>
+ */
+public abstract class JvmArgumentFiles extends DefaultTask {
+
+    /**
+     * Name of the build directory where the argument files of applications will be placed.
+     */
+    public static final String DIRECTORY_NAME = "argfiles";
+
+    /**
+     * Extension of the argument files.
+     */
+    public static final String ARGUMENT_FILE_EXTENSION = "args";
+
+    /**
+     * The first Java version whose {@code java} command reads argument files.
+     *
+     * @see <a href="https://bugs.openjdk.org/browse/JDK-8027634">JDK-8027634</a>
+     */
+    public static final int MINIMUM_JAVA_VERSION = 9;
+
+    /**
+     * Profile names go into file names.
+     */
+    private static final Pattern PROFILE_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    /**
+     * Arguments with these characters must be quoted: whitespace separates arguments, quotes and backslashes are
+     * special within quotes, and {@code #} starts comments.
+     */
+    private static final Pattern SPECIAL_CHARACTERS = Pattern.compile("[\\s\"'\\\\#]");
+
+    /**
+     * Creates a {@link JvmArgumentFiles} task.
+     */
+    @Inject
+    public JvmArgumentFiles() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+    }
+
+    /**
+     * The base name of the argument files, e.g. the one of the application JAR.
+     *
+     * @return {@link Property} object specifying the base name of the argument files.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getBaseName();
+
+    /**
+     * The JVM options that go into all argument files. Empty by default.
+     *
+     * @return {@link ListProperty} object specifying the common JVM options.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getJvmArguments();
+
+    /**
+     * The JVM options of every profile, by profile name, e.g. {@code latency} and {@code throughput}. Profile names
+     * may only contain letters, digits, dots, underscores and hyphens. Empty by default.
+     *
+     * @return {@link MapProperty} object specifying the JVM options of the profiles.
+     */
+    @Input
+    @Nonnull
+    public abstract MapProperty<String, List<String>> getProfiles();
+
+    /**
+     * The path of the CDS archive of the application, relative to the installation directory, if it has one.
+     *
+     * @return {@link Property} object specifying the path of the CDS archive.
+     * @see CdsArchive
+     */
+    @Input
+    @Optional
+    @Nonnull
+    public abstract Property<String> getSharedArchiveFileName();
+
+    /**
+     * The path of the AOT cache of the application, relative to the installation directory, if it has one. The JVM
+     * uses it instead of the {@linkplain #getSharedArchiveFileName CDS archive}.
+     *
+     * @return {@link Property} object specifying the path of the AOT cache.
+     * @see AotCache
+     */
+    @Input
+    @Optional
+    @Nonnull
+    public abstract Property<String> getAotCacheFileName();
+
+    /**
+     * The home directory of the Java installation that the application runs with, which is the one that created its
+     * CDS archive or AOT cache. The default is the one of the Java toolchain of the project (or the one running
+     * Gradle, with versions of Gradle before 6.7). Only its {@link #getJavaRelease release} file is an input of this
+     * task.
+     *
+     * @return {@link DirectoryProperty} object specifying the home directory of the Java installation.
+     */
+    @Internal
+    @Nonnull
+    public abstract DirectoryProperty getJavaHome();
+
+    /**
+     * The {@code release} file of the {@linkplain #getJavaHome Java installation} (read-only), which states its
+     * version, vendor and build.
+     *
+     * @return {@link Provider} of the release file of the Java installation.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public Provider<RegularFile> getJavaRelease() {
+        return getJavaHome().file(JavaInstallation.RELEASE_FILE_NAME);
+    }
+
+    /**
+     * The directory to write the argument files into. Its previous contents are deleted when the task is executed.
+     *
+     * @return {@link DirectoryProperty} object specifying the directory of the argument files.
+     */
+    @OutputDirectory
+    @Nonnull
+    public abstract DirectoryProperty getDestinationDirectory();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void write() {
+        Path destinationDir = getDestinationDirectory().get().getAsFile().toPath();
+        try {
+            File javaHome = getJavaHome().get().getAsFile();
+            int javaVersion = JavaInstallation.featureVersion(javaHome);
+            Utils.argument(javaVersion >= MINIMUM_JAVA_VERSION,
+                    "The Java installation in %s is of version %s, but argument files take version %s or later",
+                    javaHome, javaVersion, MINIMUM_JAVA_VERSION);
+            Map<String, List<String>> profiles = getProfiles().get();
+            for (String profile : profiles.keySet()) {
+                Utils.argument(PROFILE_NAME.matcher(profile).matches(), "Invalid profile name '%s'", profile);
+            }
+
+            List<String> lines = new ArrayList<>();
+            String implementor = JavaInstallation.releaseProperty(javaHome, "IMPLEMENTOR");
+            lines.add("# Java " + JavaInstallation.releaseProperty(javaHome, "JAVA_VERSION") +
+                    (implementor.isEmpty() ? "" : " (" + implementor + ")"));
+            if (getAotCacheFileName().isPresent()) {
+                lines.add(quote("-XX:AOTCache=" + getAotCacheFileName().get()));
+            } else if (getSharedArchiveFileName().isPresent()) {
+                lines.add(quote("-XX:SharedArchiveFile=" + getSharedArchiveFileName().get()));
+            }
+            getJvmArguments().get().forEach(argument -> lines.add(quote(argument)));
+
+            Utils.deleteRecursively(destinationDir);
+            Files.createDirectories(destinationDir);
+            String baseName = getBaseName().get();
+            Files.write(destinationDir.resolve(baseName + "." + ARGUMENT_FILE_EXTENSION), lines,
+                    StandardCharsets.UTF_8);
+            for (Map.Entry<String, List<String>> profile : profiles.entrySet()) {
+                List<String> profileLines = new ArrayList<>(lines);
+                profile.getValue().forEach(argument -> profileLines.add(quote(argument)));
+                Files.write(destinationDir.resolve(baseName + "-" + profile.getKey() + "." + ARGUMENT_FILE_EXTENSION),
+                        profileLines, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not write argument files into " + destinationDir, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException("Could not write argument files into " + destinationDir + ": " + e.getMessage(),
+                    e);
+        }
+    }
+
+    /**
+     * Quotes an argument for an argument file, if it contains characters that are special there.
+     *
+     * @param argument The argument.
+     * @return The argument, quoted if necessary.
+     */
+    @Nonnull
+    static String quote(@Nonnull String argument) {
+        if (!argument.isEmpty() && !SPECIAL_CHARACTERS.matcher(argument).find()) {
+            return argument;
+        }
+        return '"' + argument.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + '"';
+    }
+}
@@ -0,0 +1,833 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * <p>Builds a container image of an application, without a container engine or daemon: the image is written as a
+ * TAR archive in the <a href="https://github.com/opencontainers/image-spec/blob/main/image-layout.md">OCI image
+ * layout</a>, which also contains a {@code manifest.json} file, so both {@code docker load} and OCI tools (e.g.
+ * {@code skopeo copy oci-archive:...}) can read it.</p>
+ * <p>The application goes into the {@linkplain #getApplicationDirectory application directory} of the image, laid out
+ * just like in its distribution, and is split into {@linkplain Layer layers} by how often the files change: release
+ * versions of external modules, then snapshot versions, project and local dependencies, and finally the application
+ * JAR itself. After a code change, only the last layers differ from the previous image, so only those have to be
+ * pushed to (and pulled from) a registry. The layers are cached in the {@linkplain #getTemporaryDir temporary
+ * directory} of the task, along with their digests: a layer whose files have the same paths, sizes and last
+ * modification times as in the previous execution isn't built again.</p>
+ * <p>The image is deterministic: file timestamps are not preserved, files are added in a reproducible order, and the
+ * image has a fixed creation time. Its entrypoint runs the application JAR with the {@code java} command, which the
+ * {@linkplain #getBaseImage base image} must provide.</p>
+ * <p>Applications register a task of this type (see {@link Application#getOciImage}).</p>
+ */
+public abstract class OciImage extends DefaultTask {
+
+    /**
+     * Name of the build directory where the images of applications will be placed.
+     */
+    public static final String IMAGE_DIRECTORY_NAME = "images";
+
+    /**
+     * Default value of {@link #getApplicationDirectory()}.
+     */
+    public static final String DEFAULT_APPLICATION_DIRECTORY = "/app";
+
+    /**
+     * Default value of {@link #getArchitecture()}.
+     */
+    public static final String DEFAULT_ARCHITECTURE = "amd64";
+
+    /**
+     * Name of the file in the {@linkplain #getTemporaryDir temporary directory} of the task that describes the cached
+     * layers.
+     */
+    static final String LAYER_INDEX_FILE_NAME = "layers.index";
+
+    /**
+     * Name of the directory in the {@linkplain #getTemporaryDir temporary directory} of the task that holds the cached
+     * layers.
+     */
+    static final String LAYER_DIRECTORY_NAME = "layers";
+
+    static final String MEDIA_TYPE_INDEX = "application/vnd.oci.image.index.v1+json";
+    static final String MEDIA_TYPE_MANIFEST = "application/vnd.oci.image.manifest.v1+json";
+    static final String MEDIA_TYPE_CONFIG = "application/vnd.oci.image.config.v1+json";
+    private static final String MEDIA_TYPE_DOCKER_INDEX = "application/vnd.docker.distribution.manifest.list.v2+json";
+    private static final String MEDIA_TYPE_DOCKER_MANIFEST = "application/vnd.docker.distribution.manifest.v2+json";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String DIGEST_PREFIX = "sha256:";
+    private static final String BLOB_DIRECTORY = "blobs/sha256";
+    private static final String OS = "linux";
+
+    /**
+     * The creation time of the image, the same as its file timestamps.
+     */
+    private static final String CREATED = "1970-01-01T00:00:01Z";
+
+    /**
+     * The last modification time of the files in the image, in seconds since the epoch. Not zero, because some tools
+     * treat that as a missing timestamp.
+     */
+    private static final long MOD_TIME = 1;
+
+    @Nonnull
+    private final ConfigurableFileCollection dependencyFiles;
+    @Nonnull
+    private final MapProperty<File, ApplicationJar.Dependency> dependencies;
+    @Nonnull
+    private final MapProperty<File, RelativePath> dependencyDestinations;
+    @Nonnull
+    private final Property<File> rawJarPath;
+
+    /**
+     * Creates an {@link OciImage} task.
+     */
+    @Inject
+    public OciImage() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        ObjectFactory objects = getObjects();
+        dependencyFiles = objects.fileCollection();
+        dependencies = objects.mapProperty(File.class, ApplicationJar.Dependency.class);
+        dependencyDestinations = objects.mapProperty(File.class, RelativePath.class);
+        rawJarPath = objects.property(File.class);
+        getApplicationDirectory().convention(DEFAULT_APPLICATION_DIRECTORY);
+        getArchitecture().convention(DEFAULT_ARCHITECTURE);
+        getLayerCompression().convention(LayerCompression.GZIP);
+        getCompressionThreads().convention(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Takes the application JAR and the dependencies of the image from an {@link ApplicationJar} task, without
+     * realizing the task.
+     *
+     * @param applicationJar The {@link TaskProvider} of the task.
+     */
+    void from(@Nonnull TaskProvider<? extends ApplicationJar> applicationJar) {
+        Provider<Map<File, ApplicationJar.Dependency>> resolvedDependencies =
+                ApplicationJar.resolvedDependencies(applicationJar);
+        getApplicationJarFile().set(applicationJar.flatMap(ApplicationJar::getArchiveFile));
+        dependencyFiles.from(resolvedDependencies.map(Map::keySet)).builtBy(applicationJar);
+        dependencies.set(resolvedDependencies);
+        dependencyDestinations.set(ApplicationJar.dependencyDestinations(applicationJar));
+        rawJarPath.set(ApplicationJar.rawJarPath(applicationJar));
+    }
+
+    /**
+     * The application JAR to put into the image.
+     *
+     * @return {@link RegularFileProperty} object specifying the application JAR.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    @Nonnull
+    public abstract RegularFileProperty getApplicationJarFile();
+
+    /**
+     * The dependency artifact files of the application (read-only).
+     *
+     * @return {@link FileCollection} of the dependency artifact files.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The file collection is only exposed as read-only")
+    public FileCollection getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * The {@linkplain Layer layer} and the relative path within the application directory of every dependency
+     * artifact file, in classpath order (read-only). These depend on how the dependencies have been resolved, which is
+     * not reflected by the {@link #getDependencyFiles dependencyFiles}.
+     *
+     * @return {@link Provider} of the layers and relative paths of the dependency artifact files.
+     */
+    @Input
+    @Nonnull
+    public Provider<List<String>> getDependencyPaths() {
+        return dependencyDestinations.map(destinations -> {
+            List<String> paths = new ArrayList<>(destinations.size());
+            destinations.forEach((file, relativePath) ->
+                    paths.add(layerOf(file).getName() + ':' + relativePath.getPathString()));
+            return paths;
+        });
+    }
+
+    /**
+     * The absolute path of the directory in the image to put the application into, which is also the working
+     * directory of the image. The default is {@value #DEFAULT_APPLICATION_DIRECTORY}.
+     *
+     * @return {@link Property} object specifying the application directory.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getApplicationDirectory();
+
+    /**
+     * <p>An image to build the image on, in the form of an
+     * <a href="https://github.com/opencontainers/image-spec/blob/main/image-layout.md">OCI image layout</a> directory.
+     * It must provide the {@code java} command, e.g. a JRE image, which can be fetched with
+     * {@code skopeo copy docker://eclipse-temurin:21-jre oci:base-image}. Its layers and configuration (e.g. its
+     * environment variables) are kept, except for its entrypoint and command.</p>
+     * <p>If the base image is multi-platform, the image for the {@linkplain #getArchitecture architecture} gets
+     * used. If there is no base image, the image only contains the application.</p>
+     *
+     * @return {@link DirectoryProperty} object specifying the OCI image layout directory of the base image.
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @Optional
+    @Nonnull
+    public abstract DirectoryProperty getBaseImage();
+
+    /**
+     * The CPU architecture of the image, in the format of {@code GOARCH} values (e.g. {@code amd64} or
+     * {@code arm64}). It selects the image to use from a multi-platform {@link #getBaseImage baseImage}. The default
+     * is {@value #DEFAULT_ARCHITECTURE}.
+     *
+     * @return {@link Property} object specifying the architecture of the image.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getArchitecture();
+
+    /**
+     * The reference that the image gets tagged with when loaded, e.g. {@code my-app:1.0}.
+     *
+     * @return {@link Property} object specifying the reference of the image.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getImageReference();
+
+    /**
+     * How the layers of the application get compressed. The default is {@link LayerCompression#GZIP GZIP}.
+     *
+     * @return {@link Property} object specifying the compression of the layers.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<LayerCompression> getLayerCompression();
+
+    /**
+     * The number of threads to compress layers on, when using {@link LayerCompression#ZSTD ZSTD} compression. The
+     * default is the number of processors available to the JVM. This does not affect the output, so it is not an
+     * {@link Input} of this task.
+     *
+     * @return {@link Property} object specifying the number of threads.
+     */
+    @Internal
+    @Nonnull
+    public abstract Property<Integer> getCompressionThreads();
+
+    /**
+     * The image archive to create.
+     *
+     * @return {@link RegularFileProperty} object specifying the image archive.
+     */
+    @OutputFile
+    @Nonnull
+    public abstract RegularFileProperty getImageFile();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    @Nonnull
+    private Layer layerOf(@Nonnull File file) {
+        ApplicationJar.Dependency dependency = dependencies.get().get(file);
+        if (file.equals(rawJarPath.getOrNull())) {
+            // In LAUNCHER mode, the raw JAR holds the code of the application
+            return Layer.APPLICATION;
+        }
+        return dependency != null && dependency.isRelease() ? Layer.DEPENDENCIES : Layer.SNAPSHOT_DEPENDENCIES;
+    }
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void build() {
+        File imageFile = getImageFile().get().getAsFile();
+        try {
+            String applicationDirectory = applicationDirectory();
+            File applicationJarFile = getApplicationJarFile().get().getAsFile();
+            Map<Layer, SortedMap<String, File>> layerContents = new LinkedHashMap<>();
+            for (Layer layer : Layer.values()) {
+                layerContents.put(layer, new TreeMap<>());
+            }
+            String prefix = applicationDirectory.substring(1) + '/';
+            layerContents.get(Layer.APPLICATION).put(prefix + applicationJarFile.getName(), applicationJarFile);
+            dependencyDestinations.get().forEach((file, relativePath) ->
+                    layerContents.get(layerOf(file)).put(prefix + relativePath.getPathString(), file));
+
+            BaseImage baseImage = getBaseImage().isPresent() ?
+                    BaseImage.read(getBaseImage().get().getAsFile().toPath(), getArchitecture().get()) :
+                    null;
+            LayerCache cache = new LayerCache(getTemporaryDir().toPath(), getLayerCompression().get(),
+                    getCompressionThreads().get());
+            List<Blob> layers = new ArrayList<>();
+            for (Map.Entry<Layer, SortedMap<String, File>> layer : layerContents.entrySet()) {
+                if (!layer.getValue().isEmpty()) {
+                    layers.add(cache.layer(layer.getKey(), layer.getValue()));
+                }
+            }
+            cache.save();
+
+            writeImage(imageFile, baseImage, layers,
+                    Arrays.asList("java", "-jar", applicationDirectory + '/' + applicationJarFile.getName()));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GradleException("Could not build image " + imageFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException("Could not build image " + imageFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Nonnull
+    private String applicationDirectory() {
+        String applicationDirectory = Utils.nonEmpty(getApplicationDirectory().get(), "applicationDirectory");
+        while (applicationDirectory.length() > 1 && applicationDirectory.endsWith("/")) {
+            applicationDirectory = applicationDirectory.substring(0, applicationDirectory.length() - 1);
+        }
+        Utils.argument(applicationDirectory.startsWith("/") && applicationDirectory.length() > 1,
+                "applicationDirectory must be an absolute path other than the root: %s", applicationDirectory);
+        return applicationDirectory;
+    }
+
+    /**
+     * Writes the image archive: the blobs (layers, configuration and manifest), followed by the files describing the
+     * image.
+     */
+    private void writeImage(@Nonnull File imageFile, @Nullable BaseImage baseImage, @Nonnull List<Blob> layers,
+            @Nonnull List<String> entrypoint) throws IOException, GeneralSecurityException {
+        Map<String, Object> config = baseImage != null ? baseImage.config : new LinkedHashMap<>();
+        config.put("created", CREATED);
+        config.putIfAbsent("architecture", getArchitecture().get());
+        config.putIfAbsent("os", OS);
+        Map<String, Object> containerConfig = JsonFormat.asObject(
+                config.computeIfAbsent("config", key -> new LinkedHashMap<>()), "config");
+        containerConfig.put("Entrypoint", entrypoint);
+        containerConfig.remove("Cmd");
+        containerConfig.put("WorkingDir", applicationDirectory());
+        Map<String, Object> rootfs = JsonFormat.asObject(
+                config.computeIfAbsent("rootfs", key -> new LinkedHashMap<>()), "rootfs");
+        rootfs.put("type", "layers");
+        List<Object> diffIds = JsonFormat.asArray(rootfs.computeIfAbsent("diff_ids", key -> new ArrayList<>()),
+                "diff_ids");
+        layers.forEach(layer -> diffIds.add(layer.diffId));
+        // The history is optional, but if there is one, it must cover every layer
+        if (baseImage == null || config.containsKey("history")) {
+            List<Object> history = JsonFormat.asArray(
+                    config.computeIfAbsent("history", key -> new ArrayList<>()), "history");
+            for (Blob layer : layers) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("created", CREATED);
+                entry.put("created_by", ApplicationPlugin.class.getName() + " (" + layer.name + ")");
+                history.add(entry);
+            }
+        }
+        Blob configBlob = Blob.of("config", MEDIA_TYPE_CONFIG, JsonFormat.write(config));
+
+        List<Object> layerDescriptors = new ArrayList<>();
+        Map<String, Path> blobFiles = new LinkedHashMap<>();
+        if (baseImage != null) {
+            for (Object descriptor : baseImage.layers) {
+                String digest = digest(JsonFormat.asObject(descriptor, "layer"));
+                layerDescriptors.add(descriptor);
+                blobFiles.put(digest, baseImage.blobFile(digest));
+            }
+        }
+        for (Blob layer : layers) {
+            layerDescriptors.add(layer.descriptor());
+            blobFiles.put(layer.digest, Utils.nonNull(layer.file, "file"));
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("schemaVersion", 2);
+        manifest.put("mediaType", MEDIA_TYPE_MANIFEST);
+        manifest.put("config", configBlob.descriptor());
+        manifest.put("layers", layerDescriptors);
+        Blob manifestBlob = Blob.of("manifest", MEDIA_TYPE_MANIFEST, JsonFormat.write(manifest));
+
+        String reference = Utils.nonEmpty(getImageReference().get(), "imageReference");
+        Map<String, Object> index = new LinkedHashMap<>();
+        index.put("schemaVersion", 2);
+        index.put("mediaType", MEDIA_TYPE_INDEX);
+        Map<String, Object> manifestDescriptor = manifestBlob.descriptor();
+        Map<String, Object> annotations = new LinkedHashMap<>();
+        annotations.put("io.containerd.image.name", reference);
+        int tagStart = reference.lastIndexOf(':');
+        if (tagStart > reference.lastIndexOf('/')) {
+            annotations.put("org.opencontainers.image.ref.name", reference.substring(tagStart + 1));
+        }
+        manifestDescriptor.put("annotations", annotations);
+        index.put("manifests", Collections.singletonList(manifestDescriptor));
+
+        // The manifest of `docker save`, for versions of Docker that can't load OCI image layouts
+        Map<String, Object> dockerManifest = new LinkedHashMap<>();
+        dockerManifest.put("Config", blobPath(configBlob.digest));
+        dockerManifest.put("RepoTags", Collections.singletonList(reference));
+        List<Object> dockerLayers = new ArrayList<>();
+        blobFiles.keySet().forEach(digest -> dockerLayers.add(blobPath(digest)));
+        dockerManifest.put("Layers", dockerLayers);
+
+        try (OutputStream output = Files.newOutputStream(imageFile.toPath())) {
+            TarFormat.Writer writer = new TarFormat.Writer(output);
+            writer.writeDirectory("blobs", 0755, MOD_TIME);
+            writer.writeDirectory(BLOB_DIRECTORY, 0755, MOD_TIME);
+            for (Map.Entry<String, Path> blob : blobFiles.entrySet()) {
+                Path file = blob.getValue();
+                writer.writeFile(blobPath(blob.getKey()), 0644, MOD_TIME, Files.size(file),
+                        out -> Files.copy(file, out));
+            }
+            writeBytes(writer, blobPath(configBlob.digest), configBlob.content);
+            writeBytes(writer, blobPath(manifestBlob.digest), manifestBlob.content);
+            writeBytes(writer, "index.json", JsonFormat.write(index).getBytes(StandardCharsets.UTF_8));
+            writeBytes(writer, "manifest.json",
+                    JsonFormat.write(Collections.singletonList(dockerManifest)).getBytes(StandardCharsets.UTF_8));
+            writeBytes(writer, "oci-layout", "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes(StandardCharsets.UTF_8));
+            writer.close();
+        }
+    }
+
+    private static void writeBytes(@Nonnull TarFormat.Writer writer, @Nonnull String name, @Nonnull byte[] content)
+            throws IOException {
+        writer.writeFile(name, 0644, MOD_TIME, content.length, out -> out.write(content));
+    }
+
+    @Nonnull
+    private static String blobPath(@Nonnull String digest) {
+        return BLOB_DIRECTORY + '/' + digest.substring(DIGEST_PREFIX.length());
+    }
+
+    /**
+     * Returns the digest of the content that a descriptor points to.
+     *
+     * @param descriptor The descriptor.
+     * @return The digest, which is guaranteed to be a SHA-256 digest, so it can safely be used in a file path.
+     */
+    @Nonnull
+    private static String digest(@Nonnull Map<String, Object> descriptor) {
+        String digest = JsonFormat.asString(descriptor.get("digest"), "digest");
+        Utils.argument(digest.matches(DIGEST_PREFIX + "[0-9a-f]{64}"), "Unsupported digest: %s", digest);
+        return digest;
+    }
+
+    /**
+     * The layers that an image of an application consists of, ordered from the one that changes the least often to the
+     * one that changes the most often.
+     */
+    enum Layer {
+
+        /**
+         * Release versions of external modules, which never change.
+         */
+        DEPENDENCIES("dependencies"),
+
+        /**
+         * Dependencies that may change from one build to the next: snapshot versions of external modules, other
+         * projects, and local files.
+         */
+        SNAPSHOT_DEPENDENCIES("snapshot-dependencies"),
+
+        /**
+         * The application JAR, along with the raw JAR in {@link ApplicationJar.PackagingMode#LAUNCHER LAUNCHER} mode.
+         */
+        APPLICATION("application");
+
+        @Nonnull
+        private final String name;
+
+        Layer(@Nonnull String name) {
+            this.name = name;
+        }
+
+        @Nonnull
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The ways in which the layers of the application can be compressed.
+     */
+    public enum LayerCompression {
+
+        /**
+         * Compresses the layers with gzip, which every container tool supports.
+         */
+        GZIP("application/vnd.oci.image.layer.v1.tar+gzip"),
+
+        /**
+         * Compresses the layers with Zstandard, which decompresses several times faster than gzip, on multiple
+         * threads. Requires a recent container runtime (e.g. Docker 23 or later).
+         */
+        ZSTD("application/vnd.oci.image.layer.v1.tar+zstd");
+
+        @Nonnull
+        private final String mediaType;
+
+        LayerCompression(@Nonnull String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        @Nonnull
+        OutputStream compress(@Nonnull OutputStream output, int threads, @Nonnull String name) throws IOException {
+            return this == GZIP ?
+                    new GZIPOutputStream(output, 64 * 1024) :
+                    new ZstdOutputStream(output, DistributionTarZst.DEFAULT_COMPRESSION_LEVEL, threads,
+                            "Compressing " + name);
+        }
+    }
+
+    /**
+     * Content addressed by its digest, along with its media type. Layers are kept in a file, anything else in memory.
+     */
+    private static final class Blob {
+
+        @Nonnull
+        private final String name;
+        @Nonnull
+        private final String mediaType;
+        @Nonnull
+        private final String digest;
+        private final long size;
+        @Nonnull
+        private final String diffId;
+        @Nullable
+        private final Path file;
+        @Nonnull
+        private final byte[] content;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly") // Blobs are only created from arrays that nothing else holds
+        Blob(@Nonnull String name, @Nonnull String mediaType, @Nonnull String digest, long size,
+                @Nonnull String diffId, @Nullable Path file, @Nonnull byte[] content) {
+            this.name = name;
+            this.mediaType = mediaType;
+            this.digest = digest;
+            this.size = size;
+            this.diffId = diffId;
+            this.file = file;
+            this.content = content;
+        }
+
+        @Nonnull
+        static Blob of(@Nonnull String name, @Nonnull String mediaType, @Nonnull String json)
+                throws GeneralSecurityException {
+            byte[] content = json.getBytes(StandardCharsets.UTF_8);
+            String digest = DIGEST_PREFIX + Utils.hex(MessageDigest.getInstance(HASH_ALGORITHM).digest(content));
+            return new Blob(name, mediaType, digest, content.length, digest, null, content);
+        }
+
+        @Nonnull
+        Map<String, Object> descriptor() {
+            Map<String, Object> descriptor = new LinkedHashMap<>();
+            descriptor.put("mediaType", mediaType);
+            descriptor.put("digest", digest);
+            descriptor.put("size", size);
+            return descriptor;
+        }
+    }
+
+    /**
+     * Builds the layers of the application, reusing the ones built by the previous execution of the task when their
+     * files haven't changed. The cached layers are described by an index file, mapping the name of every layer to a
+     * hash of the paths, sizes and last modification times of its files, along with the digest, size and uncompressed
+     * digest of the layer.
+     */
+    private static final class LayerCache {
+
+        @Nonnull
+        private final Path indexFile;
+        @Nonnull
+        private final Path layerDir;
+        @Nonnull
+        private final LayerCompression compression;
+        private final int threads;
+        @Nonnull
+        private final Properties previousIndex = new Properties();
+        @Nonnull
+        private final Properties index = new Properties();
+
+        LayerCache(@Nonnull Path temporaryDir, @Nonnull LayerCompression compression, int threads)
+                throws IOException {
+            this.indexFile = temporaryDir.resolve(LAYER_INDEX_FILE_NAME);
+            this.layerDir = temporaryDir.resolve(LAYER_DIRECTORY_NAME);
+            this.compression = compression;
+            this.threads = threads;
+            try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                previousIndex.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                // Without a usable index, every layer gets built
+                previousIndex.clear();
+            }
+            // If anything goes wrong from here on, the index may no longer describe the cached layers
+            Files.deleteIfExists(indexFile);
+            Files.createDirectories(layerDir);
+        }
+
+        /**
+         * Returns a layer, building it unless it is cached already.
+         *
+         * @param layer The layer.
+         * @param files The files of the layer, by their paths within the image.
+         * @return The layer.
+         * @throws IOException If the layer can't be built.
+         * @throws GeneralSecurityException If the hash algorithm is not available.
+         */
+        @Nonnull
+        Blob layer(@Nonnull Layer layer, @Nonnull SortedMap<String, File> files)
+                throws IOException, GeneralSecurityException {
+            String key = key(files);
+            String[] cached = previousIndex.getProperty(layer.getName(), "").split(" ");
+            if (cached.length == 4 && cached[0].equals(key)) {
+                Path file = layerDir.resolve(cached[1]);
+                try {
+                    long size = Long.parseLong(cached[2]);
+                    if (Files.isRegularFile(file) && Files.size(file) == size) {
+                        return add(layer, file, cached[1], size, cached[3], key);
+                    }
+                } catch (NumberFormatException e) {
+                    // Build the layer again
+                }
+            }
+            return build(layer, files, key);
+        }
+
+        @Nonnull
+        private Blob build(@Nonnull Layer layer, @Nonnull SortedMap<String, File> files, @Nonnull String key)
+                throws IOException, GeneralSecurityException {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            MessageDigest diffIdDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+            Path temporaryFile = Files.createTempFile(layerDir, layer.getName(), ".tmp");
+            try (OutputStream file = new DigestOutputStream(Files.newOutputStream(temporaryFile), digest);
+                    OutputStream tar = new DigestOutputStream(
+                            compression.compress(file, threads, layer.getName() + " layer"), diffIdDigest)) {
+                TarFormat.Writer writer = new TarFormat.Writer(tar);
+                for (String directory : directories(files.keySet())) {
+                    writer.writeDirectory(directory, 0755, MOD_TIME);
+                }
+                for (Map.Entry<String, File> entry : files.entrySet()) {
+                    Path source = entry.getValue().toPath();
+                    writer.writeFile(entry.getKey(), 0644, MOD_TIME, Files.size(source),
+                            output -> Files.copy(source, output));
+                }
+                writer.close();
+            }
+            String hash = Utils.hex(digest.digest());
+            Path file = layerDir.resolve(hash);
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+            return add(layer, file, hash, Files.size(file), Utils.hex(diffIdDigest.digest()), key);
+        }
+
+        @Nonnull
+        private Blob add(@Nonnull Layer layer, @Nonnull Path file, @Nonnull String hash, long size,
+                @Nonnull String diffIdHash, @Nonnull String key) {
+            index.setProperty(layer.getName(), key + ' ' + hash + ' ' + size + ' ' + diffIdHash);
+            return new Blob(layer.getName(), compression.mediaType, DIGEST_PREFIX + hash, size,
+                    DIGEST_PREFIX + diffIdHash, file, new byte[0]);
+        }
+
+        /**
+         * Returns the directories containing the given files, parents first. Every layer contains all of its
+         * directories, so that they get the same permissions whatever the layers below contain.
+         */
+        @Nonnull
+        private static Set<String> directories(@Nonnull Set<String> paths) {
+            Set<String> directories = new TreeSet<>();
+            for (String path : paths) {
+                for (int end = path.indexOf('/'); end >= 0; end = path.indexOf('/', end + 1)) {
+                    directories.add(path.substring(0, end));
+                }
+            }
+            return directories;
+        }
+
+        /**
+         * Hashes what identifies the content of a layer: the compression, and the paths, sizes and last modification
+         * times of its files.
+         */
+        @Nonnull
+        private String key(@Nonnull SortedMap<String, File> files) throws IOException, GeneralSecurityException {
+            StringBuilder key = new StringBuilder(compression.name()).append('\n');
+            for (Map.Entry<String, File> entry : files.entrySet()) {
+                Path source = entry.getValue().toPath();
+                key.append(entry.getKey()).append('\0').append(source.toAbsolutePath()).append('\0')
+                        .append(Files.size(source)).append('\0')
+                        .append(Files.getLastModifiedTime(source).toMillis()).append('\n');
+            }
+            byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+            return Utils.hex(MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes));
+        }
+
+        /**
+         * Writes the index, and deletes the cached layers that are no longer used.
+         *
+         * @throws IOException If the index can't be written.
+         */
+        void save() throws IOException {
+            Set<String> used = new HashSet<>();
+            index.stringPropertyNames().forEach(layer -> used.add(index.getProperty(layer).split(" ")[1]));
+            try (DirectoryStream<Path> cachedFiles = Files.newDirectoryStream(layerDir)) {
+                for (Path cachedFile : cachedFiles) {
+                    if (!used.contains(Utils.nonNull(cachedFile.getFileName(), "fileName").toString())) {
+                        Files.delete(cachedFile);
+                    }
+                }
+            }
+            try (OutputStream output = Files.newOutputStream(indexFile);
+                    Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                index.store(writer, null);
+            }
+        }
+    }
+
+    /**
+     * The image that an image gets built on, read from an OCI image layout directory.
+     */
+    private static final class BaseImage {
+
+        @Nonnull
+        private final Path layoutDir;
+        @Nonnull
+        private final Map<String, Object> config;
+        @Nonnull
+        private final List<Object> layers;
+
+        private BaseImage(@Nonnull Path layoutDir, @Nonnull Map<String, Object> config, @Nonnull List<Object> layers) {
+            this.layoutDir = layoutDir;
+            this.config = config;
+            this.layers = layers;
+        }
+
+        /**
+         * Reads the image for an architecture from an OCI image layout directory. Image indexes (for multi-platform
+         * images) are followed to the first image manifest whose platform matches.
+         *
+         * @param layoutDir The OCI image layout directory.
+         * @param architecture The architecture of the image.
+         * @return The base image.
+         * @throws IOException If the files of the image can't be read.
+         * @throws IllegalArgumentException If the image is invalid, or doesn't have an image for the architecture.
+         */
+        @Nonnull
+        static BaseImage read(@Nonnull Path layoutDir, @Nonnull String architecture) throws IOException {
+            Map<String, Object> index = JsonFormat.parseObject(readString(layoutDir.resolve("index.json")));
+            Map<String, Object> manifest = findManifest(layoutDir, index, architecture);
+            Utils.argument(manifest != null, "The base image in %s has no image for %s/%s",
+                    layoutDir, OS, architecture);
+            Map<String, Object> configDescriptor = JsonFormat.asObject(manifest.get("config"), "config");
+            BaseImage image = new BaseImage(layoutDir, new LinkedHashMap<>(), new ArrayList<>(
+                    JsonFormat.asArray(manifest.get("layers"), "layers")));
+            image.config.putAll(JsonFormat.parseObject(readString(image.blobFile(digest(configDescriptor)))));
+            return image;
+        }
+
+        @Nullable
+        private static Map<String, Object> findManifest(@Nonnull Path layoutDir, @Nonnull Map<String, Object> index,
+                @Nonnull String architecture) throws IOException {
+            for (Object element : JsonFormat.asArray(index.get("manifests"), "manifests")) {
+                Map<String, Object> descriptor = JsonFormat.asObject(element, "manifest");
+                Object platform = descriptor.get("platform");
+                if (platform != null && !(OS.equals(JsonFormat.asObject(platform, "platform").get("os")) &&
+                        architecture.equals(JsonFormat.asObject(platform, "platform").get("architecture")))) {
+                    continue;
+                }
+                Object mediaType = descriptor.get("mediaType");
+                Path file = blobFile(layoutDir, digest(descriptor));
+                if (MEDIA_TYPE_INDEX.equals(mediaType) || MEDIA_TYPE_DOCKER_INDEX.equals(mediaType)) {
+                    Map<String, Object> manifest = findManifest(layoutDir,
+                            JsonFormat.parseObject(readString(file)), architecture);
+                    if (manifest != null) {
+                        return manifest;
+                    }
+                } else if (MEDIA_TYPE_MANIFEST.equals(mediaType) || MEDIA_TYPE_DOCKER_MANIFEST.equals(mediaType)) {
+                    return JsonFormat.parseObject(readString(file));
+                }
+            }
+            return null;
+        }
+
+        @Nonnull
+        Path blobFile(@Nonnull String digest) {
+            return blobFile(layoutDir, digest);
+        }
+
+        @Nonnull
+        private static Path blobFile(@Nonnull Path layoutDir, @Nonnull String digest) {
+            return layoutDir.resolve(blobPath(digest));
+        }
+
+        @Nonnull
+        private static String readString(@Nonnull Path file) throws IOException {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>A {@link CopyAction} that writes a ZIP archive, compressing its entries on multiple threads. The content of every
+ * file is split into {@linkplain #BLOCK_SIZE blocks} that are {@linkplain ZipFormat#deflate deflated} independently,
+ * then concatenated in order, so large files benefit from parallelism just as much as many small files do.</p>
+ * <p>Optionally, the contents of regular files are read on the same threads too, along with their CRC-32 checksums,
+ * which pays off for archives made up of thousands of files. Files whose content is filtered are always read by the
+ * thread that processes the copy. As Gradle extracts files from archives when their {@link FileCopyDetails#getFile
+ * file} is requested, this is best avoided when many of the files come from other archives.</p>
+ * <p>The output only depends on the entries, never on the number of threads or on their scheduling: block boundaries
+ * are fixed, and entries are written in the order they are received.</p>
+ */
+final class ParallelDeflateCopyAction implements CopyAction {
+
+    /**
+     * Size of the blocks that file contents are split into for compression.
+     */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * Maximum amount of uncompressed content that may be waiting to be written to the archive at any time. When this
+     * is exceeded, no further content is read until the oldest pending entries have been written.
+     */
+    private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Largest file content that can be held in a single array.
+     */
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    @Nonnull
+    private final String archiveDescription;
+    @Nonnull
+    private final File archiveFile;
+    private final int threads;
+    private final int method;
+    @Nonnull
+    private final Spec<? super FileCopyDetails> storedFiles;
+    private final boolean preserveFileTimestamps;
+    private final boolean readFilesConcurrently;
+
+    /**
+     * Creates a {@link ParallelDeflateCopyAction}.
+     *
+     * @param archiveDescription What the archive is, for error messages (e.g. {@code "application JAR"}).
+     * @param archiveFile The archive file to create.
+     * @param threads The number of threads to compress entries on.
+     * @param method The compression method of file entries: {@link ZipFormat#METHOD_STORED} or
+     * {@link ZipFormat#METHOD_DEFLATED}.
+     * @param storedFiles The files to store without compression, regardless of {@code method}.
+     * @param preserveFileTimestamps Whether to keep the last modification times of the files, instead of using a
+     * constant timestamp.
+     * @param readFilesConcurrently Whether to read the contents of regular files on the compression threads.
+     */
+    ParallelDeflateCopyAction(@Nonnull String archiveDescription, @Nonnull File archiveFile, int threads, int method,
+            @Nonnull Spec<? super FileCopyDetails> storedFiles, boolean preserveFileTimestamps,
+            boolean readFilesConcurrently) {
+        Utils.argument(threads > 0, "compressionThreads must be positive: %s", threads);
+        this.archiveDescription = archiveDescription;
+        this.archiveFile = archiveFile;
+        this.threads = threads;
+        this.method = method;
+        this.storedFiles = storedFiles;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+        this.readFilesConcurrently = readFilesConcurrently;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("PMD.PreserveStackTrace") // Wrapper exceptions are replaced by the GradleException
+    public WorkResult execute(@Nonnull CopyActionProcessingStream stream) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new CompressionThreadFactory());
+        try (FileChannel target = FileChannel.open(archiveFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(target);
+            PendingEntries pendingEntries = new PendingEntries(writer);
+            stream.process(details -> {
+                try {
+                    pendingEntries.add(details.isDirectory() ?
+                            new PendingEntry(details, dosTime(details)) :
+                            new PendingEntry(details, dosTime(details), method(details), sourceFile(details),
+                                    executor));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            pendingEntries.writeAll();
+            writer.close();
+        } catch (IOException e) {
+            throw new GradleException("Could not create " + archiveDescription + " " + archiveFile, e);
+        } catch (UncheckedIOException e) {
+            throw new GradleException("Could not create " + archiveDescription + " " + archiveFile, e.getCause());
+        } catch (CompletionException e) {
+            // Thrown when joining an entry whose reading or compression failed on a compression thread
+            throw new GradleException("Could not create " + archiveDescription + " " + archiveFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return WorkResults.didWork(true);
+    }
+
+    private int dosTime(@Nonnull FileCopyDetails details) {
+        return preserveFileTimestamps ? ZipFormat.toDosTime(details.getLastModified()) : ZipFormat.CONSTANT_DOS_TIME;
+    }
+
+    private int method(@Nonnull FileCopyDetails details) {
+        return storedFiles.isSatisfiedBy(details) ? ZipFormat.METHOD_STORED : method;
+    }
+
+    /**
+     * Returns the file to read the content of an entry from, if that may happen on another thread.
+     *
+     * @param details The details of the file.
+     * @return The file to read, or {@code null} if the content has to be read through {@code details}.
+     */
+    @Nullable
+    private File sourceFile(@Nonnull FileCopyDetails details) {
+        if (!readFilesConcurrently) {
+            return null;
+        }
+        try {
+            return details.getFile();
+        } catch (UnsupportedOperationException e) {
+            // Thrown by Gradle when the content of the file is filtered, so it can't be read from the file itself
+            return null;
+        }
+    }
+
+    /**
+     * Entries that have been received, but not yet written to the archive, in the order they were received.
+     */
+    private static final class PendingEntries {
+
+        @Nonnull
+        private final ZipFormat.Writer writer;
+        @Nonnull
+        private final Deque<PendingEntry> entries = new ArrayDeque<>();
+        private long pendingBytes;
+
+        PendingEntries(@Nonnull ZipFormat.Writer writer) {
+            this.writer = writer;
+        }
+
+        void add(@Nonnull PendingEntry entry) throws IOException {
+            entries.addLast(entry);
+            pendingBytes += entry.pendingSize;
+            while (pendingBytes > MAX_PENDING_BYTES) {
+                writeFirst();
+            }
+        }
+
+        void writeAll() throws IOException {
+            while (!entries.isEmpty()) {
+                writeFirst();
+            }
+        }
+
+        private void writeFirst() throws IOException {
+            PendingEntry entry = entries.removeFirst();
+            pendingBytes -= entry.pendingSize;
+            entry.write(writer);
+        }
+    }
+
+    /**
+     * An entry whose content is possibly still being read and compressed.
+     */
+    private static final class PendingEntry {
+
+        @Nonnull
+        private final String name;
+        private final int dosTime;
+        private final int unixMode;
+        private final int method;
+        private final long pendingSize;
+        @Nullable
+        private final CompletableFuture<byte[]> content;
+        @Nullable
+        private final CompletableFuture<Long> crc;
+        @Nullable
+        private final CompletableFuture<byte[]> data;
+
+        /**
+         * Creates a pending directory entry.
+         *
+         * @param details The details of the directory.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         */
+        PendingEntry(@Nonnull FileCopyDetails details, int dosTime) {
+            this.name = details.getRelativePath().getPathString() + '/';
+            this.dosTime = dosTime;
+            this.unixMode = details.getMode();
+            this.method = ZipFormat.METHOD_STORED;
+            this.pendingSize = 0;
+            this.content = null;
+            this.crc = null;
+            this.data = null;
+        }
+
+        /**
+         * Creates a pending file entry, reading its content (or submitting it for reading), and submitting its
+         * checksum and blocks for calculation and compression.
+         *
+         * @param details The details of the file.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @param method The compression method to use.
+         * @param file The file to read the content from on the executor, or {@code null} to read it through
+         * {@code details} right away.
+         * @param executor The executor to read, checksum and compress contents on.
+         * @throws IOException If the file is too large to be compressed in memory.
+         */
+        PendingEntry(@Nonnull FileCopyDetails details, int dosTime, int method, @Nullable File file,
+                @Nonnull ExecutorService executor) throws IOException {
+            this.name = details.getRelativePath().getPathString();
+            this.dosTime = dosTime;
+            this.unixMode = details.getMode();
+            this.method = method;
+            this.pendingSize = details.getSize();
+            if (pendingSize > MAX_FILE_SIZE) {
+                throw new ZipException("File is too large: " + name);
+            }
+            if (file != null) {
+                this.content = readAsync(file, executor);
+            } else {
+                ByteArrayOutputStream output = new ByteArrayOutputStream((int) pendingSize);
+                details.copyTo(output);
+                this.content = CompletableFuture.completedFuture(output.toByteArray());
+            }
+            this.crc = content.thenApplyAsync(ZipFormat.CompressedFile::crc, executor);
+            this.data = method == ZipFormat.METHOD_DEFLATED ?
+                    content.thenComposeAsync(bytes -> deflate(bytes, executor), executor) :
+                    content;
+        }
+
+        /**
+         * Reads the content of a file on an executor. I/O errors complete the result exceptionally with the
+         * {@link IOException} itself, so that it becomes the cause of the {@link CompletionException} thrown when the
+         * result is joined.
+         */
+        @Nonnull
+        private static CompletableFuture<byte[]> readAsync(@Nonnull File file, @Nonnull Executor executor) {
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    result.complete(Files.readAllBytes(file.toPath()));
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result;
+        }
+
+        @Nonnull
+        private static CompletableFuture<byte[]> deflate(@Nonnull byte[] bytes, @Nonnull Executor executor) {
+            List<CompletableFuture<byte[]>> blocks = new ArrayList<>(bytes.length / BLOCK_SIZE + 1);
+            int offset = 0;
+            do {
+                int blockOffset = offset;
+                int blockLength = Math.min(BLOCK_SIZE, bytes.length - offset);
+                boolean last = blockOffset + blockLength == bytes.length;
+                blocks.add(CompletableFuture.supplyAsync(
+                        () -> ZipFormat.deflate(bytes, blockOffset, blockLength, last), executor));
+                offset += blockLength;
+            } while (offset < bytes.length);
+            return CompletableFuture.allOf(blocks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2 + 64);
+                for (CompletableFuture<byte[]> block : blocks) {
+                    byte[] compressed = block.join();
+                    output.write(compressed, 0, compressed.length);
+                }
+                return output.toByteArray();
+            });
+        }
+
+        void write(@Nonnull ZipFormat.Writer writer) throws IOException {
+            if (content == null || crc == null || data == null) {
+                writer.writeDirectory(name, dosTime, unixMode);
+            } else {
+                byte[] bytes = content.join();
+                writer.writeFile(new ZipFormat.CompressedFile(name, dosTime, unixMode, method, crc.join(),
+                        bytes.length, data.join()), 0);
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads that compress entries, named after the archive they work on.
+     */
+    private final class CompressionThreadFactory implements ThreadFactory {
+
+        @Nonnull
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        @Nonnull
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "Compressing " + archiveFile.getName() + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Bundles a distribution as a ZIP archive, reading, checksumming and compressing its files on multiple threads (see
+ * {@link #getCompressionThreads}). The content of every file is compressed in blocks, so a few large files benefit from
+ * parallelism just as much as thousands of small ones do.</p>
+ * <p>The archive is deterministic: by default, file timestamps are not preserved, and files are added in a
+ * reproducible order, so the archive only depends on the contents of the distribution, never on the number of
+ * threads. Compression in blocks makes the archive slightly larger than (and different from) what a {@link Zip} task
+ * would produce with the same settings.</p>
+ * <p>Files matching the {@linkplain #getStoredEntryPatterns stored entry patterns} are not compressed at all. ZIP64
+ * archives, and metadata charsets other than UTF-8, are not supported by parallel compression: with those settings,
+ * the task works exactly like a {@link Zip} task.</p>
+ * <p>Applications register a task of this type for their distribution (see
+ * {@link Application#getParallelDistZip}).</p>
+ */
+public abstract class ParallelDistributionZip extends Zip {
+
+    /**
+     * Name of the build directory where the archives of distributions built on multiple threads will be placed.
+     */
+    public static final String ARCHIVE_DIRECTORY_NAME = "parallelDistributions";
+
+    /**
+     * Creates a {@link ParallelDistributionZip} task.
+     */
+    public ParallelDistributionZip() {
+        setPreserveFileTimestamps(false);
+        setReproducibleFileOrder(true);
+        getCompressionThreads().convention(Runtime.getRuntime().availableProcessors());
+        getStoredEntryPatterns().convention(Collections.singletonList(Application.DEFAULT_STORED_ENTRY_PATTERN));
+    }
+
+    /**
+     * The number of threads to read and compress the files of the distribution on. The default is the number of
+     * processors available to the JVM. This does not affect the output, so it is not an {@link Input} of this task.
+     *
+     * @return {@link Property} object specifying the number of threads.
+     */
+    @Internal
+    @Nonnull
+    public abstract Property<Integer> getCompressionThreads();
+
+    /**
+     * Patterns of the files to store in the archive without compression, in the format of
+     * {@link org.gradle.api.tasks.util.PatternFilterable#include(Iterable) PatternFilterable.include}, matched against
+     * the paths of the files within the archive. The default value is
+     * <code>["{@value Application#DEFAULT_STORED_ENTRY_PATTERN}"]</code>.
+     *
+     * @return {@link ListProperty} object specifying the patterns of the files to store without compression.
+     * @see Application#getStoredEntryPatterns()
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getStoredEntryPatterns();
+
+    /**
+     * Creates the {@link CopyAction} that writes the archive.
+     *
+     * @return A {@link ParallelDeflateCopyAction} if parallel compression is supported with the current settings, or
+     * the standard {@link CopyAction} of the {@link Zip} task otherwise.
+     */
+    @Override
+    @Nonnull
+    protected CopyAction createCopyAction() {
+        String metadataCharset = getMetadataCharset();
+        Charset charset = metadataCharset != null ? Charset.forName(metadataCharset) : Charset.defaultCharset();
+        if (isZip64() || !StandardCharsets.UTF_8.equals(charset)) {
+            return super.createCopyAction();
+        }
+        int method = getEntryCompression() == ZipEntryCompression.STORED ?
+                ZipFormat.METHOD_STORED :
+                ZipFormat.METHOD_DEFLATED;
+        // A pattern set without any patterns would match every file
+        List<String> storedEntryPatterns = getStoredEntryPatterns().get();
+        Spec<FileTreeElement> storedFiles = storedEntryPatterns.isEmpty() ?
+                Specs.satisfyNone() :
+                new PatternSet().include(storedEntryPatterns).getAsSpec();
+        return new ParallelDeflateCopyAction("distribution archive", getArchiveFile().get().getAsFile(),
+                getCompressionThreads().get(), method, storedFiles, isPreserveFileTimestamps(), true);
+    }
+}
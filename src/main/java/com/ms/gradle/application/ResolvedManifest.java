@@ -0,0 +1,246 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Action;
+import org.gradle.api.java.archives.Attributes;
+import org.gradle.api.java.archives.Manifest;
+import org.gradle.api.java.archives.ManifestMergeSpec;
+import org.gradle.api.provider.Provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>A read-only snapshot of an effective {@link Manifest}, with all attribute values resolved to strings. Instances
+ * can be compared with {@link #equals}, so a merged manifest can be reused as long as the manifests it was merged from
+ * are unchanged.</p>
+ * <p>This is a plain implementation of the {@link Manifest} interface that doesn't depend on any Gradle service, so
+ * it can be created without going through the {@code JavaPluginConvention} API. The methods that would modify the
+ * manifest throw an {@link UnsupportedOperationException}, and the attribute maps must not be modified either.</p>
+ */
+final class ResolvedManifest implements Manifest {
+
+    /**
+     * Name of the attribute specifying the manifest version, which Gradle always adds to merged manifests.
+     */
+    private static final String MANIFEST_VERSION = "Manifest-Version";
+
+    @Nonnull
+    private final File baseDirectory;
+    @Nonnull
+    private final ResolvedAttributes attributes = new ResolvedAttributes();
+    @Nonnull
+    private final Map<String, Attributes> sections = new LinkedHashMap<>();
+
+    private ResolvedManifest(@Nonnull File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * Creates a manifest with the given main attributes and no sections.
+     *
+     * @param baseDirectory The directory that relative paths passed to {@link #writeTo} are resolved against.
+     * @param attributes The main attributes of the manifest.
+     * @return The new manifest.
+     */
+    @Nonnull
+    static ResolvedManifest of(@Nonnull File baseDirectory, @Nonnull Map<String, ?> attributes) {
+        ResolvedManifest manifest = new ResolvedManifest(baseDirectory);
+        resolveInto(attributes, manifest.attributes);
+        return manifest;
+    }
+
+    /**
+     * Takes a snapshot of the effective manifest of the given manifest. If that is already a {@link ResolvedManifest},
+     * it is returned as is.
+     *
+     * @param baseDirectory The directory that relative paths passed to {@link #writeTo} are resolved against.
+     * @param manifest The manifest to take a snapshot of.
+     * @return The snapshot of the effective manifest.
+     */
+    @Nonnull
+    static ResolvedManifest resolve(@Nonnull File baseDirectory, @Nonnull Manifest manifest) {
+        Manifest effectiveManifest = manifest.getEffectiveManifest();
+        if (effectiveManifest instanceof ResolvedManifest) {
+            return (ResolvedManifest) effectiveManifest;
+        }
+        ResolvedManifest resolvedManifest = of(baseDirectory, effectiveManifest.getAttributes());
+        resolvedManifest.mergeSections(effectiveManifest.getSections());
+        return resolvedManifest;
+    }
+
+    /**
+     * Merges manifests the same way {@link Manifest#from} does, when no {@link ManifestMergeSpec#eachEntry eachEntry}
+     * actions are used: attributes from latter manifests overwrite matching ones from former manifests, and the result
+     * always has a {@code Manifest-Version} attribute.
+     *
+     * @param baseDirectory The directory that relative paths passed to {@link #writeTo} are resolved against.
+     * @param manifests The manifests to merge, in order.
+     * @return The merged manifest.
+     */
+    @Nonnull
+    static ResolvedManifest merge(@Nonnull File baseDirectory, @Nonnull List<ResolvedManifest> manifests) {
+        ResolvedManifest mergedManifest = new ResolvedManifest(baseDirectory);
+        mergedManifest.attributes.put(MANIFEST_VERSION, "1.0");
+        for (ResolvedManifest manifest : manifests) {
+            mergedManifest.attributes.putAll(manifest.attributes);
+            mergedManifest.mergeSections(manifest.sections);
+        }
+        return mergedManifest;
+    }
+
+    private void mergeSections(@Nonnull Map<String, Attributes> sourceSections) {
+        sourceSections.forEach((section, sourceAttributes) ->
+                resolveInto(sourceAttributes, sections.computeIfAbsent(section, key -> new ResolvedAttributes())));
+    }
+
+    private static void resolveInto(@Nonnull Map<String, ?> source, @Nonnull Map<String, Object> target) {
+        source.forEach((name, value) -> target.put(name,
+                String.valueOf(value instanceof Provider ? ((Provider<?>) value).get() : value)));
+    }
+
+    /**
+     * Writes this manifest in the standard format.
+     *
+     * @param charset The name of the character set to encode the manifest with.
+     * @return The content of the manifest file.
+     * @throws IOException If the manifest can't be written.
+     */
+    @Nonnull
+    byte[] toByteArray(@Nonnull String charset) throws IOException {
+        java.util.jar.Manifest javaManifest = new java.util.jar.Manifest();
+        attributes.forEach((name, value) -> javaManifest.getMainAttributes().putValue(name, (String) value));
+        sections.forEach((section, sectionAttributes) -> {
+            java.util.jar.Attributes javaAttributes = new java.util.jar.Attributes();
+            sectionAttributes.forEach((name, value) -> javaAttributes.putValue(name, (String) value));
+            javaManifest.getEntries().put(section, javaAttributes);
+        });
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        javaManifest.write(content);
+        return StandardCharsets.UTF_8.name().equals(charset) ?
+                content.toByteArray() :
+                new String(content.toByteArray(), StandardCharsets.UTF_8).getBytes(charset);
+    }
+
+    @Override
+    @Nonnull
+    public Attributes getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    @Nonnull
+    public Map<String, Attributes> getSections() {
+        return Collections.unmodifiableMap(sections);
+    }
+
+    @Override
+    @Nonnull
+    public Manifest getEffectiveManifest() {
+        return this;
+    }
+
+    @Override
+    @Nonnull
+    public Manifest writeTo(@Nonnull Object path) {
+        File file = new File(String.valueOf(path));
+        try {
+            Files.write((file.isAbsolute() ? file : new File(baseDirectory, file.getPath())).toPath(),
+                    toByteArray(StandardCharsets.UTF_8.name()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public Manifest attributes(Map<String, ?> attributes) {
+        throw readOnly();
+    }
+
+    @Override
+    public Manifest attributes(Map<String, ?> attributes, String sectionName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Manifest from(Object... mergePath) {
+        throw readOnly();
+    }
+
+    @Override
+    public Manifest from(Object mergePath, groovy.lang.Closure<?> closure) {
+        throw readOnly();
+    }
+
+    @Override
+    public Manifest from(Object mergePath, Action<ManifestMergeSpec> action) {
+        throw readOnly();
+    }
+
+    @Nonnull
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Effective manifests are read-only");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResolvedManifest)) {
+            return false;
+        }
+        ResolvedManifest other = (ResolvedManifest) obj;
+        return attributes.equals(other.attributes) && sections.equals(other.sections);
+    }
+
+    @Override
+    public int hashCode() {
+        return attributes.hashCode() * 31 + sections.hashCode();
+    }
+
+    /**
+     * A plain {@link Attributes} implementation, holding resolved attribute values. It wraps a {@link LinkedHashMap}
+     * instead of extending it, so that it can be stored in the configuration cache, which would restore a subclass of
+     * {@link LinkedHashMap} as a plain {@link LinkedHashMap}.
+     */
+    private static final class ResolvedAttributes extends AbstractMap<String, Object> implements Attributes {
+
+        @Nonnull
+        private final Map<String, Object> values = new LinkedHashMap<>();
+
+        @Override
+        @Nonnull
+        public Set<Entry<String, Object>> entrySet() {
+            return values.entrySet();
+        }
+
+        @Override
+        @Nullable
+        public Object put(@Nonnull String name, @Nonnull Object value) {
+            return values.put(name, value);
+        }
+    }
+}
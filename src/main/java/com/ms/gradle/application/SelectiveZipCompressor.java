@@ -0,0 +1,167 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Compresses only some of the files in the archive of a {@link Zip} task (normally the archive task of an
+ * application's distribution), and leaves the rest stored without compression. Gradle applies the same
+ * {@linkplain Zip#getEntryCompression compression} to every entry of an archive, so the task has to be set up to
+ * {@linkplain ZipEntryCompression#STORED store} all of them; once it has written the archive, the files that don't
+ * match any of the stored patterns get deflated, while all other entries are transferred byte for byte. That way,
+ * files that are already compressed (like JARs, which make up most of a distribution) are never compressed again,
+ * which would take a lot of time for next to no reduction in size.</p>
+ * <p>The compressor has two parts, both of which must be added to the same task: {@link #recorder()} keeps track of the
+ * files that the task copies into the archive, and {@link #execute} compresses them once the task has written the
+ * archive.</p>
+ * <p>It holds no reference to any task or project, so that it can be stored in the configuration cache.</p>
+ */
+final class SelectiveZipCompressor implements Action<Task> {
+
+    @Nonnull
+    private final List<String> storedPatterns;
+    @Nonnull
+    private final List<FileCopyDetails> copiedFiles = new ArrayList<>();
+
+    /**
+     * Creates a {@link SelectiveZipCompressor}.
+     *
+     * @param storedPatterns The patterns of the files to leave uncompressed, in the format of
+     * {@link PatternSet#include(Iterable)}, matched against the paths of the files within the archive.
+     */
+    SelectiveZipCompressor(@Nonnull List<String> storedPatterns) {
+        this.storedPatterns = new ArrayList<>(storedPatterns);
+    }
+
+    /**
+     * Returns the action that keeps track of the files copied into the archive, to be added to the task via
+     * {@link Zip#eachFile}.
+     *
+     * @return The action recording the copied files.
+     */
+    @Nonnull
+    Action<FileCopyDetails> recorder() {
+        return new Recorder(this);
+    }
+
+    private void record(@Nonnull FileCopyDetails copyDetails) {
+        // Actions of child specs (e.g. the one moving dependencies into place) may still change the path of the file,
+        // so it only gets matched against the patterns once the archive has been written
+        if (!copyDetails.isDirectory()) {
+            copiedFiles.add(copyDetails);
+        }
+    }
+
+    /**
+     * Compresses the files that don't match any of the stored patterns. To be added to the task via
+     * {@link Task#doLast}.
+     *
+     * @param task The {@link Zip} task that has written the archive.
+     */
+    @Override
+    public void execute(@Nonnull Task task) {
+        try {
+            Spec<FileTreeElement> stored = new PatternSet().include(storedPatterns).getAsSpec();
+            Set<String> compressedNames = copiedFiles.stream()
+                    .filter(copyDetails -> !stored.isSatisfiedBy(copyDetails))
+                    .map(copyDetails -> copyDetails.getRelativePath().getPathString())
+                    .collect(Collectors.toSet());
+            if (!compressedNames.isEmpty()) {
+                compress(((Zip) task).getArchiveFile().get().getAsFile().toPath(), compressedNames);
+            }
+        } finally {
+            copiedFiles.clear();
+        }
+    }
+
+    /**
+     * Rewrites an archive, deflating the given stored entries. Entries that don't get any smaller when deflated stay
+     * stored; all other entries are transferred as they are.
+     *
+     * @param archive The archive to rewrite.
+     * @param compressedNames The names of the entries to compress.
+     * @throws GradleException If the archive can't be rewritten.
+     */
+    static void compress(@Nonnull Path archive, @Nonnull Set<String> compressedNames) {
+        Path compressed = archive.resolveSibling(archive.getFileName() + ".compressed");
+        try {
+            try {
+                try (FileChannel source = FileChannel.open(archive, StandardOpenOption.READ);
+                        FileChannel target = FileChannel.open(compressed, StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ZipFormat.Writer writer = new ZipFormat.Writer(target);
+                    for (ZipFormat.Entry entry : ZipFormat.readCentralDirectory(source)) {
+                        writeEntry(writer, source, entry, compressedNames.contains(entry.getName()));
+                    }
+                    writer.close();
+                }
+                Files.move(compressed, archive, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(compressed);
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not compress the entries of " + archive, e);
+        }
+    }
+
+    private static void writeEntry(@Nonnull ZipFormat.Writer writer, @Nonnull FileChannel source,
+            @Nonnull ZipFormat.Entry entry, boolean compress) throws IOException {
+        // Contents of 2 GiB or more don't fit into an array; such entries are left as they are
+        if (compress && entry.getMethod() == ZipFormat.METHOD_STORED && entry.getSize() < Integer.MAX_VALUE) {
+            byte[] content = ZipFormat.readStoredContent(source, entry);
+            byte[] data = ZipFormat.deflate(content, 0, content.length, true);
+            if (data.length < content.length) {
+                writer.writeFile(entry, ZipFormat.METHOD_DEFLATED, data);
+                return;
+            }
+        }
+        writer.transfer(source, entry);
+    }
+
+    /**
+     * The part of the compressor that gets added to the task via {@link Zip#eachFile}. It refers back to the
+     * compressor, so that both parts of it share the copied files.
+     */
+    private static final class Recorder implements Action<FileCopyDetails> {
+
+        @Nonnull
+        private final SelectiveZipCompressor compressor;
+
+        Recorder(@Nonnull SelectiveZipCompressor compressor) {
+            this.compressor = compressor;
+        }
+
+        @Override
+        public void execute(@Nonnull FileCopyDetails copyDetails) {
+            compressor.record(copyDetails);
+        }
+    }
+}
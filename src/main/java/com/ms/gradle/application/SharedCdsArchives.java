@@ -0,0 +1,431 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * <p>Creates class data sharing (CDS) archives for applications that run side by side on the same hosts: one base
+ * archive shared by all of them, with the classes of the Java installation that any of them loads, plus a dynamic
+ * archive for every application, with the classes of the application and its dependencies, layered on top of the base
+ * archive. The JVM maps the base archive read-only, so the processes of all applications share its memory pages,
+ * instead of each one holding its own copy of the same classes.</p>
+ * <p>The applications are taken from a directory laid out like a distribution, e.g. the one of an
+ * {@link AggregateApplications} task, which the {@link ApplicationAggregationPlugin} sets up. The directory gets
+ * copied into the {@linkplain #getTemporaryDir temporary directory} of the task, and every application declared with
+ * {@link #train} runs from there twice: first to record the classes it loads, then, once the base archive has
+ * been created from the classes recorded for all applications, to create its dynamic archive. Like with
+ * {@link CdsArchive}, the applications must exit by themselves, with an exit value of zero, and the classpath is
+ * recorded relative to the directory, as is the path of the base archive within it.</p>
+ * <p>The archives go into the {@linkplain #getDestinationDirectory destination directory}: the base archive as
+ * {@linkplain #getBaseArchiveName baseArchiveName}, and the archive of every application next to it, with the name of
+ * the application JAR but the {@value CdsArchive#ARCHIVE_EXTENSION} extension. Once the contents of this directory
+ * are added to those of the distribution, every application runs with its archives from the installation directory
+ * with {@code java -XX:SharedArchiveFile=<name>.jsa -jar <name>.jar}.</p>
+ * <p>Only classes of the Java installation go into the base archive, as the JVM only uses the classes of a static CDS
+ * archive from the classpath that it was created with, and the classpath of every application starts with its own
+ * JAR. This takes a Java installation of version {@value CdsArchive#MINIMUM_JAVA_VERSION} or later.</p>
+ *
+ * @see <a href="https://docs.oracle.com/en/java/javase/21/vm/class-data-sharing.html">Class Data Sharing</a>
+ */
+public abstract class SharedCdsArchives extends DefaultTask {
+
+    /**
+     * Name of the build directory where the shared CDS archives will be placed.
+     */
+    public static final String ARCHIVE_DIRECTORY_NAME = "sharedCdsArchives";
+
+    /**
+     * Default name of the base archive.
+     */
+    public static final String DEFAULT_BASE_ARCHIVE_NAME = "shared.jsa";
+
+    /**
+     * Name of the directory in the {@linkplain #getTemporaryDir temporary directory} of the task that the training
+     * runs start in.
+     */
+    static final String TRAINING_DIRECTORY_NAME = "training";
+
+    /**
+     * Extension of the class lists recorded by the training runs.
+     */
+    static final String CLASS_LIST_EXTENSION = "classlist";
+
+    /**
+     * Classes of the built-in class loaders in the class lists, with an optional ID (the classes of other class loaders
+     * have more attributes).
+     */
+    private static final Pattern CLASS_LIST_CLASS = Pattern.compile("([^\\s#@]+)(?: id: \\d+)?");
+
+    /**
+     * Lines of the class lists that only refer to classes of the Java installation.
+     */
+    private static final String CLASS_LIST_LAMBDA_FORM_INVOKER = "@lambda-form-invoker ";
+
+    @Nonnull
+    private final List<Training> trainings = new ArrayList<>();
+
+    /**
+     * Creates a {@link SharedCdsArchives} task.
+     */
+    @Inject
+    public SharedCdsArchives() {
+        setGroup(ApplicationPlugin.TASK_GROUP);
+        getBaseArchiveName().convention(DEFAULT_BASE_ARCHIVE_NAME);
+        getDestinationDirectory().convention(
+                getProject().getLayout().getBuildDirectory().dir(ARCHIVE_DIRECTORY_NAME));
+    }
+
+    /**
+     * The directory with the applications, laid out like a distribution: the application JARs at its root, and their
+     * dependencies at the relative paths given by their {@code Class-Path}.
+     *
+     * @return {@link DirectoryProperty} object specifying the directory with the applications.
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @Nonnull
+    public abstract DirectoryProperty getApplicationsDirectory();
+
+    /**
+     * The home directory of the Java installation to run the training runs with. The default is the one of the Java
+     * toolchain of the project, if any, or the one running Gradle. Only its {@link #getJavaRelease release} file is
+     * an input of this task.
+     *
+     * @return {@link DirectoryProperty} object specifying the home directory of the Java installation.
+     */
+    @Internal
+    @Nonnull
+    public abstract DirectoryProperty getJavaHome();
+
+    /**
+     * The {@code release} file of the {@linkplain #getJavaHome Java installation} (read-only), which states its
+     * version, vendor and build.
+     *
+     * @return {@link Provider} of the release file of the Java installation.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    @Nonnull
+    public Provider<RegularFile> getJavaRelease() {
+        return getJavaHome().file(JavaInstallation.RELEASE_FILE_NAME);
+    }
+
+    /**
+     * JVM options for all runs of the JVM, before the JVM options of every training. Empty by default. The archives
+     * can only be used together if they have been created with the same options affecting the layout of objects
+     * (e.g. {@code -XX:-UseCompressedOops}), which should also be used when the applications run with the archives.
+     *
+     * @return {@link ListProperty} object specifying the JVM options of all runs.
+     */
+    @Input
+    @Nonnull
+    public abstract ListProperty<String> getJvmArguments();
+
+    /**
+     * The name of the base archive, which goes at the root of the distribution. The default is
+     * {@value #DEFAULT_BASE_ARCHIVE_NAME}.
+     *
+     * @return {@link Property} object specifying the name of the base archive.
+     */
+    @Input
+    @Nonnull
+    public abstract Property<String> getBaseArchiveName();
+
+    /**
+     * The applications to train, in the order they have been added (read-only).
+     *
+     * @return The applications to train.
+     */
+    @Nested
+    @Nonnull
+    public List<Training> getTrainings() {
+        return Collections.unmodifiableList(trainings);
+    }
+
+    /**
+     * Adds an application to train, identified by the name of its JAR at the root of the
+     * {@linkplain #getApplicationsDirectory applications directory}.
+     *
+     * @param applicationJarName The name of the application JAR, e.g. {@code service.jar}.
+     * @param action Action to configure the training of the application.
+     */
+    public void train(@Nonnull String applicationJarName, @Nonnull Action<? super Training> action) {
+        Training training = getObjects().newInstance(Training.class,
+                Utils.nonEmpty(applicationJarName, "applicationJarName"));
+        action.execute(training);
+        trainings.add(training);
+    }
+
+    /**
+     * The directory to place the archives into. Its previous contents are deleted when the task is executed.
+     *
+     * @return {@link DirectoryProperty} object specifying the destination directory.
+     */
+    @OutputDirectory
+    @Nonnull
+    public abstract DirectoryProperty getDestinationDirectory();
+
+    /**
+     * Services used by this task. Injected rather than looked up through {@link #getProject()}, which is not
+     * available at execution time when the task is loaded from the configuration cache.
+     *
+     * @return The {@link ObjectFactory} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * Services used by this task (see {@link #getObjects}).
+     *
+     * @return The {@link ExecOperations} service.
+     */
+    @Inject
+    @Nonnull
+    protected abstract ExecOperations getExecOperations();
+
+    /**
+     * Executes this task.
+     */
+    @TaskAction
+    protected void create() {
+        Path destinationDir = getDestinationDirectory().get().getAsFile().toPath();
+        try {
+            File javaHome = getJavaHome().get().getAsFile();
+            int javaVersion = JavaInstallation.featureVersion(javaHome);
+            Utils.argument(javaVersion >= CdsArchive.MINIMUM_JAVA_VERSION,
+                    "The Java installation in %s is of version %s, but CDS archives take version %s or later",
+                    javaHome, javaVersion, CdsArchive.MINIMUM_JAVA_VERSION);
+            Utils.argument(!trainings.isEmpty(), "There are no applications to train");
+            String baseArchiveName = Utils.nonEmpty(getBaseArchiveName().get(), "baseArchiveName");
+
+            Path trainingDirectory = getTemporaryDir().toPath().resolve(TRAINING_DIRECTORY_NAME);
+            TrainingRun.stage(trainingDirectory, getApplicationsDirectory().get().getAsFile().toPath());
+            List<Path> classLists = new ArrayList<>(trainings.size());
+            for (Training training : trainings) {
+                Utils.argument(Files.isRegularFile(trainingDirectory.resolve(training.applicationJarName)),
+                        "There is no application JAR named '%s'", training.applicationJarName);
+                String classListName = archiveName(training.applicationJarName, CLASS_LIST_EXTENSION);
+                List<String> arguments = jvmArguments(training);
+                arguments.add("-Xshare:off");
+                arguments.add("-XX:DumpLoadedClassList=" + classListName);
+                arguments.add("-jar");
+                arguments.add(training.applicationJarName);
+                arguments.addAll(training.getArguments().get());
+                TrainingRun.run(getExecOperations(), javaHome, trainingDirectory,
+                        "training run of " + training.applicationJarName, arguments);
+                classLists.add(trainingDirectory.resolve(classListName));
+            }
+
+            // Without a classpath, so that the base archive can be used with the classpath of any application
+            String sharedClassListName = archiveName(baseArchiveName, CLASS_LIST_EXTENSION);
+            Set<String> applicationClasses = applicationClasses(trainingDirectory);
+            Files.write(trainingDirectory.resolve(sharedClassListName), mergeClassLists(classLists, applicationClasses),
+                    StandardCharsets.UTF_8);
+            List<String> dumpArguments = new ArrayList<>(getJvmArguments().get());
+            dumpArguments.add("-Xshare:dump");
+            dumpArguments.add("-XX:SharedClassListFile=" + sharedClassListName);
+            dumpArguments.add("-XX:SharedArchiveFile=" + baseArchiveName);
+            TrainingRun.run(getExecOperations(), javaHome, trainingDirectory, "base archive creation", dumpArguments);
+            Utils.argument(Files.isRegularFile(trainingDirectory.resolve(baseArchiveName)),
+                    "The base archive creation didn't create the archive");
+
+            List<String> archiveNames = new ArrayList<>(trainings.size() + 1);
+            archiveNames.add(baseArchiveName);
+            for (Training training : trainings) {
+                String archiveName = archiveName(training.applicationJarName, CdsArchive.ARCHIVE_EXTENSION);
+                // The relative path of the base archive is recorded in the archive of the application
+                List<String> arguments = jvmArguments(training);
+                arguments.add("-XX:SharedArchiveFile=" + baseArchiveName);
+                arguments.add("-XX:ArchiveClassesAtExit=" + archiveName);
+                arguments.add("-jar");
+                arguments.add(training.applicationJarName);
+                arguments.addAll(training.getArguments().get());
+                TrainingRun.run(getExecOperations(), javaHome, trainingDirectory,
+                        "training run of " + training.applicationJarName, arguments);
+                Utils.argument(Files.isRegularFile(trainingDirectory.resolve(archiveName)),
+                        "The training run of %s didn't create the archive", training.applicationJarName);
+                archiveNames.add(archiveName);
+            }
+
+            Utils.deleteRecursively(destinationDir);
+            Files.createDirectories(destinationDir);
+            for (String archiveName : archiveNames) {
+                Files.move(trainingDirectory.resolve(archiveName), destinationDir.resolve(archiveName),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not create shared CDS archives in " + destinationDir, e);
+        } catch (IllegalArgumentException e) {
+            throw new GradleException(
+                    "Could not create shared CDS archives in " + destinationDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Nonnull
+    private List<String> jvmArguments(@Nonnull Training training) {
+        List<String> arguments = new ArrayList<>(getJvmArguments().get());
+        arguments.addAll(training.getJvmArguments().get());
+        return arguments;
+    }
+
+    @Nonnull
+    private static String archiveName(@Nonnull String fileName, @Nonnull String extension) {
+        return fileName.replaceFirst("\\.[^.]*$", "") + "." + extension;
+    }
+
+    /**
+     * Collects the names of the classes in all JARs of a directory, in the form used by class lists, e.g.
+     * {@code com/example/Main}.
+     *
+     * @param directory The directory.
+     * @return The names of the classes.
+     * @throws IOException If a JAR can't be read.
+     */
+    @Nonnull
+    private static Set<String> applicationClasses(@Nonnull Path directory) throws IOException {
+        List<Path> jars;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            jars = stream.filter(path -> path.getFileName().toString().endsWith(".jar") && Files.isRegularFile(path))
+                    .collect(Collectors.toList());
+        }
+        Set<String> classes = new HashSet<>();
+        for (Path jar : jars) {
+            try (JarFile jarFile = new JarFile(jar.toFile())) {
+                Collections.list(jarFile.entries()).stream()
+                        .map(ZipEntry::getName)
+                        .filter(name -> name.endsWith(".class"))
+                        .map(name -> name.replaceFirst("^META-INF/versions/\\d+/", ""))
+                        .map(name -> name.substring(0, name.length() - ".class".length()))
+                        .forEach(classes::add);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Merges the class lists of several training runs into one for the base archive, without duplicates. Only the
+     * classes of the Java installation are kept, along with the pre-generated lambda forms. The IDs of the classes
+     * are dropped, as they are only unique within each class list.
+     *
+     * @param classLists The class lists, as written by {@code -XX:DumpLoadedClassList}.
+     * @param applicationClasses The classes of the applications and their dependencies, to leave out.
+     * @return The lines of the merged class list.
+     * @throws IOException If a class list can't be read.
+     */
+    @Nonnull
+    static List<String> mergeClassLists(@Nonnull List<Path> classLists, @Nonnull Set<String> applicationClasses)
+            throws IOException {
+        Set<String> lines = new LinkedHashSet<>();
+        for (Path classList : classLists) {
+            for (String line : Files.readAllLines(classList, StandardCharsets.UTF_8)) {
+                Matcher matcher = CLASS_LIST_CLASS.matcher(line);
+                if (matcher.matches()) {
+                    // Application classes can't be found without the classpath
+                    if (!applicationClasses.contains(matcher.group(1))) {
+                        lines.add(matcher.group(1));
+                    }
+                } else if (line.startsWith(CLASS_LIST_LAMBDA_FORM_INVOKER)) {
+                    lines.add(line);
+                }
+            }
+        }
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * The training of an application (see {@link #train}).
+     */
+    public abstract static class Training {
+
+        @Nonnull
+        private final String applicationJarName;
+
+        /**
+         * Creates a {@link Training} of an application.
+         *
+         * @param applicationJarName The name of the application JAR.
+         */
+        @Inject
+        public Training(@Nonnull String applicationJarName) {
+            this.applicationJarName = applicationJarName;
+        }
+
+        /**
+         * The name of the application JAR to run.
+         *
+         * @return The name of the application JAR.
+         */
+        @Input
+        @Nonnull
+        public String getApplicationJarName() {
+            return applicationJarName;
+        }
+
+        /**
+         * The arguments to pass to the application in its training runs. Empty by default.
+         *
+         * @return {@link ListProperty} object specifying the arguments of the training runs.
+         */
+        @Input
+        @Nonnull
+        public abstract ListProperty<String> getArguments();
+
+        /**
+         * Additional JVM options for the training runs of the application, e.g. system properties that make the
+         * application exit once it has started. Empty by default.
+         *
+         * @return {@link ListProperty} object specifying the JVM options of the training runs.
+         */
+        @Input
+        @Nonnull
+        public abstract ListProperty<String> getJvmArguments();
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * <p>Minimal writer for the TAR file format, in the POSIX {@code ustar} flavour that every {@code tar} implementation
+ * reads. Names that don't fit into the header are written into PAX extended headers, and sizes of 8 GiB or more are
+ * written in the base-256 encoding of GNU {@code tar}.</p>
+ * <p>Only regular files and directories are supported, owned by {@code root}. The {@link Reader} reads the archives of
+ * common {@code tar} implementations too (including PAX extended headers and GNU long names), but only exposes the
+ * names, types and contents of their entries.</p>
+ *
+ * @see <a href="https://pubs.opengroup.org/onlinepubs/9699919799/utilities/pax.html">pax - portable archive
+ * interchange</a>
+ */
+final class TarFormat {
+
+    /**
+     * Size of the blocks that make up an archive.
+     */
+    static final int BLOCK_SIZE = 512;
+
+    /**
+     * Size of the records that archives are padded to, the default of {@code tar}.
+     */
+    static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+
+    private static final int NAME_SIZE = 100;
+    private static final int PREFIX_SIZE = 155;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_PAX_HEADER = 'x';
+    private static final byte TYPE_PAX_GLOBAL_HEADER = 'g';
+    private static final byte TYPE_GNU_LONG_NAME = 'L';
+
+    /**
+     * Largest extended header that the {@link Reader} accepts.
+     */
+    private static final int MAX_EXTENDED_HEADER_SIZE = 1024 * 1024;
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private TarFormat() {}
+
+    /**
+     * Builds the header block of an entry.
+     *
+     * @param nameBytes The name of the entry, in UTF-8. Names longer than 100 bytes must be split into a prefix and a
+     * name at a slash, otherwise they are truncated.
+     * @param type The type of the entry.
+     * @param mode The Unix permissions of the entry.
+     * @param size The size of the content of the entry.
+     * @param modTime The last modification time of the entry, in seconds since the epoch.
+     * @return The header block.
+     */
+    @Nonnull
+    static byte[] header(@Nonnull byte[] nameBytes, byte type, int mode, long size, long modTime) {
+        byte[] header = new byte[BLOCK_SIZE];
+        int split = splitPosition(nameBytes);
+        if (split < 0) {
+            System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, NAME_SIZE));
+        } else {
+            System.arraycopy(nameBytes, split + 1, header, 0, nameBytes.length - split - 1);
+            System.arraycopy(nameBytes, 0, header, 345, split);
+        }
+        writeOctal(header, 100, 8, mode & 07777);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        if (size > MAX_OCTAL_SIZE) {
+            header[124] = (byte) 0x80;
+            for (int i = 135; i > 124; i--) {
+                header[i] = (byte) (size >>> (8 * (135 - i)));
+            }
+        } else {
+            writeOctal(header, 124, 12, size);
+        }
+        writeOctal(header, 136, 12, Math.max(modTime, 0));
+        header[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        writeOctal(header, 329, 8, 0);
+        writeOctal(header, 337, 8, 0);
+
+        // The checksum is calculated with the checksum field itself filled with spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte value : header) {
+            checksum += value & 0xFF;
+        }
+        writeOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Returns where to split a name into the prefix and name fields of a header.
+     *
+     * @return The position of the slash to split the name at, or {@code -1} if the name fits into the name field (or
+     * can't be split at all).
+     */
+    private static int splitPosition(@Nonnull byte[] nameBytes) {
+        if (nameBytes.length <= NAME_SIZE) {
+            return -1;
+        }
+        for (int i = nameBytes.length - NAME_SIZE - 1; i <= PREFIX_SIZE && i < nameBytes.length - 1; i++) {
+            if (nameBytes[i] == '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean fitsIntoHeader(@Nonnull byte[] nameBytes) {
+        return nameBytes.length <= NAME_SIZE || splitPosition(nameBytes) >= 0;
+    }
+
+    /**
+     * Writes a number as a zero-padded, NUL-terminated octal string.
+     */
+    private static void writeOctal(@Nonnull byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = i - (digits - octal.length());
+            header[offset + i] = index < 0 ? (byte) '0' : (byte) octal.charAt(index);
+        }
+        header[offset + digits] = 0;
+    }
+
+    /**
+     * Builds the content of a PAX extended header that holds the full name of an entry.
+     *
+     * @param nameBytes The name of the entry, in UTF-8.
+     * @return The PAX record of the name.
+     */
+    @Nonnull
+    private static byte[] paxPathRecord(@Nonnull byte[] nameBytes) {
+        // The length of the record includes the digits of the length itself
+        byte[] keyword = " path=".getBytes(StandardCharsets.US_ASCII);
+        int baseLength = keyword.length + nameBytes.length + 1;
+        int length = baseLength;
+        do {
+            length = baseLength + Integer.toString(length).length();
+        } while (length != baseLength + Integer.toString(length).length());
+        byte[] lengthBytes = Integer.toString(length).getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[length];
+        System.arraycopy(lengthBytes, 0, record, 0, lengthBytes.length);
+        System.arraycopy(keyword, 0, record, lengthBytes.length, keyword.length);
+        System.arraycopy(nameBytes, 0, record, lengthBytes.length + keyword.length, nameBytes.length);
+        record[length - 1] = '\n';
+        return record;
+    }
+
+    /**
+     * Writes the contents of an entry.
+     */
+    @FunctionalInterface
+    interface Content {
+
+        /**
+         * Writes the content to the given output.
+         *
+         * @param output The output to write to.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeTo(@Nonnull OutputStream output) throws IOException;
+    }
+
+    /**
+     * Writes entries one by one to a TAR archive.
+     */
+    static final class Writer implements Closeable {
+
+        @Nonnull
+        private final CountingOutputStream output;
+
+        /**
+         * Creates a writer that writes an archive to the given output.
+         *
+         * @param output The output to write the archive to.
+         */
+        Writer(@Nonnull OutputStream output) {
+            this.output = new CountingOutputStream(Utils.nonNull(output, "output"));
+        }
+
+        /**
+         * Writes a directory entry.
+         *
+         * @param name The name of the directory, without a trailing slash.
+         * @param mode The Unix permissions of the directory.
+         * @param modTime The last modification time of the directory, in seconds since the epoch.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeDirectory(@Nonnull String name, int mode, long modTime) throws IOException {
+            writeHeader(name + '/', TYPE_DIRECTORY, mode, 0, modTime);
+        }
+
+        /**
+         * Writes a file entry.
+         *
+         * @param name The name of the file.
+         * @param mode The Unix permissions of the file.
+         * @param modTime The last modification time of the file, in seconds since the epoch.
+         * @param size The size of the content of the file.
+         * @param content Writes the content of the file, which must be exactly {@code size} bytes long.
+         * @throws IOException If an I/O error occurs, or the content doesn't have the given size.
+         */
+        void writeFile(@Nonnull String name, int mode, long modTime, long size, @Nonnull Content content)
+                throws IOException {
+            writeHeader(name, TYPE_FILE, mode, size, modTime);
+            long start = output.count;
+            content.writeTo(output);
+            if (output.count - start != size) {
+                throw new IOException(String.format("Content of %s has %d bytes instead of %d",
+                        name, output.count - start, size));
+            }
+            pad(BLOCK_SIZE);
+        }
+
+        private void writeHeader(@Nonnull String name, byte type, int mode, long size, long modTime)
+                throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (!fitsIntoHeader(nameBytes)) {
+                byte[] record = paxPathRecord(nameBytes);
+                output.write(header(("PaxHeaders/" + name).getBytes(StandardCharsets.UTF_8), TYPE_PAX_HEADER, 0644,
+                        record.length, modTime));
+                output.write(record);
+                pad(BLOCK_SIZE);
+            }
+            output.write(header(nameBytes, type, mode, size, modTime));
+        }
+
+        private void pad(int size) throws IOException {
+            int remainder = (int) (output.count % size);
+            if (remainder > 0) {
+                output.write(new byte[size - remainder]);
+            }
+        }
+
+        /**
+         * Writes the end of the archive, padded to a full record, completing the archive. Does not close the
+         * underlying output.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            output.write(new byte[2 * BLOCK_SIZE]);
+            pad(RECORD_SIZE);
+            output.flush();
+        }
+    }
+
+    /**
+     * An entry read by a {@link Reader}.
+     */
+    static final class Entry {
+
+        @Nonnull
+        private final String name;
+        private final byte type;
+        private final long size;
+
+        Entry(@Nonnull String name, byte type, long size) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+        }
+
+        /**
+         * Returns the name of this entry, which ends with a slash for directories written by most implementations.
+         *
+         * @return The name of this entry.
+         */
+        @Nonnull
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns whether this entry is a regular file.
+         *
+         * @return Whether this entry is a regular file.
+         */
+        boolean isFile() {
+            // Old implementations write a NUL type for regular files
+            return type == TYPE_FILE || type == 0;
+        }
+
+        /**
+         * Returns the size of the content of this entry.
+         *
+         * @return The size of the content of this entry.
+         */
+        long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Reads entries one by one from a TAR archive.
+     */
+    static final class Reader {
+
+        @Nonnull
+        private final InputStream input;
+        private long remaining;
+        private long padding;
+
+        /**
+         * Creates a reader that reads an archive from the given input.
+         *
+         * @param input The input to read the archive from.
+         */
+        Reader(@Nonnull InputStream input) {
+            this.input = Utils.nonNull(input, "input");
+        }
+
+        /**
+         * Reads the header of the next entry, skipping whatever is left of the content of the current entry.
+         *
+         * @return The next entry, or {@code null} at the end of the archive.
+         * @throws IOException If an I/O error occurs, or the archive is malformed.
+         */
+        @Nullable
+        Entry next() throws IOException {
+            skip(remaining + padding);
+            remaining = 0;
+            padding = 0;
+            String extendedName = null;
+            long extendedSize = -1;
+            while (true) {
+                byte[] header = new byte[BLOCK_SIZE];
+                int length = readFully(header);
+                if (length == 0 || isZero(header)) {
+                    // Some implementations omit the two zero blocks at the end of the archive
+                    return null;
+                } else if (length < BLOCK_SIZE) {
+                    throw new EOFException("Unexpected end of TAR archive");
+                }
+                checkChecksum(header);
+                byte type = header[156];
+                long size = readSize(header);
+                if (type == TYPE_PAX_HEADER || type == TYPE_PAX_GLOBAL_HEADER || type == TYPE_GNU_LONG_NAME) {
+                    byte[] data = readExtendedHeader(size);
+                    if (type == TYPE_PAX_HEADER) {
+                        for (String[] record : paxRecords(data)) {
+                            if ("path".equals(record[0])) {
+                                extendedName = record[1];
+                            } else if ("size".equals(record[0])) {
+                                extendedSize = parseSize(record[1]);
+                            }
+                        }
+                    } else if (type == TYPE_GNU_LONG_NAME) {
+                        extendedName = terminatedString(data, 0, data.length);
+                    }
+                    continue;
+                }
+                if (extendedSize >= 0) {
+                    size = extendedSize;
+                }
+                remaining = size;
+                padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+                return new Entry(extendedName != null ? extendedName : headerName(header), type, size);
+            }
+        }
+
+        /**
+         * Returns the content of the current entry. The stream must not be used once {@link #next} gets called
+         * again; closing it doesn't close the archive.
+         *
+         * @return The content of the current entry.
+         */
+        @Nonnull
+        InputStream content() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] value = new byte[1];
+                    return read(value, 0, 1) < 0 ? -1 : value[0] & 0xFF;
+                }
+
+                @Override
+                public int read(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int count = input.read(bytes, offset, (int) Math.min(length, remaining));
+                    if (count < 0) {
+                        throw new EOFException("Unexpected end of TAR archive");
+                    }
+                    remaining -= count;
+                    return count;
+                }
+            };
+        }
+
+        @Nonnull
+        private byte[] readExtendedHeader(long size) throws IOException {
+            if (size > MAX_EXTENDED_HEADER_SIZE) {
+                throw new IOException("TAR extended header too large: " + size);
+            }
+            byte[] data = new byte[(int) size];
+            if (readFully(data) < data.length) {
+                throw new EOFException("Unexpected end of TAR archive");
+            }
+            skip((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+            return data;
+        }
+
+        private int readFully(@Nonnull byte[] bytes) throws IOException {
+            int length = 0;
+            while (length < bytes.length) {
+                int count = input.read(bytes, length, bytes.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+            return length;
+        }
+
+        private void skip(long count) throws IOException {
+            byte[] buffer = new byte[BLOCK_SIZE * 16];
+            long left = count;
+            while (left > 0) {
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of TAR archive");
+                }
+                left -= read;
+            }
+        }
+
+        private static boolean isZero(@Nonnull byte[] header) {
+            for (byte value : header) {
+                if (value != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void checkChecksum(@Nonnull byte[] header) throws IOException {
+            long expected = parseOctal(header, 148, 8);
+            long checksum = 0;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+            }
+            if (checksum != expected) {
+                throw new IOException("Invalid TAR header checksum");
+            }
+        }
+
+        @Nonnull
+        private static String headerName(@Nonnull byte[] header) {
+            String name = terminatedString(header, 0, NAME_SIZE);
+            // Only POSIX archives have a prefix field: GNU archives use the same space for other fields
+            boolean posix = "ustar\u0000".equals(new String(header, 257, 6, StandardCharsets.US_ASCII));
+            String prefix = posix ? terminatedString(header, 345, PREFIX_SIZE) : "";
+            return prefix.isEmpty() ? name : prefix + '/' + name;
+        }
+
+        private static long readSize(@Nonnull byte[] header) throws IOException {
+            if ((header[124] & 0x80) != 0) {
+                long size = 0;
+                for (int i = 125; i < 136; i++) {
+                    size = (size << 8) | (header[i] & 0xFF);
+                }
+                return size;
+            }
+            return parseOctal(header, 124, 12);
+        }
+
+        private static long parseOctal(@Nonnull byte[] header, int offset, int length) throws IOException {
+            String octal = new String(header, offset, length, StandardCharsets.US_ASCII).replace('\u0000', ' ').trim();
+            try {
+                return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid number in TAR header: " + octal, e);
+            }
+        }
+
+        private static long parseSize(@Nonnull String size) throws IOException {
+            try {
+                return Long.parseLong(size);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid size in TAR extended header: " + size, e);
+            }
+        }
+
+        /**
+         * Reads a string that ends at the first NUL byte, if any, within the given range.
+         */
+        @Nonnull
+        private static String terminatedString(@Nonnull byte[] bytes, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses the records of a PAX extended header, each of which has the form {@code "<length> <key>=<value>\n"}.
+         */
+        @Nonnull
+        private static List<String[]> paxRecords(@Nonnull byte[] data) throws IOException {
+            List<String[]> records = new ArrayList<>();
+            int position = 0;
+            while (position < data.length) {
+                int space = position;
+                while (space < data.length && data[space] != ' ') {
+                    space++;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid TAR extended header", e);
+                }
+                if (length <= space - position + 1 || position + length > data.length) {
+                    throw new IOException("Invalid TAR extended header");
+                }
+                String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+                int equals = record.indexOf('=');
+                if (equals < 0) {
+                    throw new IOException("Invalid TAR extended header");
+                }
+                records.add(new String[] {record.substring(0, equals), record.substring(equals + 1)});
+                position += length;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Counts the bytes written to an output.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(@Nonnull OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            count++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
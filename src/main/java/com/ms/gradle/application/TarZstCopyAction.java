@@ -0,0 +1,90 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link CopyAction} that writes a TAR archive compressed with Zstandard (see {@link TarFormat} and
+ * {@link ZstdOutputStream}). Files are read and written in order by the thread that processes the copy, while the
+ * archive gets compressed on multiple threads.
+ */
+final class TarZstCopyAction implements CopyAction {
+
+    @Nonnull
+    private final File archiveFile;
+    private final int level;
+    private final int threads;
+    private final boolean preserveFileTimestamps;
+
+    /**
+     * Creates a {@link TarZstCopyAction}.
+     *
+     * @param archiveFile The archive file to create.
+     * @param level The compression level, between {@value ZstdFormat#MIN_LEVEL} and {@value ZstdFormat#MAX_LEVEL}.
+     * @param threads The number of threads to compress the archive on.
+     * @param preserveFileTimestamps Whether to keep the last modification times of the files, instead of using a
+     * constant timestamp.
+     */
+    TarZstCopyAction(@Nonnull File archiveFile, int level, int threads, boolean preserveFileTimestamps) {
+        this.archiveFile = archiveFile;
+        this.level = level;
+        this.threads = threads;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("PMD.PreserveStackTrace") // The UncheckedIOException only carries its cause out of the stream
+    public WorkResult execute(@Nonnull CopyActionProcessingStream stream) {
+        try (OutputStream file = Files.newOutputStream(archiveFile.toPath());
+                ZstdOutputStream output = new ZstdOutputStream(file, level, threads,
+                        "Compressing " + archiveFile.getName())) {
+            TarFormat.Writer writer = new TarFormat.Writer(output);
+            stream.process(details -> {
+                try {
+                    write(writer, details);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.close();
+        } catch (IOException e) {
+            throw new GradleException("Could not create " + archiveFile, e);
+        } catch (UncheckedIOException e) {
+            throw new GradleException("Could not create " + archiveFile, e.getCause());
+        }
+        return WorkResults.didWork(true);
+    }
+
+    private void write(@Nonnull TarFormat.Writer writer, @Nonnull FileCopyDetails details) throws IOException {
+        String name = details.getRelativePath().getPathString();
+        // Same as Gradle's own TAR archives: the epoch, when file timestamps are not preserved
+        long modTime = preserveFileTimestamps ? TimeUnit.MILLISECONDS.toSeconds(details.getLastModified()) : 0;
+        if (details.isDirectory()) {
+            writer.writeDirectory(name, details.getMode(), modTime);
+        } else {
+            writer.writeFile(name, details.getMode(), modTime, details.getSize(), details::copyTo);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.gradle.api.file.RelativePath;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+/**
+ * Helpers for the training runs of applications, which record the classes they load into archives for the JVM to
+ * start from (see {@link CdsArchive} and {@link AotCache}).
+ */
+final class TrainingRun {
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private TrainingRun() {}
+
+    /**
+     * Lays out an application JAR and its dependencies in a directory, like in the distribution, replacing anything
+     * that the directory contained. Training runs start in that directory, so that the archives record the classpath
+     * relative to it, and don't depend on where the application gets installed.
+     *
+     * @param trainingDirectory The directory to lay out the application in.
+     * @param applicationJarFile The application JAR, which goes into the directory itself.
+     * @param dependencyDestinations The dependency files, along with their relative paths within the directory.
+     * @throws IOException If the application can't be laid out.
+     */
+    static void stage(@Nonnull Path trainingDirectory, @Nonnull File applicationJarFile,
+            @Nonnull Map<File, RelativePath> dependencyDestinations) throws IOException {
+        Utils.deleteRecursively(trainingDirectory);
+        Files.createDirectories(trainingDirectory);
+        stageFile(applicationJarFile.toPath(), trainingDirectory.resolve(applicationJarFile.getName()));
+        for (Map.Entry<File, RelativePath> dependency : dependencyDestinations.entrySet()) {
+            Path target = trainingDirectory.resolve(dependency.getValue().getPathString());
+            Files.createDirectories(Utils.nonNull(target.getParent(), "target.parent"));
+            stageFile(dependency.getKey().toPath(), target);
+        }
+    }
+
+    /**
+     * Lays out a directory with applications in a training directory, replacing anything that the training directory
+     * contained (see {@link #stage(Path, File, Map)}).
+     *
+     * @param trainingDirectory The directory to lay out the applications in.
+     * @param sourceDirectory The directory to copy.
+     * @throws IOException If the applications can't be laid out.
+     */
+    static void stage(@Nonnull Path trainingDirectory, @Nonnull Path sourceDirectory) throws IOException {
+        Utils.deleteRecursively(trainingDirectory);
+        Files.createDirectories(trainingDirectory);
+        List<Path> sources;
+        try (Stream<Path> stream = Files.walk(sourceDirectory)) {
+            sources = stream.filter(path -> !path.equals(sourceDirectory)).collect(Collectors.toList());
+        }
+        for (Path source : sources) {
+            Path target = trainingDirectory.resolve(sourceDirectory.relativize(source).toString());
+            if (Files.isDirectory(source)) {
+                Files.createDirectories(target);
+            } else {
+                stageFile(source, target);
+            }
+        }
+    }
+
+    private static void stageFile(@Nonnull Path source, @Nonnull Path target) throws IOException {
+        Files.copy(source, target);
+        // The JVM rejects the archive if a JAR has a different modification time than in the training run, unless
+        // that was zero: the JARs get new modification times wherever the distribution is installed
+        Files.setLastModifiedTime(target, FileTime.fromMillis(0));
+    }
+
+    /**
+     * Runs the {@code java} command of a Java installation in a training directory.
+     *
+     * @param execOperations The service to run the command with.
+     * @param javaHome The home directory of the Java installation.
+     * @param trainingDirectory The directory that the applications have been laid out in, to run the command in.
+     * @param description What the command does, for error messages, e.g. {@code training run}.
+     * @param arguments The arguments of the command.
+     * @throws IllegalArgumentException If the command exits with a non-zero value.
+     */
+    static void run(@Nonnull ExecOperations execOperations, @Nonnull File javaHome, @Nonnull Path trainingDirectory,
+            @Nonnull String description, @Nonnull List<String> arguments) {
+        ExecResult result = execOperations.exec(spec -> {
+            spec.setExecutable(JavaInstallation.executable(javaHome, "java"));
+            spec.setWorkingDir(trainingDirectory.toFile());
+            spec.args(arguments);
+            spec.setIgnoreExitValue(true);
+        });
+        Utils.argument(result.getExitValue() == 0, "The %s exited with value %s", description, result.getExitValue());
+    }
+}
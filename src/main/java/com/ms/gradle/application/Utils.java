@@ -15,6 +15,13 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Optional;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -71,6 +78,15 @@ final class Utils {
         return str.isEmpty() ? str : Character.toTitleCase(str.charAt(0)) + str.substring(1);
     }
 
+    @Nonnull
+    static String hex(@Nonnull byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
     @Nonnull
     static <T> Optional<T> getFinalizedValue(@Nonnull Property<T> property) {
         property.finalizeValue();
@@ -83,6 +99,32 @@ final class Utils {
         }
     }
 
+    static void deleteRecursively(@Nonnull Path path) throws IOException {
+        // Symbolic links are deleted, not followed, and nothing happens if the path doesn't exist
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                @Nonnull
+                public FileVisitResult visitFile(@Nonnull Path file, @Nonnull BasicFileAttributes attributes)
+                        throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                @Nonnull
+                public FileVisitResult postVisitDirectory(@Nonnull Path dir, @Nullable IOException e)
+                        throws IOException {
+                    FileVisitResult result = super.postVisitDirectory(dir, e);
+                    Files.delete(dir);
+                    return result;
+                }
+            });
+        } catch (NoSuchFileException e) {
+            // Nothing to delete
+        }
+    }
+
     @Nonnull
     static SourceSetContainer sourceSets(@Nonnull Project project) {
         return project.getExtensions().getByType(SourceSetContainer.class);
@@ -0,0 +1,741 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Minimal reader and writer for the ZIP file format, operating directly on the records of the archive. This allows
+ * entries to be transferred from one archive to another as they are: compressed data, CRC-32 and sizes are copied byte
+ * for byte, without inflating and deflating the contents again.</p>
+ * <p>Only the features needed by this plugin are supported. Most notably, ZIP64 archives are rejected.</p>
+ *
+ * @see <a href="https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT">ZIP File Format Specification</a>
+ */
+final class ZipFormat {
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    /**
+     * Header ID of the extra field used for padding local records, the same one that Android's {@code zipalign} uses.
+     * Its data consists of zeros only, so it does not claim any particular alignment.
+     */
+    private static final int PADDING_EXTRA_FIELD_ID = 0xD935;
+    private static final int EXTRA_FIELD_HEADER_SIZE = 4;
+    private static final int MAX_EXTRA_FIELD_SIZE = 0xFFFF;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_MADE_BY_UNIX = (3 << 8) | VERSION_DEFLATED;
+    private static final int UNIX_DIRECTORY_FLAG = 0x4000;
+    private static final int UNIX_FILE_FLAG = 0x8000;
+    private static final int MS_DOS_DIRECTORY_FLAG = 0x10;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Default Unix permissions of directory entries: {@code rwxr-xr-x}.
+     */
+    static final int DEFAULT_DIRECTORY_MODE = 0755;
+
+    /**
+     * Default Unix permissions of file entries: {@code rw-r--r--}.
+     */
+    static final int DEFAULT_FILE_MODE = 0644;
+
+    /**
+     * MS-DOS date and time of {@code 1980-02-01 00:00}, the same constant that Gradle uses for archive entries when
+     * {@linkplain org.gradle.api.tasks.bundling.AbstractArchiveTask#isPreserveFileTimestamps file timestamps are not
+     * preserved}.
+     */
+    static final int CONSTANT_DOS_TIME = ((2 << 5) | 1) << 16;
+
+    /**
+     * The earliest date and time that can be represented in MS-DOS format: {@code 1980-01-01 00:00}.
+     */
+    private static final int MINIMUM_DOS_TIME = ((1 << 5) | 1) << 16;
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private ZipFormat() {}
+
+    /**
+     * Reads the central directory of a ZIP archive.
+     *
+     * @param channel The channel to read the archive from.
+     * @return The entries of the archive, in central directory order.
+     * @throws IOException If the archive can't be read, is malformed, or uses ZIP64 extensions.
+     */
+    @Nonnull
+    static List<Entry> readCentralDirectory(@Nonnull FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+        int endPosition = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+        while (endPosition >= 0 && tail.getInt(endPosition) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            endPosition--;
+        }
+        if (endPosition < 0) {
+            throw new ZipException("End of central directory record not found");
+        }
+        int locatorPosition = endPosition - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+        if (locatorPosition >= 0 && tail.getInt(locatorPosition) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        int entryCount = Short.toUnsignedInt(tail.getShort(endPosition + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(endPosition + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(endPosition + 16));
+        if (directoryOffset + directorySize > size - tailSize + endPosition) {
+            throw new ZipException("Invalid central directory location");
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(Entry.read(directory, directoryOffset));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * <p>Replaces the content of a file entry in place, without touching any other entry of the archive. This is only
+     * possible if the local record of the new content occupies exactly as many bytes as the existing one, which is what
+     * {@linkplain Writer#writeFile(CompressedFile, int) padding local records to a block size} allows for. The result
+     * is byte for byte the same as if the archive had been written again with the new content.</p>
+     * <p>Entries are expected to be stored in the order of the central directory, without any gaps between them, like
+     * {@link Writer} writes them.</p>
+     *
+     * @param channel The channel of the archive to modify.
+     * @param entries The entries of the archive, as read from its central directory.
+     * @param index The index of the entry to replace within {@code entries}.
+     * @param file The new content of the entry.
+     * @param blockSize The block size that the local record of the entry is padded to.
+     * @return {@code true} if the entry was replaced; {@code false} if the new local record has a different size, and
+     * the archive has been left untouched.
+     * @throws IOException If an I/O error occurs.
+     */
+    static boolean replaceFile(@Nonnull FileChannel channel, @Nonnull List<Entry> entries, int index,
+            @Nonnull CompressedFile file, int blockSize) throws IOException {
+        Entry entry = entries.get(index);
+        Utils.argument(entry.getName().equals(file.name), "Entry name mismatch: %s", file.name);
+        long recordEnd = index + 1 < entries.size() ?
+                entries.get(index + 1).getLocalHeaderOffset() :
+                entries.get(0).recordOffset;
+        if (recordEnd - entry.getLocalHeaderOffset() != file.localRecordSize(blockSize)) {
+            return false;
+        }
+
+        write(channel, entry.getLocalHeaderOffset(), file.localHeader(blockSize));
+        write(channel, entry.getLocalHeaderOffset() + file.localHeaderSize(blockSize), ByteBuffer.wrap(file.data));
+        ByteBuffer fields = allocate(12).putInt((int) file.crc).putInt(file.data.length).putInt(file.size);
+        write(channel, entry.recordOffset + 16, (ByteBuffer) fields.flip());
+        return true;
+    }
+
+    /**
+     * Reads the data of an entry that is stored without compression, which is also its content.
+     *
+     * @param channel The channel to read the archive from.
+     * @param entry The entry to read, as read from the central directory of the archive.
+     * @return The content of the entry.
+     * @throws IOException If an I/O error occurs, or the archive is malformed.
+     */
+    @Nonnull
+    static byte[] readStoredContent(@Nonnull FileChannel channel, @Nonnull Entry entry) throws IOException {
+        Utils.argument(entry.getMethod() == METHOD_STORED, "Entry is not stored: %s", entry.getName());
+        ByteBuffer header = read(channel, entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry " + entry.getName());
+        }
+        long dataOffset = entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + Short.toUnsignedInt(header.getShort(26)) +
+                Short.toUnsignedInt(header.getShort(28));
+        return read(channel, dataOffset, (int) entry.getCompressedSize()).array();
+    }
+
+    @Nonnull
+    private static ByteBuffer read(@Nonnull FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of ZIP archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void write(@Nonnull FileChannel channel, long position, @Nonnull ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void transfer(@Nonnull FileChannel source, long position, long count, @Nonnull FileChannel target)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long result = source.transferTo(position + transferred, count - transferred, target);
+            if (result <= 0) {
+                throw new EOFException("Unexpected end of ZIP archive");
+            }
+            transferred += result;
+        }
+    }
+
+    @Nonnull
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Nonnull
+    private static ByteBuffer centralHeader(@Nonnull byte[] nameBytes, int dosTime, int method, long crc,
+            int compressedSize, int size, int externalAttributes, long offset) {
+        int versionNeeded = method == METHOD_DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+        ByteBuffer record = allocate(CENTRAL_HEADER_SIZE + nameBytes.length);
+        record.putInt(CENTRAL_HEADER_SIGNATURE).putShort((short) VERSION_MADE_BY_UNIX)
+                .putShort((short) versionNeeded).putShort((short) FLAG_UTF8).putShort((short) method)
+                .putInt(dosTime).putInt((int) crc).putInt(compressedSize).putInt(size)
+                .putShort((short) nameBytes.length).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(externalAttributes).putInt((int) offset)
+                .put(nameBytes).flip();
+        return record;
+    }
+
+    /**
+     * Describes a new directory entry, the same way {@link Writer#writeDirectory} would write it.
+     *
+     * @param name The name of the entry. Must end with a {@code '/'} character.
+     * @param dosTime The last modification time of the entry in MS-DOS format.
+     * @return The entry, with a local header offset of zero.
+     */
+    @Nonnull
+    static Entry directoryEntry(@Nonnull String name, int dosTime) {
+        return directoryEntry(name, dosTime, DEFAULT_DIRECTORY_MODE);
+    }
+
+    @Nonnull
+    private static Entry directoryEntry(@Nonnull String name, int dosTime, int unixMode) {
+        Utils.argument(name.endsWith("/"), "Directory name must end with '/': %s", name);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int externalAttributes = ((UNIX_DIRECTORY_FLAG | unixMode) << 16) | MS_DOS_DIRECTORY_FLAG;
+        return new Entry(centralHeader(nameBytes, dosTime, METHOD_STORED, 0, 0, 0, externalAttributes, 0), -1);
+    }
+
+    /**
+     * Converts a Java timestamp to MS-DOS format, in the local time zone (like {@link java.util.zip.ZipEntry#setTime}
+     * does). Timestamps before 1980 are represented as {@code 1980-01-01 00:00}.
+     *
+     * @param millis The timestamp to convert, in milliseconds since the epoch.
+     * @return The date and time in MS-DOS format.
+     */
+    static int toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return MINIMUM_DOS_TIME;
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 |
+                time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * <p>Compresses a block of data as part of a raw DEFLATE stream. Compressing a large content in multiple blocks
+     * (possibly in parallel), then concatenating the results, yields a valid DEFLATE stream, that decompresses to the
+     * full content.</p>
+     * <p>Every block but the last one is terminated with a sync flush, so that it ends on a byte boundary. Blocks are
+     * primed with the (up to) 32 KiB of content preceding them as a preset dictionary, so back-references into the
+     * previous block can still be used, and the compression ratio barely suffers.</p>
+     *
+     * @param content The full content being compressed.
+     * @param offset The offset of the block to compress within {@code content}.
+     * @param length The length of the block to compress.
+     * @param last Whether this is the last block of the content.
+     * @return The compressed block.
+     */
+    @Nonnull
+    static byte[] deflate(@Nonnull byte[] content, int offset, int length, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (offset > 0) {
+                int dictionarySize = Math.min(offset, DICTIONARY_SIZE);
+                deflater.setDictionary(content, offset - dictionarySize, dictionarySize);
+            }
+            deflater.setInput(content, offset, length);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * A file entry to be written, with its content already compressed.
+     */
+    static final class CompressedFile {
+
+        @Nonnull
+        private final String name;
+        @Nonnull
+        private final byte[] nameBytes;
+        private final int dosTime;
+        private final int unixMode;
+        private final int method;
+        private final long crc;
+        private final int size;
+        @Nonnull
+        private final byte[] data;
+
+        /**
+         * Compresses the content of a new file entry, with {@linkplain #DEFAULT_FILE_MODE default permissions}.
+         *
+         * @param name The name of the entry.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @param method The compression method to use: {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}.
+         * @param content The uncompressed content of the entry.
+         */
+        CompressedFile(@Nonnull String name, int dosTime, int method, @Nonnull byte[] content) {
+            this(name, dosTime, DEFAULT_FILE_MODE, method, crc(content), content.length,
+                    method == METHOD_DEFLATED ? deflate(content, 0, content.length, true) : content);
+        }
+
+        /**
+         * Creates a new file entry from content that has already been compressed.
+         *
+         * @param name The name of the entry.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @param unixMode The Unix permissions of the entry.
+         * @param method The compression method used: {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}.
+         * @param crc The CRC-32 of the uncompressed content.
+         * @param size The size of the uncompressed content.
+         * @param data The compressed content. It is not copied, so it must not be modified afterwards.
+         */
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly") // Copying whole file contents would double the memory used
+        CompressedFile(@Nonnull String name, int dosTime, int unixMode, int method, long crc, int size,
+                @Nonnull byte[] data) {
+            Utils.argument(!name.endsWith("/"), "File name must not end with '/': %s", name);
+            Utils.argument(method == METHOD_STORED || method == METHOD_DEFLATED, "Unsupported method: %s", method);
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime;
+            this.unixMode = unixMode;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+
+        /**
+         * Calculates the CRC-32 of some content.
+         *
+         * @param content The content to calculate the CRC-32 of.
+         * @return The CRC-32 of the content.
+         */
+        static long crc(@Nonnull byte[] content) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            return crc.getValue();
+        }
+
+        int getDosTime() {
+            return dosTime;
+        }
+
+        /**
+         * Describes this file entry, the same way {@link Writer#writeFile(CompressedFile, int)} would write it.
+         *
+         * @return The entry, with a local header offset of zero.
+         */
+        @Nonnull
+        Entry toEntry() {
+            int externalAttributes = (UNIX_FILE_FLAG | unixMode) << 16;
+            return new Entry(centralHeader(nameBytes, dosTime, method, crc, data.length, size, externalAttributes, 0),
+                    -1);
+        }
+
+        private int localRecordSize(int blockSize) {
+            int unpaddedSize = LOCAL_HEADER_SIZE + nameBytes.length + data.length;
+            return blockSize > 0 ?
+                    (unpaddedSize + EXTRA_FIELD_HEADER_SIZE + blockSize - 1) / blockSize * blockSize :
+                    unpaddedSize;
+        }
+
+        private int localHeaderSize(int blockSize) {
+            return localRecordSize(blockSize) - data.length;
+        }
+
+        @Nonnull
+        private ByteBuffer localHeader(int blockSize) {
+            int extraSize = localHeaderSize(blockSize) - LOCAL_HEADER_SIZE - nameBytes.length;
+            Utils.argument(extraSize <= MAX_EXTRA_FIELD_SIZE, "Block size is too large: %s", blockSize);
+            int versionNeeded = method == METHOD_DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+            ByteBuffer header = allocate(LOCAL_HEADER_SIZE + nameBytes.length + extraSize);
+            header.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) versionNeeded).putShort((short) FLAG_UTF8)
+                    .putShort((short) method).putInt(dosTime).putInt((int) crc).putInt(data.length).putInt(size)
+                    .putShort((short) nameBytes.length).putShort((short) extraSize).put(nameBytes);
+            if (extraSize > 0) {
+                header.putShort((short) PADDING_EXTRA_FIELD_ID).putShort((short) (extraSize - EXTRA_FIELD_HEADER_SIZE));
+            }
+            header.position(0);
+            return header;
+        }
+    }
+
+    /**
+     * An entry of a ZIP archive, as described by its central directory record.
+     */
+    static final class Entry {
+
+        @Nonnull
+        private final ByteBuffer record;
+        private final long recordOffset;
+        @Nonnull
+        private final String name;
+
+        private Entry(@Nonnull ByteBuffer record, long recordOffset) {
+            this.record = record;
+            this.recordOffset = recordOffset;
+            byte[] nameBytes = new byte[Short.toUnsignedInt(record.getShort(28))];
+            ((ByteBuffer) record.duplicate().position(CENTRAL_HEADER_SIZE)).get(nameBytes);
+            // Non-UTF-8 names are only ever compared to ASCII names, so decoding them as UTF-8 is good enough
+            this.name = new String(nameBytes, StandardCharsets.UTF_8);
+        }
+
+        @Nonnull
+        private static Entry read(@Nonnull ByteBuffer directory, long directoryOffset) throws ZipException {
+            int start = directory.position();
+            if (directory.remaining() < CENTRAL_HEADER_SIZE || directory.getInt(start) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory record");
+            }
+            int recordSize = CENTRAL_HEADER_SIZE + Short.toUnsignedInt(directory.getShort(start + 28)) +
+                    Short.toUnsignedInt(directory.getShort(start + 30)) +
+                    Short.toUnsignedInt(directory.getShort(start + 32));
+            if (directory.remaining() < recordSize) {
+                throw new ZipException("Invalid central directory record");
+            }
+            ByteBuffer record = allocate(recordSize);
+            record.put((ByteBuffer) directory.slice().limit(recordSize)).flip();
+            directory.position(start + recordSize);
+            Entry entry = new Entry(record, directoryOffset + start);
+            if (entry.getCompressedSize() == MAX_OFFSET || entry.getSize() == MAX_OFFSET ||
+                    entry.getLocalHeaderOffset() == MAX_OFFSET) {
+                throw new ZipException("ZIP64 archives are not supported");
+            }
+            return entry;
+        }
+
+        @Nonnull
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        int getFlags() {
+            return Short.toUnsignedInt(record.getShort(8));
+        }
+
+        int getMethod() {
+            return Short.toUnsignedInt(record.getShort(10));
+        }
+
+        /**
+         * Returns the last modification time of this entry in MS-DOS format (date in the upper 16 bits, time in the
+         * lower 16 bits).
+         *
+         * @return The last modification time of this entry in MS-DOS format.
+         */
+        int getDosTime() {
+            return record.getInt(12);
+        }
+
+        long getCrc() {
+            return Integer.toUnsignedLong(record.getInt(16));
+        }
+
+        long getCompressedSize() {
+            return Integer.toUnsignedLong(record.getInt(20));
+        }
+
+        long getSize() {
+            return Integer.toUnsignedLong(record.getInt(24));
+        }
+
+        long getLocalHeaderOffset() {
+            return Integer.toUnsignedLong(record.getInt(42));
+        }
+
+        /**
+         * Checks whether this entry has the same metadata as another one. All fields of their central directory
+         * records are compared, except for the local header offset, and the flag indicating the use of a data
+         * descriptor (which {@link Writer#transfer} omits).
+         *
+         * @param other The entry to compare this entry to.
+         * @param compareContent Whether to compare the CRC-32 and the sizes of the entries too.
+         * @return Whether the entries have the same metadata.
+         */
+        boolean hasSameMetadata(@Nonnull Entry other, boolean compareContent) {
+            return Arrays.equals(comparableRecord(compareContent), other.comparableRecord(compareContent));
+        }
+
+        @Nonnull
+        private byte[] comparableRecord(boolean compareContent) {
+            ByteBuffer copy = (ByteBuffer) allocate(record.capacity()).put(record.duplicate()).flip();
+            copy.putShort(8, (short) (getFlags() & ~FLAG_DATA_DESCRIPTOR)).putInt(42, 0);
+            if (!compareContent) {
+                copy.putInt(16, 0).putInt(20, 0).putInt(24, 0);
+            }
+            return copy.array();
+        }
+    }
+
+    /**
+     * Writes a ZIP archive sequentially. Entries can either be transferred from another archive as they are, or be
+     * created from their uncompressed content. The central directory gets written when the writer is closed.
+     */
+    static final class Writer implements Closeable {
+
+        @Nonnull
+        private final FileChannel channel;
+        @Nonnull
+        private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+        private int entryCount;
+
+        /**
+         * Creates a writer that writes an archive to the given channel, starting at its current position.
+         *
+         * @param channel The channel to write the archive to.
+         */
+        Writer(@Nonnull FileChannel channel) {
+            this.channel = Utils.nonNull(channel, "channel");
+        }
+
+        /**
+         * Transfers an entry from another archive, without decompressing its data. If possible, the whole local
+         * record is copied byte for byte. If the source entry uses a data descriptor, its local header is rebuilt from
+         * the central directory record instead, and the data descriptor is omitted.
+         *
+         * @param source The channel of the archive to transfer the entry from.
+         * @param entry The entry to transfer, as read from the central directory of the source archive.
+         * @throws IOException If an I/O error occurs, or the source archive is malformed.
+         */
+        void transfer(@Nonnull FileChannel source, @Nonnull Entry entry) throws IOException {
+            long sourceOffset = entry.getLocalHeaderOffset();
+            ByteBuffer sourceHeader = read(source, sourceOffset, LOCAL_HEADER_SIZE);
+            if (sourceHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for entry " + entry.getName());
+            }
+            int variableSize = Short.toUnsignedInt(sourceHeader.getShort(26)) +
+                    Short.toUnsignedInt(sourceHeader.getShort(28));
+            long offset = beginEntry();
+            boolean verbatim = (sourceHeader.getShort(6) & FLAG_DATA_DESCRIPTOR) == 0 &&
+                    Integer.toUnsignedLong(sourceHeader.getInt(14)) == entry.getCrc() &&
+                    Integer.toUnsignedLong(sourceHeader.getInt(18)) == entry.getCompressedSize() &&
+                    Integer.toUnsignedLong(sourceHeader.getInt(22)) == entry.getSize();
+            if (verbatim) {
+                ZipFormat.transfer(source, sourceOffset, LOCAL_HEADER_SIZE + variableSize + entry.getCompressedSize(),
+                        channel);
+            } else {
+                ByteBuffer header = (ByteBuffer) allocate(LOCAL_HEADER_SIZE).put(sourceHeader).flip();
+                header.putShort(6, (short) (entry.getFlags() & ~FLAG_DATA_DESCRIPTOR));
+                header.putInt(14, (int) entry.getCrc());
+                header.putInt(18, (int) entry.getCompressedSize());
+                header.putInt(22, (int) entry.getSize());
+                write(channel, header);
+                ZipFormat.transfer(source, sourceOffset + LOCAL_HEADER_SIZE,
+                        variableSize + entry.getCompressedSize(), channel);
+            }
+
+            ByteBuffer record = (ByteBuffer) allocate(entry.record.capacity()).put(entry.record.duplicate()).flip();
+            record.putShort(8, (short) (entry.getFlags() & ~FLAG_DATA_DESCRIPTOR));
+            record.putInt(42, (int) offset);
+            centralDirectory.write(record.array(), 0, record.capacity());
+        }
+
+        /**
+         * Creates a new directory entry.
+         *
+         * @param name The name of the entry. Must end with a {@code '/'} character.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeDirectory(@Nonnull String name, int dosTime) throws IOException {
+            writeDirectory(name, dosTime, DEFAULT_DIRECTORY_MODE);
+        }
+
+        /**
+         * Creates a new directory entry.
+         *
+         * @param name The name of the entry. Must end with a {@code '/'} character.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @param unixMode The Unix permissions of the entry.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeDirectory(@Nonnull String name, int dosTime, int unixMode) throws IOException {
+            Entry entry = directoryEntry(name, dosTime, unixMode);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            long offset = beginEntry();
+            ByteBuffer header = allocate(LOCAL_HEADER_SIZE + nameBytes.length);
+            header.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) VERSION_STORED).putShort((short) FLAG_UTF8)
+                    .putShort((short) METHOD_STORED).putInt(dosTime).putInt(0).putInt(0).putInt(0)
+                    .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes).flip();
+            write(channel, header);
+            endEntry(entry, offset);
+        }
+
+        /**
+         * Writes an entry from another archive with different compressed data, but otherwise the same metadata: the
+         * central directory record is copied (including its name encoding, attributes and extra fields), while the
+         * local header is rebuilt from it, without extra fields.
+         *
+         * @param entry The entry to write, as read from the central directory of the other archive.
+         * @param method The compression method of the new data: {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}.
+         * @param data The new compressed data, which must have the same uncompressed content as the entry.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeFile(@Nonnull Entry entry, int method, @Nonnull byte[] data) throws IOException {
+            Utils.argument(method == METHOD_STORED || method == METHOD_DEFLATED, "Unsupported method: %s", method);
+            int nameLength = Short.toUnsignedInt(entry.record.getShort(28));
+            int versionNeeded = method == METHOD_DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+            int flags = entry.getFlags() & ~FLAG_DATA_DESCRIPTOR;
+            long offset = beginEntry();
+            ByteBuffer header = allocate(LOCAL_HEADER_SIZE + nameLength);
+            header.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) versionNeeded).putShort((short) flags)
+                    .putShort((short) method).putInt(entry.getDosTime()).putInt((int) entry.getCrc())
+                    .putInt(data.length).putInt((int) entry.getSize()).putShort((short) nameLength)
+                    .putShort((short) 0).put(entry.record.array(), CENTRAL_HEADER_SIZE, nameLength).flip();
+            write(channel, header);
+            write(channel, ByteBuffer.wrap(data));
+
+            ByteBuffer record = (ByteBuffer) allocate(entry.record.capacity()).put(entry.record.duplicate()).flip();
+            record.putShort(6, (short) versionNeeded).putShort(8, (short) flags).putShort(10, (short) method)
+                    .putInt(20, data.length);
+            endEntry(new Entry(record, -1), offset);
+        }
+
+        /**
+         * Creates a new file entry from its uncompressed content.
+         *
+         * @param name The name of the entry.
+         * @param dosTime The last modification time of the entry in MS-DOS format.
+         * @param method The compression method to use: {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}.
+         * @param content The uncompressed content of the entry.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeFile(@Nonnull String name, int dosTime, int method, @Nonnull byte[] content) throws IOException {
+            writeFile(new CompressedFile(name, dosTime, method, content), 0);
+        }
+
+        /**
+         * Creates a new file entry from its compressed content. If a block size is specified, the local record of the
+         * entry (header and data) gets padded to a multiple of that size, so that the entry can later be
+         * {@linkplain ZipFormat#replaceFile replaced in place} as long as the new content fits in the same number of
+         * blocks.
+         *
+         * @param file The file entry to write.
+         * @param blockSize The block size to pad the local record of the entry to, or zero for no padding.
+         * @throws IOException If an I/O error occurs.
+         */
+        void writeFile(@Nonnull CompressedFile file, int blockSize) throws IOException {
+            long offset = beginEntry();
+            write(channel, file.localHeader(blockSize));
+            write(channel, ByteBuffer.wrap(file.data));
+            endEntry(file.toEntry(), offset);
+        }
+
+        private void endEntry(@Nonnull Entry entry, long offset) {
+            entry.record.putInt(42, (int) offset);
+            centralDirectory.write(entry.record.array(), 0, entry.record.capacity());
+        }
+
+        private long beginEntry() throws IOException {
+            long offset = channel.position();
+            if (entryCount >= MAX_ENTRIES || offset >= MAX_OFFSET) {
+                throw new ZipException("Archive is too large, ZIP64 archives are not supported");
+            }
+            entryCount++;
+            return offset;
+        }
+
+        /**
+         * Writes the central directory, completing the archive. Does not close the underlying channel.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            long directoryOffset = channel.position();
+            if (directoryOffset + centralDirectory.size() >= MAX_OFFSET) {
+                throw new ZipException("Archive is too large, ZIP64 archives are not supported");
+            }
+            write(channel, ByteBuffer.wrap(centralDirectory.toByteArray()));
+            ByteBuffer end = allocate(END_OF_CENTRAL_DIRECTORY_SIZE);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) entryCount).putShort((short) entryCount).putInt(centralDirectory.size())
+                    .putInt((int) directoryOffset).putShort((short) 0).flip();
+            write(channel, end);
+        }
+    }
+}
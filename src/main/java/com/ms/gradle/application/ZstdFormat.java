@@ -0,0 +1,1045 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>Minimal encoder for the Zstandard compression format, written in plain Java so that no native library or tool is
+ * needed. Content is compressed into self-contained frames (see {@link #compress}), which can be concatenated into a
+ * single stream that any Zstandard decoder reads as one; this is what allows large streams to be compressed on
+ * multiple threads (see {@link ZstdOutputStream}).</p>
+ * <p>Only a subset of the format is produced, which keeps the encoder small while decoding remains just as fast:</p>
+ * <ul>
+ * <li>Matches are found with hash chains, searched more deeply at higher {@linkplain #MIN_LEVEL levels}.</li>
+ * <li>Literals are Huffman-coded when their symbols fit into the direct weight representation (which covers any text),
+ * and stored as they are otherwise.</li>
+ * <li>Sequences are coded with the predefined FSE distributions of the format, with a single repeated code, or with
+ * distributions normalized from their frequencies, whichever is the cheapest.</li>
+ * </ul>
+ *
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc8878">RFC 8878: Zstandard Compression and the application/zstd
+ * Media Type</a>
+ */
+final class ZstdFormat {
+
+    /**
+     * Lowest compression level: the fastest, with the least compression.
+     */
+    static final int MIN_LEVEL = 1;
+
+    /**
+     * Highest compression level: the slowest, with the most compression.
+     */
+    static final int MAX_LEVEL = 19;
+
+    private static final int MAGIC_NUMBER = 0xFD2FB528;
+    private static final int SINGLE_SEGMENT_FLAG = 1 << 5;
+    private static final int CONTENT_CHECKSUM_FLAG = 1 << 2;
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+    private static final int BLOCK_TYPE_RAW = 0;
+    private static final int BLOCK_TYPE_COMPRESSED = 2;
+    private static final int LITERALS_TYPE_RAW = 0;
+    private static final int LITERALS_TYPE_RLE = 1;
+    private static final int LITERALS_TYPE_COMPRESSED = 2;
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 16;
+    private static final int MAX_HUFFMAN_BITS = 11;
+    private static final int MAX_DIRECT_HUFFMAN_SYMBOL = 128;
+    private static final int MAX_SINGLE_STREAM_LITERALS = 255;
+
+    private static final int SYMBOL_MODE_PREDEFINED = 0;
+    private static final int SYMBOL_MODE_RLE = 1;
+    private static final int SYMBOL_MODE_COMPRESSED = 2;
+    private static final int MIN_ACCURACY_LOG = 5;
+    private static final int MAX_LITERALS_LENGTH_ACCURACY_LOG = 9;
+    private static final int MAX_MATCH_LENGTH_ACCURACY_LOG = 9;
+    private static final int MAX_OFFSET_ACCURACY_LOG = 8;
+
+    /**
+     * Baseline literals lengths of the literals length codes.
+     */
+    private static final int[] LITERALS_LENGTH_BASELINES = {
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+        16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536,
+    };
+
+    /**
+     * Baseline match lengths of the match length codes, minus the minimum match length of the format (which is 3).
+     */
+    private static final int[] MATCH_LENGTH_BASELINES = {
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29,
+        30, 31, 32, 34, 36, 38, 40, 44, 48, 56, 64, 80, 96, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536,
+    };
+
+    private static final FseTable LITERALS_LENGTH_TABLE = new FseTable(6, new int[] {
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2,
+            2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1,
+    });
+    private static final FseTable MATCH_LENGTH_TABLE = new FseTable(6, new int[] {
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1,
+    });
+    private static final FseTable OFFSET_TABLE = new FseTable(5, new int[] {
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1,
+    });
+
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * This is a utility class with static methods only.
+     */
+    private ZstdFormat() {}
+
+    /**
+     * Compresses content into a single Zstandard frame, which records the size of the content and its checksum. The
+     * window of the frame spans its whole content, so decoders need as much memory as the content takes; callers
+     * should keep the content to a few megabytes, and compress larger content into several frames.
+     *
+     * @param content The array holding the content to compress.
+     * @param offset The offset of the content within {@code content}.
+     * @param length The length of the content.
+     * @param level The compression level, between {@value #MIN_LEVEL} and {@value #MAX_LEVEL}.
+     * @return The compressed frame.
+     */
+    @Nonnull
+    static byte[] compress(@Nonnull byte[] content, int offset, int length, int level) {
+        Utils.argument(level >= MIN_LEVEL && level <= MAX_LEVEL,
+                "compressionLevel must be between %s and %s: %s", MIN_LEVEL, MAX_LEVEL, level);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+        writeFrameHeader(output, length);
+        if (length == 0) {
+            writeBlockHeader(output, true, BLOCK_TYPE_RAW, 0);
+        } else {
+            Encoder encoder = new Encoder(content, offset, length, level);
+            int end = offset + length;
+            for (int blockStart = offset; blockStart < end; blockStart += MAX_BLOCK_SIZE) {
+                int blockEnd = Math.min(blockStart + MAX_BLOCK_SIZE, end);
+                byte[] block = encoder.compressBlock(blockStart, blockEnd);
+                if (block.length < blockEnd - blockStart) {
+                    writeBlockHeader(output, blockEnd == end, BLOCK_TYPE_COMPRESSED, block.length);
+                    output.write(block, 0, block.length);
+                } else {
+                    writeBlockHeader(output, blockEnd == end, BLOCK_TYPE_RAW, blockEnd - blockStart);
+                    output.write(content, blockStart, blockEnd - blockStart);
+                }
+            }
+        }
+        writeLittleEndian(output, xxh64(content, offset, length), 4);
+        return output.toByteArray();
+    }
+
+    private static void writeFrameHeader(@Nonnull ByteArrayOutputStream output, int contentSize) {
+        writeLittleEndian(output, MAGIC_NUMBER, 4);
+        // With a single segment, the window is the whole content, so no window descriptor is needed
+        if (contentSize < 256) {
+            output.write(SINGLE_SEGMENT_FLAG | CONTENT_CHECKSUM_FLAG);
+            output.write(contentSize);
+        } else if (contentSize < 65536 + 256) {
+            output.write((1 << 6) | SINGLE_SEGMENT_FLAG | CONTENT_CHECKSUM_FLAG);
+            writeLittleEndian(output, contentSize - 256, 2);
+        } else {
+            output.write((2 << 6) | SINGLE_SEGMENT_FLAG | CONTENT_CHECKSUM_FLAG);
+            writeLittleEndian(output, contentSize, 4);
+        }
+    }
+
+    private static void writeBlockHeader(@Nonnull ByteArrayOutputStream output, boolean last, int type, int size) {
+        writeLittleEndian(output, (last ? 1 : 0) | (type << 1) | (size << 3), 3);
+    }
+
+    private static void writeLittleEndian(@Nonnull ByteArrayOutputStream output, long value, int size) {
+        for (int i = 0; i < size; i++) {
+            output.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Encodes the literals section of a compressed block: Huffman-coded if that makes it smaller, as a single
+     * repeated byte if there is only one, or as they are otherwise.
+     */
+    @Nonnull
+    private static byte[] encodeLiterals(@Nonnull byte[] literals, int count) {
+        int[] frequencies = new int[256];
+        for (int i = 0; i < count; i++) {
+            frequencies[literals[i] & 0xFF]++;
+        }
+        int maxSymbol = 255;
+        while (maxSymbol > 0 && frequencies[maxSymbol] == 0) {
+            maxSymbol--;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(count + 5);
+        if (count > 0 && frequencies[maxSymbol] == count) {
+            writeLiteralsHeader(output, LITERALS_TYPE_RLE, count);
+            output.write(maxSymbol);
+            return output.toByteArray();
+        }
+        writeLiteralsHeader(output, LITERALS_TYPE_RAW, count);
+        output.write(literals, 0, count);
+        byte[] raw = output.toByteArray();
+        if (maxSymbol <= MAX_DIRECT_HUFFMAN_SYMBOL && count > 0) {
+            byte[] compressed = encodeHuffmanLiterals(literals, count, frequencies, maxSymbol);
+            if (compressed.length < raw.length) {
+                return compressed;
+            }
+        }
+        return raw;
+    }
+
+    private static void writeLiteralsHeader(@Nonnull ByteArrayOutputStream output, int type, int size) {
+        if (size < 32) {
+            output.write(type | (size << 3));
+        } else if (size < 4096) {
+            writeLittleEndian(output, type | (1 << 2) | (size << 4), 2);
+        } else {
+            writeLittleEndian(output, type | (3 << 2) | (size << 4), 3);
+        }
+    }
+
+    @Nonnull
+    private static byte[] encodeHuffmanLiterals(@Nonnull byte[] literals, int count, @Nonnull int[] frequencies,
+            int maxSymbol) {
+        int[] lengths = huffmanLengths(frequencies, maxSymbol, MAX_HUFFMAN_BITS);
+        int maxBits = 0;
+        for (int length : lengths) {
+            maxBits = Math.max(maxBits, length);
+        }
+        int[] codes = huffmanCodes(lengths, maxBits);
+
+        // Tree description: the weights of all symbols but the last one, written directly in 4 bits each
+        ByteArrayOutputStream streams = new ByteArrayOutputStream(count + 64);
+        streams.write(127 + maxSymbol);
+        for (int symbol = 0; symbol < maxSymbol; symbol += 2) {
+            int high = weight(lengths[symbol], maxBits);
+            int low = symbol + 1 < maxSymbol ? weight(lengths[symbol + 1], maxBits) : 0;
+            streams.write((high << 4) | low);
+        }
+
+        boolean singleStream = count <= MAX_SINGLE_STREAM_LITERALS;
+        if (singleStream) {
+            byte[] stream = encodeHuffmanStream(literals, 0, count, codes, lengths);
+            streams.write(stream, 0, stream.length);
+        } else {
+            int segmentSize = (count + 3) / 4;
+            byte[][] segments = new byte[4][];
+            for (int i = 0; i < 4; i++) {
+                segments[i] = encodeHuffmanStream(literals, i * segmentSize, Math.min((i + 1) * segmentSize, count),
+                        codes, lengths);
+            }
+            for (int i = 0; i < 3; i++) {
+                writeLittleEndian(streams, segments[i].length, 2);
+            }
+            for (byte[] segment : segments) {
+                streams.write(segment, 0, segment.length);
+            }
+        }
+
+        int compressedSize = streams.size();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressedSize + 5);
+        int size = Math.max(count, compressedSize);
+        if (size < 1024) {
+            writeLittleEndian(output, LITERALS_TYPE_COMPRESSED | ((singleStream ? 0 : 1) << 2) | (count << 4) |
+                    (compressedSize << 14), 3);
+        } else if (size < 16384) {
+            writeLittleEndian(output, LITERALS_TYPE_COMPRESSED | (2 << 2) | (count << 4) | (compressedSize << 18), 4);
+        } else {
+            writeLittleEndian(output, LITERALS_TYPE_COMPRESSED | (3 << 2) | (count << 4) |
+                    ((long) compressedSize << 22), 5);
+        }
+        byte[] data = streams.toByteArray();
+        output.write(data, 0, data.length);
+        return output.toByteArray();
+    }
+
+    private static int weight(int length, int maxBits) {
+        return length == 0 ? 0 : maxBits + 1 - length;
+    }
+
+    /**
+     * Encodes literals into a Huffman bitstream. The stream is read backwards, so the literals are written in reverse
+     * order.
+     */
+    @Nonnull
+    private static byte[] encodeHuffmanStream(@Nonnull byte[] literals, int start, int end, @Nonnull int[] codes,
+            @Nonnull int... lengths) {
+        BitWriter writer = new BitWriter((end - start) * MAX_HUFFMAN_BITS);
+        for (int i = end - 1; i >= start; i--) {
+            int symbol = literals[i] & 0xFF;
+            writer.add(codes[symbol], lengths[symbol]);
+        }
+        return writer.close();
+    }
+
+    /**
+     * Computes the lengths of the Huffman codes of the symbols, limited to {@code maxBits}. At least two symbols must
+     * have non-zero frequencies.
+     *
+     * @param frequencies The frequencies of the symbols.
+     * @param maxSymbol The highest symbol with a non-zero frequency.
+     * @param maxBits The maximum length of a code.
+     * @return The lengths of the codes, zero for symbols that don't occur.
+     */
+    @Nonnull
+    @SuppressWarnings("PMD.UnusedAssignment") // Taking the last two nodes moves the queues past their ends
+    static int[] huffmanLengths(@Nonnull int[] frequencies, int maxSymbol, int maxBits) {
+        // Symbols in order of increasing frequency (and increasing value, for equal frequencies)
+        int[] symbols = new int[maxSymbol + 1];
+        int symbolCount = 0;
+        for (int symbol = 0; symbol <= maxSymbol; symbol++) {
+            if (frequencies[symbol] > 0) {
+                symbols[symbolCount++] = symbol;
+            }
+        }
+        Integer[] sorted = new Integer[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            sorted[i] = symbols[i];
+        }
+        Arrays.sort(sorted, (a, b) -> Integer.compare(frequencies[a], frequencies[b]));
+
+        // Build the tree with two queues: the leaves in order, and the internal nodes in the order they are created,
+        // which is also the order of their weights
+        long[] weights = new long[2 * symbolCount - 1];
+        int[] parents = new int[2 * symbolCount - 1];
+        for (int i = 0; i < symbolCount; i++) {
+            weights[i] = frequencies[sorted[i]];
+        }
+        int nextLeaf = 0;
+        int nextNode = symbolCount;
+        for (int node = symbolCount; node < weights.length; node++) {
+            for (int child = 0; child < 2; child++) {
+                int smallest = nextLeaf < symbolCount && (nextNode >= node || weights[nextLeaf] <= weights[nextNode]) ?
+                        nextLeaf++ :
+                        nextNode++;
+                weights[node] += weights[smallest];
+                parents[smallest] = node;
+            }
+        }
+        int[] depths = new int[weights.length];
+        for (int node = weights.length - 2; node >= 0; node--) {
+            depths[node] = depths[parents[node]] + 1;
+        }
+
+        // Count the codes of each length, and move those that are too long up the tree the same way JPEG encoders do,
+        // which keeps the tree complete
+        int maxDepth = 0;
+        for (int i = 0; i < symbolCount; i++) {
+            maxDepth = Math.max(maxDepth, depths[i]);
+        }
+        int[] counts = new int[Math.max(maxDepth, maxBits) + 1];
+        for (int i = 0; i < symbolCount; i++) {
+            counts[depths[i]]++;
+        }
+        for (int length = maxDepth; length > maxBits; length--) {
+            while (counts[length] > 0) {
+                int shorter = length - 2;
+                while (counts[shorter] == 0) {
+                    shorter--;
+                }
+                counts[length] -= 2;
+                counts[length - 1]++;
+                counts[shorter + 1] += 2;
+                counts[shorter]--;
+            }
+        }
+
+        // The most frequent symbols get the shortest codes
+        int[] lengths = new int[maxSymbol + 1];
+        int next = symbolCount - 1;
+        for (int length = 1; length <= maxBits; length++) {
+            for (int i = 0; i < counts[length]; i++) {
+                lengths[sorted[next--]] = length;
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * Assigns the Huffman codes the way Zstandard decoders expect them: in order of increasing weight (i.e. decreasing
+     * length), and of increasing symbol value within the same weight.
+     */
+    @Nonnull
+    private static int[] huffmanCodes(@Nonnull int[] lengths, int maxBits) {
+        int[] rankStarts = new int[maxBits + 2];
+        for (int length : lengths) {
+            if (length > 0) {
+                rankStarts[weight(length, maxBits)] += 1 << (maxBits - length);
+            }
+        }
+        int start = 0;
+        for (int weight = 1; weight <= maxBits; weight++) {
+            int size = rankStarts[weight];
+            rankStarts[weight] = start;
+            start += size;
+        }
+        int[] codes = new int[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] > 0) {
+                int weight = weight(lengths[symbol], maxBits);
+                codes[symbol] = rankStarts[weight] >> (weight - 1);
+                rankStarts[weight] += 1 << (weight - 1);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Encodes the sequences section of a compressed block. The bitstream is read backwards, so the sequences are
+     * written in reverse order.
+     */
+    @Nonnull
+    private static byte[] encodeSequences(@Nonnull int[] literalsLengths, @Nonnull int[] matchLengths,
+            @Nonnull int[] offsets, int count) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(count * 4 + 8);
+        if (count < 128) {
+            output.write(count);
+        } else if (count < 0x7F00) {
+            output.write((count >> 8) + 128);
+            output.write(count);
+        } else {
+            output.write(255);
+            writeLittleEndian(output, count - 0x7F00, 2);
+        }
+        if (count == 0) {
+            return output.toByteArray();
+        }
+
+        int[] literalsLengthCodes = new int[count];
+        int[] matchLengthCodes = new int[count];
+        int[] offsetCodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            literalsLengthCodes[i] = code(LITERALS_LENGTH_BASELINES, literalsLengths[i]);
+            matchLengthCodes[i] = code(MATCH_LENGTH_BASELINES, matchLengths[i]);
+            offsetCodes[i] = 31 - Integer.numberOfLeadingZeros(offsets[i]);
+        }
+        ByteArrayOutputStream descriptions = new ByteArrayOutputStream();
+        int[] modes = new int[3];
+        FseTable literalsLengthTable = selectTable(literalsLengthCodes, LITERALS_LENGTH_TABLE,
+                MAX_LITERALS_LENGTH_ACCURACY_LOG, modes, 0, descriptions);
+        FseTable offsetTable = selectTable(offsetCodes, OFFSET_TABLE, MAX_OFFSET_ACCURACY_LOG, modes, 1,
+                descriptions);
+        FseTable matchLengthTable = selectTable(matchLengthCodes, MATCH_LENGTH_TABLE, MAX_MATCH_LENGTH_ACCURACY_LOG,
+                modes, 2, descriptions);
+        output.write((modes[0] << 6) | (modes[1] << 4) | (modes[2] << 2));
+        byte[] tables = descriptions.toByteArray();
+        output.write(tables, 0, tables.length);
+
+        // Each sequence takes at most 96 bits: up to 16 + 16 + 31 extra bits, and 9 + 9 + 8 bits of state
+        BitWriter writer = new BitWriter(count * 96);
+        int last = count - 1;
+        int matchLengthState = matchLengthTable.initialState(matchLengthCodes[last]);
+        int offsetState = offsetTable.initialState(offsetCodes[last]);
+        int literalsLengthState = literalsLengthTable.initialState(literalsLengthCodes[last]);
+        writeSequenceBits(writer, literalsLengths[last], literalsLengthCodes[last], matchLengths[last],
+                matchLengthCodes[last], offsets[last], offsetCodes[last]);
+        for (int i = last - 1; i >= 0; i--) {
+            offsetState = offsetTable.encode(writer, offsetState, offsetCodes[i]);
+            matchLengthState = matchLengthTable.encode(writer, matchLengthState, matchLengthCodes[i]);
+            literalsLengthState = literalsLengthTable.encode(writer, literalsLengthState, literalsLengthCodes[i]);
+            writeSequenceBits(writer, literalsLengths[i], literalsLengthCodes[i], matchLengths[i], matchLengthCodes[i],
+                    offsets[i], offsetCodes[i]);
+        }
+        writer.add(matchLengthState, matchLengthTable.accuracyLog);
+        writer.add(offsetState, offsetTable.accuracyLog);
+        writer.add(literalsLengthState, literalsLengthTable.accuracyLog);
+        byte[] stream = writer.close();
+        output.write(stream, 0, stream.length);
+        return output.toByteArray();
+    }
+
+    /**
+     * Selects the cheapest way to encode some codes: with the predefined distribution, as a single repeated code, or
+     * with a distribution normalized from their frequencies, whose description then precedes the bitstream.
+     *
+     * @param codes The codes to encode.
+     * @param predefined The table of the predefined distribution.
+     * @param maxAccuracyLog The maximum accuracy log of a normalized distribution.
+     * @param modes The symbol compression modes, where the selected mode gets stored.
+     * @param index The index of the selected mode within {@code modes}.
+     * @param descriptions The output for the description of the selected table.
+     * @return The table to encode the codes with.
+     */
+    @Nonnull
+    private static FseTable selectTable(@Nonnull int[] codes, @Nonnull FseTable predefined, int maxAccuracyLog,
+            @Nonnull int[] modes, int index, @Nonnull ByteArrayOutputStream descriptions) {
+        int[] frequencies = new int[MATCH_LENGTH_BASELINES.length];
+        int maxCode = 0;
+        for (int code : codes) {
+            frequencies[code]++;
+            maxCode = Math.max(maxCode, code);
+        }
+        if (frequencies[maxCode] == codes.length) {
+            modes[index] = SYMBOL_MODE_RLE;
+            descriptions.write(maxCode);
+            return new FseTable(0, singleton(maxCode));
+        }
+        int[] distribution = normalize(frequencies, maxCode, codes.length, maxAccuracyLog);
+        ByteArrayOutputStream description = new ByteArrayOutputStream();
+        FseTable table = new FseTable(writeDistribution(description, distribution), distribution);
+        if (maxCode < predefined.distribution.length &&
+                predefined.cost(frequencies) <= table.cost(frequencies) + 8.0 * description.size()) {
+            modes[index] = SYMBOL_MODE_PREDEFINED;
+            return predefined;
+        }
+        modes[index] = SYMBOL_MODE_COMPRESSED;
+        byte[] bytes = description.toByteArray();
+        descriptions.write(bytes, 0, bytes.length);
+        return table;
+    }
+
+    @Nonnull
+    private static int[] singleton(int symbol) {
+        int[] distribution = new int[symbol + 1];
+        distribution[symbol] = 1;
+        return distribution;
+    }
+
+    /**
+     * Normalizes the frequencies of some symbols into probabilities that add up to a power of two, the size of an FSE
+     * table. The accuracy log is chosen the same way as the reference implementation of Zstandard does.
+     *
+     * @param frequencies The frequencies of the symbols.
+     * @param maxSymbol The highest symbol with a non-zero frequency.
+     * @param total The sum of the frequencies.
+     * @param maxAccuracyLog The maximum accuracy log.
+     * @return The normalized probabilities, whose sum is the size of the table.
+     */
+    @Nonnull
+    static int[] normalize(@Nonnull int[] frequencies, int maxSymbol, int total, int maxAccuracyLog) {
+        int totalBits = 32 - Integer.numberOfLeadingZeros(total - 1);
+        int symbolBits = 32 - Integer.numberOfLeadingZeros(maxSymbol);
+        int accuracyLog = Math.min(maxAccuracyLog, totalBits - 2);
+        accuracyLog = Math.max(accuracyLog, Math.min(totalBits, symbolBits + 1));
+        accuracyLog = Math.max(accuracyLog, MIN_ACCURACY_LOG);
+        int tableSize = 1 << accuracyLog;
+
+        // Round the probabilities, but keep every symbol that occurs; the most frequent symbol absorbs the difference
+        int[] distribution = new int[maxSymbol + 1];
+        int sum = 0;
+        int largest = 0;
+        for (int symbol = 0; symbol <= maxSymbol; symbol++) {
+            if (frequencies[symbol] > 0) {
+                long scaled = ((long) frequencies[symbol] * tableSize + total / 2) / total;
+                distribution[symbol] = Math.max(1, (int) scaled);
+                sum += distribution[symbol];
+                if (frequencies[symbol] > frequencies[largest]) {
+                    largest = symbol;
+                }
+            }
+        }
+        distribution[largest] += tableSize - sum;
+        // When many rare symbols got rounded up, take the excess from the others, highest probabilities first
+        while (distribution[largest] < 1) {
+            int donor = 0;
+            for (int symbol = 1; symbol <= maxSymbol; symbol++) {
+                if (symbol != largest && distribution[symbol] > distribution[donor]) {
+                    donor = symbol;
+                }
+            }
+            distribution[donor]--;
+            distribution[largest]++;
+        }
+        return distribution;
+    }
+
+    /**
+     * Writes the description of a normalized distribution (in the same format as the reference implementation of
+     * Zstandard does).
+     *
+     * @param output The output to write to.
+     * @param distribution The normalized probabilities of the symbols.
+     * @return The accuracy log of the distribution.
+     */
+    private static int writeDistribution(@Nonnull ByteArrayOutputStream output, @Nonnull int... distribution) {
+        int remaining = 1;
+        for (int probability : distribution) {
+            remaining += probability;
+        }
+        int accuracyLog = 31 - Integer.numberOfLeadingZeros(remaining - 1);
+        int threshold = 1 << accuracyLog;
+        int bitCount = accuracyLog + 1;
+        long bits = accuracyLog - MIN_ACCURACY_LOG;
+        int position = 4;
+        boolean previousZero = false;
+        int symbol = 0;
+        while (remaining > 1) {
+            if (previousZero) {
+                // Runs of symbols that don't occur are written as repeat flags, 2 bits for up to 3 symbols
+                int start = symbol;
+                while (distribution[symbol] == 0) {
+                    symbol++;
+                }
+                for (; symbol >= start + 3; start += 3) {
+                    bits |= 3L << position;
+                    position += 2;
+                    while (position >= 8) {
+                        output.write((int) bits);
+                        bits >>>= 8;
+                        position -= 8;
+                    }
+                }
+                bits |= (long) (symbol - start) << position;
+                position += 2;
+            }
+            int value = distribution[symbol] + 1;
+            int max = 2 * threshold - 1 - remaining;
+            remaining -= distribution[symbol];
+            if (value >= threshold) {
+                value += max;
+            }
+            bits |= (long) value << position;
+            position += value < max ? bitCount - 1 : bitCount;
+            previousZero = value == 1;
+            while (remaining < threshold) {
+                bitCount--;
+                threshold >>= 1;
+            }
+            while (position >= 8) {
+                output.write((int) bits);
+                bits >>>= 8;
+                position -= 8;
+            }
+            symbol++;
+        }
+        if (position > 0) {
+            output.write((int) bits);
+        }
+        return accuracyLog;
+    }
+
+    private static void writeSequenceBits(@Nonnull BitWriter writer, int literalsLength, int literalsLengthCode,
+            int matchLength, int matchLengthCode, int offset, int offsetCode) {
+        writer.add(literalsLength - LITERALS_LENGTH_BASELINES[literalsLengthCode],
+                bitCount(LITERALS_LENGTH_BASELINES, literalsLengthCode));
+        writer.add(matchLength - MATCH_LENGTH_BASELINES[matchLengthCode],
+                bitCount(MATCH_LENGTH_BASELINES, matchLengthCode));
+        writer.add(offset, offsetCode);
+    }
+
+    private static int code(@Nonnull int[] baselines, int value) {
+        int code = baselines.length - 1;
+        while (baselines[code] > value) {
+            code--;
+        }
+        return code;
+    }
+
+    private static int bitCount(@Nonnull int[] baselines, int code) {
+        // The range of the last code goes up to the maximum block size, i.e. just as far as that of the others
+        int next = code + 1 < baselines.length ? baselines[code + 1] : 2 * baselines[code];
+        return 31 - Integer.numberOfLeadingZeros(next - baselines[code]);
+    }
+
+    /**
+     * Computes the 64-bit xxHash of some content, with a seed of zero, which is what the content checksums of
+     * Zstandard frames are made of.
+     *
+     * @param content The array holding the content.
+     * @param offset The offset of the content within {@code content}.
+     * @param length The length of the content.
+     * @return The hash of the content.
+     */
+    static long xxh64(@Nonnull byte[] content, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        long hash;
+        if (length >= 32) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            do {
+                v1 = xxh64Round(v1, readLong(content, position));
+                v2 = xxh64Round(v2, readLong(content, position + 8));
+                v3 = xxh64Round(v3, readLong(content, position + 16));
+                v4 = xxh64Round(v4, readLong(content, position + 24));
+                position += 32;
+            } while (position <= end - 32);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = xxh64Merge(hash, v1);
+            hash = xxh64Merge(hash, v2);
+            hash = xxh64Merge(hash, v3);
+            hash = xxh64Merge(hash, v4);
+        } else {
+            hash = PRIME64_5;
+        }
+        hash += length;
+        for (; position <= end - 8; position += 8) {
+            hash ^= xxh64Round(0, readLong(content, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (position <= end - 4) {
+            hash ^= (readLong(content, position) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            position += 4;
+        }
+        for (; position < end; position++) {
+            hash ^= (content[position] & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxh64Round(long accumulator, long input) {
+        return Long.rotateLeft(accumulator + input * PRIME64_2, 31) * PRIME64_1;
+    }
+
+    private static long xxh64Merge(long accumulator, long value) {
+        return (accumulator ^ xxh64Round(0, value)) * PRIME64_1 + PRIME64_4;
+    }
+
+    /**
+     * Reads up to 8 bytes in little-endian order, stopping at the end of the array.
+     */
+    private static long readLong(@Nonnull byte[] content, int position) {
+        long value = 0;
+        for (int i = Math.min(7, content.length - position - 1); i >= 0; i--) {
+            value = (value << 8) | (content[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Finds the matches within the content of a frame, and encodes its blocks.
+     */
+    private static final class Encoder {
+
+        @Nonnull
+        private final byte[] content;
+        private final int start;
+        private final int searchDepth;
+        private final int niceLength;
+        private final boolean lazy;
+        @Nonnull
+        private final int[] head = new int[1 << HASH_BITS];
+        @Nonnull
+        private final int[] chain;
+        private int nextInsert;
+
+        @Nonnull
+        private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+        private int literalCount;
+        @Nonnull
+        private final int[] literalsLengths = new int[MAX_BLOCK_SIZE / MIN_MATCH + 1];
+        @Nonnull
+        private final int[] matchLengths = new int[MAX_BLOCK_SIZE / MIN_MATCH + 1];
+        @Nonnull
+        private final int[] offsets = new int[MAX_BLOCK_SIZE / MIN_MATCH + 1];
+        private int sequenceCount;
+        @Nonnull
+        private final int[] repeatOffsets = {1, 4, 8};
+
+        private int matchLength;
+        private int matchPosition;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly") // The encoder only reads the content, which may be large
+        Encoder(@Nonnull byte[] content, int offset, int length, int level) {
+            this.content = content;
+            this.start = offset;
+            this.searchDepth = 1 << ((level - 1) / 2);
+            this.niceLength = 16 * (level + 1);
+            this.lazy = level > 1;
+            this.chain = new int[length];
+            Arrays.fill(head, -1);
+            this.nextInsert = offset;
+        }
+
+        /**
+         * Compresses a block, which may refer back to any content of the frame before it.
+         *
+         * @return The compressed content of the block, which may well be larger than the block itself.
+         */
+        @Nonnull
+        byte[] compressBlock(int blockStart, int blockEnd) {
+            literalCount = 0;
+            sequenceCount = 0;
+            int anchor = blockStart;
+            int position = blockStart;
+            while (position <= blockEnd - MIN_MATCH) {
+                findMatch(position, blockEnd, position > anchor);
+                if (matchLength < MIN_MATCH) {
+                    position++;
+                    continue;
+                }
+                // Lazy matching: prefer a longer match starting at the next position
+                while (lazy && position + 1 <= blockEnd - MIN_MATCH) {
+                    int length = matchLength;
+                    int candidate = matchPosition;
+                    findMatch(position + 1, blockEnd, true);
+                    if (matchLength <= length) {
+                        matchLength = length;
+                        matchPosition = candidate;
+                        break;
+                    }
+                    position++;
+                }
+                addSequence(anchor, position, matchLength, position - matchPosition);
+                position += matchLength;
+                anchor = position;
+            }
+            System.arraycopy(content, anchor, literals, literalCount, blockEnd - anchor);
+            literalCount += blockEnd - anchor;
+
+            byte[] literalsSection = encodeLiterals(literals, literalCount);
+            byte[] sequencesSection = encodeSequences(literalsLengths, matchLengths, offsets, sequenceCount);
+            byte[] block = Arrays.copyOf(literalsSection, literalsSection.length + sequencesSection.length);
+            System.arraycopy(sequencesSection, 0, block, literalsSection.length, sequencesSection.length);
+            return block;
+        }
+
+        private void addSequence(int anchor, int position, int length, int offset) {
+            int literalsLength = position - anchor;
+            System.arraycopy(content, anchor, literals, literalCount, literalsLength);
+            literalCount += literalsLength;
+            literalsLengths[sequenceCount] = literalsLength;
+            // Match lengths are encoded relative to the minimum match of the format
+            matchLengths[sequenceCount] = length - 3;
+            offsets[sequenceCount] = offsetValue(offset, literalsLength > 0);
+            sequenceCount++;
+        }
+
+        /**
+         * Encodes an offset as a reference to one of the 3 repeat offsets if possible, and updates the repeat offsets
+         * the same way decoders do. After a match without literals, the repeat offsets are shifted by one, and the
+         * last one is replaced by the first minus one.
+         */
+        private int offsetValue(int offset, boolean afterLiterals) {
+            int[] candidates = afterLiterals ?
+                    new int[] {repeatOffsets[0], repeatOffsets[1], repeatOffsets[2]} :
+                    new int[] {repeatOffsets[1], repeatOffsets[2], repeatOffsets[0] - 1};
+            int repeat = 0;
+            while (repeat < 3 && candidates[repeat] != offset) {
+                repeat++;
+            }
+            int used = afterLiterals ? repeat : repeat + 1;
+            if (used == 1) {
+                repeatOffsets[1] = repeatOffsets[0];
+                repeatOffsets[0] = offset;
+            } else if (used > 1) {
+                repeatOffsets[2] = repeatOffsets[1];
+                repeatOffsets[1] = repeatOffsets[0];
+                repeatOffsets[0] = offset;
+            }
+            return repeat < 3 ? repeat + 1 : offset + 3;
+        }
+
+        /**
+         * Finds the longest match for the given position among the positions of the frame before it, within the
+         * search depth, and sets {@link #matchLength} and {@link #matchPosition} to it. A match at the first repeat
+         * offset, which is the cheapest to encode, is preferred over others of the same length.
+         */
+        private void findMatch(int position, int blockEnd, boolean afterLiterals) {
+            while (nextInsert < position) {
+                int hash = hash(nextInsert);
+                chain[nextInsert - start] = head[hash];
+                head[hash] = nextInsert;
+                nextInsert++;
+            }
+            int maxLength = blockEnd - position;
+            matchLength = 0;
+            if (afterLiterals && position - repeatOffsets[0] >= start) {
+                matchLength = matchLength(position - repeatOffsets[0], position, maxLength);
+                matchPosition = position - repeatOffsets[0];
+            }
+            int candidate = matchLength >= niceLength || matchLength == maxLength ? -1 : head[hash(position)];
+            for (int attempts = searchDepth; candidate >= 0 && attempts > 0; attempts--) {
+                if (content[candidate + matchLength] == content[position + matchLength]) {
+                    int length = matchLength(candidate, position, maxLength);
+                    if (length > matchLength) {
+                        matchLength = length;
+                        matchPosition = candidate;
+                        if (length >= niceLength || length == maxLength) {
+                            break;
+                        }
+                    }
+                }
+                candidate = chain[candidate - start];
+            }
+        }
+
+        private int matchLength(int candidate, int position, int maxLength) {
+            int length = 0;
+            while (length < maxLength && content[candidate + length] == content[position + length]) {
+                length++;
+            }
+            return length;
+        }
+
+        private int hash(int position) {
+            int value = (content[position] & 0xFF) | (content[position + 1] & 0xFF) << 8 |
+                    (content[position + 2] & 0xFF) << 16 | (content[position + 3] & 0xFF) << 24;
+            return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+        }
+    }
+
+    /**
+     * Writes a bitstream that gets read backwards, starting from its last bit. The last byte ends with a marker bit,
+     * so that decoders can tell where the stream starts.
+     */
+    private static final class BitWriter {
+
+        @Nonnull
+        private final byte[] bytes;
+        private int size;
+        private long bits;
+        private int bitCount;
+
+        /**
+         * Creates a {@link BitWriter}.
+         *
+         * @param maxBits The maximum number of bits to be added to the stream, besides the marker bit.
+         */
+        BitWriter(int maxBits) {
+            this.bytes = new byte[maxBits / 8 + 8];
+        }
+
+        /**
+         * Adds the lowest bits of a value to the stream; at most 32 of them.
+         */
+        void add(long value, int count) {
+            bits |= (value & ((1L << count) - 1)) << bitCount;
+            bitCount += count;
+            if (bitCount >= 32) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            while (bitCount >= 8) {
+                bytes[size++] = (byte) bits;
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        @Nonnull
+        byte[] close() {
+            add(1, 1);
+            flush();
+            if (bitCount > 0) {
+                bytes[size++] = (byte) bits;
+            }
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * An FSE encoding table built from a normalized distribution, in the same way as the reference implementation of
+     * Zstandard builds it, so that states match those of the decoding tables of the format.
+     */
+    private static final class FseTable {
+
+        private final int accuracyLog;
+        @Nonnull
+        private final int[] distribution;
+        @Nonnull
+        private final int[] stateTable;
+        @Nonnull
+        private final int[] deltaBitCounts;
+        @Nonnull
+        private final int[] deltaFindStates;
+
+        /**
+         * Creates an {@link FseTable}.
+         *
+         * @param accuracyLog The binary logarithm of the size of the table.
+         * @param distribution The normalized probabilities of the symbols, where {@code -1} stands for "less than 1".
+         */
+        FseTable(int accuracyLog, @Nonnull int... distribution) {
+            int tableSize = 1 << accuracyLog;
+            this.accuracyLog = accuracyLog;
+            this.distribution = distribution.clone();
+            this.stateTable = new int[tableSize];
+            this.deltaBitCounts = new int[distribution.length];
+            this.deltaFindStates = new int[distribution.length];
+
+            // Symbols with "less than 1" probabilities take the last cells, all others are spread over the rest
+            int[] tableSymbols = new int[tableSize];
+            int[] cumulative = new int[distribution.length + 1];
+            int highThreshold = tableSize - 1;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                if (distribution[symbol] == -1) {
+                    cumulative[symbol + 1] = cumulative[symbol] + 1;
+                    tableSymbols[highThreshold--] = symbol;
+                } else {
+                    cumulative[symbol + 1] = cumulative[symbol] + distribution[symbol];
+                }
+            }
+            int step = (tableSize >> 1) + (tableSize >> 3) + 3;
+            int position = 0;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                for (int i = 0; i < distribution[symbol]; i++) {
+                    tableSymbols[position] = symbol;
+                    do {
+                        position = (position + step) & (tableSize - 1);
+                    } while (position > highThreshold);
+                }
+            }
+            for (int cell = 0; cell < tableSize; cell++) {
+                stateTable[cumulative[tableSymbols[cell]]++] = tableSize + cell;
+            }
+
+            int total = 0;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                if (distribution[symbol] == 0) {
+                    continue;
+                }
+                int probability = Math.max(distribution[symbol], 1);
+                int maxBitsOut = probability == 1 ?
+                        accuracyLog :
+                        accuracyLog - (31 - Integer.numberOfLeadingZeros(probability - 1));
+                deltaBitCounts[symbol] = (maxBitsOut << 16) - (probability << maxBitsOut);
+                deltaFindStates[symbol] = total - probability;
+                total += probability;
+            }
+        }
+
+        /**
+         * Estimates the number of bits that encoding symbols with this table takes, excluding their extra bits.
+         *
+         * @param frequencies The frequencies of the symbols, all of which must have a non-zero probability.
+         * @return The estimated number of bits.
+         */
+        double cost(@Nonnull int... frequencies) {
+            double cost = 0;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                if (frequencies[symbol] > 0) {
+                    // StrictMath, so that the choice of table (and the output) is the same on every platform
+                    double probability = Math.max(distribution[symbol], 1) / (double) (1 << accuracyLog);
+                    cost -= frequencies[symbol] * StrictMath.log(probability) / StrictMath.log(2);
+                }
+            }
+            return cost;
+        }
+
+        int initialState(int symbol) {
+            int bitCount = (deltaBitCounts[symbol] + (1 << 15)) >>> 16;
+            int value = (bitCount << 16) - deltaBitCounts[symbol];
+            return stateTable[(value >>> bitCount) + deltaFindStates[symbol]];
+        }
+
+        int encode(@Nonnull BitWriter writer, int state, int symbol) {
+            int bitCount = (state + deltaBitCounts[symbol]) >>> 16;
+            writer.add(state, bitCount);
+            return stateTable[(state >>> bitCount) + deltaFindStates[symbol]];
+        }
+    }
+}
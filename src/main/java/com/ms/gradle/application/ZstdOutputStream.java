@@ -0,0 +1,162 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+/**
+ * <p>An {@link OutputStream} that compresses what is written to it with Zstandard, on multiple threads. The content is
+ * split into {@linkplain #FRAME_CONTENT_SIZE fixed-size} parts that are {@linkplain ZstdFormat#compress compressed}
+ * into independent frames, then written in order; decoders read the concatenated frames as a single stream.</p>
+ * <p>The output only depends on the content and the compression level, never on the number of threads or on their
+ * scheduling. Closing the stream writes the remaining frames and closes the underlying output.</p>
+ */
+final class ZstdOutputStream extends OutputStream {
+
+    /**
+     * Size of the parts that the content is split into, each compressed into its own frame. This is also the window
+     * size of the frames, i.e. the amount of memory needed to decompress them.
+     */
+    static final int FRAME_CONTENT_SIZE = 1024 * 1024;
+
+    /**
+     * Number of frames per thread that may be waiting to be written at any time. When this is exceeded, no further
+     * content is accepted until the oldest pending frame has been written.
+     */
+    private static final int MAX_PENDING_FRAMES_PER_THREAD = 2;
+
+    @Nonnull
+    private final OutputStream output;
+    private final int level;
+    @Nonnull
+    private final ExecutorService executor;
+    private final int maxPendingFrames;
+    @Nonnull
+    private final Deque<CompletableFuture<byte[]>> pendingFrames = new ArrayDeque<>();
+    @Nonnull
+    private byte[] buffer = new byte[FRAME_CONTENT_SIZE];
+    private int size;
+    private boolean empty = true;
+    private boolean closed;
+
+    /**
+     * Creates a {@link ZstdOutputStream}.
+     *
+     * @param output The output to write the compressed stream to.
+     * @param level The compression level, between {@value ZstdFormat#MIN_LEVEL} and {@value ZstdFormat#MAX_LEVEL}.
+     * @param threads The number of threads to compress on.
+     * @param threadName The name of the compression threads, to which a number gets appended.
+     */
+    ZstdOutputStream(@Nonnull OutputStream output, int level, int threads, @Nonnull String threadName) {
+        Utils.argument(level >= ZstdFormat.MIN_LEVEL && level <= ZstdFormat.MAX_LEVEL,
+                "compressionLevel must be between %s and %s: %s", ZstdFormat.MIN_LEVEL, ZstdFormat.MAX_LEVEL, level);
+        Utils.argument(threads > 0, "compressionThreads must be positive: %s", threads);
+        this.output = Utils.nonNull(output, "output");
+        this.level = level;
+        this.executor = Executors.newFixedThreadPool(threads, new CompressionThreadFactory(threadName));
+        this.maxPendingFrames = threads * MAX_PENDING_FRAMES_PER_THREAD;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        buffer[size++] = (byte) value;
+        if (size == buffer.length) {
+            submitFrame();
+        }
+    }
+
+    @Override
+    public void write(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int count = Math.min(end - position, buffer.length - size);
+            System.arraycopy(bytes, position, buffer, size, count);
+            size += count;
+            position += count;
+            if (size == buffer.length) {
+                submitFrame();
+            }
+        }
+    }
+
+    private void submitFrame() throws IOException {
+        byte[] content = buffer;
+        int length = size;
+        pendingFrames.addLast(
+                CompletableFuture.supplyAsync(() -> ZstdFormat.compress(content, 0, length, level), executor));
+        buffer = new byte[FRAME_CONTENT_SIZE];
+        size = 0;
+        empty = false;
+        while (pendingFrames.size() > maxPendingFrames) {
+            writeFirstFrame();
+        }
+    }
+
+    private void writeFirstFrame() throws IOException {
+        output.write(pendingFrames.removeFirst().join());
+    }
+
+    /**
+     * Compresses the remaining content, and writes all pending frames. An empty stream still gets a frame, so that the
+     * output is a valid Zstandard stream. Closes the underlying output.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (OutputStream closedOutput = output) {
+            if (size > 0 || empty) {
+                submitFrame();
+            }
+            while (!pendingFrames.isEmpty()) {
+                writeFirstFrame();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the daemon threads that compress frames.
+     */
+    private static final class CompressionThreadFactory implements ThreadFactory {
+
+        @Nonnull
+        private final String name;
+        @Nonnull
+        private final AtomicInteger count = new AtomicInteger();
+
+        CompressionThreadFactory(@Nonnull String name) {
+            this.name = name;
+        }
+
+        @Override
+        @Nonnull
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.apache.commons.io.FileUtils;
+import org.assertj.core.api.Assertions;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.attributes.LibraryElements;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.distribution.plugins.DistributionPlugin;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.Sync;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link ApplicationAggregationPlugin}.
+ */
+class ApplicationAggregationPluginTest {
+
+    private static final String TEST_NAME = ApplicationAggregationPluginTest.class.getSimpleName();
+    private static final String PLUGIN_ID = "com.ms.gradle.application-aggregation";
+    private static final String APPLICATION_PLUGIN_ID = "com.ms.gradle.application";
+
+    @Nonnull
+    private final Project rootProject = ProjectBuilder.builder().withName(TEST_NAME).build();
+    @Nonnull
+    private final Project project;
+
+    ApplicationAggregationPluginTest() {
+        project = ProjectBuilder.builder().withParent(rootProject).withName("platform").build();
+        project.getPluginManager().apply(PLUGIN_ID);
+    }
+
+    @Test
+    void testPluginsApplied() {
+        Assertions.assertThat(project.getPlugins().hasPlugin(DistributionPlugin.class)).isTrue();
+        Configuration applications =
+                project.getConfigurations().getByName(ApplicationAggregationPlugin.CONFIGURATION_NAME);
+        Assertions.assertThat(applications.isCanBeConsumed()).isFalse();
+        Assertions.assertThat(applications.isCanBeResolved()).isFalse();
+
+        AggregateApplications aggregate = getAggregateTask();
+        Assertions.assertThat(aggregate.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(aggregate.getApplications()).isEmpty();
+        Assertions.assertThat(aggregate.getDependencyDirectoryName().get())
+                .isEqualTo(ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        Assertions.assertThat(aggregate.getDestinationDirectory().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), AggregateApplications.AGGREGATE_DIRECTORY_NAME));
+
+        SharedCdsArchives sharedCdsArchives = getSharedCdsArchivesTask();
+        Assertions.assertThat(sharedCdsArchives.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(sharedCdsArchives.getTrainings()).isEmpty();
+        Assertions.assertThat(sharedCdsArchives.getJvmArguments().get()).isEmpty();
+        Assertions.assertThat(sharedCdsArchives.getBaseArchiveName().get())
+                .isEqualTo(SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME);
+        Assertions.assertThat(sharedCdsArchives.getJavaHome().isPresent()).isTrue();
+        Assertions.assertThat(sharedCdsArchives.getApplicationsDirectory().get().getAsFile())
+                .isEqualTo(aggregate.getDestinationDirectory().get().getAsFile());
+        Assertions.assertThat(sharedCdsArchives.getTaskDependencies().getDependencies(sharedCdsArchives))
+                .containsExactly(aggregate);
+        Assertions.assertThat(sharedCdsArchives.getDestinationDirectory().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), SharedCdsArchives.ARCHIVE_DIRECTORY_NAME));
+    }
+
+    @Test
+    void testAggregateApplications() throws IOException {
+        File sharedJarFile = rootProject.file("shared.jar");
+        writeJar(sharedJarFile, "Shared content");
+        Project one = createApplicationProject("one", sharedJarFile, "One content");
+        Project two = createApplicationProject("two", sharedJarFile, "Two content");
+        getApplications(two).register("other", app -> {
+            app.fromSourceSet(two.getExtensions().getByType(SourceSetContainer.class)
+                    .named(SourceSet.MAIN_SOURCE_SET_NAME));
+            app.getMainClass().set("custom.Other");
+        });
+        addDependency(one);
+        addDependency(two);
+        ApplicationName otherName = project.getObjects().named(ApplicationName.class, "other");
+        addDependency(two, dependency -> dependency.attributes(
+                attributes -> attributes.attribute(ApplicationName.APPLICATION_NAME_ATTRIBUTE, otherName)));
+        buildApplications(one, Application.MAIN_APPLICATION_JAR_TASK_NAME);
+        buildApplications(two, Application.MAIN_APPLICATION_JAR_TASK_NAME, "otherApplicationJar");
+
+        // Every application is resolved on its own, through the outgoing variant of the application
+        Configuration firstApplication = project.getConfigurations()
+                .getByName(ApplicationAggregationPlugin.APPLICATION_CONFIGURATION_NAME_PREFIX + 1);
+        Assertions.assertThat(firstApplication.isCanBeResolved()).isTrue();
+        Assertions.assertThat(firstApplication.getAttributes()
+                .getAttribute(LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE)).extracting(LibraryElements::getName)
+                .isEqualTo(LibraryElements.JAR);
+        Assertions.assertThat(firstApplication.getAttributes().getAttribute(Usage.USAGE_ATTRIBUTE))
+                .extracting(Usage::getName).isEqualTo(Usage.JAVA_RUNTIME);
+
+        AggregateApplications aggregate = getAggregateTask();
+        Assertions.assertThat(aggregate.getApplications()).hasSize(3);
+        Assertions.assertThat(aggregate.getApplications().get(1).getArtifactFiles()).extracting(File::getName)
+                .containsExactly("two.jar", "shared.jar", "local.jar");
+        Assertions.assertThat(aggregate.getApplications().get(1).getArtifactPaths().get())
+                .containsExactly("two.jar", "shared.jar", "local.jar");
+        execute(aggregate);
+
+        // Shared dependencies are stored once, different files with the same path are told apart by their content
+        File aggregateDir = aggregate.getDestinationDirectory().get().getAsFile();
+        File dependencyDir = new File(aggregateDir, ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        Assertions.assertThat(aggregateDir.list()).containsExactlyInAnyOrder(
+                "one.jar", "two.jar", "two-other.jar", ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        Assertions.assertThat(new File(dependencyDir, "shared.jar")).hasSameBinaryContentAs(sharedJarFile);
+        Assertions.assertThat(new File(dependencyDir, "local.jar")).hasSameBinaryContentAs(one.file("local.jar"));
+        File[] hashDirs = dependencyDir.listFiles(File::isDirectory);
+        Assertions.assertThat(hashDirs).hasSize(1);
+        String hashDirName = hashDirs[0].getName();
+        Assertions.assertThat(new File(hashDirs[0], "local.jar")).hasSameBinaryContentAs(two.file("local.jar"));
+
+        // The Class-Path of every application points to the stored dependencies, everything else stays the same
+        Assertions.assertThat(readClasspath(new File(aggregateDir, "one.jar")))
+                .isEqualTo("lib/shared.jar lib/local.jar");
+        Assertions.assertThat(readClasspath(new File(aggregateDir, "two.jar")))
+                .isEqualTo("lib/shared.jar lib/" + hashDirName + "/local.jar");
+        Assertions.assertThat(readClasspath(new File(aggregateDir, "two-other.jar")))
+                .isEqualTo("lib/shared.jar lib/" + hashDirName + "/local.jar");
+        Assertions.assertThat(readEntryNames(new File(aggregateDir, "two-other.jar")))
+                .isEqualTo(readEntryNames(two.file("build/application/two-other.jar")));
+
+        // The aggregated applications make up the main distribution
+        Sync installDist = (Sync) project.getTasks().getByName(DistributionPlugin.TASK_INSTALL_NAME);
+        Assertions.assertThat(installDist.getTaskDependencies().getDependencies(installDist)).contains(aggregate);
+    }
+
+    @Test
+    void testAggregateApplicationWithoutManifest() throws IOException {
+        Project bare = createVariantProject("bare", "bare.jar");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(bare.file("bare.jar").toPath()))) {
+            output.putNextEntry(new ZipEntry("content.txt"));
+            output.write("Bare content".getBytes(StandardCharsets.UTF_8));
+        }
+        addDependency(bare);
+
+        AggregateApplications aggregate = getAggregateTask();
+        execute(aggregate);
+        File aggregatedJar = new File(aggregate.getDestinationDirectory().get().getAsFile(), "bare.jar");
+        Assertions.assertThat(readClasspath(aggregatedJar)).isEmpty();
+        Assertions.assertThat(readEntryNames(aggregatedJar))
+                .containsExactly("META-INF/", "META-INF/MANIFEST.MF", "content.txt");
+    }
+
+    @Test
+    void testFailureIfApplicationJarNamesConflict() throws IOException {
+        File sharedJarFile = rootProject.file("shared.jar");
+        writeJar(sharedJarFile, "Shared content");
+        Project one = createApplicationProject("one", sharedJarFile, "One content");
+        Project two = createApplicationProject("two", sharedJarFile, "Two content");
+        getApplications(two).named(Application.MAIN_APPLICATION_NAME)
+                .configure(app -> app.getApplicationBaseName().set("one"));
+        addDependency(one);
+        addDependency(two);
+        buildApplications(one, Application.MAIN_APPLICATION_JAR_TASK_NAME);
+        buildApplications(two, Application.MAIN_APPLICATION_JAR_TASK_NAME);
+
+        Assertions.assertThatThrownBy(() -> execute(getAggregateTask()))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not aggregate applications: more than one application JAR is named 'one.jar'");
+    }
+
+    @Test
+    void testFailureIfApplicationJarIsCorrupt() throws IOException {
+        Project corrupt = createVariantProject("corrupt", "corrupt.jar");
+        FileUtils.write(corrupt.file("corrupt.jar"), "Not a JAR", StandardCharsets.UTF_8);
+        addDependency(corrupt);
+
+        AggregateApplications aggregate = getAggregateTask();
+        Assertions.assertThatThrownBy(() -> execute(aggregate))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not aggregate applications into " +
+                        aggregate.getDestinationDirectory().get().getAsFile())
+                .hasCauseInstanceOf(ZipException.class);
+    }
+
+    @Test
+    void testFailureIfApplicationJarIsAmbiguous() throws IOException {
+        addDependency(createVariantProject("ambiguous", "first.jar", "second.jar"));
+
+        Assertions.assertThatThrownBy(() -> execute(getAggregateTask()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("must resolve exactly one application JAR");
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testSharedCdsArchives() throws IOException {
+        File applicationsDir = project.file("applications");
+        writeJar(new File(applicationsDir, "one.jar"), "custom/Main.class", "One content");
+        writeJar(new File(applicationsDir, "two.jar"), "custom/Other.class", "Two content");
+        writeJar(new File(applicationsDir, "lib/shared.jar"), "custom/Hidden.class", "Shared content");
+        SharedCdsArchives sharedCdsArchives = getSharedCdsArchivesTask();
+        sharedCdsArchives.getApplicationsDirectory().set(applicationsDir);
+        sharedCdsArchives.getJavaHome().set(writeFakeJavaHome("21.0.1"));
+        sharedCdsArchives.getJvmArguments().add("-XX:+UseSerialGC");
+        sharedCdsArchives.train("one.jar", training -> training.getJvmArguments().add("-Dtraining=one"));
+        sharedCdsArchives.train("two.jar", training -> training.getArguments().add("--warm-up"));
+        Assertions.assertThat(sharedCdsArchives.getTrainings())
+                .extracting(SharedCdsArchives.Training::getApplicationJarName)
+                .containsExactly("one.jar", "two.jar");
+        execute(sharedCdsArchives);
+
+        File destinationDir = sharedCdsArchives.getDestinationDirectory().get().getAsFile();
+        Assertions.assertThat(destinationDir.list())
+                .containsExactlyInAnyOrder(SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME, "one.jsa", "two.jsa");
+
+        // Only the classes of the Java installation go into the base archive, once
+        Assertions.assertThat(new File(destinationDir, SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME)).hasContent(
+                String.join("\n",
+                        "-XX:+UseSerialGC",
+                        "java/lang/Object",
+                        "java/util/UsedByone",
+                        "@lambda-form-invoker [LF_RESOLVE] java.lang.invoke.Invokers$Holder linkToTargetMethod L_L",
+                        "java/util/UsedBytwo"));
+
+        // The archive of every application is layered on top of the base archive, with relative paths
+        File trainingDir =
+                new File(sharedCdsArchives.getTemporaryDir(), SharedCdsArchives.TRAINING_DIRECTORY_NAME);
+        Assertions.assertThat(new File(destinationDir, "one.jsa")).hasContent(String.join("\n",
+                trainingDir.getCanonicalPath(),
+                "-XX:+UseSerialGC",
+                "-Dtraining=one",
+                "-XX:SharedArchiveFile=" + SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME,
+                "-XX:ArchiveClassesAtExit=one.jsa",
+                "-jar",
+                "one.jar"));
+        Assertions.assertThat(new File(destinationDir, "two.jsa")).hasContent(String.join("\n",
+                trainingDir.getCanonicalPath(),
+                "-XX:+UseSerialGC",
+                "-XX:SharedArchiveFile=" + SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME,
+                "-XX:ArchiveClassesAtExit=two.jsa",
+                "-jar",
+                "two.jar",
+                "--warm-up"));
+        Assertions.assertThat(new File(trainingDir, "lib/shared.jar"))
+                .hasSameBinaryContentAs(new File(applicationsDir, "lib/shared.jar"));
+        Assertions.assertThat(new File(trainingDir, "lib/shared.jar").lastModified()).isZero();
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testSharedCdsArchivesFailure() throws IOException {
+        File applicationsDir = project.file("applications");
+        writeJar(new File(applicationsDir, "one.jar"), "One content");
+        SharedCdsArchives sharedCdsArchives = getSharedCdsArchivesTask();
+        sharedCdsArchives.getApplicationsDirectory().set(applicationsDir);
+        File destinationDir = sharedCdsArchives.getDestinationDirectory().get().getAsFile();
+
+        // Dynamic CDS archives take Java 13 or later, whose installation states its version
+        File java11Home = writeFakeJavaHome("11.0.21");
+        sharedCdsArchives.getJavaHome().set(java11Home);
+        Assertions.assertThatThrownBy(() -> execute(sharedCdsArchives))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create shared CDS archives in %s: The Java installation in %s is of version " +
+                        "11, but CDS archives take version 13 or later", destinationDir, java11Home);
+        sharedCdsArchives.getJavaHome().set(project.file("missing"));
+        Assertions.assertThatThrownBy(() -> execute(sharedCdsArchives))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create shared CDS archives in %s", destinationDir)
+                .hasCauseInstanceOf(IOException.class);
+
+        sharedCdsArchives.getJavaHome().set(writeFakeJavaHome("21.0.1"));
+        Assertions.assertThatThrownBy(() -> execute(sharedCdsArchives))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create shared CDS archives in %s: There are no applications to train",
+                        destinationDir);
+        sharedCdsArchives.train("two.jar", training -> { });
+        Assertions.assertThatThrownBy(() -> execute(sharedCdsArchives))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create shared CDS archives in %s: There is no application JAR named 'two.jar'",
+                        destinationDir);
+
+        SharedCdsArchives failingArchives = project.getTasks().create("failingCdsArchives", SharedCdsArchives.class,
+                task -> {
+                    task.getApplicationsDirectory().set(applicationsDir);
+                    task.getJavaHome().set(sharedCdsArchives.getJavaHome());
+                    task.train("one.jar", training -> training.getArguments().add("--fail"));
+                });
+        Assertions.assertThatThrownBy(() -> execute(failingArchives))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create shared CDS archives in %s: The training run of one.jar exited with " +
+                        "value 3", failingArchives.getDestinationDirectory().get().getAsFile());
+    }
+
+    /**
+     * Writes a fake Java installation, whose {@code java} command writes a class list with {@code
+     * -XX:DumpLoadedClassList}, the JVM options and the given class list into the archive with {@code -Xshare:dump},
+     * and its working directory and its arguments into the archive given by {@code -XX:ArchiveClassesAtExit}. It exits
+     * with value 3 when given {@code --fail}.
+     */
+    @Nonnull
+    private File writeFakeJavaHome(@Nonnull String version) throws IOException {
+        File javaHome = project.file("java-" + version);
+        FileUtils.write(new File(javaHome, JavaInstallation.RELEASE_FILE_NAME),
+                "JAVA_VERSION=\"" + version + "\"\n", StandardCharsets.UTF_8);
+        File java = new File(javaHome, "bin/java");
+        FileUtils.write(java, String.join("\n",
+                "#!/bin/sh",
+                "for arg in \"$@\"; do",
+                "  case \"$arg\" in",
+                "    -XX:DumpLoadedClassList=*) list=\"${arg#*=}\" ;;",
+                "    -XX:SharedClassListFile=*) classes=\"${arg#*=}\" ;;",
+                "    -XX:SharedArchiveFile=*) base=\"${arg#*=}\" ;;",
+                "    -XX:ArchiveClassesAtExit=*) archive=\"${arg#*=}\" ;;",
+                "    -XX:+*) options=\"$arg\" ;;",
+                "    --fail) exit 3 ;;",
+                "  esac",
+                "  [ \"$previous\" = -jar ] && jar=\"${arg%.jar}\"",
+                "  previous=\"$arg\"",
+                "done",
+                "if [ -n \"$list\" ]; then",
+                "  printf '%s\\n' '# Comment' 'java/lang/Object id: 0' \"java/util/UsedBy$jar id: 1\" \\",
+                "    'custom/Main id: 2' 'custom/Other id: 3' 'custom/Hidden id: 4' \\",
+                "    'custom/Loaded id: 5 super: 0 source: custom.jar' '@lambda-proxy custom/Main run' \\",
+                "    '@lambda-form-invoker [LF_RESOLVE] java.lang.invoke.Invokers$Holder linkToTargetMethod L_L' \\",
+                "    > \"$list\"",
+                "elif [ -n \"$classes\" ]; then",
+                "  { echo \"$options\"; cat \"$classes\"; } > \"$base\"",
+                "else",
+                "  printf '%s\\n' \"$(pwd -P)\" \"$@\" > \"$archive\"",
+                "fi",
+                ""), StandardCharsets.UTF_8);
+        Assertions.assertThat(java.setExecutable(true)).isTrue();
+        return javaHome;
+    }
+
+    /**
+     * Creates a project with a main application that depends on a shared JAR and a local JAR of its own, named the
+     * same in every project.
+     */
+    @Nonnull
+    private Project createApplicationProject(@Nonnull String name, @Nonnull File sharedJarFile,
+            @Nonnull String localContent) throws IOException {
+        Project applicationProject = ProjectBuilder.builder().withParent(rootProject).withName(name).build();
+        applicationProject.getPluginManager().apply(APPLICATION_PLUGIN_ID);
+        File localJarFile = applicationProject.file("local.jar");
+        writeJar(localJarFile, localContent);
+        applicationProject.getDependencies().add("implementation", applicationProject.files(sharedJarFile));
+        applicationProject.getDependencies().add("implementation", applicationProject.files(localJarFile));
+        getApplications(applicationProject).named(Application.MAIN_APPLICATION_NAME)
+                .configure(app -> app.getMainClass().set("custom.Main"));
+        // Unlike REPACK mode, TRANSFER mode can be executed outside of a build, as it reads the raw JAR directly
+        applicationProject.getTasks().withType(ApplicationJar.class).configureEach(applicationJar ->
+                applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER));
+        return applicationProject;
+    }
+
+    /**
+     * Creates a project without the {@link ApplicationPlugin}, that publishes the given files through a variant that
+     * looks like that of a main application.
+     */
+    @Nonnull
+    private Project createVariantProject(@Nonnull String name, @Nonnull String... artifactFileNames)
+            throws IOException {
+        Project variantProject = ProjectBuilder.builder().withParent(rootProject).withName(name).build();
+        Files.createDirectories(variantProject.getProjectDir().toPath());
+        variantProject.getConfigurations().create("application", configuration -> {
+            configuration.setCanBeConsumed(true);
+            configuration.setCanBeResolved(false);
+            configuration.attributes(attributes -> {
+                attributes.attribute(Usage.USAGE_ATTRIBUTE,
+                        variantProject.getObjects().named(Usage.class, Usage.JAVA_RUNTIME));
+                attributes.attribute(LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE, variantProject.getObjects()
+                        .named(LibraryElements.class, Application.LIBRARY_ELEMENTS_APPLICATION_JAR));
+                attributes.attribute(ApplicationName.APPLICATION_NAME_ATTRIBUTE, variantProject.getObjects()
+                        .named(ApplicationName.class, Application.MAIN_APPLICATION_NAME));
+            });
+            for (String artifactFileName : artifactFileNames) {
+                configuration.getOutgoing().artifact(variantProject.file(artifactFileName));
+            }
+        });
+        return variantProject;
+    }
+
+    private void addDependency(@Nonnull Project applicationProject) {
+        addDependency(applicationProject, dependency -> { });
+    }
+
+    private void addDependency(@Nonnull Project applicationProject, @Nonnull Action<ModuleDependency> action) {
+        // Configure the dependency before adding it, like the dependency DSL does
+        ModuleDependency dependency = (ModuleDependency) project.getDependencies()
+                .project(Collections.singletonMap("path", applicationProject.getPath()));
+        action.execute(dependency);
+        project.getConfigurations().getByName(ApplicationAggregationPlugin.CONFIGURATION_NAME).getDependencies()
+                .add(dependency);
+    }
+
+    @Nonnull
+    private AggregateApplications getAggregateTask() {
+        return project.getTasks().withType(AggregateApplications.class)
+                .getByName(ApplicationAggregationPlugin.TASK_NAME);
+    }
+
+    @Nonnull
+    private SharedCdsArchives getSharedCdsArchivesTask() {
+        return project.getTasks().withType(SharedCdsArchives.class)
+                .getByName(ApplicationAggregationPlugin.SHARED_CDS_ARCHIVES_TASK_NAME);
+    }
+
+    private static void buildApplications(@Nonnull Project applicationProject, @Nonnull String... taskNames)
+            throws IOException {
+        ((ProjectInternal) applicationProject).evaluate();
+        // Output directories are normally created by Gradle before the tasks are executed
+        Files.createDirectories(applicationProject.file("build/libs").toPath());
+        Files.createDirectories(applicationProject.file("build/" + ApplicationJar.APPLICATION_DIRECTORY_NAME).toPath());
+        execute(applicationProject.getTasks().getByName("jar"));
+        for (String taskName : taskNames) {
+            execute(applicationProject.getTasks().getByName(taskName));
+        }
+    }
+
+    private static void execute(@Nonnull Task task) {
+        task.getActions().forEach(action -> action.execute(task));
+    }
+
+    @Nonnull
+    private static NamedDomainObjectContainer<Application> getApplications(@Nonnull Project applicationProject) {
+        return applicationProject.getPlugins().getPlugin(ApplicationPlugin.class).getApplications();
+    }
+
+    private static void writeJar(@Nonnull File jarFile, @Nonnull String content) throws IOException {
+        writeJar(jarFile, "content.txt", content);
+    }
+
+    private static void writeJar(@Nonnull File jarFile, @Nonnull String entryName, @Nonnull String content)
+            throws IOException {
+        Files.createDirectories(jarFile.getParentFile().toPath());
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(jarFile.toPath()))) {
+            output.putNextEntry(new ZipEntry(entryName));
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Nonnull
+    private static String readClasspath(@Nonnull File jarFile) throws IOException {
+        try (JarFile jar = new JarFile(jarFile)) {
+            return jar.getManifest().getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        }
+    }
+
+    @Nonnull
+    private static List<String> readEntryNames(@Nonnull File jarFile) throws IOException {
+        try (JarFile jar = new JarFile(jarFile)) {
+            Enumeration<? extends ZipEntry> entries = jar.entries();
+            return Collections.list(entries).stream().map(ZipEntry::getName).collect(Collectors.toList());
+        }
+    }
+}
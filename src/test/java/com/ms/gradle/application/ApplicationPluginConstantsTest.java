@@ -23,8 +23,18 @@ class ApplicationPluginConstantsTest {
         Assertions.assertThat(Application.APPLICATION).isEqualTo("application");
         Assertions.assertThat(Application.MAIN_APPLICATION_NAME).isEqualTo("main");
         Assertions.assertThat(Application.MAIN_APPLICATION_JAR_TASK_NAME).isEqualTo("applicationJar");
+        Assertions.assertThat(Application.MAIN_INCREMENTAL_INSTALL_TASK_NAME).isEqualTo("incrementalInstallDist");
+        Assertions.assertThat(Application.MAIN_PARALLEL_DIST_ZIP_TASK_NAME).isEqualTo("distParallelZip");
+        Assertions.assertThat(Application.MAIN_DIST_TAR_ZST_TASK_NAME).isEqualTo("distTarZst");
+        Assertions.assertThat(Application.MAIN_DIST_DELTA_TASK_NAME).isEqualTo("distDelta");
+        Assertions.assertThat(Application.MAIN_OCI_IMAGE_TASK_NAME).isEqualTo("ociImage");
+        Assertions.assertThat(Application.MAIN_CDS_ARCHIVE_TASK_NAME).isEqualTo("cdsArchive");
+        Assertions.assertThat(Application.MAIN_AOT_CACHE_TASK_NAME).isEqualTo("aotCache");
+        Assertions.assertThat(Application.MAIN_JLINK_RUNTIME_TASK_NAME).isEqualTo("jlinkRuntime");
+        Assertions.assertThat(Application.MAIN_JVM_ARGUMENT_FILES_TASK_NAME).isEqualTo("jvmArgumentFiles");
         Assertions.assertThat(Application.MAIN_APPLICATION_CONFIGURATION_NAME).isEqualTo("application");
         Assertions.assertThat(Application.LIBRARY_ELEMENTS_APPLICATION_JAR).isEqualTo("application-jar");
+        Assertions.assertThat(Application.DEFAULT_STORED_ENTRY_PATTERN).isEqualTo("**/*.jar");
     }
 
     @Test
@@ -33,11 +43,91 @@ class ApplicationPluginConstantsTest {
         Assertions.assertThat(ApplicationJar.DEPENDENCY_DIRECTORY_NAME).isEqualTo("lib");
     }
 
+    @Test
+    void testIncrementalInstallConstants() {
+        Assertions.assertThat(IncrementalInstall.INSTALL_DIRECTORY_NAME).isEqualTo("incrementalInstall");
+    }
+
+    @Test
+    void testParallelDistributionZipConstants() {
+        Assertions.assertThat(ParallelDistributionZip.ARCHIVE_DIRECTORY_NAME).isEqualTo("parallelDistributions");
+    }
+
+    @Test
+    void testDistributionTarZstConstants() {
+        Assertions.assertThat(DistributionTarZst.ARCHIVE_EXTENSION).isEqualTo("tar.zst");
+        Assertions.assertThat(DistributionTarZst.DEFAULT_COMPRESSION_LEVEL).isEqualTo(3);
+    }
+
+    @Test
+    void testDistributionDeltaConstants() {
+        Assertions.assertThat(DistributionDelta.ARCHIVE_EXTENSION).isEqualTo("jar");
+        Assertions.assertThat(DistributionDelta.ARCHIVE_CLASSIFIER).isEqualTo("delta");
+    }
+
+    @Test
+    void testOciImageConstants() {
+        Assertions.assertThat(OciImage.IMAGE_DIRECTORY_NAME).isEqualTo("images");
+        Assertions.assertThat(OciImage.DEFAULT_APPLICATION_DIRECTORY).isEqualTo("/app");
+        Assertions.assertThat(OciImage.DEFAULT_ARCHITECTURE).isEqualTo("amd64");
+    }
+
+    @Test
+    void testCdsArchiveConstants() {
+        Assertions.assertThat(CdsArchive.ARCHIVE_DIRECTORY_NAME).isEqualTo("cds");
+        Assertions.assertThat(CdsArchive.ARCHIVE_EXTENSION).isEqualTo("jsa");
+        Assertions.assertThat(CdsArchive.MINIMUM_JAVA_VERSION).isEqualTo(13);
+    }
+
+    @Test
+    void testAotCacheConstants() {
+        Assertions.assertThat(AotCache.CACHE_DIRECTORY_NAME).isEqualTo("aot");
+        Assertions.assertThat(AotCache.CACHE_EXTENSION).isEqualTo("aot");
+        Assertions.assertThat(AotCache.MINIMUM_JAVA_VERSION).isEqualTo(24);
+    }
+
+    @Test
+    void testJlinkRuntimeConstants() {
+        Assertions.assertThat(JlinkRuntime.RUNTIME_DIRECTORY_NAME).isEqualTo("runtimes");
+        Assertions.assertThat(JlinkRuntime.DISTRIBUTION_DIRECTORY_NAME).isEqualTo("runtime");
+        Assertions.assertThat(JlinkRuntime.MINIMUM_JAVA_VERSION).isEqualTo(11);
+        Assertions.assertThat(JlinkRuntime.CDS_ARCHIVE_JAVA_VERSION).isEqualTo(21);
+    }
+
+    @Test
+    void testJvmArgumentFilesConstants() {
+        Assertions.assertThat(JvmArgumentFiles.DIRECTORY_NAME).isEqualTo("argfiles");
+        Assertions.assertThat(JvmArgumentFiles.ARGUMENT_FILE_EXTENSION).isEqualTo("args");
+        Assertions.assertThat(JvmArgumentFiles.MINIMUM_JAVA_VERSION).isEqualTo(9);
+    }
+
+    @Test
+    void testSharedCdsArchivesConstants() {
+        Assertions.assertThat(SharedCdsArchives.ARCHIVE_DIRECTORY_NAME).isEqualTo("sharedCdsArchives");
+        Assertions.assertThat(SharedCdsArchives.DEFAULT_BASE_ARCHIVE_NAME).isEqualTo("shared.jsa");
+    }
+
+    @Test
+    void testAggregateApplicationsConstants() {
+        Assertions.assertThat(AggregateApplications.AGGREGATE_DIRECTORY_NAME).isEqualTo("aggregatedApplications");
+    }
+
+    @Test
+    void testApplicationAggregationPluginConstants() {
+        Assertions.assertThat(ApplicationAggregationPlugin.CONFIGURATION_NAME).isEqualTo("aggregatedApplications");
+        Assertions.assertThat(ApplicationAggregationPlugin.TASK_NAME).isEqualTo("aggregateApplications");
+        Assertions.assertThat(ApplicationAggregationPlugin.SHARED_CDS_ARCHIVES_TASK_NAME)
+                .isEqualTo("sharedCdsArchives");
+    }
+
     @Test
     void testApplicationPluginConstants() throws NoSuchMethodException {
         Assertions.assertThat(ApplicationPlugin.TASK_GROUP).isEqualTo("application");
         Assertions.assertThat(ApplicationPlugin.EXTENSION_NAME).isEqualTo("applications");
         Assertions.assertThat(ApplicationPlugin.EXTENSION_TYPE).isEqualTo(TypeOf.typeOf(
                 ApplicationPlugin.class.getMethod("getApplications").getGenericReturnType()));
+        Assertions.assertThat(ApplicationPlugin.SUITES_EXTENSION_NAME).isEqualTo("applicationSuites");
+        Assertions.assertThat(ApplicationPlugin.SUITES_EXTENSION_TYPE).isEqualTo(TypeOf.typeOf(
+                ApplicationPlugin.class.getMethod("getApplicationSuites").getGenericReturnType()));
     }
 }
@@ -12,6 +12,7 @@ package com.ms.gradle.application;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.assertj.core.api.Assertions;
@@ -28,6 +29,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.FileFilter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
@@ -36,8 +38,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
@@ -71,6 +75,34 @@ class ApplicationPluginFunctionalTest {
 
     private static final GradleVersion CURRENT_GRADLE_VERSION = GradleVersion.current();
 
+    // See: https://docs.gradle.org/8.1/release-notes.html#configuration-cache
+    private static final GradleVersion STABLE_CONFIGURATION_CACHE_GRADLE_VERSION = GradleVersion.version("8.1");
+
+    // See: https://docs.gradle.org/current/userguide/isolated_projects.html
+    private static final GradleVersion ISOLATED_PROJECTS_GRADLE_VERSION = GradleVersion.version("8.5");
+    private static final String ISOLATED_PROJECTS_ARGUMENT = "-Dorg.gradle.unsafe.isolated-projects=true";
+
+    private static final String MULTI_PROJECT_TEST_NAME = TEST_NAME + "-multiProject";
+    private static final List<String> MULTI_PROJECT_BUILD_TASK_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "installDist",
+            "installOtherDist",
+            "incrementalInstallOtherDist",
+            "installSuiteDist",
+            "collectApplications"));
+
+    private static final List<String> BUILD_TASK_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "emptyJar",
+            "installDist",
+            "installSimpleDist",
+            "installWithoutRawJarDist",
+            "installWithoutDependenciesDist",
+            "installComplexDist",
+            "installTransferDist",
+            "installParallelDist",
+            "installLauncherDist",
+            "installManualDist",
+            "installFullyManualDist"));
+
     @Nonnull
     private static Stream<GradleVersion> gradleVersions(@Nonnull GradleVersion version, @Nonnull String... versions) {
         return Stream.concat(Stream.of(version), Stream.of(versions).map(GradleVersion::version));
@@ -113,6 +145,18 @@ class ApplicationPluginFunctionalTest {
                         Arrays.stream(GradleDsl.values()).map(gradleDsl -> Arguments.of(gradleVersion, gradleDsl)));
     }
 
+    @Nonnull
+    private static Stream<Arguments> configurationCacheTestArguments() {
+        return testArguments().filter(arguments ->
+                STABLE_CONFIGURATION_CACHE_GRADLE_VERSION.compareTo((GradleVersion) arguments.get()[0]) <= 0);
+    }
+
+    @Nonnull
+    private static Stream<Arguments> isolatedProjectsTestArguments() {
+        return testArguments().filter(arguments ->
+                ISOLATED_PROJECTS_GRADLE_VERSION.compareTo((GradleVersion) arguments.get()[0]) <= 0);
+    }
+
     @Nonnull
     @SuppressFBWarnings(value = "NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR",
             justification = "@TempDir is not supported on constructor parameters")
@@ -131,17 +175,75 @@ class ApplicationPluginFunctionalTest {
         executeAndValidate(gradleVersion);
     }
 
+    @ParameterizedTest(name = "{0}, {1}")
+    @MethodSource("configurationCacheTestArguments")
+    @SuppressWarnings("PMD.JUnitTestsShouldIncludeAssert") // Delegating to other methods asserting a lot of things
+    void testPluginWithConfigurationCache(@Nonnull GradleVersion gradleVersion, @Nonnull GradleDsl gradleDsl)
+            throws IOException {
+        prepareProjectDir(gradleVersion, gradleDsl.fileNameFor("build"));
+        List<String> arguments = new ArrayList<>(BUILD_TASK_NAMES);
+        arguments.add("--configuration-cache");
+
+        BuildResult storeResult = makeGradleRunner(gradleVersion).withArguments(arguments).build();
+        Assertions.assertThat(storeResult.getOutput()).contains("Configuration cache entry stored.");
+        validateTaskOutcomes(storeResult);
+        validateBuildOutputs();
+
+        // Delete all outputs, so that the tasks loaded from the configuration cache must do all the work again
+        FileUtils.deleteDirectory(projectDir.resolve("build").toFile());
+        BuildResult reuseResult = makeGradleRunner(gradleVersion).withArguments(arguments).build();
+        Assertions.assertThat(reuseResult.getOutput()).contains("Configuration cache entry reused.");
+        validateTaskOutcomes(reuseResult);
+        validateBuildOutputs();
+    }
+
+    @ParameterizedTest(name = "{0}, {1}")
+    @MethodSource("isolatedProjectsTestArguments")
+    @SuppressWarnings("PMD.JUnitTestsShouldIncludeAssert") // Delegating to other methods asserting a lot of things
+    void testMultiProjectPluginWithIsolatedProjects(@Nonnull GradleVersion gradleVersion, @Nonnull GradleDsl gradleDsl)
+            throws IOException {
+        // Both the build and the settings scripts are selected by the DSL
+        IOFileFilter groovyScripts = FileFilterUtils.suffixFileFilter(GradleDsl.GROOVY.fileExtension);
+        IOFileFilter kotlinScripts = FileFilterUtils.suffixFileFilter(GradleDsl.KOTLIN.fileExtension);
+        copyTestData(MULTI_PROJECT_TEST_NAME, FileFilterUtils.or(
+                FileFilterUtils.directoryFileFilter(),
+                FileFilterUtils.notFileFilter(FileFilterUtils.or(groovyScripts, kotlinScripts)),
+                FileFilterUtils.suffixFileFilter(gradleDsl.fileExtension)));
+        writeGradleProperties(gradleVersion);
+        List<String> arguments = new ArrayList<>(MULTI_PROJECT_BUILD_TASK_NAMES);
+        arguments.add(ISOLATED_PROJECTS_ARGUMENT);
+
+        // Isolated Projects implies the configuration cache
+        BuildResult storeResult = makeGradleRunner(gradleVersion).withArguments(arguments).build();
+        Assertions.assertThat(storeResult.getOutput()).contains("Configuration cache entry stored.");
+        validateMultiProjectOutputs(storeResult);
+
+        for (String subproject : Arrays.asList("lib", "app", "collector", "platform")) {
+            FileUtils.deleteDirectory(projectDir.resolve(subproject).resolve("build").toFile());
+        }
+        BuildResult reuseResult = makeGradleRunner(gradleVersion).withArguments(arguments).build();
+        Assertions.assertThat(reuseResult.getOutput()).contains("Configuration cache entry reused.");
+        validateMultiProjectOutputs(reuseResult);
+    }
+
     private void prepareProjectDir(@Nonnull GradleVersion gradleVersion, @Nonnull String buildFileName)
             throws IOException {
-        Path testDataDir = Paths.get(getTestEnvProperty("testDataDir")).toAbsolutePath();
-        FileUtils.copyDirectory(testDataDir.resolve(TEST_NAME).toFile(), projectDir.toFile(), FileFilterUtils.or(
+        copyTestData(TEST_NAME, FileFilterUtils.or(
                 FileFilterUtils.directoryFileFilter(),
                 FileFilterUtils.notFileFilter(FileFilterUtils.prefixFileFilter("build.gradle")),
                 FileFilterUtils.nameFileFilter(buildFileName)));
         assertIsDirectoryContainingOnly(projectDir,
                 projectDir.resolve("repo"), projectDir.resolve("src"),
                 projectDir.resolve(buildFileName), projectDir.resolve("README.md"));
+        writeGradleProperties(gradleVersion);
+    }
 
+    private void copyTestData(@Nonnull String testDataName, @Nonnull FileFilter filter) throws IOException {
+        Path testDataDir = Paths.get(getTestEnvProperty("testDataDir")).toAbsolutePath();
+        FileUtils.copyDirectory(testDataDir.resolve(testDataName).toFile(), projectDir.toFile(), filter);
+    }
+
+    private void writeGradleProperties(@Nonnull GradleVersion gradleVersion) throws IOException {
         // Example input: "-javaagent:.../jacocoagent.jar=destfile=.../test.exec,...,sessionid=abcd1234-test,..."
         // See: https://www.jacoco.org/jacoco/trunk/doc/agent.html
         String jacocoAgentJvmArg = getTestEnvProperty("jacocoAgentJvmArg")
@@ -166,36 +268,119 @@ class ApplicationPluginFunctionalTest {
     }
 
     private void executeAndValidate(@Nonnull GradleVersion gradleVersion) throws IOException {
-        BuildResult result = makeGradleRunner(gradleVersion)
-                .withArguments("emptyJar",
-                        "installDist",
-                        "installSimpleDist",
-                        "installWithoutRawJarDist",
-                        "installWithoutDependenciesDist",
-                        "installComplexDist",
-                        "installManualDist",
-                        "installFullyManualDist")
-                .build();
+        BuildResult result = makeGradleRunner(gradleVersion).withArguments(BUILD_TASK_NAMES).build();
+        validateTaskOutcomes(result);
+        validateBuildOutputs();
 
+        executeAndValidateFailIfPropertyMissing(gradleVersion, "dependencyDirectoryName");
+        executeAndValidateFailIfPropertyEmpty(gradleVersion, "dependencyDirectoryName");
+        executeAndValidateFailIfPropertyMissing(gradleVersion, "mainClass");
+        executeAndValidateFailIfPropertyEmpty(gradleVersion, "mainClass");
+    }
+
+    private void validateMultiProjectOutputs(@Nonnull BuildResult result) throws IOException {
+        validateTaskOutcome(result, ":app:applicationJar", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":app:otherApplicationJar", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":collector:collectApplications", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":platform:aggregateApplications", TaskOutcome.SUCCESS);
+
+        Path libJar = projectDir.resolve("lib/build/libs/lib-1.0.jar");
+        Path appDir = projectDir.resolve("app/build");
+        for (String appJarAndDistName : Arrays.asList("app", "app-other")) {
+            Path appJar = appDir.resolve("application").resolve(appJarAndDistName + "-1.0.jar");
+            try (ZipFile appZip = new ZipFile(appJar.toFile())) {
+                // The created InputStream will be closed implicitly when zipFile gets closed
+                Manifest appManifest = new Manifest(appZip.getInputStream(appZip.getEntry(MANIFEST_PATH)));
+                Assertions.assertThat(appManifest.getMainAttributes()).containsOnly(
+                        Assertions.entry(Attributes.Name.MANIFEST_VERSION, "1.0"),
+                        Assertions.entry(Attributes.Name.CLASS_PATH, "lib/com.ms.test/lib-1.0.jar"),
+                        Assertions.entry(Attributes.Name.MAIN_CLASS, "com.ms.test.app.PrintGreeting"));
+            }
+
+            Path distDir = appDir.resolve("install").resolve(appJarAndDistName);
+            Path distJar = distDir.resolve(appJarAndDistName + "-1.0.jar");
+            Path distDepDir = distDir.resolve("lib");
+            Path distDepComMsTestDir = distDepDir.resolve("com.ms.test");
+            Path distDepLibJar = distDepComMsTestDir.resolve("lib-1.0.jar");
+            assertIsDirectoryContainingOnly(distDir, distJar, distDepDir);
+            assertIsDirectoryContainingOnly(distDepDir, distDepComMsTestDir);
+            assertIsDirectoryContainingOnly(distDepComMsTestDir, distDepLibJar);
+            Assertions.assertThat(distJar).hasSameBinaryContentAs(appJar);
+            Assertions.assertThat(distDepLibJar).hasSameBinaryContentAs(libJar);
+        }
+
+        // The incremental install task installs the same files as the regular one
+        Path incrementalDir = appDir.resolve("incrementalInstall").resolve("app-other");
+        Path incrementalDepDir = incrementalDir.resolve("lib");
+        Path incrementalDepComMsTestDir = incrementalDepDir.resolve("com.ms.test");
+        assertIsDirectoryContainingOnly(incrementalDir, incrementalDir.resolve("app-other-1.0.jar"), incrementalDepDir);
+        assertIsDirectoryContainingOnly(incrementalDepDir, incrementalDepComMsTestDir);
+        assertIsDirectoryContainingOnly(incrementalDepComMsTestDir, incrementalDepComMsTestDir.resolve("lib-1.0.jar"));
+        Assertions.assertThat(incrementalDir.resolve("app-other-1.0.jar"))
+                .hasSameBinaryContentAs(appDir.resolve("application/app-other-1.0.jar"));
+        Assertions.assertThat(incrementalDepComMsTestDir.resolve("lib-1.0.jar")).hasSameBinaryContentAs(libJar);
+
+        // The applications of the suite share a single copy of their dependencies
+        Path suiteDir = appDir.resolve("install").resolve("app-suite");
+        Path suiteDepDir = suiteDir.resolve("lib");
+        Path suiteDepComMsTestDir = suiteDepDir.resolve("com.ms.test");
+        assertIsDirectoryContainingOnly(suiteDir,
+                suiteDir.resolve("app-1.0.jar"), suiteDir.resolve("app-other-1.0.jar"), suiteDepDir);
+        assertIsDirectoryContainingOnly(suiteDepDir, suiteDepComMsTestDir);
+        assertIsDirectoryContainingOnly(suiteDepComMsTestDir, suiteDepComMsTestDir.resolve("lib-1.0.jar"));
+        Assertions.assertThat(suiteDir.resolve("app-1.0.jar"))
+                .hasSameBinaryContentAs(appDir.resolve("application/app-1.0.jar"));
+        Assertions.assertThat(suiteDepComMsTestDir.resolve("lib-1.0.jar")).hasSameBinaryContentAs(libJar);
+
+        // The main application JAR is consumed by another project through the application's outgoing variant
+        Path collectedDir = projectDir.resolve("collector/build/applications");
+        Path collectedJar = collectedDir.resolve("app-1.0.jar");
+        assertIsDirectoryContainingOnly(collectedDir, collectedJar);
+        Assertions.assertThat(collectedJar).hasSameBinaryContentAs(appDir.resolve("application/app-1.0.jar"));
+
+        // Both applications are aggregated by another project, along with a single copy of their dependencies
+        Path platformDir = projectDir.resolve("platform/build/install/platform");
+        Path platformDepDir = platformDir.resolve("lib");
+        Path platformDepComMsTestDir = platformDepDir.resolve("com.ms.test");
+        assertIsDirectoryContainingOnly(platformDir,
+                platformDir.resolve("app-1.0.jar"), platformDir.resolve("app-other-1.0.jar"), platformDepDir);
+        assertIsDirectoryContainingOnly(platformDepDir, platformDepComMsTestDir);
+        assertIsDirectoryContainingOnly(platformDepComMsTestDir, platformDepComMsTestDir.resolve("lib-1.0.jar"));
+        Assertions.assertThat(platformDepComMsTestDir.resolve("lib-1.0.jar")).hasSameBinaryContentAs(libJar);
+        for (String appJarName : Arrays.asList("app-1.0.jar", "app-other-1.0.jar")) {
+            try (ZipFile appZip = new ZipFile(platformDir.resolve(appJarName).toFile())) {
+                Manifest appManifest = new Manifest(appZip.getInputStream(appZip.getEntry(MANIFEST_PATH)));
+                Assertions.assertThat(appManifest.getMainAttributes()).containsOnly(
+                        Assertions.entry(Attributes.Name.MANIFEST_VERSION, "1.0"),
+                        Assertions.entry(Attributes.Name.CLASS_PATH, "lib/com.ms.test/lib-1.0.jar"),
+                        Assertions.entry(Attributes.Name.MAIN_CLASS, "com.ms.test.app.PrintGreeting"));
+            }
+        }
+    }
+
+    private void validateTaskOutcomes(@Nonnull BuildResult result) {
         validateTaskOutcome(result, ":applicationJar", TaskOutcome.SUCCESS);
         validateTaskOutcome(result, ":simpleApplicationJar", TaskOutcome.SUCCESS);
         validateTaskOutcome(result, ":withoutRawJarApplicationJar", TaskOutcome.SUCCESS);
         validateTaskOutcome(result, ":withoutDependenciesApplicationJar", TaskOutcome.SUCCESS);
         validateTaskOutcome(result, ":complexApplicationJar", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":transferApplicationJar", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":parallelApplicationJar", TaskOutcome.SUCCESS);
+        validateTaskOutcome(result, ":launcherApplicationJar", TaskOutcome.SUCCESS);
         validateTaskOutcome(result, ":manualApplicationJar", TaskOutcome.SUCCESS);
+    }
 
+    private void validateBuildOutputs() throws IOException {
         validateBuildOutput(TEST_NAME, TEST_NAME, "lib");
         validateBuildOutput(TEST_NAME, TEST_NAME + "-simple", "lib");
         validateBuildOutput("empty", TEST_NAME + "-withoutRawJar", "lib");
         validateBuildOutput(TEST_NAME, TEST_NAME + "-withoutDependencies", null);
+        validateBuildOutput(TEST_NAME, TEST_NAME + "-transfer", "lib");
+        validateBuildOutput(TEST_NAME, TEST_NAME + "-parallel", "lib");
+        validateLauncherBuildOutput(TEST_NAME, TEST_NAME + "-launcher");
         validateBuildOutput(TEST_NAME, "appsComplex", "complexJar", "complexApp", "complexDeps", true);
         validateBuildOutput(TEST_NAME, "application", "manualJar", "manualDist", "lib", true);
         validateBuildOutput(TEST_NAME, "application", "manualJar", "fullyManual/content/app", "lib", false);
-
-        executeAndValidateFailIfPropertyMissing(gradleVersion, "dependencyDirectoryName");
-        executeAndValidateFailIfPropertyEmpty(gradleVersion, "dependencyDirectoryName");
-        executeAndValidateFailIfPropertyMissing(gradleVersion, "mainClass");
-        executeAndValidateFailIfPropertyEmpty(gradleVersion, "mainClass");
     }
 
     private void executeAndValidateFailIfPropertyMissing(
@@ -266,6 +451,28 @@ class ApplicationPluginFunctionalTest {
         validateDistribution(appJar, distJar, depDir, hasReadme);
     }
 
+    private void validateLauncherBuildOutput(@Nonnull String rawJarName, @Nonnull String appJarAndDistName)
+            throws IOException {
+        Path buildDir = projectDir.resolve("build");
+        Path rawJar = buildDir.resolve("libs").resolve(rawJarName + "-1.0.jar");
+        Path appJar = buildDir.resolve("application").resolve(appJarAndDistName + "-1.0.jar");
+        Path distDir = buildDir.resolve("install").resolve(appJarAndDistName);
+        Assertions.assertThat(distDir.resolve(appJarAndDistName + "-1.0.jar")).hasSameBinaryContentAs(appJar);
+        Assertions.assertThat(distDir.resolve("lib").resolve(rawJarName + "-1.0.jar")).hasSameBinaryContentAs(rawJar);
+        try (ZipFile appZip = new ZipFile(appJar.toFile())) {
+            Assertions.assertThat(appZip.stream().map(ZipEntry::getName)).containsExactly("META-INF/", MANIFEST_PATH);
+
+            // The created InputStream will be closed implicitly when zipFile gets closed
+            Manifest appManifest = new Manifest(appZip.getInputStream(appZip.getEntry(MANIFEST_PATH)));
+            Assertions.assertThat(appManifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH))
+                    .isEqualTo(buildClasspath("lib",
+                            rawJarName + "-1.0.jar",
+                            "com.ms.test-console-1.2.3.jar",
+                            "com.ms.test/datetime-current-4.5.jar",
+                            "com.ms.test/datetime-format-4.5.jar"));
+        }
+    }
+
     private void validateApplicationJar(@Nonnull Path rawJar, @Nonnull Path appJar, @Nullable String depDir)
             throws IOException {
         Assertions.assertThat(rawJar).isRegularFile();
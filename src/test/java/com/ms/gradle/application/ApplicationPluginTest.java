@@ -10,6 +10,7 @@
 package com.ms.gradle.application;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.data.MapEntry;
 import org.gradle.api.Action;
@@ -30,32 +31,67 @@ import org.gradle.api.attributes.Usage;
 import org.gradle.api.distribution.Distribution;
 import org.gradle.api.distribution.DistributionContainer;
 import org.gradle.api.distribution.plugins.DistributionPlugin;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.FileCopyDetails;
 import org.gradle.api.file.RelativePath;
 import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.api.java.archives.Manifest;
 import org.gradle.api.plugins.ExtensionContainer;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.PluginContainer;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.WorkResult;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Tar;
 import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
 import org.gradle.testfixtures.ProjectBuilder;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Unit tests for {@link ApplicationPlugin}.
@@ -99,6 +135,7 @@ class ApplicationPluginTest {
     void testPluginUnusableWhenNotApplied() {
         ApplicationPlugin plugin = new ApplicationPlugin();
         Assertions.assertThatThrownBy(plugin::getApplications).isInstanceOf(IllegalStateException.class);
+        Assertions.assertThatThrownBy(plugin::getApplicationSuites).isInstanceOf(IllegalStateException.class);
     }
 
     @Test
@@ -116,6 +153,39 @@ class ApplicationPluginTest {
         Assertions.assertThat(extensions.getByType(ApplicationPlugin.EXTENSION_TYPE)).isSameAs(apps);
     }
 
+    @Test
+    void testApplicationSuitesExposedAsExtension() {
+        NamedDomainObjectContainer<ApplicationSuite> suites = getApplicationSuites(project);
+        ExtensionContainer extensions = project.getExtensions();
+        Assertions.assertThat(suites).isEmpty();
+        Assertions.assertThat(extensions.getByName(ApplicationPlugin.SUITES_EXTENSION_NAME)).isSameAs(suites);
+        Assertions.assertThat(extensions.getByType(ApplicationPlugin.SUITES_EXTENSION_TYPE)).isSameAs(suites);
+    }
+
+    @Test
+    void testRegisteredApplications() {
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        Set<String> createdApps = new TreeSet<>();
+        Set<String> realizedTasks = new TreeSet<>();
+        apps.configureEach(app -> createdApps.add(app.getName()));
+        project.getTasks().withType(ApplicationJar.class).configureEach(task -> realizedTasks.add(task.getName()));
+        IntStream.range(0, 100).forEach(index -> apps.register("app" + index, app -> app.fromSourceSet(
+                Utils.sourceSets(project).named(SourceSet.MAIN_SOURCE_SET_NAME))));
+        Assertions.assertThat(apps.getNames()).hasSize(101);
+        Assertions.assertThat(createdApps).isEmpty();
+
+        // Registered applications are all created once the project is evaluated, but their tasks are not
+        finalizeProject();
+        Assertions.assertThat(createdApps).hasSize(101);
+        Assertions.assertThat(realizedTasks).isEmpty();
+        Assertions.assertThat(project.getTasks().getNames())
+                .contains(Application.MAIN_APPLICATION_JAR_TASK_NAME, "app99ApplicationJar", "installApp99Dist");
+        Configuration runtimeClasspath =
+                project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME);
+        Assertions.assertThat(apps.getByName("app99").getConfiguration().get().getExtendsFrom())
+                .containsExactly(runtimeClasspath);
+    }
+
     @Test
     void testFailureIfApplicationBaseNameIsNull() {
         Application app = getApplications(project).getByName(Application.MAIN_APPLICATION_NAME);
@@ -151,7 +221,11 @@ class ApplicationPluginTest {
         Assertions.assertThat(app.getDependencies().getOrNull()).isSameAs(runtimeClasspath);
         Assertions.assertThat(app.getDependencyDirectoryName().getOrNull())
                 .isEqualTo(ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        Assertions.assertThat(app.getDependencyLayout().getOrNull())
+                .isEqualTo(ApplicationJar.DependencyLayout.GROUPED);
         Assertions.assertThat(app.getMainClass().getOrNull()).isNull();
+        Assertions.assertThat(app.getClassDataSharing().getOrNull()).isFalse();
+        Assertions.assertThat(app.getAheadOfTimeCache().getOrNull()).isFalse();
     }
 
     @Test
@@ -226,11 +300,18 @@ class ApplicationPluginTest {
         Assertions.assertThat(appJar.getDependencyDirectoryName()).isSameAs(app.getDependencyDirectoryName());
         Assertions.assertThat(appJar.getDependencyDirectoryName().getOrNull())
                 .isEqualTo(ApplicationJar.DEPENDENCY_DIRECTORY_NAME);
+        Assertions.assertThat(appJar.getDependencyLayout()).isSameAs(app.getDependencyLayout());
         Assertions.assertThat(appJar.getMainClass()).isSameAs(app.getMainClass());
         Assertions.assertThat(appJar.getMainClass().getOrNull()).isNull();
+        Assertions.assertThat(appJar.getPackagingMode().getOrNull()).isEqualTo(ApplicationJar.PackagingMode.REPACK);
+        Assertions.assertThat(appJar.getParallelCompression().getOrNull()).isFalse();
+        Assertions.assertThat(appJar.getCompressionThreads().getOrNull())
+                .isEqualTo(Runtime.getRuntime().availableProcessors());
         Assertions.assertThat(appJar.getDestinationDirectory().getAsFile().getOrNull())
                 .isEqualTo(new File(project.getBuildDir(), ApplicationJar.APPLICATION_DIRECTORY_NAME));
         Assertions.assertThat(appJar.getArchiveBaseName().getOrNull()).isEqualTo(TEST_NAME);
+        Assertions.assertThat(appJar.getRawJarFile().isPresent()).isTrue();
+        Assertions.assertThat(appJar.getDependencyFiles().getFiles()).isEmpty();
     }
 
     @Test
@@ -287,6 +368,11 @@ class ApplicationPluginTest {
             applicationJar.getMainClass().set("custom.Main");
         });
 
+        // The inputs of the task are the files, not the `Jar` task or the `Configuration`
+        Assertions.assertThat(appJar.getRawJarFile().isPresent()).isFalse();
+        Assertions.assertThat(appJar.getDependencyFiles().getFiles().stream().map(File::getName))
+                .containsExactly("gson-2.10.jar", "slf4j-simple-2.0.3.jar", "slf4j-api-2.0.3.jar");
+
         // Run the `ApplicationJar` task
         Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
         appJar.copy();
@@ -318,6 +404,484 @@ class ApplicationPluginTest {
                 pathEntry("slf4j-simple-2.0.3.jar", "app/lib/org.slf4j/slf4j-simple-2.0.3.jar"));
     }
 
+    @Test
+    void testApplicationJarManifestMemoized() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        Jar rawJar = project.getTasks().create("rawJar", Jar.class, jar -> {
+            jar.getManifest().attributes(Collections.singletonMap("Raw-Attribute", "raw"));
+            jar.getManifest().attributes(Collections.singletonMap("Raw-Entry", "yes"), "raw/");
+        });
+        Configuration dependencies = project.getConfigurations().create("localDependencies");
+        project.getDependencies().add(dependencies.getName(), project.files(localJarFile));
+        ApplicationJar appJar = project.getTasks().create("customAppJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.getRawJar().set(rawJar);
+            applicationJar.getDependencies().set(dependencies);
+            applicationJar.getMainClass().set("custom.Main");
+            applicationJar.getManifest().attributes(Collections.singletonMap("Custom-Attribute", "custom"));
+        });
+
+        Manifest effectiveManifest = appJar.getManifest().getEffectiveManifest();
+        Assertions.assertThat(effectiveManifest.getAttributes()).containsExactly(
+                Assertions.entry("Manifest-Version", "1.0"),
+                Assertions.entry("Raw-Attribute", "raw"),
+                Assertions.entry("Class-Path", "lib/local.jar"),
+                Assertions.entry("Main-Class", "custom.Main"),
+                Assertions.entry("Custom-Attribute", "custom"));
+        Assertions.assertThat(effectiveManifest.getSections()).containsOnlyKeys("raw/");
+
+        // The merged manifest is reused until any of the underlying manifests changes
+        Assertions.assertThat(appJar.getManifest().getEffectiveManifest()).isSameAs(effectiveManifest);
+        rawJar.getManifest().attributes(Collections.singletonMap("Raw-Attribute", "changed"));
+        Manifest changedManifest = appJar.getManifest().getEffectiveManifest();
+        Assertions.assertThat(changedManifest).isNotSameAs(effectiveManifest);
+        Assertions.assertThat(changedManifest.getAttributes()).containsEntry("Raw-Attribute", "changed");
+        Assertions.assertThat(appJar.getManifest().getEffectiveManifest()).isSameAs(changedManifest);
+    }
+
+    @Test
+    void testApplicationJarDependencyGroups() {
+        Project childProject = ProjectBuilder.builder().withName("child").withParent(project).build();
+        childProject.setGroup("com.example.child");
+        childProject.getPluginManager().apply(JavaPlugin.class);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        DependencyHandler dependencies = project.getDependencies();
+        dependencies.add(sourceSet.getImplementationConfigurationName(),
+                dependencies.project(Collections.singletonMap("path", childProject.getPath())));
+        dependencies.add(sourceSet.getImplementationConfigurationName(), project.files("local.jar"));
+        ApplicationJar appJar = project.getTasks().create("customAppJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.fromSourceSet(sourceSet);
+            applicationJar.getMainClass().set("custom.Main");
+        });
+
+        // Project dependencies are placed in the directory of their group, just like external module dependencies
+        Assertions.assertThat(appJar.getManifest().getEffectiveManifest().getAttributes())
+                .containsEntry("Class-Path", "lib/local.jar lib/com.example.child/child.jar");
+    }
+
+    @Test
+    void testApplicationJarVolatilityLayout() throws IOException {
+        project.getRepositories().mavenCentral();
+        writeModule("com.example", "module", "1.0-SNAPSHOT");
+        project.getRepositories().maven(repository -> repository.setUrl(project.file("repo")));
+        Project childProject = ProjectBuilder.builder().withName("child").withParent(project).build();
+        childProject.setGroup("com.example.child");
+        childProject.getPluginManager().apply(JavaPlugin.class);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        DependencyHandler dependencies = project.getDependencies();
+        dependencies.add(sourceSet.getImplementationConfigurationName(), "org.slf4j:slf4j-api:2.0.3");
+        dependencies.add(sourceSet.getImplementationConfigurationName(), "com.example:module:1.0-SNAPSHOT");
+        dependencies.add(sourceSet.getImplementationConfigurationName(),
+                dependencies.project(Collections.singletonMap("path", childProject.getPath())));
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        dependencies.add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        ApplicationJar groupedJar = project.getTasks().create("groupedAppJar", ApplicationJar.class,
+                applicationJar -> {
+                    applicationJar.getDependencies().set(applicationJar.locateDependencies(sourceSet));
+                    applicationJar.getMainClass().set("custom.Main");
+                });
+        ApplicationJar volatilityJar = project.getTasks().create("volatilityAppJar", ApplicationJar.class,
+                applicationJar -> {
+                    applicationJar.getDependencies().set(applicationJar.locateDependencies(sourceSet));
+                    applicationJar.getDependencyLayout().set(ApplicationJar.DependencyLayout.VOLATILITY);
+                    applicationJar.getMainClass().set("custom.Main");
+                });
+        Assertions.assertThat(groupedJar.getDependencyLayout().get())
+                .isEqualTo(ApplicationJar.DependencyLayout.GROUPED);
+
+        // Dependencies are split by how often they change, without changing the order of the classpath
+        String groupedClasspath = (String) groupedJar.getManifest().getEffectiveManifest().getAttributes()
+                .get("Class-Path");
+        String volatilityClasspath = (String) volatilityJar.getManifest().getEffectiveManifest().getAttributes()
+                .get("Class-Path");
+        Assertions.assertThat(volatilityClasspath.split(" ")).containsExactlyInAnyOrder(
+                "lib/release/org.slf4j/slf4j-api-2.0.3.jar",
+                "lib/snapshot/com.example/module-1.0-SNAPSHOT.jar",
+                "lib/project/com.example.child/child.jar",
+                "lib/project/local.jar");
+        Assertions.assertThat(volatilityClasspath).isEqualTo(groupedClasspath
+                .replace("lib/org.slf4j/", "lib/release/org.slf4j/")
+                .replace("lib/com.example/", "lib/snapshot/com.example/")
+                .replace("lib/com.example.child/", "lib/project/com.example.child/")
+                .replace("lib/local.jar", "lib/project/local.jar"));
+
+        // The dependencies are copied to the same paths as the ones in the `Class-Path`
+        Map<String, RelativePath> paths = new TreeMap<>();
+        project.sync(syncSpec -> syncSpec
+                .into(project.getLayout().getBuildDirectory().dir("volatilityTest"))
+                .with(volatilityJar.applicationCopySpec().eachFile(copyDetails -> putPathEntry(paths, copyDetails))));
+        Assertions.assertThat(paths).contains(
+                pathEntry("slf4j-api-2.0.3.jar", "lib/release/org.slf4j/slf4j-api-2.0.3.jar"),
+                pathEntry("module-1.0-SNAPSHOT.jar", "lib/snapshot/com.example/module-1.0-SNAPSHOT.jar"),
+                pathEntry("local.jar", "lib/project/local.jar"));
+    }
+
+    @Test
+    void testTransferApplicationJarWithoutRawJar() throws IOException {
+        ApplicationJar appJar = project.getTasks().create("customAppJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER);
+            applicationJar.getArchiveFileName().set("myApp.jar");
+            applicationJar.getMainClass().set("custom.Main");
+            applicationJar.setEntryCompression(ZipEntryCompression.STORED);
+            applicationJar.setManifestContentCharset(StandardCharsets.ISO_8859_1.name());
+            applicationJar.getManifest().attributes(Collections.singletonMap(
+                    "Custom-Attribute", project.provider(() -> "été")));
+            applicationJar.getManifest().attributes(Collections.singletonMap("Custom-Entry", "yes"), "custom/");
+        });
+
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+
+        File appJarFile = appJar.getArchiveFile().get().getAsFile();
+        try (ZipFile appZip = new ZipFile(appJarFile)) {
+            Assertions.assertThat(appZip.stream().map(ZipEntry::getName))
+                    .containsExactly("META-INF/", "META-INF/MANIFEST.MF");
+            ZipEntry manifestEntry = appZip.getEntry("META-INF/MANIFEST.MF");
+            Assertions.assertThat(manifestEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+            byte[] manifestContent = IOUtils.toByteArray(appZip.getInputStream(manifestEntry));
+            Assertions.assertThat(new String(manifestContent, StandardCharsets.ISO_8859_1))
+                    .contains("Custom-Attribute: été")
+                    .contains("Class-Path: \r\n")
+                    .contains("Main-Class: custom.Main")
+                    .contains("Name: custom/\r\nCustom-Entry: yes");
+        }
+    }
+
+    @Test
+    void testTransferApplicationJarFailure() throws IOException {
+        Jar rawJar = project.getTasks().create("invalidJar", Jar.class);
+        File rawJarFile = rawJar.getArchiveFile().get().getAsFile();
+        FileUtils.write(rawJarFile, "Not a JAR", StandardCharsets.UTF_8);
+        ApplicationJar appJar = project.getTasks().create("customAppJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER);
+            applicationJar.getRawJar().set(rawJar);
+            applicationJar.getMainClass().set("custom.Main");
+        });
+
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        Assertions.assertThatThrownBy(appJar::copy)
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create application JAR %s", appJar.getArchiveFile().get().getAsFile())
+                .hasCauseInstanceOf(ZipException.class);
+    }
+
+    @Test
+    void testLauncherApplicationJar() throws IOException {
+        Jar rawJar = project.getTasks().create("rawJar", Jar.class);
+        File rawJarFile = rawJar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        Configuration dependencies = project.getConfigurations().create("launcherDependencies");
+        project.getDependencies().add(dependencies.getName(), project.files(localJarFile));
+
+        ApplicationJar appJar = project.getTasks().create("launcherJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.LAUNCHER);
+            applicationJar.getRawJar().set(rawJar);
+            applicationJar.getDependencies().set(dependencies);
+            applicationJar.getMainClass().set("custom.Main");
+            applicationJar.getArchiveFileName().set("launcher.jar");
+        });
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+
+        // The application JAR only has a manifest, referencing the raw JAR first
+        try (ZipFile appZip = new ZipFile(appJar.getArchiveFile().get().getAsFile())) {
+            Assertions.assertThat(appZip.stream().map(ZipEntry::getName))
+                    .containsExactly("META-INF/", "META-INF/MANIFEST.MF");
+            String manifest = IOUtils.toString(
+                    appZip.getInputStream(appZip.getEntry("META-INF/MANIFEST.MF")), StandardCharsets.UTF_8);
+            Assertions.assertThat(manifest)
+                    .contains("Class-Path: lib/" + rawJarFile.getName() + " lib/local.jar\r\n")
+                    .contains("Main-Class: custom.Main");
+        }
+
+        // The raw JAR gets copied next to the dependencies
+        Map<String, RelativePath> paths = new TreeMap<>();
+        project.sync(syncSpec -> syncSpec
+                .into(project.getLayout().getBuildDirectory().dir("launcherTest"))
+                .with(appJar.applicationCopySpec().eachFile(copyDetails -> putPathEntry(paths, copyDetails))));
+        Assertions.assertThat(paths).containsOnly(
+                pathEntry("launcher.jar", "launcher.jar"),
+                pathEntry(rawJarFile.getName(), "lib/" + rawJarFile.getName()),
+                pathEntry("local.jar", "lib/local.jar"));
+    }
+
+    @Test
+    void testLauncherApplicationJarWithoutRawJar() throws IOException {
+        ApplicationJar appJar = project.getTasks().create("launcherJar", ApplicationJar.class, applicationJar -> {
+            applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.LAUNCHER);
+            applicationJar.getMainClass().set("custom.Main");
+        });
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+
+        try (ZipFile appZip = new ZipFile(appJar.getArchiveFile().get().getAsFile())) {
+            String manifest = IOUtils.toString(
+                    appZip.getInputStream(appZip.getEntry("META-INF/MANIFEST.MF")), StandardCharsets.UTF_8);
+            Assertions.assertThat(manifest).contains("Class-Path: \r\n");
+        }
+    }
+
+    @Test
+    void testTransferApplicationJarReplacesManifest() throws IOException {
+        Jar rawJar = project.getTasks().create("rawJar", Jar.class);
+        File rawJarFile = rawJar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        File appJarFile = new File(project.getBuildDir(), "app.jar");
+        File cleanJarFile = new File(project.getBuildDir(), "clean.jar");
+
+        // First build: there's no previous application JAR yet
+        writeRawJar(rawJarFile, "Version 1");
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.Main");
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+
+        // Manifest changed: only the manifest gets replaced, other entries are left untouched
+        byte[] previousContent = Files.readAllBytes(appJarFile.toPath());
+        int dataIndex = new String(previousContent, StandardCharsets.ISO_8859_1).indexOf("Version 1");
+        previousContent[dataIndex] = 'X';
+        Files.write(appJarFile.toPath(), previousContent);
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.OtherMain");
+        byte[] replacedContent = Files.readAllBytes(appJarFile.toPath());
+        Assertions.assertThat(replacedContent[dataIndex]).isEqualTo((byte) 'X');
+        replacedContent[dataIndex] = 'V';
+        Assertions.assertThat(replacedContent).containsExactly(Files.readAllBytes(cleanJarFile.toPath()));
+
+        // Manifest doesn't fit in the same blocks anymore
+        String longMainClass = IntStream.range(0, 300)
+                .mapToObj(i -> "c" + UUID.nameUUIDFromBytes(new byte[] {(byte) i}).toString().replace('-', '.'))
+                .collect(Collectors.joining("."));
+        executeTransfer(appJarFile, cleanJarFile, rawJar, longMainClass);
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+        Assertions.assertThat(appJarFile.length()).isEqualTo(previousContent.length + 4096L);
+
+        // Raw JAR changed
+        writeRawJar(rawJarFile, "Version 2");
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.Main");
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+
+        // Raw JAR changed, with a new entry
+        writeRawJar(rawJarFile, "Version 2", "Extra entry");
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.Main");
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+
+        // Previous application JAR is corrupt
+        FileUtils.write(appJarFile, "Not a JAR", StandardCharsets.UTF_8);
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.Main");
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+
+        // Raw JAR without a directory entry for the manifest, which the application JAR gets one of its own for
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(rawJarFile.toPath()))) {
+            byte[] content = "Version 3".getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            ZipEntry entry = new ZipEntry("content.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+            output.putNextEntry(entry);
+            output.write(content);
+        }
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.Main");
+        Assertions.assertThat(appJarFile).hasSameBinaryContentAs(cleanJarFile);
+        byte[] noDirectoryContent = Files.readAllBytes(appJarFile.toPath());
+        int noDirectoryDataIndex = new String(noDirectoryContent, StandardCharsets.ISO_8859_1).indexOf("Version 3");
+        noDirectoryContent[noDirectoryDataIndex] = 'X';
+        Files.write(appJarFile.toPath(), noDirectoryContent);
+        executeTransfer(appJarFile, cleanJarFile, rawJar, "custom.OtherMain");
+        Assertions.assertThat(Files.readAllBytes(appJarFile.toPath())[noDirectoryDataIndex]).isEqualTo((byte) 'X');
+    }
+
+    private void executeTransfer(@Nonnull File appJarFile, @Nonnull File cleanJarFile, @Nonnull Jar rawJar,
+            @Nonnull String mainClass) throws IOException {
+        // Each execution needs new tasks, because task properties get finalized when the task is executed
+        Files.deleteIfExists(cleanJarFile.toPath());
+        for (File archiveFile : new File[] {appJarFile, cleanJarFile}) {
+            String taskName = "transferJar" + project.getTasks().size();
+            project.getTasks().create(taskName, ApplicationJar.class, applicationJar -> {
+                applicationJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER);
+                applicationJar.getRawJar().set(rawJar);
+                applicationJar.getMainClass().set(mainClass);
+                applicationJar.getDestinationDirectory().set(archiveFile.getParentFile());
+                applicationJar.getArchiveFileName().set(archiveFile.getName());
+            }).copy();
+        }
+    }
+
+    /**
+     * Writes a module into the local Maven repository of the project. Gradle uses the artifacts of file repositories in
+     * place, without copying them into its cache.
+     */
+    @Nonnull
+    private File writeModule(@Nonnull String group, @Nonnull String name, @Nonnull String version) throws IOException {
+        File moduleDir = project.file("repo/" + group.replace('.', '/') + "/" + name + "/" + version);
+        Files.createDirectories(moduleDir.toPath());
+        File jarFile = new File(moduleDir, name + "-" + version + ".jar");
+        writeRawJar(jarFile, "Module content");
+        FileUtils.write(new File(moduleDir, name + "-" + version + ".pom"),
+                "<project><modelVersion>4.0.0</modelVersion><groupId>" + group + "</groupId><artifactId>" + name +
+                        "</artifactId><version>" + version + "</version></project>",
+                StandardCharsets.UTF_8);
+        return jarFile;
+    }
+
+    private static void writeRawJar(@Nonnull File rawJarFile, @Nonnull String... contents) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(rawJarFile.toPath()))) {
+            output.putNextEntry(new ZipEntry("META-INF/"));
+            output.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            output.write("Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < contents.length; i++) {
+                byte[] content = contents[i].getBytes(StandardCharsets.UTF_8);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ZipEntry entry = new ZipEntry("content" + i + ".txt");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+                output.putNextEntry(entry);
+                output.write(content);
+            }
+        }
+    }
+
+    @Test
+    void testParallelCompressionApplicationJar() throws IOException {
+        File contentDir = project.file("content");
+        Files.createDirectories(new File(contentDir, "empty").toPath());
+        FileUtils.write(new File(contentDir, "large.txt"), IntStream.range(0, 100_000)
+                .mapToObj(i -> "Line " + i * 7919 % 10007 + "\n")
+                .collect(Collectors.joining()), StandardCharsets.UTF_8);
+        FileUtils.writeByteArrayToFile(new File(contentDir, "zeros.bin"), new byte[65 * 1024 * 1024]);
+        FileUtils.touch(new File(contentDir, "empty.txt"));
+        Assertions.assertThat(new File(contentDir, "large.txt").setLastModified(1_700_000_000_000L)).isTrue();
+        Assertions.assertThat(new File(contentDir, "empty.txt").setLastModified(0L)).isTrue();
+
+        File sequentialJarFile = executeParallelCompression("sequential", contentDir, appJar -> {});
+        File singleThreadJarFile = executeParallelCompression("singleThread", contentDir, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.getCompressionThreads().set(1);
+        });
+        File multiThreadJarFile = executeParallelCompression("multiThread", contentDir, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.getCompressionThreads().set(4);
+        });
+        File storedJarFile = executeParallelCompression("stored", contentDir, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.setEntryCompression(ZipEntryCompression.STORED);
+        });
+        File timestampsJarFile = executeParallelCompression("timestamps", contentDir, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.setPreserveFileTimestamps(true);
+        });
+
+        // The output doesn't depend on the number of threads, and has the same entries as the sequential output
+        Assertions.assertThat(multiThreadJarFile).hasSameBinaryContentAs(singleThreadJarFile);
+        Map<String, Long> sequentialEntries = readZipEntries(sequentialJarFile, entry -> {});
+        Assertions.assertThat(sequentialEntries).containsKeys("META-INF/MANIFEST.MF", "empty/", "large.txt");
+        Assertions.assertThat(readZipEntries(multiThreadJarFile, entry -> {
+            if (entry.getName().endsWith(".bin")) {
+                Assertions.assertThat(entry.getCompressedSize()).isLessThan(entry.getSize() / 100);
+            }
+        })).containsExactlyEntriesOf(sequentialEntries);
+        Assertions.assertThat(readZipEntries(storedJarFile, entry -> {
+            if (!entry.isDirectory()) {
+                Assertions.assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+            }
+        })).containsExactlyEntriesOf(sequentialEntries);
+
+        // Timestamps are converted to MS-DOS format, where the earliest supported date is 1980-01-01
+        long minimumTime = LocalDateTime.of(1980, 1, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try (ZipFile zip = new ZipFile(timestampsJarFile)) {
+            Assertions.assertThat(zip.getEntry("large.txt").getTime()).isEqualTo(1_700_000_000_000L);
+            Assertions.assertThat(zip.getEntry("empty.txt").getTime()).isEqualTo(minimumTime);
+        }
+    }
+
+    @Test
+    void testParallelCompressionFallback() {
+        // Each check needs a new task, because task properties get finalized when the copy action is created
+        TaskContainer tasks = project.getTasks();
+        Assertions.assertThat(tasks.create("defaultJar", ApplicationJar.class).createCopyAction())
+                .isNotInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("parallelJar", ApplicationJar.class, appJar -> {
+            appJar.getParallelCompression().set(true);
+        }).createCopyAction()).isInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("charsetJar", ApplicationJar.class, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.setMetadataCharset(StandardCharsets.ISO_8859_1.name());
+        }).createCopyAction()).isNotInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("zip64Jar", ApplicationJar.class, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.setMetadataCharset(StandardCharsets.UTF_8.name());
+            appJar.setZip64(true);
+        }).createCopyAction()).isNotInstanceOf(ParallelDeflateCopyAction.class);
+    }
+
+    @Test
+    void testParallelCompressionFailure() throws IOException {
+        File contentDir = project.file("content");
+        Files.createDirectories(contentDir.toPath());
+        FileUtils.write(new File(contentDir, "small.txt"), "Small", StandardCharsets.UTF_8);
+
+        // Invalid number of threads
+        Assertions.assertThatThrownBy(() -> executeParallelCompression("noThreads", contentDir, appJar -> {
+            appJar.getParallelCompression().set(true);
+            appJar.getCompressionThreads().set(0);
+        })).isInstanceOf(IllegalArgumentException.class).hasMessage("compressionThreads must be positive: 0");
+
+        // Archive file can't be written
+        File directoryJarFile = new File(project.getBuildDir(), "directory.jar");
+        Files.createDirectories(directoryJarFile.toPath());
+        Assertions.assertThatThrownBy(() -> executeParallelCompression("directory", contentDir, appJar ->
+                        appJar.getParallelCompression().set(true)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create application JAR %s", directoryJarFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        // File too large to be held in memory (sparse, so it doesn't take up any space)
+        try (RandomAccessFile largeFile = new RandomAccessFile(new File(contentDir, "large.bin"), "rw")) {
+            largeFile.setLength(Integer.MAX_VALUE);
+        }
+        File largeJarFile = new File(project.getBuildDir(), "large.jar");
+        Assertions.assertThatThrownBy(() -> executeParallelCompression("large", contentDir, appJar ->
+                        appJar.getParallelCompression().set(true)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create application JAR %s", largeJarFile)
+                .hasCauseInstanceOf(ZipException.class);
+    }
+
+    @Nonnull
+    private File executeParallelCompression(@Nonnull String name, @Nonnull File contentDir,
+            @Nonnull Action<ApplicationJar> configureAction) throws IOException {
+        ApplicationJar appJar = project.getTasks().create(name + "Jar", ApplicationJar.class, applicationJar -> {
+            applicationJar.from(contentDir);
+            applicationJar.getMainClass().set("custom.Main");
+            applicationJar.getDestinationDirectory().set(project.getBuildDir());
+            applicationJar.getArchiveFileName().set(name + ".jar");
+            configureAction.execute(applicationJar);
+        });
+        Files.createDirectories(project.getBuildDir().toPath());
+        appJar.copy();
+        return appJar.getArchiveFile().get().getAsFile();
+    }
+
+    @Nonnull
+    private static Map<String, Long> readZipEntries(@Nonnull File zipFile, @Nonnull Consumer<ZipEntry> validator)
+            throws IOException {
+        Map<String, Long> entries = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                validator.accept(entry);
+                CRC32 crc = new CRC32();
+                crc.update(IOUtils.toByteArray(zip.getInputStream(entry)));
+                entries.put(entry.getName(), crc.getValue());
+            }
+        }
+        return entries;
+    }
+
     @Test
     void testMainApplicationConfiguration() {
         Application app = getApplications(project).getByName(Application.MAIN_APPLICATION_NAME);
@@ -393,6 +957,1851 @@ class ApplicationPluginTest {
         getEnabledTask(project, Tar.class, "distTar"); // DistributionPlugin.TASK_DIST_TAR_NAME
     }
 
+    @Test
+    void testApplicationDistributionsDontRealizeTasks() {
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.register("custom");
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(ApplicationJar.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+
+        // Configuring the distributions and their install tasks must not create any application JAR task
+        apps.forEach(app -> app.getDistribution().get().getContents());
+        getEnabledTask(project, Sync.class, DistributionPlugin.TASK_INSTALL_NAME);
+        getEnabledTask(project, Sync.class, "installCustomDist");
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        // Only the application JAR task of the distribution whose dependencies are resolved is realized
+        Sync installDist = getEnabledTask(project, Sync.class, DistributionPlugin.TASK_INSTALL_NAME);
+        Assertions.assertThat(installDist.getTaskDependencies().getDependencies(installDist))
+                .contains(apps.getByName(Application.MAIN_APPLICATION_NAME).getApplicationJar().get());
+        Assertions.assertThat(realizedTasks).containsExactly(Application.MAIN_APPLICATION_JAR_TASK_NAME);
+    }
+
+    @Test
+    void testApplicationInstallModes() throws IOException {
+        File moduleJarFile = writeModule("com.example", "module", "1.0");
+        project.getRepositories().maven(repository -> repository.setUrl(project.file("repo")));
+        Project childProject = ProjectBuilder.builder().withName("child").withParent(project).build();
+        childProject.setGroup("com.example.child");
+        childProject.getPluginManager().apply(JavaPlugin.class);
+        File childJarFile = childProject.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class).get()
+                .getArchiveFile().get().getAsFile();
+        Files.createDirectories(childJarFile.getParentFile().toPath());
+        writeRawJar(childJarFile, "Child content");
+        File rawJarFile = project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class).get()
+                .getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        FileUtils.write(project.file("README.md"), "Read me!", StandardCharsets.UTF_8);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        DependencyHandler dependencies = project.getDependencies();
+        dependencies.add(sourceSet.getImplementationConfigurationName(), "com.example:module:1.0");
+        dependencies.add(sourceSet.getImplementationConfigurationName(),
+                dependencies.project(Collections.singletonMap("path", childProject.getPath())));
+        dependencies.add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.getInstallMode().set(Application.InstallMode.LINK);
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.LAUNCHER));
+            app.distribution(distribution -> distribution.getContents().from(project.file("README.md")));
+        });
+        apps.register("copied", app -> {
+            app.fromSourceSet(sourceSet);
+            app.getMainClass().set("custom.Main");
+        });
+        finalizeProject();
+        Assertions.assertThat(apps.getByName("copied").getInstallMode().get()).isEqualTo(Application.InstallMode.COPY);
+
+        // External module dependencies get linked in LINK mode, while other files are copied as usual
+        Sync installDist = getEnabledTask(project, Sync.class, DistributionPlugin.TASK_INSTALL_NAME);
+        installDist.getActions().forEach(action -> action.execute(installDist));
+        File linkedDir = installDist.getDestinationDir();
+        Assertions.assertThat(new File(linkedDir, "README.md")).hasContent("Read me!");
+        Assertions.assertThat(Files.isSameFile(
+                new File(linkedDir, "lib/com.example/module-1.0.jar").toPath(), moduleJarFile.toPath())).isTrue();
+        File installedChildJarFile = new File(linkedDir, "lib/com.example.child/child.jar");
+        File installedRawJarFile = new File(linkedDir, "lib/" + rawJarFile.getName());
+        File installedLocalJarFile = new File(linkedDir, "lib/local.jar");
+        Assertions.assertThat(installedChildJarFile).hasSameBinaryContentAs(childJarFile);
+        Assertions.assertThat(installedRawJarFile).hasSameBinaryContentAs(rawJarFile);
+        Assertions.assertThat(installedLocalJarFile).hasSameBinaryContentAs(localJarFile);
+
+        // Project artifacts, the raw JAR and local files may be rebuilt in place, which doesn't affect the installation
+        byte[] installedChildJar = Files.readAllBytes(installedChildJarFile.toPath());
+        byte[] installedRawJar = Files.readAllBytes(installedRawJarFile.toPath());
+        byte[] installedLocalJar = Files.readAllBytes(installedLocalJarFile.toPath());
+        writeRawJar(childJarFile, "Rebuilt child content");
+        writeRawJar(rawJarFile, "Rebuilt raw content");
+        writeRawJar(localJarFile, "Rebuilt local content");
+        Assertions.assertThat(installedChildJarFile).hasBinaryContent(installedChildJar);
+        Assertions.assertThat(installedRawJarFile).hasBinaryContent(installedRawJar);
+        Assertions.assertThat(installedLocalJarFile).hasBinaryContent(installedLocalJar);
+
+        // Dependencies get copied in COPY mode
+        Sync installCopiedDist = getEnabledTask(project, Sync.class, "installCopiedDist");
+        installCopiedDist.getActions().forEach(action -> action.execute(installCopiedDist));
+        File copiedJarFile = new File(installCopiedDist.getDestinationDir(), "lib/com.example/module-1.0.jar");
+        Assertions.assertThat(copiedJarFile).hasSameBinaryContentAs(moduleJarFile);
+        Assertions.assertThat(Files.isSameFile(copiedJarFile.toPath(), moduleJarFile.toPath())).isFalse();
+
+        // A dependency that disappears before it could be linked can't be installed
+        Assertions.assertThat(installDist.getActions()).hasSize(2);
+        installDist.getActions().get(0).execute(installDist);
+        Files.delete(moduleJarFile.toPath());
+        Assertions.assertThatThrownBy(() -> installDist.getActions().get(1).execute(installDist))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not install dependencies into " + linkedDir)
+                .hasRootCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testApplicationDistributionArchives() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        String readme = String.join("", Collections.nCopies(10, "Read me! "));
+        FileUtils.write(project.file("README.md"), readme, StandardCharsets.UTF_8);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.distribution(distribution -> distribution.getContents().from(project.file("README.md")));
+        });
+        apps.register("deflated", app -> {
+            app.fromSourceSet(sourceSet);
+            app.getStoredEntryPatterns().empty();
+        });
+        apps.register("stored", app -> app.fromSourceSet(sourceSet));
+        project.getTasks().withType(Zip.class).matching(task -> "storedDistZip".equals(task.getName()))
+                .configureEach(task -> task.setEntryCompression(ZipEntryCompression.STORED));
+        apps.register("zip64", app -> app.fromSourceSet(sourceSet));
+        project.getTasks().withType(Zip.class).matching(task -> "zip64DistZip".equals(task.getName()))
+                .configureEach(task -> task.setZip64(true));
+        finalizeProject();
+        Assertions.assertThat(apps.getByName("stored").getStoredEntryPatterns().get())
+                .containsExactly(Application.DEFAULT_STORED_ENTRY_PATTERN);
+
+        // JARs are stored, while other files are compressed
+        Zip distZip = getEnabledTask(project, Zip.class, "distZip");
+        Assertions.assertThat(distZip.getEntryCompression()).isEqualTo(ZipEntryCompression.STORED);
+        Assertions.assertThat(distZip.getActions()).hasSize(2);
+        Files.createDirectories(distZip.getDestinationDirectory().get().getAsFile().toPath());
+        distZip.getActions().forEach(action -> action.execute(distZip));
+        try (ZipFile zipFile = new ZipFile(distZip.getArchiveFile().get().getAsFile())) {
+            String distDir = TEST_NAME + "/";
+            Assertions.assertThat(zipFile.getEntry(distDir + "lib/local.jar").getMethod()).isEqualTo(ZipEntry.STORED);
+            Assertions.assertThat(zipFile.getEntry(distDir + "README.md").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            Assertions.assertThat(IOUtils.toString(zipFile.getInputStream(zipFile.getEntry(distDir + "README.md")),
+                    StandardCharsets.UTF_8)).isEqualTo(readme);
+        }
+
+        // Archive tasks are left alone without patterns, if they store all entries anyway, or with ZIP64 extensions
+        Zip deflatedDistZip = getEnabledTask(project, Zip.class, "deflatedDistZip");
+        Assertions.assertThat(deflatedDistZip.getEntryCompression()).isEqualTo(ZipEntryCompression.DEFLATED);
+        Assertions.assertThat(deflatedDistZip.getActions()).hasSize(1);
+        Zip storedDistZip = getEnabledTask(project, Zip.class, "storedDistZip");
+        Assertions.assertThat(storedDistZip.getEntryCompression()).isEqualTo(ZipEntryCompression.STORED);
+        Assertions.assertThat(storedDistZip.getActions()).hasSize(1);
+        Zip zip64DistZip = getEnabledTask(project, Zip.class, "zip64DistZip");
+        Assertions.assertThat(zip64DistZip.getEntryCompression()).isEqualTo(ZipEntryCompression.DEFLATED);
+        Assertions.assertThat(zip64DistZip.getActions()).hasSize(1);
+    }
+
+    @Test
+    void testApplicationParallelDistZips() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        FileUtils.write(project.file("large.txt"), IntStream.range(0, 100_000)
+                .mapToObj(i -> "Line " + i * 7919 % 10007 + "\n")
+                .collect(Collectors.joining()), StandardCharsets.UTF_8);
+        FileUtils.write(project.file("template.txt"), "Version @version@", StandardCharsets.UTF_8);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.distribution(distribution -> distribution.contents(contents -> {
+                contents.from(project.file("large.txt"));
+                // Filtered files can't be read concurrently
+                contents.from(project.file("template.txt"), template -> template.filter(
+                        line -> line.replace("@version@", "1.0")));
+            }));
+        });
+        apps.register("custom", app -> {
+            app.fromSourceSet(sourceSet);
+            app.getApplicationBaseName().set("customBase");
+            app.getStoredEntryPatterns().empty();
+        });
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(ParallelDistributionZip.class)
+                .configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        AtomicReference<ParallelDistributionZip> appZipConfigured = captureConfigured(app::parallelDistZip);
+        ParallelDistributionZip appZip =
+                getEnabledTask(project, ParallelDistributionZip.class, Application.MAIN_PARALLEL_DIST_ZIP_TASK_NAME);
+        Assertions.assertThat(app.getParallelDistZip().get()).isSameAs(appZip);
+        Assertions.assertThat(appZipConfigured.get()).isSameAs(appZip);
+        Assertions.assertThat(appZip.getGroup()).isEqualTo("distribution");
+        Assertions.assertThat(appZip.isPreserveFileTimestamps()).isFalse();
+        Assertions.assertThat(appZip.isReproducibleFileOrder()).isTrue();
+        Assertions.assertThat(appZip.getArchiveFile().get().getAsFile()).isEqualTo(new File(project.getBuildDir(),
+                ParallelDistributionZip.ARCHIVE_DIRECTORY_NAME + "/" + TEST_NAME + ".zip"));
+        Assertions.assertThat(appZip.getTaskDependencies().getDependencies(appZip))
+                .contains(app.getApplicationJar().get());
+
+        // The archive doesn't depend on the number of threads
+        Files.createDirectories(appZip.getDestinationDirectory().get().getAsFile().toPath());
+        appZip.getCompressionThreads().set(1);
+        appZip.getActions().forEach(action -> action.execute(appZip));
+        File singleThreadZipFile = project.file("singleThread.zip");
+        FileUtils.moveFile(appZip.getArchiveFile().get().getAsFile(), singleThreadZipFile);
+        appZip.getCompressionThreads().set(4);
+        appZip.getActions().forEach(action -> action.execute(appZip));
+        File appZipFile = appZip.getArchiveFile().get().getAsFile();
+        Assertions.assertThat(appZipFile).hasSameBinaryContentAs(singleThreadZipFile);
+
+        try (ZipFile zipFile = new ZipFile(appZipFile)) {
+            String distDir = TEST_NAME + "/";
+            Assertions.assertThat(zipFile.stream().map(ZipEntry::getName)).containsExactly(distDir,
+                    distDir + "large.txt", distDir + "lib/", distDir + "lib/local.jar", distDir + "template.txt");
+            Assertions.assertThat(zipFile.getEntry(distDir + "lib/local.jar").getMethod()).isEqualTo(ZipEntry.STORED);
+            Assertions.assertThat(zipFile.getEntry(distDir + "large.txt").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            ZipEntry localJarEntry = zipFile.getEntry(distDir + "lib/local.jar");
+            Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(localJarEntry)))
+                    .containsExactly(Files.readAllBytes(localJarFile.toPath()));
+            Assertions.assertThat(IOUtils.toString(zipFile.getInputStream(zipFile.getEntry(distDir + "template.txt")),
+                    StandardCharsets.UTF_8)).isEqualTo("Version 1.0");
+        }
+
+        // Without stored entry patterns, every file is compressed
+        ParallelDistributionZip customZip =
+                getEnabledTask(project, ParallelDistributionZip.class, "customDistParallelZip");
+        Assertions.assertThat(customZip.getArchiveFile().get().getAsFile()).isEqualTo(new File(project.getBuildDir(),
+                ParallelDistributionZip.ARCHIVE_DIRECTORY_NAME + "/customBase.zip"));
+        customZip.getActions().forEach(action -> action.execute(customZip));
+        Assertions.assertThat(customZip.createCopyAction()).isInstanceOf(ParallelDeflateCopyAction.class);
+        try (ZipFile zipFile = new ZipFile(customZip.getArchiveFile().get().getAsFile())) {
+            Assertions.assertThat(zipFile.getEntry("customBase/lib/local.jar").getMethod())
+                    .isEqualTo(ZipEntry.DEFLATED);
+        }
+    }
+
+    @Test
+    void testParallelDistZipFallback() {
+        // Each check needs a new task, because task properties get finalized when the copy action is created
+        TaskContainer tasks = project.getTasks();
+        Assertions.assertThat(tasks.create("defaultZip", ParallelDistributionZip.class, zip ->
+                zip.setMetadataCharset(StandardCharsets.UTF_8.name())).createCopyAction())
+                .isInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("storedZip", ParallelDistributionZip.class, zip -> {
+            zip.setMetadataCharset(StandardCharsets.UTF_8.name());
+            zip.setEntryCompression(ZipEntryCompression.STORED);
+        }).createCopyAction()).isInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("charsetZip", ParallelDistributionZip.class, zip ->
+                zip.setMetadataCharset(StandardCharsets.ISO_8859_1.name())).createCopyAction())
+                .isNotInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("zip64Zip", ParallelDistributionZip.class, zip -> {
+            zip.setMetadataCharset(StandardCharsets.UTF_8.name());
+            zip.setZip64(true);
+        }).createCopyAction()).isNotInstanceOf(ParallelDeflateCopyAction.class);
+        Assertions.assertThat(tasks.create("defaultCharsetZip", ParallelDistributionZip.class).createCopyAction())
+                .isNotNull();
+    }
+
+    @Test
+    void testParallelDistZipFailure() throws IOException {
+        File contentDir = project.file("content");
+        Files.createDirectories(contentDir.toPath());
+        FileUtils.write(new File(contentDir, "vanishing.txt"), "Vanishing", StandardCharsets.UTF_8);
+
+        // Files that disappear before they could be read
+        ParallelDistributionZip zip = project.getTasks().create("vanishingZip", ParallelDistributionZip.class, task -> {
+            task.from(contentDir);
+            task.setMetadataCharset(StandardCharsets.UTF_8.name());
+            task.getDestinationDirectory().set(project.getBuildDir());
+            task.getArchiveFileName().set("vanishing.zip");
+            task.eachFile(copyDetails -> Assertions.assertThat(copyDetails.getFile().delete()).isTrue());
+        });
+        Files.createDirectories(project.getBuildDir().toPath());
+        File zipFile = zip.getArchiveFile().get().getAsFile();
+        Assertions.assertThatThrownBy(() -> zip.getActions().forEach(action -> action.execute(zip)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create distribution archive %s", zipFile)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testApplicationDistTarZsts() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        String large = IntStream.range(0, 300_000)
+                .mapToObj(i -> "Line " + i * 7919 % 10007 + "\n")
+                .collect(Collectors.joining());
+        FileUtils.write(project.file("large.txt"), large, StandardCharsets.UTF_8);
+        FileUtils.write(project.file("template.txt"), "Version @version@", StandardCharsets.UTF_8);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.distribution(distribution -> distribution.contents(contents -> {
+                contents.from(project.file("large.txt"));
+                contents.from(project.file("template.txt"), template -> template.filter(
+                        line -> line.replace("@version@", "1.0")));
+            }));
+        });
+        apps.register("custom", app -> {
+            app.fromSourceSet(sourceSet);
+            app.getApplicationBaseName().set("customBase");
+        });
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(DistributionTarZst.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        AtomicReference<DistributionTarZst> appTarZstConfigured = captureConfigured(app::distTarZst);
+        DistributionTarZst appTarZst =
+                getEnabledTask(project, DistributionTarZst.class, Application.MAIN_DIST_TAR_ZST_TASK_NAME);
+        Assertions.assertThat(app.getDistTarZst().get()).isSameAs(appTarZst);
+        Assertions.assertThat(appTarZstConfigured.get()).isSameAs(appTarZst);
+        Assertions.assertThat(appTarZst.getGroup()).isEqualTo("distribution");
+        Assertions.assertThat(appTarZst.getCompressionLevel().get())
+                .isEqualTo(DistributionTarZst.DEFAULT_COMPRESSION_LEVEL);
+        Assertions.assertThat(appTarZst.getCompressionThreads().get()).isPositive();
+        Assertions.assertThat(appTarZst.isPreserveFileTimestamps()).isFalse();
+        Assertions.assertThat(appTarZst.isReproducibleFileOrder()).isTrue();
+        Assertions.assertThat(appTarZst.getArchiveFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "distributions/" + TEST_NAME + ".tar.zst"));
+        Assertions.assertThat(appTarZst.getTaskDependencies().getDependencies(appTarZst))
+                .contains(app.getApplicationJar().get());
+
+        // The archive doesn't depend on the number of threads
+        Files.createDirectories(appTarZst.getDestinationDirectory().get().getAsFile().toPath());
+        appTarZst.getCompressionThreads().set(1);
+        appTarZst.getActions().forEach(action -> action.execute(appTarZst));
+        File singleThreadTarZstFile = project.file("singleThread.tar.zst");
+        FileUtils.moveFile(appTarZst.getArchiveFile().get().getAsFile(), singleThreadTarZstFile);
+        appTarZst.getCompressionThreads().set(4);
+        appTarZst.getActions().forEach(action -> action.execute(appTarZst));
+        File appTarZstFile = appTarZst.getArchiveFile().get().getAsFile();
+        Assertions.assertThat(appTarZstFile).hasSameBinaryContentAs(singleThreadTarZstFile);
+
+        String distDir = TEST_NAME + "/";
+        Map<String, byte[]> entries = readTarZst(appTarZstFile);
+        Assertions.assertThat(entries).containsOnlyKeys(distDir, distDir + "large.txt", distDir + "lib/",
+                distDir + "lib/local.jar", distDir + "template.txt");
+        Assertions.assertThat(entries.get(distDir + "lib/local.jar"))
+                .containsExactly(Files.readAllBytes(localJarFile.toPath()));
+        Assertions.assertThat(new String(entries.get(distDir + "large.txt"), StandardCharsets.UTF_8))
+                .isEqualTo(large);
+        Assertions.assertThat(new String(entries.get(distDir + "template.txt"), StandardCharsets.UTF_8))
+                .isEqualTo("Version 1.0");
+        Assertions.assertThat(appTarZstFile.length()).isLessThan(large.length() / 4);
+
+        DistributionTarZst customTarZst = getEnabledTask(project, DistributionTarZst.class, "customDistTarZst");
+        Assertions.assertThat(customTarZst.getArchiveFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "distributions/customBase.tar.zst"));
+        customTarZst.setPreserveFileTimestamps(true);
+        customTarZst.getActions().forEach(action -> action.execute(customTarZst));
+        byte[] customArchive = ZstdFormatTest.Decoder.decompress(
+                Files.readAllBytes(customTarZst.getArchiveFile().get().getAsFile().toPath()));
+        Assertions.assertThat(readTar(customArchive))
+                .containsOnlyKeys("customBase/", "customBase/lib/", "customBase/lib/local.jar");
+        // Timestamps are kept when asked to, in seconds
+        Assertions.assertThat(Long.parseLong(tarField(customArchive, 136, 12).trim(), 8)).isPositive();
+    }
+
+    @Test
+    void testDistTarZstFailure() throws IOException {
+        File contentDir = project.file("content");
+        Files.createDirectories(contentDir.toPath());
+        FileUtils.write(new File(contentDir, "growing.txt"), "Growing", StandardCharsets.UTF_8);
+
+        // The archive can't be created in a directory that doesn't exist
+        DistributionTarZst missingDirTarZst = project.getTasks().create("missingDirTarZst", DistributionTarZst.class,
+                task -> {
+                    task.from(contentDir);
+                    task.getDestinationDirectory().set(project.file("missing"));
+                });
+        File missingDirFile = missingDirTarZst.getArchiveFile().get().getAsFile();
+        Assertions.assertThatThrownBy(() -> missingDirTarZst.getActions().forEach(
+                action -> action.execute(missingDirTarZst)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create %s", missingDirFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        // Filtered content that changes between the time its size is computed and the time it is written
+        AtomicInteger filterCalls = new AtomicInteger();
+        DistributionTarZst growingTarZst = project.getTasks().create("growingTarZst", DistributionTarZst.class,
+                task -> {
+                    task.from(contentDir);
+                    task.getDestinationDirectory().set(project.getBuildDir());
+                    task.filter(line ->
+                            line + String.join("", Collections.nCopies(filterCalls.incrementAndGet(), "!")));
+                });
+        Files.createDirectories(project.getBuildDir().toPath());
+        File growingFile = growingTarZst.getArchiveFile().get().getAsFile();
+        Assertions.assertThatThrownBy(() -> growingTarZst.getActions().forEach(action -> action.execute(growingTarZst)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create %s", growingFile)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testApplicationOciImage() throws IOException {
+        File moduleJarFile = writeModule("com.example", "module", "1.0");
+        project.getRepositories().maven(repository -> repository.setUrl(project.file("repo")));
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        DependencyHandler dependencies = project.getDependencies();
+        dependencies.add(sourceSet.getImplementationConfigurationName(), "com.example:module:1.0");
+        dependencies.add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Jar jar = getEnabledTask(project, Jar.class, sourceSet.getJarTaskName());
+        File rawJarFile = jar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            // The raw JAR is written by the test, not by its task, so its entries are transferred as they are
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER));
+        });
+        apps.register("launcher", app -> {
+            app.fromSourceSet(sourceSet);
+            app.getMainClass().set("custom.Main");
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.LAUNCHER));
+        });
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(OciImage.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        AtomicReference<OciImage> ociImageConfigured = captureConfigured(app::ociImage);
+        OciImage ociImage = getEnabledTask(project, OciImage.class, Application.MAIN_OCI_IMAGE_TASK_NAME);
+        Assertions.assertThat(app.getOciImage().get()).isSameAs(ociImage);
+        Assertions.assertThat(ociImageConfigured.get()).isSameAs(ociImage);
+        Assertions.assertThat(ociImage.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(ociImage.getApplicationDirectory().get())
+                .isEqualTo(OciImage.DEFAULT_APPLICATION_DIRECTORY);
+        Assertions.assertThat(ociImage.getArchitecture().get()).isEqualTo(OciImage.DEFAULT_ARCHITECTURE);
+        Assertions.assertThat(ociImage.getImageReference().get()).isEqualTo("applicationplugintest:latest");
+        Assertions.assertThat(ociImage.getLayerCompression().get()).isEqualTo(OciImage.LayerCompression.GZIP);
+        Assertions.assertThat(ociImage.getBaseImage().isPresent()).isFalse();
+        Assertions.assertThat(ociImage.getImageFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "images/" + TEST_NAME + ".tar"));
+        Assertions.assertThat(ociImage.getDependencyPaths().get())
+                .containsExactly("snapshot-dependencies:lib/local.jar", "dependencies:lib/com.example/module-1.0.jar");
+        // In LAUNCHER mode, the raw JAR goes into the layer of the application JAR
+        Assertions.assertThat(getEnabledTask(project, OciImage.class, "launcherOciImage").getDependencyPaths().get())
+                .containsExactlyInAnyOrder("application:lib/" + rawJarFile.getName(),
+                        "dependencies:lib/com.example/module-1.0.jar", "snapshot-dependencies:lib/local.jar");
+        Assertions.assertThat(ociImage.getTaskDependencies().getDependencies(ociImage))
+                .contains(app.getApplicationJar().get());
+
+        ApplicationJar appJar = app.getApplicationJar().get();
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+        File imageFile = ociImage.getImageFile().get().getAsFile();
+        Files.createDirectories(imageFile.getParentFile().toPath());
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+
+        Map<String, byte[]> entries = readTar(Files.readAllBytes(imageFile.toPath()));
+        Assertions.assertThat(entries).containsKeys("blobs/", "blobs/sha256/", "index.json", "manifest.json",
+                "oci-layout");
+        Map<String, Object> index = JsonFormat.parseObject(new String(entries.get("index.json"),
+                StandardCharsets.UTF_8));
+        Map<String, Object> manifestDescriptor =
+                JsonFormat.asObject(JsonFormat.asArray(index.get("manifests"), "manifests").get(0), "manifest");
+        Assertions.assertThat(JsonFormat.asObject(manifestDescriptor.get("annotations"), "annotations"))
+                .containsEntry("io.containerd.image.name", "applicationplugintest:latest")
+                .containsEntry("org.opencontainers.image.ref.name", "latest");
+        Map<String, Object> manifest = JsonFormat.parseObject(new String(
+                readBlob(entries, manifestDescriptor), StandardCharsets.UTF_8));
+        Map<String, Object> config = JsonFormat.parseObject(new String(
+                readBlob(entries, JsonFormat.asObject(manifest.get("config"), "config")), StandardCharsets.UTF_8));
+        Assertions.assertThat(config).containsEntry("architecture", "amd64").containsEntry("os", "linux");
+        Map<String, Object> containerConfig = JsonFormat.asObject(config.get("config"), "config");
+        Assertions.assertThat(containerConfig)
+                .containsEntry("Entrypoint", Arrays.asList("java", "-jar", "/app/" + TEST_NAME + ".jar"))
+                .containsEntry("WorkingDir", "/app");
+
+        // The layers are ordered from the least volatile to the most volatile, and empty layers are left out
+        List<Object> layers = JsonFormat.asArray(manifest.get("layers"), "layers");
+        Assertions.assertThat(layers).hasSize(3);
+        Map<String, byte[]> dependenciesLayer = readTar(IOUtils.toByteArray(new GZIPInputStream(
+                new ByteArrayInputStream(readBlob(entries, JsonFormat.asObject(layers.get(0), "layer"))))));
+        Assertions.assertThat(dependenciesLayer).containsOnlyKeys("app/", "app/lib/", "app/lib/com.example/",
+                "app/lib/com.example/module-1.0.jar");
+        Assertions.assertThat(dependenciesLayer.get("app/lib/com.example/module-1.0.jar"))
+                .containsExactly(Files.readAllBytes(moduleJarFile.toPath()));
+        Map<String, byte[]> snapshotLayer = readTar(IOUtils.toByteArray(new GZIPInputStream(
+                new ByteArrayInputStream(readBlob(entries, JsonFormat.asObject(layers.get(1), "layer"))))));
+        Assertions.assertThat(snapshotLayer).containsOnlyKeys("app/", "app/lib/", "app/lib/local.jar");
+        Assertions.assertThat(snapshotLayer.get("app/lib/local.jar"))
+                .containsExactly(Files.readAllBytes(localJarFile.toPath()));
+        Map<String, byte[]> applicationLayer = readTar(IOUtils.toByteArray(new GZIPInputStream(
+                new ByteArrayInputStream(readBlob(entries, JsonFormat.asObject(layers.get(2), "layer"))))));
+        Assertions.assertThat(applicationLayer).containsOnlyKeys("app/", "app/" + TEST_NAME + ".jar");
+        Assertions.assertThat(JsonFormat.asArray(JsonFormat.asObject(config.get("rootfs"), "rootfs")
+                .get("diff_ids"), "diff_ids")).hasSize(3);
+
+        // The image is reproducible, and unchanged layers are taken from the cache
+        File firstImageFile = project.file("first.tar");
+        FileUtils.moveFile(imageFile, firstImageFile);
+        File layersIndex = new File(ociImage.getTemporaryDir(), OciImage.LAYER_INDEX_FILE_NAME);
+        Assertions.assertThat(layersIndex).isFile();
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+        Assertions.assertThat(imageFile).hasSameBinaryContentAs(firstImageFile);
+        Assertions.assertThat(new File(ociImage.getTemporaryDir(), OciImage.LAYER_DIRECTORY_NAME).list())
+                .hasSize(3);
+    }
+
+    @Test
+    void testOciImageBaseImage() throws IOException, GeneralSecurityException {
+        File applicationJarFile = project.file("app.jar");
+        writeRawJar(applicationJarFile, "Application content");
+        File baseImageDir = project.file("base");
+        byte[] baseLayer = "Base layer".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> baseLayerDescriptor =
+                writeBlob(baseImageDir, "application/vnd.oci.image.layer.v1.tar", baseLayer);
+        Map<String, Object> baseContainerConfig = new LinkedHashMap<>();
+        baseContainerConfig.put("Env", Collections.singletonList("JAVA_HOME=/opt/java"));
+        baseContainerConfig.put("Cmd", Collections.singletonList("jshell"));
+        Map<String, Object> baseConfig = new LinkedHashMap<>();
+        baseConfig.put("architecture", "amd64");
+        baseConfig.put("os", "linux");
+        baseConfig.put("config", baseContainerConfig);
+        baseConfig.put("rootfs", JsonFormat.parseObject("{\"type\":\"layers\",\"diff_ids\":[\"" +
+                baseLayerDescriptor.get("digest") + "\"]}"));
+        baseConfig.put("history", JsonFormat.parse("[{\"created_by\":\"base\"}]"));
+        Map<String, Object> baseManifest = new LinkedHashMap<>();
+        baseManifest.put("schemaVersion", 2);
+        baseManifest.put("mediaType", OciImage.MEDIA_TYPE_MANIFEST);
+        baseManifest.put("config", writeBlob(baseImageDir, OciImage.MEDIA_TYPE_CONFIG, baseConfig));
+        baseManifest.put("layers", Collections.singletonList(baseLayerDescriptor));
+        Map<String, Object> amd64Manifest = writeBlob(baseImageDir, OciImage.MEDIA_TYPE_MANIFEST, baseManifest);
+        amd64Manifest.put("platform", JsonFormat.parseObject("{\"os\":\"linux\",\"architecture\":\"amd64\"}"));
+        Map<String, Object> arm64Manifest = new LinkedHashMap<>(amd64Manifest);
+        arm64Manifest.put("platform", JsonFormat.parseObject("{\"os\":\"linux\",\"architecture\":\"arm64\"}"));
+        // Unknown descriptors and nested indexes without an image for the architecture are skipped
+        List<Object> manifests = Arrays.asList(
+                writeBlob(baseImageDir, "application/vnd.in-toto+json", new LinkedHashMap<>()),
+                writeBlob(baseImageDir, OciImage.MEDIA_TYPE_INDEX,
+                        Collections.singletonMap("manifests", Collections.singletonList(arm64Manifest))),
+                writeBlob(baseImageDir, OciImage.MEDIA_TYPE_INDEX,
+                        Collections.singletonMap("manifests", Arrays.asList(arm64Manifest, amd64Manifest))));
+        FileUtils.write(new File(baseImageDir, "index.json"),
+                JsonFormat.write(Collections.singletonMap("manifests", manifests)), StandardCharsets.UTF_8);
+        OciImage ociImage = project.getTasks().create("customOciImage", OciImage.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getImageReference().set("localhost:5000/custom");
+            task.getBaseImage().set(baseImageDir);
+            task.getApplicationDirectory().set("/opt/app/");
+            task.getLayerCompression().set(OciImage.LayerCompression.ZSTD);
+            task.getCompressionThreads().set(2);
+            task.getImageFile().set(project.file("custom.tar"));
+        });
+
+        File imageFile = ociImage.getImageFile().get().getAsFile();
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+        Map<String, byte[]> entries = readTar(Files.readAllBytes(imageFile.toPath()));
+        Map<String, Object> index = JsonFormat.parseObject(new String(entries.get("index.json"),
+                StandardCharsets.UTF_8));
+        Map<String, Object> manifestDescriptor =
+                JsonFormat.asObject(JsonFormat.asArray(index.get("manifests"), "manifests").get(0), "manifest");
+        // A reference without a tag has no tag to annotate
+        Assertions.assertThat(JsonFormat.asObject(manifestDescriptor.get("annotations"), "annotations"))
+                .containsOnlyKeys("io.containerd.image.name");
+        Map<String, Object> manifest = JsonFormat.parseObject(new String(
+                readBlob(entries, manifestDescriptor), StandardCharsets.UTF_8));
+        List<Object> layers = JsonFormat.asArray(manifest.get("layers"), "layers");
+        Assertions.assertThat(layers).hasSize(2);
+        Assertions.assertThat(layers.get(0)).isEqualTo(JsonFormat.parse(JsonFormat.write(baseLayerDescriptor)));
+        Assertions.assertThat(readBlob(entries, baseLayerDescriptor)).containsExactly(baseLayer);
+        Map<String, Object> applicationLayerDescriptor = JsonFormat.asObject(layers.get(1), "layer");
+        Assertions.assertThat(applicationLayerDescriptor)
+                .containsEntry("mediaType", "application/vnd.oci.image.layer.v1.tar+zstd");
+        Assertions.assertThat(readTar(ZstdFormatTest.Decoder.decompress(readBlob(entries, applicationLayerDescriptor))))
+                .containsOnlyKeys("opt/", "opt/app/", "opt/app/app.jar");
+
+        // The configuration of the base image is kept, except for its command
+        Map<String, Object> config = JsonFormat.parseObject(new String(
+                readBlob(entries, JsonFormat.asObject(manifest.get("config"), "config")), StandardCharsets.UTF_8));
+        Map<String, Object> containerConfig = JsonFormat.asObject(config.get("config"), "config");
+        Assertions.assertThat(containerConfig)
+                .containsEntry("Env", Collections.singletonList("JAVA_HOME=/opt/java"))
+                .containsEntry("Entrypoint", Arrays.asList("java", "-jar", "/opt/app/app.jar"))
+                .containsEntry("WorkingDir", "/opt/app")
+                .doesNotContainKey("Cmd");
+        Assertions.assertThat(JsonFormat.asArray(JsonFormat.asObject(config.get("rootfs"), "rootfs")
+                .get("diff_ids"), "diff_ids")).hasSize(2);
+        Assertions.assertThat(JsonFormat.asArray(config.get("history"), "history")).hasSize(2);
+
+        // A layer that the index doesn't describe correctly is built again
+        File layersIndex = new File(ociImage.getTemporaryDir(), OciImage.LAYER_INDEX_FILE_NAME);
+        Properties cachedLayers = new Properties();
+        try (InputStream input = Files.newInputStream(layersIndex.toPath())) {
+            cachedLayers.load(input);
+        }
+        String[] cachedLayer = cachedLayers.getProperty("application").split(" ");
+        cachedLayers.setProperty("application", String.join(" ", cachedLayer[0], cachedLayer[1], "invalid",
+                cachedLayer[3]));
+        try (OutputStream output = Files.newOutputStream(layersIndex.toPath())) {
+            cachedLayers.store(output, null);
+        }
+        File firstImageFile = project.file("first.tar");
+        FileUtils.moveFile(imageFile, firstImageFile);
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+        Assertions.assertThat(imageFile).hasSameBinaryContentAs(firstImageFile);
+        // So is a cached layer whose size doesn't match the index
+        File layerDir = new File(ociImage.getTemporaryDir(), OciImage.LAYER_DIRECTORY_NAME);
+        Files.write(new File(layerDir, cachedLayer[1]).toPath(), new byte[1], StandardOpenOption.APPEND);
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+        Assertions.assertThat(imageFile).hasSameBinaryContentAs(firstImageFile);
+
+        // Cached layers that are no longer used get deleted
+        writeRawJar(applicationJarFile, "Changed application content");
+        ociImage.getActions().forEach(action -> action.execute(ociImage));
+        Assertions.assertThat(layerDir.list()).hasSize(1).doesNotContain(cachedLayer[1]);
+    }
+
+    @Test
+    void testOciImageFailure() throws IOException {
+        File applicationJarFile = project.file("app.jar");
+        writeRawJar(applicationJarFile, "Application content");
+        File baseImageDir = project.file("base");
+        Files.createDirectories(baseImageDir.toPath());
+        FileUtils.write(new File(baseImageDir, "index.json"), "{\"manifests\":[]}", StandardCharsets.UTF_8);
+        OciImage ociImage = project.getTasks().create("customOciImage", OciImage.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getImageReference().set("custom");
+            task.getBaseImage().set(baseImageDir);
+            task.getImageFile().set(project.file("custom.tar"));
+        });
+
+        File imageFile = ociImage.getImageFile().get().getAsFile();
+        Assertions.assertThatThrownBy(() -> ociImage.getActions().forEach(action -> action.execute(ociImage)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not build image %s: The base image in %s has no image for linux/amd64",
+                        imageFile, baseImageDir.toPath())
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+        Files.delete(new File(baseImageDir, "index.json").toPath());
+        Assertions.assertThatThrownBy(() -> ociImage.getActions().forEach(action -> action.execute(ociImage)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not build image %s", imageFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        ociImage.getBaseImage().set((Directory) null);
+        ociImage.getApplicationDirectory().set("relative");
+        Assertions.assertThatThrownBy(() -> ociImage.getActions().forEach(action -> action.execute(ociImage)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not build image %s: applicationDirectory must be an absolute path other than " +
+                        "the root: relative", imageFile);
+    }
+
+    @Test
+    void testApplicationDistDelta() throws IOException, GeneralSecurityException, InterruptedException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        FileUtils.write(project.file("conf.txt"), "New configuration", StandardCharsets.UTF_8);
+        FileUtils.write(project.file("added.txt"), "Added", StandardCharsets.UTF_8);
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.distribution(distribution -> distribution.contents(contents -> {
+                contents.from(project.file("conf.txt"));
+                contents.from(project.file("added.txt"), added -> added.into("new dir"));
+            }));
+        });
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(DistributionDelta.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        // The previous release, in an archive with a top-level directory
+        Map<String, byte[]> previousFiles = new TreeMap<>();
+        previousFiles.put("lib/local.jar", Files.readAllBytes(localJarFile.toPath()));
+        previousFiles.put("conf.txt", "Old configuration".getBytes(StandardCharsets.UTF_8));
+        previousFiles.put("old/removed.txt", "Removed".getBytes(StandardCharsets.UTF_8));
+        File previousFile = project.file("previous.tar.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(previousFile.toPath()))) {
+            TarFormat.Writer writer = new TarFormat.Writer(output);
+            for (Map.Entry<String, byte[]> file : previousFiles.entrySet()) {
+                writer.writeFile(TEST_NAME + "-1.0/" + file.getKey(), 0644, 0, file.getValue().length,
+                        content -> content.write(file.getValue()));
+            }
+            writer.close();
+        }
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        AtomicReference<DistributionDelta> appDeltaConfigured = captureConfigured(app::distDelta);
+        DistributionDelta appDelta =
+                getEnabledTask(project, DistributionDelta.class, Application.MAIN_DIST_DELTA_TASK_NAME);
+        Assertions.assertThat(app.getDistDelta().get()).isSameAs(appDelta);
+        Assertions.assertThat(appDeltaConfigured.get()).isSameAs(appDelta);
+        Assertions.assertThat(appDelta.getGroup()).isEqualTo("distribution");
+        Assertions.assertThat(appDelta.getStoredEntryPatterns().get())
+                .containsExactly(Application.DEFAULT_STORED_ENTRY_PATTERN);
+        Assertions.assertThat(appDelta.isPreserveFileTimestamps()).isFalse();
+        Assertions.assertThat(appDelta.isReproducibleFileOrder()).isTrue();
+        Assertions.assertThat(appDelta.getArchiveFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "distributions/" + TEST_NAME + "-delta.jar"));
+        Assertions.assertThat(appDelta.getTaskDependencies().getDependencies(appDelta))
+                .contains(app.getApplicationJar().get());
+
+        appDelta.getPreviousDistribution().from(previousFile);
+        Files.createDirectories(appDelta.getDestinationDirectory().get().getAsFile().toPath());
+        appDelta.getActions().forEach(action -> action.execute(appDelta));
+        File deltaFile = appDelta.getArchiveFile().get().getAsFile();
+        String removedHash;
+        try (ZipFile delta = new ZipFile(deltaFile)) {
+            // Only the changed files, along with the class that applies them
+            Assertions.assertThat(Collections.list(delta.entries())).extracting(ZipEntry::getName).containsExactly(
+                    "META-INF/", ApplicationJar.MANIFEST_PATH, "com/ms/gradle/application/ApplyDelta.class",
+                    "content/conf.txt", "content/new dir/added.txt", DistributionDelta.INDEX_PATH);
+            Assertions.assertThat(IOUtils.toString(delta.getInputStream(delta.getEntry(ApplicationJar.MANIFEST_PATH)),
+                    StandardCharsets.UTF_8)).contains("Main-Class: " + ApplyDelta.class.getName() + "\r\n");
+            List<String> index = IOUtils.readLines(delta.getInputStream(delta.getEntry(DistributionDelta.INDEX_PATH)),
+                    StandardCharsets.UTF_8);
+            Assertions.assertThat(index).hasSize(3);
+            Assertions.assertThat(index.get(0)).matches("[0-9a-f]{64} [0-9a-f]{64} conf.txt");
+            Assertions.assertThat(index.get(1)).matches("- [0-9a-f]{64} new dir/added.txt");
+            Assertions.assertThat(index.get(2)).matches("[0-9a-f]{64} - old/removed.txt");
+            removedHash = index.get(2).substring(0, 64);
+        }
+
+        // The delta updates an installation of the previous release to the current one
+        File installDir = project.file("install");
+        for (Map.Entry<String, byte[]> file : previousFiles.entrySet()) {
+            FileUtils.writeByteArrayToFile(new File(installDir, file.getKey()), file.getValue());
+        }
+        Assertions.assertThat(ApplyDelta.hash(new File(installDir, "old/removed.txt").toPath()))
+                .isEqualTo(removedHash);
+        Assertions.assertThat(runDelta(deltaFile, installDir))
+                .isEqualTo("Updated 2 and removed 1 files in %s", installDir);
+        Assertions.assertThat(new File(installDir, "conf.txt")).hasContent("New configuration");
+        Assertions.assertThat(new File(installDir, "new dir/added.txt")).hasContent("Added");
+        Assertions.assertThat(new File(installDir, "lib/local.jar")).hasSameBinaryContentAs(localJarFile);
+        Assertions.assertThat(new File(installDir, "old")).doesNotExist();
+        Assertions.assertThat(installDir.list()).containsOnly("conf.txt", "lib", "new dir");
+
+        // Applying it again doesn't change anything
+        Assertions.assertThat(ApplyDelta.apply(deltaFile.toPath(), installDir.toPath()))
+                .isEqualTo("Updated 0 and removed 0 files in %s", installDir);
+
+        // Invalid arguments, and a class that is not running from a delta archive
+        Assertions.assertThat(ApplyDelta.run()).isEqualTo(2);
+        Assertions.assertThat(ApplyDelta.run(installDir.getPath())).isEqualTo(1);
+
+        // Nothing changes since an installation of the current release
+        appDelta.getPreviousDistribution().setFrom(installDir);
+        appDelta.getActions().forEach(action -> action.execute(appDelta));
+        try (ZipFile delta = new ZipFile(appDelta.getArchiveFile().get().getAsFile())) {
+            Assertions.assertThat(Collections.list(delta.entries())).extracting(ZipEntry::getName)
+                    .doesNotContain("content/conf.txt", "content/new dir/added.txt");
+            Assertions.assertThat(delta.getEntry(DistributionDelta.INDEX_PATH).getSize()).isZero();
+        }
+    }
+
+    @Test
+    void testDistDeltaFailure() throws IOException {
+        File contentDir = project.file("content");
+        FileUtils.write(new File(contentDir, "conf.txt"), "New configuration", StandardCharsets.UTF_8);
+        DistributionDelta delta = project.getTasks().create("customDistDelta", DistributionDelta.class, task -> {
+            task.from(contentDir);
+            task.getDestinationDirectory().set(project.getBuildDir());
+        });
+        Files.createDirectories(project.getBuildDir().toPath());
+
+        // The previous release is required
+        Assertions.assertThatThrownBy(() -> delta.getActions().forEach(action -> action.execute(delta)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("previousDistribution must contain exactly one archive or directory: []");
+
+        File unsupportedFile = project.file("previous.7z");
+        FileUtils.write(unsupportedFile, "Unsupported", StandardCharsets.UTF_8);
+        delta.getPreviousDistribution().setFrom(unsupportedFile);
+        Assertions.assertThatThrownBy(() -> delta.getActions().forEach(action -> action.execute(delta)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not read previous distribution %s", unsupportedFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        // The delta doesn't apply to an installation of another release, which is left untouched
+        File previousDir = project.file("previous");
+        FileUtils.write(new File(previousDir, "conf.txt"), "Old configuration", StandardCharsets.UTF_8);
+        delta.getPreviousDistribution().setFrom(previousDir);
+        delta.getActions().forEach(action -> action.execute(delta));
+        File installDir = project.file("install");
+        FileUtils.write(new File(installDir, "conf.txt"), "Local configuration", StandardCharsets.UTF_8);
+        Assertions.assertThatThrownBy(() -> ApplyDelta.apply(
+                delta.getArchiveFile().get().getAsFile().toPath(), installDir.toPath()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("The installation in %s is not of the release that the delta applies to, these files " +
+                        "differ: conf.txt", installDir);
+        Assertions.assertThat(new File(installDir, "conf.txt")).hasContent("Local configuration");
+
+        // File too large to be held in memory (sparse, so it doesn't take up any space)
+        try (RandomAccessFile largeFile = new RandomAccessFile(new File(contentDir, "large.bin"), "rw")) {
+            largeFile.setLength(Integer.MAX_VALUE);
+        }
+        File deltaFile = delta.getArchiveFile().get().getAsFile();
+        Assertions.assertThatThrownBy(() -> delta.getActions().forEach(action -> action.execute(delta)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create delta archive %s", deltaFile)
+                .hasCauseInstanceOf(ZipException.class);
+        Files.delete(new File(contentDir, "large.bin").toPath());
+
+        // The archive can't be written
+        Files.delete(deltaFile.toPath());
+        Files.createDirectories(deltaFile.toPath());
+        Assertions.assertThatThrownBy(() -> delta.getActions().forEach(action -> action.execute(delta)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create delta archive %s", deltaFile)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testDistDeltaPreviousArchives() throws IOException {
+        File contentDir = project.file("content");
+        FileUtils.write(new File(contentDir, "conf.txt"), "New configuration", StandardCharsets.UTF_8);
+        FileUtils.write(new File(contentDir, "lib/app.jar"), "New application", StandardCharsets.UTF_8);
+        long lastModified = LocalDateTime.of(2020, 1, 2, 3, 4, 6).atZone(ZoneId.systemDefault()).toEpochSecond() * 1000;
+        Assertions.assertThat(new File(contentDir, "conf.txt").setLastModified(lastModified)).isTrue();
+        DistributionDelta delta = project.getTasks().create("customDistDelta", DistributionDelta.class, task -> {
+            task.from(contentDir);
+            task.getDestinationDirectory().set(project.getBuildDir());
+            task.getStoredEntryPatterns().set(Collections.singletonList("lib/*.jar"));
+            task.setPreserveFileTimestamps(true);
+        });
+        Files.createDirectories(project.getBuildDir().toPath());
+        File deltaFile = delta.getArchiveFile().get().getAsFile();
+
+        // A ZIP archive, whose files are all in the same top-level directory
+        File previousZip = project.file("previous.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(previousZip.toPath()))) {
+            zip.putNextEntry(new ZipEntry("app-1.0/"));
+            zip.putNextEntry(new ZipEntry("app-1.0/conf.txt"));
+            zip.write("New configuration".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("app-1.0/lib/app.jar"));
+            zip.write("Old application".getBytes(StandardCharsets.UTF_8));
+        }
+        delta.getPreviousDistribution().setFrom(previousZip);
+        delta.getActions().forEach(action -> action.execute(delta));
+        Map<String, Long> entries = readZipEntries(deltaFile, entry -> { });
+        Assertions.assertThat(entries).containsOnlyKeys("META-INF/", ApplicationJar.MANIFEST_PATH,
+                "com/ms/gradle/application/ApplyDelta.class", "content/lib/app.jar", DistributionDelta.INDEX_PATH);
+        try (ZipFile zip = new ZipFile(deltaFile)) {
+            Assertions.assertThat(zip.getEntry("content/lib/app.jar").getMethod()).isEqualTo(ZipEntry.STORED);
+        }
+
+        // A TAR archive, whose files are in different top-level directories, so they are compared as they are
+        File previousTar = project.file("previous.tar");
+        try (OutputStream output = Files.newOutputStream(previousTar.toPath())) {
+            TarFormat.Writer writer = new TarFormat.Writer(output);
+            writer.writeDirectory("lib", 0755, 0);
+            writer.writeFile("lib/app.jar", 0644, 0, 15, content -> content.write(
+                    "New application".getBytes(StandardCharsets.UTF_8)));
+            writer.writeFile("other/conf.txt", 0644, 0, 3, content -> content.write(
+                    "Old".getBytes(StandardCharsets.UTF_8)));
+            writer.close();
+        }
+        delta.getPreviousDistribution().setFrom(previousTar);
+        delta.getActions().forEach(action -> action.execute(delta));
+        try (ZipFile zip = new ZipFile(deltaFile)) {
+            Assertions.assertThat(IOUtils.readLines(zip.getInputStream(zip.getEntry(DistributionDelta.INDEX_PATH)),
+                    StandardCharsets.UTF_8)).satisfiesExactly(
+                            line -> Assertions.assertThat(line).matches("- [0-9a-f]{64} conf.txt"),
+                            line -> Assertions.assertThat(line).matches("[0-9a-f]{64} - other/conf.txt"));
+            ZipEntry confEntry = zip.getEntry("content/conf.txt");
+            Assertions.assertThat(confEntry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            Assertions.assertThat(confEntry.getTime()).isEqualTo(lastModified);
+        }
+
+        // A JAR archive with a file outside of any directory, so it is compared as it is
+        File previousJar = project.file("previous.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(previousJar.toPath()))) {
+            zip.putNextEntry(new ZipEntry("lib/app.jar"));
+            zip.write("New application".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("conf.txt"));
+            zip.write("New configuration".getBytes(StandardCharsets.UTF_8));
+        }
+        delta.getPreviousDistribution().setFrom(previousJar);
+        delta.getActions().forEach(action -> action.execute(delta));
+        try (ZipFile zip = new ZipFile(deltaFile)) {
+            Assertions.assertThat(zip.getEntry(DistributionDelta.INDEX_PATH).getSize()).isZero();
+        }
+
+        // A compressed TAR archive without any files, and no files stored without compression
+        File previousTgz = project.file("previous.tgz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(previousTgz.toPath()))) {
+            new TarFormat.Writer(output).close();
+        }
+        delta.getPreviousDistribution().setFrom(previousTgz);
+        delta.getStoredEntryPatterns().empty();
+        delta.getActions().forEach(action -> action.execute(delta));
+        try (ZipFile zip = new ZipFile(deltaFile)) {
+            Assertions.assertThat(zip.getEntry("content/lib/app.jar").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+        }
+    }
+
+    @Test
+    void testApplyDeltaFailure() throws IOException, GeneralSecurityException {
+        File installDir = project.file("install");
+        FileUtils.write(new File(installDir, "dir/old.txt"), "Old", StandardCharsets.UTF_8);
+        FileUtils.write(new File(installDir, "dir/other.txt"), "Other", StandardCharsets.UTF_8);
+        File deltaFile = project.file("delta.jar");
+        Assertions.assertThatThrownBy(() -> ApplyDelta.apply(deltaFile.toPath(), project.file("missing").toPath()))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Not a directory: %s", project.file("missing"));
+
+        // Archives that are not valid delta archives
+        writeDelta(deltaFile, null, Collections.emptyMap());
+        expectApplyDeltaFailure(deltaFile, installDir, "Not a delta archive: " + deltaFile);
+        writeDelta(deltaFile, "invalid\n", Collections.emptyMap());
+        expectApplyDeltaFailure(deltaFile, installDir, "Invalid line in the index of the delta archive: invalid");
+        String newHash = sha256("New");
+        writeDelta(deltaFile, "- " + newHash + " ../escaped.txt\n", Collections.emptyMap());
+        expectApplyDeltaFailure(deltaFile, installDir, "Invalid path in the delta archive: ../escaped.txt");
+        writeDelta(deltaFile, "- " + newHash + " new.txt\n", Collections.emptyMap());
+        expectApplyDeltaFailure(deltaFile, installDir, "The delta archive has no content for new.txt");
+        writeDelta(deltaFile, "- " + newHash + " new.txt\n", Collections.singletonMap("new.txt", "Corrupt"));
+        expectApplyDeltaFailure(deltaFile, installDir, "The content of new.txt is corrupt in the delta archive");
+        Assertions.assertThat(new File(installDir, "new.txt")).doesNotExist();
+        Assertions.assertThat(installDir.list()).containsExactly("dir");
+
+        // Directories are only removed once they are empty
+        writeDelta(deltaFile, sha256("Old") + " - dir/old.txt\n", Collections.emptyMap());
+        Assertions.assertThat(ApplyDelta.apply(deltaFile.toPath(), installDir.toPath()))
+                .isEqualTo("Updated 0 and removed 1 files in %s", installDir);
+        Assertions.assertThat(new File(installDir, "dir").list()).containsExactly("other.txt");
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testApplicationCdsArchive() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Jar jar = getEnabledTask(project, Jar.class, sourceSet.getJarTaskName());
+        File rawJarFile = jar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File javaHome = writeFakeJavaHome("21.0.1");
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            // The raw JAR is written by the test, not by its task, so its entries are transferred as they are
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER));
+            app.getClassDataSharing().set(true);
+        });
+        apps.register("custom", app -> app.fromSourceSet(sourceSet));
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(CdsArchive.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        Assertions.assertThat(app.getClassDataSharing().get()).isTrue();
+        AtomicReference<CdsArchive> cdsArchiveConfigured = captureConfigured(app::cdsArchive);
+        CdsArchive cdsArchive = getEnabledTask(project, CdsArchive.class, Application.MAIN_CDS_ARCHIVE_TASK_NAME);
+        Assertions.assertThat(app.getCdsArchive().get()).isSameAs(cdsArchive);
+        Assertions.assertThat(cdsArchiveConfigured.get()).isSameAs(cdsArchive);
+        Assertions.assertThat(cdsArchive.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(cdsArchive.getJavaHome().isPresent()).isTrue();
+        Assertions.assertThat(cdsArchive.getTrainingArguments().get()).isEmpty();
+        Assertions.assertThat(cdsArchive.getTrainingJvmArguments().get()).isEmpty();
+        Assertions.assertThat(cdsArchive.getArchiveFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "cds/" + TEST_NAME + ".jsa"));
+        Assertions.assertThat(cdsArchive.getDependencyPaths().get()).containsExactly("lib/local.jar");
+        Assertions.assertThat(cdsArchive.getTaskDependencies().getDependencies(cdsArchive))
+                .contains(app.getApplicationJar().get());
+
+        // The archive goes into the distribution only when asked to
+        DistributionTarZst appTarZst =
+                getEnabledTask(project, DistributionTarZst.class, Application.MAIN_DIST_TAR_ZST_TASK_NAME);
+        Assertions.assertThat(appTarZst.getTaskDependencies().getDependencies(appTarZst)).contains(cdsArchive);
+        DistributionTarZst customTarZst = getEnabledTask(project, DistributionTarZst.class, "customDistTarZst");
+        Assertions.assertThat(customTarZst.getTaskDependencies().getDependencies(customTarZst))
+                .doesNotHaveAnyElementsOfTypes(CdsArchive.class);
+
+        ApplicationJar appJar = app.getApplicationJar().get();
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+        cdsArchive.getJavaHome().set(javaHome);
+        cdsArchive.getTrainingJvmArguments().add("-Dtraining=true");
+        cdsArchive.getTrainingArguments().addAll("--warm-up", "10");
+        cdsArchive.getActions().forEach(action -> action.execute(cdsArchive));
+
+        // The training run starts in a copy of the distribution, with relative paths
+        File trainingDir = new File(cdsArchive.getTemporaryDir(), CdsArchive.TRAINING_DIRECTORY_NAME);
+        Assertions.assertThat(cdsArchive.getArchiveFile().get().getAsFile()).hasContent(String.join("\n",
+                trainingDir.getCanonicalPath(),
+                "-Dtraining=true",
+                "-XX:ArchiveClassesAtExit=" + TEST_NAME + ".jsa",
+                "-jar",
+                TEST_NAME + ".jar",
+                "--warm-up",
+                "10"));
+        File trainingJarFile = new File(trainingDir, TEST_NAME + ".jar");
+        File trainingLocalJarFile = new File(trainingDir, "lib/local.jar");
+        Assertions.assertThat(trainingJarFile).hasSameBinaryContentAs(appJar.getArchiveFile().get().getAsFile());
+        Assertions.assertThat(trainingLocalJarFile).hasSameBinaryContentAs(localJarFile);
+        // So that the JVM doesn't check the modification times of the JARs
+        Assertions.assertThat(trainingJarFile.lastModified()).isZero();
+        Assertions.assertThat(trainingLocalJarFile.lastModified()).isZero();
+        Assertions.assertThat(new File(trainingDir, TEST_NAME + ".jsa")).doesNotExist();
+
+        // The tools of Java installations have the .exe extension on Windows
+        String osName = System.getProperty("os.name");
+        try {
+            System.setProperty("os.name", "Windows 11");
+            Assertions.assertThat(JavaInstallation.executable(javaHome, "java"))
+                    .isEqualTo(new File(javaHome, "bin/java.exe"));
+        } finally {
+            System.setProperty("os.name", osName);
+        }
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testCdsArchiveFailure() throws IOException {
+        File applicationJarFile = project.file("app.jar");
+        writeRawJar(applicationJarFile, "Application content");
+        CdsArchive cdsArchive = project.getTasks().create("customCdsArchive", CdsArchive.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getArchiveFile().set(project.file("custom.jsa"));
+        });
+        File archiveFile = cdsArchive.getArchiveFile().get().getAsFile();
+
+        // Dynamic CDS archives take Java 13 or later
+        File java11Home = writeFakeJavaHome("11.0.21");
+        cdsArchive.getJavaHome().set(java11Home);
+        Assertions.assertThatThrownBy(() -> cdsArchive.getActions().forEach(action -> action.execute(cdsArchive)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create CDS archive %s: The Java installation in %s is of version 11, but CDS " +
+                        "archives take version 13 or later", archiveFile, java11Home)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+        // The Java installation must state a valid version
+        File invalidHome = writeFakeJavaHome("invalid");
+        cdsArchive.getJavaHome().set(invalidHome);
+        Assertions.assertThatThrownBy(() -> cdsArchive.getActions().forEach(action -> action.execute(cdsArchive)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create CDS archive %s: The Java installation in %s has an invalid version: " +
+                        "invalid", archiveFile, invalidHome)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        Files.delete(new File(invalidHome, JavaInstallation.RELEASE_FILE_NAME).toPath());
+        Assertions.assertThatThrownBy(() -> cdsArchive.getActions().forEach(action -> action.execute(cdsArchive)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create CDS archive %s", archiveFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        // The training run must succeed, and create the archive
+        cdsArchive.getJavaHome().set(writeFakeJavaHome("21.0.1"));
+        cdsArchive.getTrainingArguments().add("--fail");
+        Assertions.assertThatThrownBy(() -> cdsArchive.getActions().forEach(action -> action.execute(cdsArchive)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create CDS archive %s: The training run exited with value 3", archiveFile);
+        cdsArchive.getTrainingArguments().set(Collections.singletonList("--no-archive"));
+        Assertions.assertThatThrownBy(() -> cdsArchive.getActions().forEach(action -> action.execute(cdsArchive)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create CDS archive %s: The training run didn't create the archive", archiveFile);
+        Assertions.assertThat(archiveFile).doesNotExist();
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testApplicationAotCache() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Jar jar = getEnabledTask(project, Jar.class, sourceSet.getJarTaskName());
+        File rawJarFile = jar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File javaHome = writeFakeJavaHome("24");
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            // The raw JAR is written by the test, not by its task, so its entries are transferred as they are
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER));
+            app.getAheadOfTimeCache().set(true);
+        });
+        apps.register("custom", app -> app.fromSourceSet(sourceSet));
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(AotCache.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        Assertions.assertThat(app.getAheadOfTimeCache().get()).isTrue();
+        AtomicReference<AotCache> aotCacheConfigured = captureConfigured(app::aotCache);
+        AotCache aotCache = getEnabledTask(project, AotCache.class, Application.MAIN_AOT_CACHE_TASK_NAME);
+        Assertions.assertThat(app.getAotCache().get()).isSameAs(aotCache);
+        Assertions.assertThat(aotCacheConfigured.get()).isSameAs(aotCache);
+        Assertions.assertThat(aotCache.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(aotCache.getJavaHome().isPresent()).isTrue();
+        Assertions.assertThat(aotCache.getTrainingArguments().get()).isEmpty();
+        Assertions.assertThat(aotCache.getTrainingJvmArguments().get()).isEmpty();
+        Assertions.assertThat(aotCache.getCacheFile().get().getAsFile()).isEqualTo(
+                new File(project.getBuildDir(), "aot/" + TEST_NAME + ".aot"));
+        Assertions.assertThat(aotCache.getDependencyPaths().get()).containsExactly("lib/local.jar");
+        Assertions.assertThat(aotCache.getTaskDependencies().getDependencies(aotCache))
+                .contains(app.getApplicationJar().get());
+
+        // The cache goes into the distribution only when asked to
+        DistributionTarZst appTarZst =
+                getEnabledTask(project, DistributionTarZst.class, Application.MAIN_DIST_TAR_ZST_TASK_NAME);
+        Assertions.assertThat(appTarZst.getTaskDependencies().getDependencies(appTarZst)).contains(aotCache)
+                .doesNotHaveAnyElementsOfTypes(CdsArchive.class);
+        DistributionTarZst customTarZst = getEnabledTask(project, DistributionTarZst.class, "customDistTarZst");
+        Assertions.assertThat(customTarZst.getTaskDependencies().getDependencies(customTarZst))
+                .doesNotHaveAnyElementsOfTypes(AotCache.class);
+
+        ApplicationJar appJar = app.getApplicationJar().get();
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+        aotCache.getJavaHome().set(javaHome);
+        aotCache.getTrainingJvmArguments().add("-Dtraining=true");
+        aotCache.getTrainingArguments().addAll("--warm-up", "10");
+        aotCache.getActions().forEach(action -> action.execute(aotCache));
+
+        // The training run records the configuration, which the cache is then created from, with relative paths
+        File trainingDir = new File(aotCache.getTemporaryDir(), AotCache.TRAINING_DIRECTORY_NAME);
+        Assertions.assertThat(aotCache.getCacheFile().get().getAsFile()).hasContent(String.join("\n",
+                trainingDir.getCanonicalPath(),
+                "-Dtraining=true",
+                "-XX:AOTMode=record",
+                "-XX:AOTConfiguration=" + TEST_NAME + ".aotconf",
+                "-jar",
+                TEST_NAME + ".jar",
+                "--warm-up",
+                "10",
+                trainingDir.getCanonicalPath(),
+                "-Dtraining=true",
+                "-XX:AOTMode=create",
+                "-XX:AOTConfiguration=" + TEST_NAME + ".aotconf",
+                "-XX:AOTCache=" + TEST_NAME + ".aot",
+                "-cp",
+                TEST_NAME + ".jar"));
+        File trainingJarFile = new File(trainingDir, TEST_NAME + ".jar");
+        File trainingLocalJarFile = new File(trainingDir, "lib/local.jar");
+        Assertions.assertThat(trainingJarFile).hasSameBinaryContentAs(appJar.getArchiveFile().get().getAsFile());
+        Assertions.assertThat(trainingLocalJarFile).hasSameBinaryContentAs(localJarFile);
+        Assertions.assertThat(trainingJarFile.lastModified()).isZero();
+        Assertions.assertThat(trainingLocalJarFile.lastModified()).isZero();
+        Assertions.assertThat(new File(trainingDir, TEST_NAME + ".aot")).doesNotExist();
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testAotCacheFailure() throws IOException {
+        File applicationJarFile = project.file("app.jar");
+        writeRawJar(applicationJarFile, "Application content");
+        AotCache aotCache = project.getTasks().create("customAotCache", AotCache.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getCacheFile().set(project.file("custom.aot"));
+        });
+        File cacheFile = aotCache.getCacheFile().get().getAsFile();
+
+        // AOT caches take Java 24 or later
+        File java21Home = writeFakeJavaHome("21.0.1");
+        aotCache.getJavaHome().set(java21Home);
+        Assertions.assertThatThrownBy(() -> aotCache.getActions().forEach(action -> action.execute(aotCache)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create AOT cache %s: The Java installation in %s is of version 21, but AOT " +
+                        "caches take version 24 or later", cacheFile, java21Home)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+        // The Java installation must have a release file
+        aotCache.getJavaHome().set(project.file("missing"));
+        Assertions.assertThatThrownBy(() -> aotCache.getActions().forEach(action -> action.execute(aotCache)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create AOT cache %s", cacheFile)
+                .hasCauseInstanceOf(IOException.class);
+
+        // The training run must succeed, and record the configuration
+        aotCache.getJavaHome().set(writeFakeJavaHome("24"));
+        aotCache.getTrainingArguments().add("--fail");
+        Assertions.assertThatThrownBy(() -> aotCache.getActions().forEach(action -> action.execute(aotCache)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create AOT cache %s: The training run exited with value 3", cacheFile);
+        aotCache.getTrainingArguments().set(Collections.singletonList("--no-archive"));
+        Assertions.assertThatThrownBy(() -> aotCache.getActions().forEach(action -> action.execute(aotCache)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create AOT cache %s: The training run didn't create the AOT configuration",
+                        cacheFile);
+        Assertions.assertThat(cacheFile).doesNotExist();
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testApplicationJlinkRuntime() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content", "More local content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Jar jar = getEnabledTask(project, Jar.class, sourceSet.getJarTaskName());
+        File rawJarFile = jar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File javaHome = writeFakeJavaHome("21.0.1");
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            // The raw JAR is written by the test, not by its task, so its entries are transferred as they are
+            app.applicationJar(appJar -> appJar.getPackagingMode().set(ApplicationJar.PackagingMode.TRANSFER));
+            app.getTrimmedRuntime().set(true);
+        });
+        apps.register("custom", app -> app.fromSourceSet(sourceSet));
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(JlinkRuntime.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        Assertions.assertThat(app.getTrimmedRuntime().get()).isTrue();
+        AtomicReference<JlinkRuntime> jlinkRuntimeConfigured = captureConfigured(app::jlinkRuntime);
+        JlinkRuntime jlinkRuntime =
+                getEnabledTask(project, JlinkRuntime.class, Application.MAIN_JLINK_RUNTIME_TASK_NAME);
+        Assertions.assertThat(app.getJlinkRuntime().get()).isSameAs(jlinkRuntime);
+        Assertions.assertThat(jlinkRuntimeConfigured.get()).isSameAs(jlinkRuntime);
+        Assertions.assertThat(jlinkRuntime.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(jlinkRuntime.getJavaHome().isPresent()).isTrue();
+        Assertions.assertThat(jlinkRuntime.getAdditionalModules().get()).isEmpty();
+        Assertions.assertThat(jlinkRuntime.getJlinkArguments().get())
+                .containsExactly("--no-header-files", "--no-man-pages");
+        File runtimeDir = new File(project.getBuildDir(), "runtimes/" + Application.MAIN_APPLICATION_NAME);
+        Assertions.assertThat(jlinkRuntime.getOutputDirectory().get().getAsFile()).isEqualTo(runtimeDir);
+        Assertions.assertThat(jlinkRuntime.getDependencyFiles()).containsExactly(localJarFile);
+        Assertions.assertThat(jlinkRuntime.getTaskDependencies().getDependencies(jlinkRuntime))
+                .contains(app.getApplicationJar().get());
+
+        // The runtime goes into the distribution only when asked to, and the archives are then created with it
+        DistributionTarZst appTarZst =
+                getEnabledTask(project, DistributionTarZst.class, Application.MAIN_DIST_TAR_ZST_TASK_NAME);
+        Assertions.assertThat(appTarZst.getTaskDependencies().getDependencies(appTarZst)).contains(jlinkRuntime);
+        CdsArchive cdsArchive = getEnabledTask(project, CdsArchive.class, Application.MAIN_CDS_ARCHIVE_TASK_NAME);
+        Assertions.assertThat(cdsArchive.getJavaHome().get().getAsFile()).isEqualTo(runtimeDir);
+        AotCache aotCache = getEnabledTask(project, AotCache.class, Application.MAIN_AOT_CACHE_TASK_NAME);
+        Assertions.assertThat(aotCache.getJavaHome().get().getAsFile()).isEqualTo(runtimeDir);
+        JvmArgumentFiles jvmArgumentFiles =
+                getEnabledTask(project, JvmArgumentFiles.class, Application.MAIN_JVM_ARGUMENT_FILES_TASK_NAME);
+        Assertions.assertThat(jvmArgumentFiles.getJavaHome().get().getAsFile()).isEqualTo(runtimeDir);
+        DistributionTarZst customTarZst = getEnabledTask(project, DistributionTarZst.class, "customDistTarZst");
+        Assertions.assertThat(customTarZst.getTaskDependencies().getDependencies(customTarZst))
+                .doesNotHaveAnyElementsOfTypes(JlinkRuntime.class);
+        CdsArchive customCdsArchive = getEnabledTask(project, CdsArchive.class, "customCdsArchive");
+        Assertions.assertThat(customCdsArchive.getJavaHome().get().getAsFile()).isNotEqualTo(
+                new File(project.getBuildDir(), "runtimes/custom"));
+
+        ApplicationJar appJar = app.getApplicationJar().get();
+        Files.createDirectories(appJar.getDestinationDirectory().get().getAsFile().toPath());
+        appJar.copy();
+        jlinkRuntime.getJavaHome().set(javaHome);
+        jlinkRuntime.getAdditionalModules().add("jdk.crypto.ec");
+        jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime));
+
+        // Every JAR is analysed once, and the modules of all of them go into the runtime
+        File jdepsLog = new File(javaHome, "jdeps.log");
+        Assertions.assertThat(Files.readAllLines(jdepsLog.toPath())).hasSize(2);
+        File jlinkArgs = new File(runtimeDir, "jlink.args");
+        Assertions.assertThat(jlinkArgs).hasContent(String.join("\n",
+                "--add-modules",
+                "java.base,java.logging,java.sql,jdk.crypto.ec",
+                "--output",
+                runtimeDir.getPath(),
+                "--generate-cds-archive",
+                "--no-header-files",
+                "--no-man-pages"));
+
+        // Only new or changed JARs get analysed again
+        jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime));
+        Assertions.assertThat(Files.readAllLines(jdepsLog.toPath())).hasSize(2);
+        writeRawJar(localJarFile, "Changed local content");
+        jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime));
+        Assertions.assertThat(Files.readAllLines(jdepsLog.toPath())).hasSize(3);
+        Assertions.assertThat(Files.readAllLines(jlinkArgs.toPath()))
+                .contains("java.base,java.logging,jdk.crypto.ec");
+        Properties index = new Properties();
+        try (InputStream input = Files.newInputStream(
+                new File(jlinkRuntime.getTemporaryDir(), JlinkRuntime.JDEPS_INDEX_FILE_NAME).toPath())) {
+            index.load(input);
+        }
+        Assertions.assertThat(index.values()).containsOnly("java.base,java.logging");
+        Assertions.assertThat(index).hasSize(2);
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testJlinkRuntimeOfModularJar() throws IOException {
+        File applicationJarFile = project.file("app.jar");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(applicationJarFile.toPath()))) {
+            output.putNextEntry(new ZipEntry("module-info.class"));
+            output.putNextEntry(new ZipEntry("META-INF/versions/9/module-info.class"));
+            output.putNextEntry(new ZipEntry("content1.txt"));
+        }
+        File javaHome = writeFakeJavaHome("17.0.9");
+        JlinkRuntime jlinkRuntime = project.getTasks().create("customJlinkRuntime", JlinkRuntime.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getJavaHome().set(javaHome);
+            task.getJlinkArguments().set(Collections.singletonList("--strip-debug"));
+            task.getOutputDirectory().set(project.file("runtime"));
+        });
+        File runtimeDir = jlinkRuntime.getOutputDirectory().get().getAsFile();
+        jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime));
+
+        // The module descriptors are ignored, like on the classpath, and the runtime creates its own CDS archive
+        Assertions.assertThat(new File(runtimeDir, "jlink.args")).hasContent(String.join("\n",
+                "--add-modules",
+                "java.base,java.sql",
+                "--output",
+                runtimeDir.getPath(),
+                "--strip-debug"));
+        Assertions.assertThat(new File(runtimeDir, "lib/server/classes.jsa")).hasContent("-Xshare:dump");
+
+        // A JAR without classes doesn't depend on any module, but runtime images always have the base module
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(applicationJarFile.toPath()))) {
+            output.putNextEntry(new ZipEntry("resources.txt"));
+        }
+        jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime));
+        Assertions.assertThat(Files.readAllLines(new File(runtimeDir, "jlink.args").toPath()))
+                .containsSequence("--add-modules", "java.base", "--output");
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testJlinkRuntimeFailure() throws IOException {
+        File applicationJarFile = project.file("app.jar");
+        writeRawJar(applicationJarFile, "Application content");
+        JlinkRuntime jlinkRuntime = project.getTasks().create("customJlinkRuntime", JlinkRuntime.class, task -> {
+            task.getApplicationJarFile().set(applicationJarFile);
+            task.getOutputDirectory().set(project.file("runtime"));
+        });
+        File runtimeDir = jlinkRuntime.getOutputDirectory().get().getAsFile();
+
+        // jdeps prints the modules that classes depend on since Java 11
+        File java8Home = writeFakeJavaHome("1.8.0_392");
+        jlinkRuntime.getJavaHome().set(java8Home);
+        Assertions.assertThatThrownBy(() -> jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create runtime image %s: The Java installation in %s is of version 8, but " +
+                        "runtime images take version 11 or later", runtimeDir, java8Home)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        jlinkRuntime.getJavaHome().set(project.file("missing"));
+        Assertions.assertThatThrownBy(() -> jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create runtime image %s", runtimeDir)
+                .hasCauseInstanceOf(IOException.class);
+
+        // Both jdeps and jlink must succeed
+        jlinkRuntime.getJavaHome().set(writeFakeJavaHome("21.0.1"));
+        writeRawJar(applicationJarFile, "Application content", "More content", "Failing content");
+        Assertions.assertThatThrownBy(() -> jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create runtime image %s: jdeps exited with value 2", runtimeDir);
+        writeRawJar(applicationJarFile, "Application content");
+        jlinkRuntime.getJlinkArguments().add("--fail");
+        Assertions.assertThatThrownBy(() -> jlinkRuntime.getActions().forEach(action -> action.execute(jlinkRuntime)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not create runtime image %s: jlink exited with value 2", runtimeDir);
+    }
+
+    @Test
+    void testApplicationJvmArgumentFiles() throws IOException {
+        Jar jar = getEnabledTask(project, Jar.class, JavaPlugin.JAR_TASK_NAME);
+        File rawJarFile = jar.getArchiveFile().get().getAsFile();
+        Files.createDirectories(rawJarFile.getParentFile().toPath());
+        writeRawJar(rawJarFile, "Raw content");
+        File javaHome = writeFakeJavaHome("21.0.1");
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> {
+            app.getMainClass().set("custom.Main");
+            app.getClassDataSharing().set(true);
+            app.getJvmArguments().addAll("-Xmx1g", "-Dgreeting=hello world");
+            app.getJvmProfiles().put("latency", Arrays.asList("-XX:+UseZGC", "-XX:+ZGenerational"));
+            app.getJvmProfiles().put("throughput", Collections.singletonList("-XX:+UseParallelGC"));
+        });
+        apps.register("custom", app -> {
+            app.getClassDataSharing().set(true);
+            app.getAheadOfTimeCache().set(true);
+            app.getJvmProfiles().put("latency", Collections.singletonList("-XX:+UseZGC"));
+        });
+        apps.register("plain", app -> app.getClassDataSharing().set(true));
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(JvmArgumentFiles.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        Assertions.assertThat(app.getJvmArguments().get()).containsExactly("-Xmx1g", "-Dgreeting=hello world");
+        AtomicReference<JvmArgumentFiles> jvmArgumentFilesConfigured = captureConfigured(app::jvmArgumentFiles);
+        JvmArgumentFiles jvmArgumentFiles =
+                getEnabledTask(project, JvmArgumentFiles.class, Application.MAIN_JVM_ARGUMENT_FILES_TASK_NAME);
+        Assertions.assertThat(app.getJvmArgumentFiles().get()).isSameAs(jvmArgumentFiles);
+        Assertions.assertThat(jvmArgumentFilesConfigured.get()).isSameAs(jvmArgumentFiles);
+        Assertions.assertThat(jvmArgumentFiles.getGroup()).isEqualTo(ApplicationPlugin.TASK_GROUP);
+        Assertions.assertThat(jvmArgumentFiles.getBaseName().get()).isEqualTo(TEST_NAME);
+        Assertions.assertThat(jvmArgumentFiles.getJvmArguments().get())
+                .containsExactly("-Xmx1g", "-Dgreeting=hello world");
+        Assertions.assertThat(jvmArgumentFiles.getProfiles().get()).containsOnlyKeys("latency", "throughput");
+        Assertions.assertThat(jvmArgumentFiles.getDestinationDirectory().get().getAsFile())
+                .isEqualTo(new File(project.getBuildDir(), "argfiles/" + Application.MAIN_APPLICATION_NAME));
+
+        // The argument files use the archive that goes into the distribution, without depending on it
+        CdsArchive cdsArchive = getEnabledTask(project, CdsArchive.class, Application.MAIN_CDS_ARCHIVE_TASK_NAME);
+        Assertions.assertThat(jvmArgumentFiles.getSharedArchiveFileName().get()).isEqualTo(TEST_NAME + ".jsa");
+        Assertions.assertThat(jvmArgumentFiles.getAotCacheFileName().isPresent()).isFalse();
+        Assertions.assertThat(jvmArgumentFiles.getJavaHome().get()).isEqualTo(cdsArchive.getJavaHome().get());
+        Assertions.assertThat(jvmArgumentFiles.getTaskDependencies().getDependencies(jvmArgumentFiles))
+                .doesNotHaveAnyElementsOfTypes(CdsArchive.class);
+        AotCache customAotCache = getEnabledTask(project, AotCache.class, "customAotCache");
+        JvmArgumentFiles customJvmArgumentFiles =
+                getEnabledTask(project, JvmArgumentFiles.class, "customJvmArgumentFiles");
+        Assertions.assertThat(customJvmArgumentFiles.getAotCacheFileName().get())
+                .isEqualTo(customAotCache.getCacheFile().get().getAsFile().getName());
+        Assertions.assertThat(customJvmArgumentFiles.getSharedArchiveFileName().isPresent()).isFalse();
+
+        // The argument files go into the distribution only when there are JVM options
+        DistributionTarZst appTarZst =
+                getEnabledTask(project, DistributionTarZst.class, Application.MAIN_DIST_TAR_ZST_TASK_NAME);
+        Assertions.assertThat(appTarZst.getTaskDependencies().getDependencies(appTarZst)).contains(jvmArgumentFiles);
+        DistributionTarZst customTarZst = getEnabledTask(project, DistributionTarZst.class, "customDistTarZst");
+        Assertions.assertThat(customTarZst.getTaskDependencies().getDependencies(customTarZst))
+                .contains(customJvmArgumentFiles);
+        DistributionTarZst plainTarZst = getEnabledTask(project, DistributionTarZst.class, "plainDistTarZst");
+        Assertions.assertThat(plainTarZst.getTaskDependencies().getDependencies(plainTarZst))
+                .doesNotHaveAnyElementsOfTypes(JvmArgumentFiles.class);
+
+        jvmArgumentFiles.getJavaHome().set(javaHome);
+        jvmArgumentFiles.getActions().forEach(action -> action.execute(jvmArgumentFiles));
+
+        // Every profile gets the common options, and its own ones after them
+        File argumentFilesDir = jvmArgumentFiles.getDestinationDirectory().get().getAsFile();
+        Assertions.assertThat(argumentFilesDir.list()).containsExactlyInAnyOrder(
+                TEST_NAME + ".args", TEST_NAME + "-latency.args", TEST_NAME + "-throughput.args");
+        Assertions.assertThat(new File(argumentFilesDir, TEST_NAME + ".args")).hasContent(String.join("\n",
+                "# Java 21.0.1 (Test)",
+                "-XX:SharedArchiveFile=" + TEST_NAME + ".jsa",
+                "-Xmx1g",
+                "\"-Dgreeting=hello world\""));
+        Assertions.assertThat(new File(argumentFilesDir, TEST_NAME + "-latency.args")).hasContent(String.join("\n",
+                "# Java 21.0.1 (Test)",
+                "-XX:SharedArchiveFile=" + TEST_NAME + ".jsa",
+                "-Xmx1g",
+                "\"-Dgreeting=hello world\"",
+                "-XX:+UseZGC",
+                "-XX:+ZGenerational"));
+        Assertions.assertThat(new File(argumentFilesDir, TEST_NAME + "-throughput.args")).hasContent(String.join("\n",
+                "# Java 21.0.1 (Test)",
+                "-XX:SharedArchiveFile=" + TEST_NAME + ".jsa",
+                "-Xmx1g",
+                "\"-Dgreeting=hello world\"",
+                "-XX:+UseParallelGC"));
+
+        // Profiles that are gone don't leave their argument files behind
+        jvmArgumentFiles.getProfiles().set(Collections.emptyMap());
+        jvmArgumentFiles.getActions().forEach(action -> action.execute(jvmArgumentFiles));
+        Assertions.assertThat(argumentFilesDir.list()).containsExactly(TEST_NAME + ".args");
+
+        // An AOT cache, made by a Java installation that doesn't state its implementor
+        File java24Home = project.file("java-24");
+        FileUtils.write(new File(java24Home, JavaInstallation.RELEASE_FILE_NAME), "JAVA_VERSION=\"24\"\n",
+                StandardCharsets.UTF_8);
+        customJvmArgumentFiles.getJavaHome().set(java24Home);
+        customJvmArgumentFiles.getActions().forEach(action -> action.execute(customJvmArgumentFiles));
+        Assertions.assertThat(new File(customJvmArgumentFiles.getDestinationDirectory().get().getAsFile(),
+                TEST_NAME + "-custom.args")).hasContent(String.join("\n",
+                        "# Java 24",
+                        "-XX:AOTCache=" + customAotCache.getCacheFile().get().getAsFile().getName()));
+    }
+
+    @Test
+    void testJvmArgumentFileQuoting() {
+        Assertions.assertThat(JvmArgumentFiles.quote("-Xmx1g")).isEqualTo("-Xmx1g");
+        Assertions.assertThat(JvmArgumentFiles.quote("")).isEqualTo("\"\"");
+        Assertions.assertThat(JvmArgumentFiles.quote("-Dpath=C:\\Program Files"))
+                .isEqualTo("\"-Dpath=C:\\\\Program Files\"");
+        Assertions.assertThat(JvmArgumentFiles.quote("-Dquote='\"'")).isEqualTo("\"-Dquote='\\\"'\"");
+        Assertions.assertThat(JvmArgumentFiles.quote("-Dtag=#1")).isEqualTo("\"-Dtag=#1\"");
+        Assertions.assertThat(JvmArgumentFiles.quote("-Dlines=a\nb")).isEqualTo("\"-Dlines=a\\nb\"");
+    }
+
+    @Test
+    void testJvmArgumentFilesFailure() throws IOException {
+        JvmArgumentFiles jvmArgumentFiles =
+                project.getTasks().create("customJvmArgumentFiles", JvmArgumentFiles.class, task -> {
+                    task.getBaseName().set("custom");
+                    task.getDestinationDirectory().set(project.file("argfiles"));
+                });
+        File argumentFilesDir = jvmArgumentFiles.getDestinationDirectory().get().getAsFile();
+
+        // Argument files take Java 9 or later
+        File java8Home = writeFakeJavaHome("1.8.0_392");
+        jvmArgumentFiles.getJavaHome().set(java8Home);
+        Assertions.assertThatThrownBy(() -> jvmArgumentFiles.getActions().forEach(
+                        action -> action.execute(jvmArgumentFiles)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not write argument files into %s: The Java installation in %s is of version 8, but " +
+                        "argument files take version 9 or later", argumentFilesDir, java8Home)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        jvmArgumentFiles.getJavaHome().set(project.file("missing"));
+        Assertions.assertThatThrownBy(() -> jvmArgumentFiles.getActions().forEach(
+                        action -> action.execute(jvmArgumentFiles)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not write argument files into %s", argumentFilesDir)
+                .hasCauseInstanceOf(IOException.class);
+
+        // Profile names go into file names
+        jvmArgumentFiles.getJavaHome().set(writeFakeJavaHome("21.0.1"));
+        jvmArgumentFiles.getProfiles().put("low latency", Collections.singletonList("-XX:+UseZGC"));
+        Assertions.assertThatThrownBy(() -> jvmArgumentFiles.getActions().forEach(
+                        action -> action.execute(jvmArgumentFiles)))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not write argument files into %s: Invalid profile name 'low latency'",
+                        argumentFilesDir);
+    }
+
+    /**
+     * Writes a fake Java installation, whose {@code java} command writes its working directory and its arguments into
+     * the file given by {@code -XX:ArchiveClassesAtExit}, {@code -XX:AOTConfiguration} with
+     * {@code -XX:AOTMode=record}, or {@code -XX:AOTCache} with {@code -XX:AOTMode=create} (after the content of the
+     * AOT configuration). It exits with value 3 when given {@code --fail}, and doesn't write the file when given
+     * {@code --no-archive}.
+     * <p>Its {@code jdeps} command logs the JARs it analyses into {@code jdeps.log}, and prints
+     * {@code java.base,java.sql} for JARs with a {@code content1.txt} entry, nothing for JARs with a
+     * {@code resources.txt} entry, and {@code java.base,java.logging} for other JARs. It exits with value 1 for JARs
+     * with module descriptors, and with value 2 for JARs with a {@code content2.txt} entry. Its {@code jlink} command
+     * writes its arguments into {@code jlink.args} in the output directory, along with a {@code java} command that
+     * writes its arguments into the default CDS archive. It exits with value 2 when given {@code --fail}.</p>
+     *
+     * @param version The version of the Java installation.
+     * @return The home directory of the Java installation.
+     */
+    @Nonnull
+    private File writeFakeJavaHome(@Nonnull String version) throws IOException {
+        File javaHome = project.file("java-" + version);
+        FileUtils.write(new File(javaHome, JavaInstallation.RELEASE_FILE_NAME),
+                "IMPLEMENTOR=\"Test\"\nJAVA_VERSION=\"" + version + "\"\n", StandardCharsets.UTF_8);
+        File java = new File(javaHome, "bin/java");
+        FileUtils.write(java, String.join("\n",
+                "#!/bin/sh",
+                "for arg in \"$@\"; do",
+                "  case \"$arg\" in",
+                "    -XX:ArchiveClassesAtExit=*) archive=\"${arg#*=}\" ;;",
+                "    -XX:AOTMode=record) record=true ;;",
+                "    -XX:AOTConfiguration=*) configuration=\"${arg#*=}\" ;;",
+                "    -XX:AOTCache=*) archive=\"${arg#*=}\" ;;",
+                "    --fail) exit 3 ;;",
+                "    --no-archive) exit 0 ;;",
+                "  esac",
+                "done",
+                "if [ -n \"$record\" ]; then",
+                "  archive=\"$configuration\"",
+                "elif [ -n \"$configuration\" ]; then",
+                "  cat \"$configuration\" > \"$archive.tmp\"",
+                "fi",
+                "printf '%s\\n' \"$(pwd -P)\" \"$@\" >> \"$archive.tmp\"",
+                "mv \"$archive.tmp\" \"$archive\"",
+                ""), StandardCharsets.UTF_8);
+        Assertions.assertThat(java.setExecutable(true)).isTrue();
+        File jdeps = new File(javaHome, "bin/jdeps");
+        FileUtils.write(jdeps, String.join("\n",
+                "#!/bin/sh",
+                "for jar in \"$@\"; do :; done",
+                "echo \"$jar\" >> \"$(dirname \"$0\")/../jdeps.log\"",
+                "if grep -q module-info \"$jar\"; then exit 1; fi",
+                "if grep -q resources.txt \"$jar\"; then exit 0; fi",
+                "if grep -q content2.txt \"$jar\"; then exit 2; fi",
+                "if grep -q content1.txt \"$jar\"; then echo java.base,java.sql; else echo java.base,java.logging; fi",
+                ""), StandardCharsets.UTF_8);
+        Assertions.assertThat(jdeps.setExecutable(true)).isTrue();
+        File jlink = new File(javaHome, "bin/jlink");
+        FileUtils.write(jlink, String.join("\n",
+                "#!/bin/sh",
+                "for arg in \"$@\"; do",
+                "  case \"$arg\" in",
+                "    --fail) exit 2 ;;",
+                "  esac",
+                "done",
+                "output=\"$4\"",
+                "mkdir -p \"$output/bin\" \"$output/lib/server\"",
+                "printf '%s\\n' \"$@\" > \"$output/jlink.args\"",
+                "printf '#!/bin/sh\\nprintf \"%%s\" \"$@\" > \"%s/lib/server/classes.jsa\"\\n' \"$output\" " +
+                        "> \"$output/bin/java\"",
+                "chmod +x \"$output/bin/java\"",
+                ""), StandardCharsets.UTF_8);
+        Assertions.assertThat(jlink.setExecutable(true)).isTrue();
+        return javaHome;
+    }
+
+    @Test
+    void testApplicationIncrementalInstalls() {
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.register("custom", app -> app.getApplicationBaseName().set("customBase"));
+        Set<String> realizedTasks = new TreeSet<>();
+        project.getTasks().withType(IncrementalInstall.class).configureEach(task -> realizedTasks.add(task.getName()));
+        finalizeProject();
+        Assertions.assertThat(realizedTasks).isEmpty();
+
+        Application app = apps.getByName(Application.MAIN_APPLICATION_NAME);
+        AtomicReference<IncrementalInstall> appInstallConfigured = captureConfigured(app::incrementalInstall);
+        IncrementalInstall appInstall =
+                getEnabledTask(project, IncrementalInstall.class, Application.MAIN_INCREMENTAL_INSTALL_TASK_NAME);
+        Assertions.assertThat(app.getIncrementalInstall().get()).isSameAs(appInstall);
+        Assertions.assertThat(appInstallConfigured.get()).isSameAs(appInstall);
+        Assertions.assertThat(appInstall.getGroup()).isEqualTo("distribution");
+        Assertions.assertThat(appInstall.getDestinationDir()).isEqualTo(
+                new File(project.getBuildDir(), IncrementalInstall.INSTALL_DIRECTORY_NAME + "/" + TEST_NAME));
+
+        // The distribution contents get installed, so the application JAR task is a dependency
+        Assertions.assertThat(appInstall.getTaskDependencies().getDependencies(appInstall))
+                .contains(app.getApplicationJar().get());
+
+        IncrementalInstall customInstall =
+                getEnabledTask(project, IncrementalInstall.class, "incrementalInstallCustomDist");
+        Assertions.assertThat(customInstall.getDestinationDir()).isEqualTo(
+                new File(project.getBuildDir(), IncrementalInstall.INSTALL_DIRECTORY_NAME + "/customBase"));
+    }
+
+    @Test
+    void testApplicationSuite() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        File toolJarFile = project.file("tool.jar");
+        writeRawJar(toolJarFile, "Tool content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Configuration toolDependencies = project.getConfigurations().create("toolDependencies",
+                configuration -> configuration.extendsFrom(getConfiguration(project,
+                        sourceSet.getRuntimeClasspathConfigurationName())));
+        project.getDependencies().add(toolDependencies.getName(), project.files(toolJarFile));
+
+        NamedDomainObjectContainer<Application> apps = getApplications(project);
+        apps.named(Application.MAIN_APPLICATION_NAME).configure(app -> app.getMainClass().set("custom.Main"));
+        apps.register("tool", app -> {
+            app.getRawJar().set(project.getTasks().named(sourceSet.getJarTaskName(), Jar.class));
+            app.getDependencies().set(toolDependencies);
+            app.getMainClass().set("custom.Tool");
+        });
+        getApplicationSuites(project).register("suite", suite -> suite.getApplicationNames()
+                .addAll(Application.MAIN_APPLICATION_NAME, "tool", Application.MAIN_APPLICATION_NAME));
+        finalizeProject();
+
+        ApplicationSuite suite = getApplicationSuites(project).getByName("suite");
+        Assertions.assertThat(suite.getProject()).isSameAs(project);
+        Assertions.assertThat(suite.toString()).isEqualTo("Application suite 'suite'");
+        AtomicReference<Distribution> suiteDistConfigured = captureConfigured(suite::distribution);
+        Distribution suiteDist = getDistributions(project).getByName("suite");
+        Assertions.assertThat(suite.getDistribution().get()).isSameAs(suiteDist);
+        Assertions.assertThat(suiteDistConfigured.get()).isSameAs(suiteDist);
+        Assertions.assertThat(suiteDist.getDistributionBaseName().get()).isEqualTo(TEST_NAME + "-suite");
+
+        // Shared dependencies are installed only once, into the dependency directory used by all applications
+        Sync installSuiteDist = getEnabledTask(project, Sync.class, "installSuiteDist");
+        installSuiteDist.getActions().forEach(action -> action.execute(installSuiteDist));
+        File suiteDir = installSuiteDist.getDestinationDir();
+        Assertions.assertThat(new File(suiteDir, "lib/local.jar")).hasSameBinaryContentAs(localJarFile);
+        Assertions.assertThat(new File(suiteDir, "lib/tool.jar")).hasSameBinaryContentAs(toolJarFile);
+        Assertions.assertThat(installSuiteDist.getTaskDependencies().getDependencies(installSuiteDist)).contains(
+                apps.getByName(Application.MAIN_APPLICATION_NAME).getApplicationJar().get(),
+                apps.getByName("tool").getApplicationJar().get());
+    }
+
+    @Test
+    void testApplicationSuiteConflictingDependencies() throws IOException {
+        File localJarFile = project.file("local.jar");
+        writeRawJar(localJarFile, "Local content");
+        File otherDir = project.file("other");
+        Files.createDirectories(otherDir.toPath());
+        File otherJarFile = new File(otherDir, "local.jar");
+        writeRawJar(otherJarFile, "Other content");
+        SourceSet sourceSet = getSourceSets(project).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+        project.getDependencies().add(sourceSet.getImplementationConfigurationName(), project.files(localJarFile));
+        Configuration otherDependencies = project.getConfigurations().create("otherDependencies");
+        project.getDependencies().add(otherDependencies.getName(), project.files(otherJarFile));
+
+        getApplications(project).register("other", app -> {
+            app.getDependencies().set(otherDependencies);
+            app.getMainClass().set("custom.Other");
+        });
+        getApplications(project).named(Application.MAIN_APPLICATION_NAME)
+                .configure(app -> app.getMainClass().set("custom.Main"));
+        getApplicationSuites(project).register("suite", suite -> suite.getApplicationNames()
+                .addAll(Application.MAIN_APPLICATION_NAME, "other"));
+        finalizeProject();
+
+        // Different files can't be installed at the same path
+        Sync installSuiteDist = getEnabledTask(project, Sync.class, "installSuiteDist");
+        Assertions.assertThatThrownBy(() -> installSuiteDist.getActions()
+                        .forEach(action -> action.execute(installSuiteDist)))
+                .hasMessageContaining("lib/local.jar");
+    }
+
+    @Test
+    void testFailureIfApplicationSuiteIsEmpty() {
+        ApplicationSuite suite = getApplicationSuites(project).create("suite");
+        Assertions.assertThatThrownBy(this::finalizeProject)
+                .hasRootCauseInstanceOf(GradleException.class)
+                .hasRootCauseMessage("%s must have at least one application", suite);
+    }
+
+    @Test
+    void testFailureIfApplicationSuiteHasUnknownApplication() {
+        ApplicationSuite suite = getApplicationSuites(project).create("suite",
+                created -> created.getApplicationNames().add("unknown"));
+        Assertions.assertThatThrownBy(this::finalizeProject)
+                .hasRootCauseInstanceOf(GradleException.class)
+                .hasRootCauseMessage("%s has no application named 'unknown'", suite);
+    }
+
+    @Test
+    void testFailureIfApplicationSuiteHasApplicationName() {
+        ApplicationSuite suite = getApplicationSuites(project).create("clash",
+                created -> created.getApplicationNames().add(Application.MAIN_APPLICATION_NAME));
+        getApplications(project).register("clash", app -> app.getMainClass().set("custom.Main"));
+        Assertions.assertThatThrownBy(this::finalizeProject)
+                .hasRootCauseInstanceOf(GradleException.class)
+                .hasRootCauseMessage("%s must not have the same name as an application", suite);
+    }
+
+    /**
+     * Runs a delta archive the way users do, with the Java installation running the tests.
+     *
+     * @return The output of the delta archive.
+     */
+    @Nonnull
+    private static String runDelta(@Nonnull File deltaFile, @Nonnull File installDir)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        String jacocoAgentJvmArg = System.getProperty("testEnv.jacocoAgentJvmArg", "");
+        if (!jacocoAgentJvmArg.isEmpty()) {
+            command.add(jacocoAgentJvmArg);
+        }
+        command.addAll(Arrays.asList("-jar", deltaFile.getPath(), installDir.getPath()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8).trim();
+        Assertions.assertThat(process.waitFor()).as(output).isZero();
+        return output;
+    }
+
+    /**
+     * Writes a delta archive with the given index (if any) and contents, as {@link DeltaCopyAction} would.
+     */
+    private static void writeDelta(@Nonnull File deltaFile, @Nullable String index,
+            @Nonnull Map<String, String> contents) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(deltaFile.toPath()))) {
+            if (index != null) {
+                zip.putNextEntry(new ZipEntry(DistributionDelta.INDEX_PATH));
+                zip.write(index.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<String, String> content : contents.entrySet()) {
+                zip.putNextEntry(new ZipEntry(DistributionDelta.CONTENT_DIRECTORY + content.getKey()));
+                zip.write(content.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void expectApplyDeltaFailure(@Nonnull File deltaFile, @Nonnull File installDir,
+            @Nonnull String message) {
+        Assertions.assertThatThrownBy(() -> ApplyDelta.apply(deltaFile.toPath(), installDir.toPath()))
+                .isInstanceOf(IOException.class)
+                .hasMessage(message);
+    }
+
+    @Nonnull
+    private static String sha256(@Nonnull String content) throws GeneralSecurityException {
+        return Utils.hex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the entries of a TAR archive compressed with Zstandard, as written by {@link TarFormat.Writer}.
+     */
+    @Nonnull
+    private static Map<String, byte[]> readTarZst(@Nonnull File file) throws IOException {
+        return readTar(ZstdFormatTest.Decoder.decompress(Files.readAllBytes(file.toPath())));
+    }
+
+    @Nonnull
+    private static Map<String, byte[]> readTar(@Nonnull byte[] archive) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        int offset = 0;
+        while (archive[offset] != 0) {
+            String name = tarField(archive, offset, 100);
+            String prefix = tarField(archive, offset + 345, 155);
+            int size = Integer.parseInt(tarField(archive, offset + 124, 12).trim(), 8);
+            entries.put(prefix.isEmpty() ? name : prefix + "/" + name,
+                    Arrays.copyOfRange(archive, offset + TarFormat.BLOCK_SIZE, offset + TarFormat.BLOCK_SIZE + size));
+            offset += TarFormat.BLOCK_SIZE + (size + TarFormat.BLOCK_SIZE - 1) / TarFormat.BLOCK_SIZE *
+                    TarFormat.BLOCK_SIZE;
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a blob into an OCI image layout directory.
+     *
+     * @return A descriptor of the blob.
+     */
+    @Nonnull
+    private static Map<String, Object> writeBlob(@Nonnull File layoutDir, @Nonnull String mediaType,
+            @Nonnull Object content) throws IOException, GeneralSecurityException {
+        byte[] bytes = content instanceof byte[] ?
+                (byte[]) content :
+                JsonFormat.write(content).getBytes(StandardCharsets.UTF_8);
+        String hash = Utils.hex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        FileUtils.writeByteArrayToFile(new File(layoutDir, "blobs/sha256/" + hash), bytes);
+        Map<String, Object> descriptor = new LinkedHashMap<>();
+        descriptor.put("mediaType", mediaType);
+        descriptor.put("digest", "sha256:" + hash);
+        descriptor.put("size", bytes.length);
+        return descriptor;
+    }
+
+    @Nonnull
+    private static byte[] readBlob(@Nonnull Map<String, byte[]> entries, @Nonnull Map<String, Object> descriptor) {
+        String digest = JsonFormat.asString(descriptor.get("digest"), "digest");
+        byte[] blob = entries.get("blobs/sha256/" + digest.substring("sha256:".length()));
+        Assertions.assertThat(blob).isNotNull();
+        Assertions.assertThat(blob.length).isEqualTo(((Number) descriptor.get("size")).longValue());
+        return blob;
+    }
+
+    @Nonnull
+    private static String tarField(@Nonnull byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
     @Nonnull
     private static <T> AtomicReference<T> captureConfigured(@Nonnull Consumer<Action<T>> configureMethod) {
         AtomicReference<T> reference = new AtomicReference<>();
@@ -440,6 +2849,11 @@ class ApplicationPluginTest {
         return project.getPlugins().getPlugin(ApplicationPlugin.class).getApplications();
     }
 
+    @Nonnull
+    private static NamedDomainObjectContainer<ApplicationSuite> getApplicationSuites(@Nonnull Project project) {
+        return project.getPlugins().getPlugin(ApplicationPlugin.class).getApplicationSuites();
+    }
+
     @Nonnull
     private static SourceSetContainer getSourceSets(@Nonnull Project project) {
         return project.getExtensions().getByType(SourceSetContainer.class);
@@ -0,0 +1,96 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.assertj.core.api.Assertions;
+import org.gradle.api.GradleException;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link DependencyInstaller}.
+ */
+class DependencyInstallerTest {
+
+    @Nonnull
+    @SuppressFBWarnings(value = "NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR",
+            justification = "@TempDir is not supported on constructor parameters")
+    private Path tempDir;
+
+    @BeforeEach
+    void beforeEach(@TempDir Path tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    @Test
+    void testInstall() throws IOException {
+        Path source = Files.write(tempDir.resolve("source.jar"), "content".getBytes(StandardCharsets.UTF_8));
+        Path targetDir = Files.createDirectories(tempDir.resolve("install/lib"));
+        Path target = targetDir.resolve("target.jar");
+
+        // Existing files get replaced
+        Files.write(target, "previous".getBytes(StandardCharsets.UTF_8));
+        DependencyInstaller.install(source, target);
+        Assertions.assertThat(Files.isSameFile(source, target)).isTrue();
+    }
+
+    @Test
+    void testInstallFromOtherFileSystem() throws IOException {
+        // Files can't be linked across file systems (the shared memory one exists on Linux)
+        Path otherFileSystem = Paths.get("/dev/shm");
+        Assumptions.assumeTrue(Files.isDirectory(otherFileSystem) && Files.isWritable(otherFileSystem));
+        Path source = Files.createTempFile(otherFileSystem, "source", ".jar");
+        try {
+            Files.write(source, "content".getBytes(StandardCharsets.UTF_8));
+            Path target = tempDir.resolve("target.jar");
+            DependencyInstaller.install(source, target);
+            Assertions.assertThat(target).hasContent("content");
+            Assertions.assertThat(Files.isSameFile(source, target)).isFalse();
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    void testCopy() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 1];
+        Arrays.fill(content, (byte) 42);
+        Path source = Files.write(tempDir.resolve("source.jar"), content);
+        Path target = tempDir.resolve("target.jar");
+
+        DependencyInstaller.copy(source, target);
+        Assertions.assertThat(target.toFile()).hasBinaryContent(content);
+        Assertions.assertThat(Files.isSameFile(source, target)).isFalse();
+        Assertions.assertThatThrownBy(() -> DependencyInstaller.copy(source, target))
+                .isInstanceOf(FileAlreadyExistsException.class);
+    }
+
+    @Test
+    void testInstallFailure() {
+        Path source = tempDir.resolve("missing.jar");
+        Path target = tempDir.resolve("target.jar");
+        Assertions.assertThatThrownBy(() -> DependencyInstaller.install(source, target))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not install " + source + " to " + target)
+                .hasCauseInstanceOf(IOException.class);
+    }
+}
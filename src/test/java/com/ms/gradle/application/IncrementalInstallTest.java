@@ -0,0 +1,192 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.assertj.core.api.Assertions;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link IncrementalInstall}.
+ */
+class IncrementalInstallTest {
+
+    private static final String TEST_NAME = IncrementalInstallTest.class.getSimpleName();
+
+    @Nonnull
+    private final Project project = ProjectBuilder.builder().withName(TEST_NAME).build();
+    @Nonnull
+    private final Path sourceDir = project.file("source").toPath();
+    @Nonnull
+    private final Path installDir = project.file("install").toPath();
+
+    @Test
+    void testInstall() throws IOException {
+        write(sourceDir.resolve("unchanged.jar"), "unchanged");
+        write(sourceDir.resolve("lib/changed.jar"), "before");
+        write(sourceDir.resolve("lib/removed.jar"), "removed");
+        write(sourceDir.resolve("touched.jar"), "touched");
+        Files.createDirectories(sourceDir.resolve("empty"));
+        IncrementalInstall task = registerTask("install");
+        execute(task);
+        Assertions.assertThat(read(installDir.resolve("unchanged.jar"))).isEqualTo("unchanged");
+        Assertions.assertThat(read(installDir.resolve("lib/changed.jar"))).isEqualTo("before");
+        Assertions.assertThat(installDir.resolve("empty")).isDirectory();
+        Object unchangedKey = fileKey(installDir.resolve("unchanged.jar"));
+        Object touchedKey = fileKey(installDir.resolve("touched.jar"));
+
+        // Only files whose content has changed get written again, files no longer installed get removed
+        write(sourceDir.resolve("lib/changed.jar"), "after");
+        Files.delete(sourceDir.resolve("lib/removed.jar"));
+        Files.setLastModifiedTime(sourceDir.resolve("touched.jar"), FileTime.fromMillis(0));
+        execute(task);
+        Assertions.assertThat(fileKey(installDir.resolve("unchanged.jar"))).isEqualTo(unchangedKey);
+        Assertions.assertThat(fileKey(installDir.resolve("touched.jar"))).isEqualTo(touchedKey);
+        Assertions.assertThat(read(installDir.resolve("lib/changed.jar"))).isEqualTo("after");
+        Assertions.assertThat(installDir.resolve("lib/removed.jar")).doesNotExist();
+        Assertions.assertThat(installDir.resolve("empty")).isDirectory();
+
+        // Installed files that have been modified or deleted since they were installed get written again
+        write(installDir.resolve("unchanged.jar"), "modified");
+        Files.delete(installDir.resolve("touched.jar"));
+        execute(task);
+        Assertions.assertThat(read(installDir.resolve("unchanged.jar"))).isEqualTo("unchanged");
+        Assertions.assertThat(read(installDir.resolve("touched.jar"))).isEqualTo("touched");
+
+        // No staging or previous installation directories are left behind
+        Assertions.assertThat(installDir.resolveSibling("install" + IncrementalInstallAction.STAGING_SUFFIX))
+                .doesNotExist();
+        Assertions.assertThat(installDir.resolveSibling("install" + IncrementalInstallAction.PREVIOUS_SUFFIX))
+                .doesNotExist();
+    }
+
+    @Test
+    void testInstallWithUnusableIndex() throws IOException {
+        write(sourceDir.resolve("first.jar"), "first");
+        write(sourceDir.resolve("second.jar"), "second");
+        IncrementalInstall task = registerTask("install");
+        execute(task);
+        Object firstKey = fileKey(installDir.resolve("first.jar"));
+        Object secondKey = fileKey(installDir.resolve("second.jar"));
+
+        // Unusable index entries make the corresponding files get written again
+        Path indexFile = new File(task.getTemporaryDir(), IncrementalInstall.INDEX_FILE_NAME).toPath();
+        String index = read(indexFile);
+        write(indexFile, index.replaceFirst("(?m)^first\\.jar=.*$", "first.jar=invalid"));
+        execute(task);
+        Assertions.assertThat(fileKey(installDir.resolve("first.jar"))).isNotEqualTo(firstKey);
+        Assertions.assertThat(fileKey(installDir.resolve("second.jar"))).isEqualTo(secondKey);
+        firstKey = fileKey(installDir.resolve("first.jar"));
+
+        index = read(indexFile);
+        write(indexFile, index.replaceFirst("(?m)^(first\\.jar=\\S+) \\S+", "$1 mode"));
+        execute(task);
+        Assertions.assertThat(fileKey(installDir.resolve("first.jar"))).isNotEqualTo(firstKey);
+        Assertions.assertThat(fileKey(installDir.resolve("second.jar"))).isEqualTo(secondKey);
+
+        // An unreadable index makes all files get written again, as does a missing one
+        write(indexFile, "\\uXYZW");
+        execute(task);
+        Assertions.assertThat(fileKey(installDir.resolve("second.jar"))).isNotEqualTo(secondKey);
+        Files.delete(indexFile);
+        execute(task);
+        Assertions.assertThat(read(installDir.resolve("first.jar"))).isEqualTo("first");
+        Assertions.assertThat(read(installDir.resolve("second.jar"))).isEqualTo("second");
+    }
+
+    @Test
+    void testInstallRemovesLeftovers() throws IOException {
+        write(sourceDir.resolve("app.jar"), "app");
+        write(installDir.resolveSibling("install" + IncrementalInstallAction.STAGING_SUFFIX).resolve("a/b"), "a");
+        write(installDir.resolveSibling("install" + IncrementalInstallAction.PREVIOUS_SUFFIX).resolve("c"), "c");
+        write(installDir.resolve("stale.jar"), "stale");
+        execute(registerTask("install"));
+        Assertions.assertThat(read(installDir.resolve("app.jar"))).isEqualTo("app");
+        Assertions.assertThat(installDir.resolve("stale.jar")).doesNotExist();
+        Assertions.assertThat(installDir.resolveSibling("install" + IncrementalInstallAction.STAGING_SUFFIX))
+                .doesNotExist();
+        Assertions.assertThat(installDir.resolveSibling("install" + IncrementalInstallAction.PREVIOUS_SUFFIX))
+                .doesNotExist();
+    }
+
+    @Test
+    void testInstallFailure() throws IOException {
+        write(sourceDir.resolve("app.jar"), "app");
+        IncrementalInstall noDestination = project.getTasks().register("noDestination", IncrementalInstall.class,
+                task -> task.from(sourceDir)).get();
+        Assertions.assertThatThrownBy(() -> execute(noDestination))
+                .isInstanceOf(InvalidUserDataException.class)
+                .hasMessageStartingWith("No install destination directory has been specified");
+
+        // The staging directory can't be created inside a file
+        Path fileDir = write(project.file("file").toPath(), "file");
+        IncrementalInstall insideFile = registerTask("insideFile", fileDir.resolve("install"));
+        Assertions.assertThatThrownBy(() -> execute(insideFile))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not install into " + fileDir.resolve("install"))
+                .hasCauseInstanceOf(FileSystemException.class);
+
+        // A file and a directory can't be installed at the same path
+        write(project.file("other/app.jar/nested.jar").toPath(), "nested");
+        IncrementalInstall conflicting = registerTask("conflicting");
+        conflicting.from(project.file("other"));
+        Assertions.assertThatThrownBy(() -> execute(conflicting))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not install into " + installDir)
+                .hasCauseInstanceOf(FileAlreadyExistsException.class);
+    }
+
+    @Nonnull
+    private IncrementalInstall registerTask(@Nonnull String name) {
+        return registerTask(name, installDir);
+    }
+
+    @Nonnull
+    private IncrementalInstall registerTask(@Nonnull String name, @Nonnull Path destinationDir) {
+        return project.getTasks().register(name, IncrementalInstall.class, task -> {
+            task.from(sourceDir);
+            task.into(destinationDir);
+        }).get();
+    }
+
+    private static void execute(@Nonnull IncrementalInstall task) {
+        task.getActions().forEach(action -> action.execute(task));
+    }
+
+    @Nonnull
+    private static Path write(@Nonnull Path file, @Nonnull String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nonnull
+    private static String read(@Nonnull Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Nonnull
+    private static Object fileKey(@Nonnull Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
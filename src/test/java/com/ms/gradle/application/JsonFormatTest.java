@@ -0,0 +1,85 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link JsonFormat}.
+ */
+class JsonFormatTest {
+
+    @Test
+    void testParse() {
+        Map<String, Object> object = JsonFormat.parseObject(" {\"b\" : [1, -2.5e3, true, false, null],\n" +
+                "\t\"a\":{ }, \"s\":\"q\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\", \"e\":[]} ");
+        Assertions.assertThat(object).containsOnlyKeys("b", "a", "s", "e");
+        Assertions.assertThat(object.keySet()).containsExactly("b", "a", "s", "e");
+        Assertions.assertThat(JsonFormat.asArray(object.get("b"), "b"))
+                .containsExactly(new BigDecimal("1"), new BigDecimal("-2.5e3"), true, false, null);
+        Assertions.assertThat(JsonFormat.asObject(object.get("a"), "a")).isEmpty();
+        Assertions.assertThat(JsonFormat.asString(object.get("s"), "s")).isEqualTo("q\"\\/\b\f\n\r\té");
+        Assertions.assertThat(JsonFormat.asArray(object.get("e"), "e")).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "{", "{\"a\"}", "{\"a\":1,}", "[1 2]", "tru", "01", "+1", "1.", "x", "\"a",
+            "\"\\", "\"\\x\"", "\"\\u12\"", "\"\\u+123\"", "\"a\nb\"", "{} {}", "{1:2}"})
+    void testParseInvalid(String text) {
+        Assertions.assertThatThrownBy(() -> JsonFormat.parse(text))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("of JSON text");
+    }
+
+    @Test
+    void testCasts() {
+        Assertions.assertThatThrownBy(() -> JsonFormat.parseObject("[]"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("JSON text must be an object: []");
+        Assertions.assertThatThrownBy(() -> JsonFormat.asArray("x", "layers"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("layers must be an array: x");
+        Assertions.assertThatThrownBy(() -> JsonFormat.asString(null, "digest"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("digest must be a string: null");
+    }
+
+    @Test
+    void testWrite() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("z", Arrays.asList(1, 2L, new BigDecimal("1E+5"), true, null));
+        object.put("a", Collections.singletonMap("s", "q\"\\\u001f\u0001é"));
+        object.put("e", Collections.emptyList());
+        String text = JsonFormat.write(object);
+        Assertions.assertThat(text)
+                .isEqualTo("{\"z\":[1,2,1E+5,true,null],\"a\":{\"s\":\"q\\\"\\\\\\u001f\\u0001é\"},\"e\":[]}");
+
+        // What has been read is written back the same way
+        Assertions.assertThat(JsonFormat.write(JsonFormat.parse(text))).isEqualTo(text);
+
+        List<Object> invalid = Collections.singletonList(new Object());
+        Assertions.assertThatThrownBy(() -> JsonFormat.write(invalid))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Not a JSON value");
+        Assertions.assertThatThrownBy(() -> JsonFormat.write(Collections.singletonMap(1, 2)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Member names must be strings: 1");
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.assertj.core.api.Assertions;
+import org.gradle.api.Project;
+import org.gradle.api.java.archives.Manifest;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link ResolvedManifest}.
+ */
+class ResolvedManifestTest {
+
+    @Nonnull
+    @SuppressFBWarnings(value = "NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR",
+            justification = "@TempDir is not supported on constructor parameters")
+    private File tempDir;
+
+    @BeforeEach
+    void beforeEach(@TempDir Path tempDir) {
+        this.tempDir = tempDir.toFile();
+    }
+
+    @Test
+    void testResolveAndMerge() {
+        Project project = ProjectBuilder.builder().withProjectDir(tempDir).build();
+        Manifest gradleManifest = project.getTasks().create("jar", Jar.class).getManifest();
+        gradleManifest.attributes(Collections.singletonMap("Lazy-Attribute", project.provider(() -> "lazy")));
+        gradleManifest.attributes(Collections.singletonMap("Section-Attribute", 42), "section/");
+
+        ResolvedManifest resolvedManifest = ResolvedManifest.resolve(tempDir, gradleManifest);
+        Assertions.assertThat(ResolvedManifest.resolve(tempDir, resolvedManifest)).isSameAs(resolvedManifest);
+        Assertions.assertThat(resolvedManifest.getEffectiveManifest()).isSameAs(resolvedManifest);
+        Assertions.assertThat(resolvedManifest.getAttributes()).containsExactly(
+                Assertions.entry("Manifest-Version", "1.0"),
+                Assertions.entry("Lazy-Attribute", "lazy"));
+        Assertions.assertThat(resolvedManifest.getSections()).containsOnlyKeys("section/");
+        Assertions.assertThat(resolvedManifest.getSections().get("section/"))
+                .containsExactly(Assertions.entry("Section-Attribute", "42"));
+
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("Lazy-Attribute", "overridden");
+        attributes.put("Other-Attribute", "other");
+        ResolvedManifest mergedManifest = ResolvedManifest.merge(tempDir, Arrays.asList(
+                ResolvedManifest.of(tempDir, Collections.singletonMap("First-Attribute", "first")),
+                resolvedManifest,
+                ResolvedManifest.of(tempDir, attributes)));
+        Assertions.assertThat(mergedManifest.getAttributes()).containsExactly(
+                Assertions.entry("Manifest-Version", "1.0"),
+                Assertions.entry("First-Attribute", "first"),
+                Assertions.entry("Lazy-Attribute", "overridden"),
+                Assertions.entry("Other-Attribute", "other"));
+        Assertions.assertThat(mergedManifest.getSections()).isEqualTo(resolvedManifest.getSections());
+
+        // Manifests with the same content are equal
+        Assertions.assertThat(mergedManifest).isEqualTo(mergedManifest);
+        Assertions.assertThat(ResolvedManifest.resolve(tempDir, gradleManifest))
+                .isEqualTo(resolvedManifest)
+                .hasSameHashCodeAs(resolvedManifest)
+                .isNotEqualTo(mergedManifest)
+                .isNotEqualTo(gradleManifest);
+        Assertions.assertThat(ResolvedManifest.of(tempDir, resolvedManifest.getAttributes()))
+                .isNotEqualTo(resolvedManifest);
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("Manifest-Version", "1.0");
+        attributes.put("Attribute", "été");
+        ResolvedManifest manifest = ResolvedManifest.of(tempDir, attributes);
+        Assertions.assertThat(new String(manifest.toByteArray("UTF-8"), StandardCharsets.UTF_8))
+                .isEqualTo("Manifest-Version: 1.0\r\nAttribute: été\r\n\r\n");
+        Assertions.assertThat(new String(manifest.toByteArray("ISO-8859-1"), StandardCharsets.ISO_8859_1))
+                .isEqualTo("Manifest-Version: 1.0\r\nAttribute: été\r\n\r\n");
+
+        File absoluteFile = new File(tempDir, "absolute.MF");
+        Assertions.assertThat(manifest.writeTo(absoluteFile)).isSameAs(manifest);
+        Assertions.assertThat(absoluteFile).hasBinaryContent(manifest.toByteArray("UTF-8"));
+        manifest.writeTo("relative.MF");
+        Assertions.assertThat(new File(tempDir, "relative.MF")).hasBinaryContent(manifest.toByteArray("UTF-8"));
+
+        Files.createDirectories(tempDir.toPath().resolve("directory.MF"));
+        Assertions.assertThatThrownBy(() -> manifest.writeTo("directory.MF"))
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void testReadOnly() {
+        ResolvedManifest manifest = ResolvedManifest.of(tempDir, Collections.emptyMap());
+        Map<String, String> attributes = Collections.singletonMap("Attribute", "value");
+        Assertions.assertThatThrownBy(() -> manifest.attributes(attributes))
+                .isInstanceOf(UnsupportedOperationException.class)
+                .hasMessage("Effective manifests are read-only");
+        Assertions.assertThatThrownBy(() -> manifest.attributes(attributes, "section/"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThatThrownBy(() -> manifest.from("MANIFEST.MF"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThatThrownBy(() -> manifest.from("MANIFEST.MF", (groovy.lang.Closure<?>) null))
+                .isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThatThrownBy(() -> manifest.from("MANIFEST.MF", spec -> {}))
+                .isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThatThrownBy(() -> manifest.getSections().put("section/", manifest.getAttributes()))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.gradle.api.GradleException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link SelectiveZipCompressor}.
+ */
+class SelectiveZipCompressorTest {
+
+    private static final byte[] TEXT = "Hello, hello, hello, hello!".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TINY = "Hi".getBytes(StandardCharsets.UTF_8);
+
+    @Nonnull
+    @SuppressFBWarnings(value = "NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR",
+            justification = "@TempDir is not supported on constructor parameters")
+    private Path tempDir;
+
+    @BeforeEach
+    void beforeEach(@TempDir Path tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    @Test
+    void testCompress() throws IOException {
+        Path archive = tempDir.resolve("archive.zip");
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            writer.writeDirectory("dist/", ZipFormat.CONSTANT_DOS_TIME);
+            writer.writeFile("dist/text.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_STORED, TEXT);
+            writer.writeFile("dist/tiny.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_STORED, TINY);
+            writer.writeFile("dist/deflated.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED, TEXT);
+            writer.writeFile("dist/lib.jar", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_STORED, TEXT);
+            writer.close();
+        }
+
+        // Entries that wouldn't get smaller, or are compressed already, are left as they are
+        SelectiveZipCompressor.compress(archive, new HashSet<>(Arrays.asList(
+                "dist/", "dist/text.txt", "dist/tiny.txt", "dist/deflated.txt")));
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Assertions.assertThat(zipFile.stream().map(ZipEntry::getName)).containsExactly(
+                    "dist/", "dist/text.txt", "dist/tiny.txt", "dist/deflated.txt", "dist/lib.jar");
+            Assertions.assertThat(zipFile.stream().map(ZipEntry::getMethod)).containsExactly(
+                    ZipEntry.STORED, ZipEntry.DEFLATED, ZipEntry.STORED, ZipEntry.DEFLATED, ZipEntry.STORED);
+            Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("dist/text.txt"))))
+                    .containsExactly(TEXT);
+            Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("dist/tiny.txt"))))
+                    .containsExactly(TINY);
+        }
+        Assertions.assertThat(tempDir.resolve("archive.zip.compressed")).doesNotExist();
+    }
+
+    @Test
+    void testCompressFailure() throws IOException {
+        Path archive = Files.write(tempDir.resolve("invalid.zip"), TEXT);
+        Assertions.assertThatThrownBy(() -> SelectiveZipCompressor.compress(archive, new HashSet<>()))
+                .isInstanceOf(GradleException.class)
+                .hasMessage("Could not compress the entries of " + archive)
+                .hasCauseInstanceOf(ZipException.class);
+        Assertions.assertThat(archive).hasBinaryContent(TEXT);
+        Assertions.assertThat(tempDir.resolve("invalid.zip.compressed")).doesNotExist();
+    }
+}
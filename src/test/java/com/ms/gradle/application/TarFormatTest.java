@@ -0,0 +1,317 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link TarFormat}.
+ */
+class TarFormatTest {
+
+    private static final byte[] CONTENT = "Hello, hello, hello, hello!".getBytes(StandardCharsets.UTF_8);
+    private static final long MOD_TIME = 1_700_000_000L;
+
+    @Test
+    void testWriter() throws IOException {
+        String splitName = "dist/" + repeat('d', 120) + "/" + repeat('f', 90);
+        String longName = "dist/" + repeat('x', 200) + "/café.txt";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TarFormat.Writer writer = new TarFormat.Writer(output);
+        writer.writeDirectory("dist", 0755, MOD_TIME);
+        writer.writeFile("dist/hello.txt", 0644, MOD_TIME, CONTENT.length, content -> content.write(CONTENT));
+        writer.writeFile(splitName, 0755, MOD_TIME, 0, content -> { });
+        writer.writeFile(longName, 0600, -1, 1, content -> content.write('!'));
+        writer.close();
+        byte[] archive = output.toByteArray();
+        Assertions.assertThat(archive.length % TarFormat.RECORD_SIZE).isZero();
+
+        // The directory, and a file with its content padded to a full block
+        expectHeader(archive, 0, "dist/", "", '5', 0755, 0, MOD_TIME);
+        expectHeader(archive, 512, "dist/hello.txt", "", '0', 0644, CONTENT.length, MOD_TIME);
+        Assertions.assertThat(Arrays.copyOfRange(archive, 1024, 1024 + CONTENT.length)).containsExactly(CONTENT);
+        Assertions.assertThat(Arrays.copyOfRange(archive, 1024 + CONTENT.length, 1536))
+                .containsOnly((byte) 0);
+
+        // A name that is split between the prefix and the name fields
+        expectHeader(archive, 1536, repeat('f', 90), "dist/" + repeat('d', 120), '0', 0755, 0, MOD_TIME);
+
+        // A name that is too long for the header, which goes into a PAX extended header
+        byte[] longNameBytes = longName.getBytes(StandardCharsets.UTF_8);
+        String record = " path=" + longName + "\n";
+        int recordLength = record.getBytes(StandardCharsets.UTF_8).length + 3;
+        expectHeader(archive, 2048, ("PaxHeaders/" + longName).substring(0, 100), "", 'x', 0644, recordLength, 0);
+        Assertions.assertThat(new String(archive, 2560, recordLength, StandardCharsets.UTF_8))
+                .isEqualTo(recordLength + record);
+        expectHeader(archive, 3072, new String(Arrays.copyOf(longNameBytes, 100), StandardCharsets.UTF_8), "", '0',
+                0600, 1, 0);
+        Assertions.assertThat(archive[3584]).isEqualTo((byte) '!');
+
+        // The end of the archive
+        Assertions.assertThat(Arrays.copyOfRange(archive, 4096, archive.length)).containsOnly((byte) 0);
+        Assertions.assertThat(archive).hasSize(TarFormat.RECORD_SIZE);
+    }
+
+    @Test
+    void testWriterSizeMismatch() {
+        TarFormat.Writer writer = new TarFormat.Writer(new ByteArrayOutputStream());
+        Assertions.assertThatThrownBy(() -> writer.writeFile("file.txt", 0644, 0, 3, content -> content.write(CONTENT)))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Content of file.txt has %d bytes instead of 3", CONTENT.length);
+    }
+
+    @Test
+    void testReader() throws IOException {
+        String longName = "dist/" + repeat('x', 200) + "/café.txt";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TarFormat.Writer writer = new TarFormat.Writer(output);
+        writer.writeDirectory("dist", 0755, MOD_TIME);
+        writer.writeFile("dist/hello.txt", 0644, MOD_TIME, CONTENT.length, content -> content.write(CONTENT));
+        writer.writeFile(longName, 0600, MOD_TIME, 1, content -> content.write('!'));
+        writer.writeFile("dist/" + repeat('d', 120) + "/empty", 0644, MOD_TIME, 0, content -> { });
+        writer.close();
+        byte[] archive = output.toByteArray();
+
+        TarFormat.Reader reader = new TarFormat.Reader(new ByteArrayInputStream(archive));
+        TarFormat.Entry directory = reader.next();
+        Assertions.assertThat(directory.getName()).isEqualTo("dist/");
+        Assertions.assertThat(directory.isFile()).isFalse();
+        TarFormat.Entry hello = reader.next();
+        Assertions.assertThat(hello.getName()).isEqualTo("dist/hello.txt");
+        Assertions.assertThat(hello.isFile()).isTrue();
+        Assertions.assertThat(hello.getSize()).isEqualTo(CONTENT.length);
+        ByteArrayOutputStream helloContent = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        for (int count = reader.content().read(buffer); count >= 0; count = reader.content().read(buffer)) {
+            helloContent.write(buffer, 0, count);
+        }
+        Assertions.assertThat(helloContent.toByteArray()).containsExactly(CONTENT);
+        // The names from PAX extended headers and from the prefix field, skipping unread content
+        TarFormat.Entry longEntry = reader.next();
+        Assertions.assertThat(longEntry.getName()).isEqualTo(longName);
+        Assertions.assertThat(longEntry.getSize()).isOne();
+        Assertions.assertThat(reader.next().getName()).isEqualTo("dist/" + repeat('d', 120) + "/empty");
+        Assertions.assertThat(reader.next()).isNull();
+
+        // Truncated and corrupt archives
+        TarFormat.Reader truncatedReader = new TarFormat.Reader(new ByteArrayInputStream(archive, 0, 700));
+        truncatedReader.next();
+        Assertions.assertThatThrownBy(truncatedReader::next).isInstanceOf(EOFException.class);
+        byte[] corrupt = archive.clone();
+        corrupt[0] = 'D';
+        Assertions.assertThatThrownBy(() -> new TarFormat.Reader(new ByteArrayInputStream(corrupt)).next())
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    @Test
+    void testReaderExtensions() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // A PAX extended header overriding the name and the size, and a global one, which gets ignored
+        writeEntry(output, header("PaxHeaders/file", 'x', 31), ascii("21 path=pax/name.txt\n10 size=3\n"));
+        writeEntry(output, header("file", '0', 0), ascii("abc"));
+        writeEntry(output, header("GlobalHead", 'g', 11), ascii("11 mtime=1\n"));
+        // A GNU long name, followed by a GNU header, whose prefix field holds other fields
+        writeEntry(output, header("././@LongLink", 'L', 14), ascii("gnu/long-name\u0000"));
+        byte[] gnuHeader = header("short", (char) 0, 1);
+        System.arraycopy(ascii("ustar  \u0000"), 0, gnuHeader, 257, 8);
+        gnuHeader[345] = 'x';
+        writeEntry(output, withChecksum(gnuHeader), ascii("!"));
+        // A GNU header without a long name, and a size field left empty
+        byte[] emptySizeHeader = header("gnu-empty", '0', 0);
+        System.arraycopy(ascii("ustar  \u0000"), 0, emptySizeHeader, 257, 8);
+        emptySizeHeader[345] = 'x';
+        Arrays.fill(emptySizeHeader, 124, 136, (byte) 0);
+        writeEntry(output, withChecksum(emptySizeHeader), new byte[0]);
+        // A size in base-256
+        byte[] largeHeader = header("base256", '0', 0);
+        Arrays.fill(largeHeader, 124, 136, (byte) 0);
+        largeHeader[124] = (byte) 0x80;
+        largeHeader[135] = 2;
+        writeEntry(output, withChecksum(largeHeader), ascii("ok"));
+        byte[] archive = output.toByteArray();
+
+        // Without the blocks of zeros at the end
+        TarFormat.Reader reader = new TarFormat.Reader(new ByteArrayInputStream(archive));
+        TarFormat.Entry paxEntry = reader.next();
+        Assertions.assertThat(paxEntry.getName()).isEqualTo("pax/name.txt");
+        Assertions.assertThat(paxEntry.getSize()).isEqualTo(3);
+        InputStream paxContent = reader.content();
+        Assertions.assertThat(new int[] {paxContent.read(), paxContent.read(), paxContent.read(), paxContent.read()})
+                .containsExactly('a', 'b', 'c', -1);
+        TarFormat.Entry gnuEntry = reader.next();
+        Assertions.assertThat(gnuEntry.getName()).isEqualTo("gnu/long-name");
+        Assertions.assertThat(gnuEntry.isFile()).isTrue();
+        TarFormat.Entry emptySizeEntry = reader.next();
+        Assertions.assertThat(emptySizeEntry.getName()).isEqualTo("gnu-empty");
+        Assertions.assertThat(emptySizeEntry.getSize()).isZero();
+        TarFormat.Entry largeEntry = reader.next();
+        Assertions.assertThat(largeEntry.getName()).isEqualTo("base256");
+        Assertions.assertThat(largeEntry.getSize()).isEqualTo(2);
+        Assertions.assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void testReaderFailures() throws IOException {
+        // Content or extended headers cut short
+        TarFormat.Reader truncatedReader = new TarFormat.Reader(new ByteArrayInputStream(concat(
+                header("file", '0', 10), ascii("abc"))));
+        truncatedReader.next();
+        InputStream truncatedContent = truncatedReader.content();
+        Assertions.assertThat(truncatedContent.read(new byte[10])).isEqualTo(3);
+        Assertions.assertThatThrownBy(truncatedContent::read).isInstanceOf(EOFException.class);
+        Assertions.assertThatThrownBy(truncatedReader::next).isInstanceOf(EOFException.class);
+        expectReaderFailure(concat(header("PaxHeaders/file", 'x', 100), ascii("abc")), EOFException.class,
+                "Unexpected end of TAR archive");
+        expectReaderFailure(header("PaxHeaders/file", 'x', 2 << 20), IOException.class,
+                "TAR extended header too large: 2097152");
+
+        // Invalid numbers and extended headers
+        byte[] invalidSizeHeader = header("file", '0', 0);
+        Arrays.fill(invalidSizeHeader, 124, 136, (byte) 0);
+        invalidSizeHeader[124] = '9';
+        expectReaderFailure(withChecksum(invalidSizeHeader), IOException.class, "Invalid number in TAR header: 9");
+        for (String[] paxHeader : new String[][] {
+                {"10 size=x\n", "Invalid size in TAR extended header: x"},
+                {"x path=x\n", "Invalid TAR extended header"},
+                {"99 path=x\n", "Invalid TAR extended header"},
+                {"8 pathx\n", "Invalid TAR extended header"}}) {
+            byte[] data = ascii(paxHeader[0]);
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            writeEntry(archive, header("PaxHeaders/file", 'x', data.length), data);
+            expectReaderFailure(archive.toByteArray(), IOException.class, paxHeader[1]);
+        }
+    }
+
+    @Test
+    void testHeader() {
+        byte[] header = TarFormat.header("file.txt".getBytes(StandardCharsets.UTF_8), (byte) '0', 0100644, 1234,
+                MOD_TIME);
+        Assertions.assertThat(header).hasSize(TarFormat.BLOCK_SIZE);
+        // File type bits don't go into the mode
+        expectHeader(header, 0, "file.txt", "", '0', 0644, 1234, MOD_TIME);
+
+        // Sizes of 8 GiB and more are written in base-256
+        long size = 10L << 30;
+        byte[] largeHeader = TarFormat.header("large.bin".getBytes(StandardCharsets.UTF_8), (byte) '0', 0644, size,
+                MOD_TIME);
+        Assertions.assertThat(largeHeader[124]).isEqualTo((byte) 0x80);
+        long decoded = 0;
+        for (int i = 125; i < 136; i++) {
+            decoded = (decoded << 8) | (largeHeader[i] & 0xFF);
+        }
+        Assertions.assertThat(decoded).isEqualTo(size);
+        assertChecksum(largeHeader);
+    }
+
+    private static void expectReaderFailure(@Nonnull byte[] archive, @Nonnull Class<? extends IOException> type,
+            @Nonnull String message) {
+        Assertions.assertThatThrownBy(() -> new TarFormat.Reader(new ByteArrayInputStream(archive)).next())
+                .isInstanceOf(type)
+                .hasMessage(message);
+    }
+
+    @Nonnull
+    private static byte[] header(@Nonnull String name, char type, long size) {
+        return TarFormat.header(name.getBytes(StandardCharsets.UTF_8), (byte) type, 0644, size, MOD_TIME);
+    }
+
+    /**
+     * Recomputes the checksum of a header that has been modified.
+     */
+    @Nonnull
+    private static byte[] withChecksum(@Nonnull byte[] header) {
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte value : header) {
+            checksum += value & 0xFF;
+        }
+        byte[] field = ascii(String.format("%06o\u0000", checksum));
+        System.arraycopy(field, 0, header, 148, field.length);
+        return header;
+    }
+
+    /**
+     * Appends an entry to an archive: its header, followed by its data padded to a full block.
+     */
+    private static void writeEntry(@Nonnull ByteArrayOutputStream archive, @Nonnull byte[] header,
+            @Nonnull byte[] data) {
+        archive.write(header, 0, header.length);
+        archive.write(data, 0, data.length);
+        int padding = (TarFormat.BLOCK_SIZE - data.length % TarFormat.BLOCK_SIZE) % TarFormat.BLOCK_SIZE;
+        archive.write(new byte[padding], 0, padding);
+    }
+
+    @Nonnull
+    private static byte[] concat(@Nonnull byte[] first, @Nonnull byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    @Nonnull
+    private static byte[] ascii(@Nonnull String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void expectHeader(@Nonnull byte[] archive, int offset, @Nonnull String name, @Nonnull String prefix,
+            char type, long mode, long size, long modTime) {
+        byte[] header = Arrays.copyOfRange(archive, offset, offset + TarFormat.BLOCK_SIZE);
+        Assertions.assertThat(field(header, 0, 100)).isEqualTo(name);
+        Assertions.assertThat(octal(header, 100, 8)).isEqualTo(mode);
+        Assertions.assertThat(octal(header, 108, 8)).isZero();
+        Assertions.assertThat(octal(header, 116, 8)).isZero();
+        Assertions.assertThat(octal(header, 124, 12)).isEqualTo(size);
+        Assertions.assertThat(octal(header, 136, 12)).isEqualTo(modTime);
+        Assertions.assertThat(header[156]).isEqualTo((byte) type);
+        Assertions.assertThat(field(header, 257, 6)).isEqualTo("ustar");
+        Assertions.assertThat(field(header, 263, 2)).isEqualTo("00");
+        Assertions.assertThat(field(header, 345, 155)).isEqualTo(prefix);
+        assertChecksum(header);
+    }
+
+    private static void assertChecksum(@Nonnull byte[] header) {
+        long checksum = 0;
+        for (int i = 0; i < TarFormat.BLOCK_SIZE; i++) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        Assertions.assertThat(octal(header, 148, 8)).isEqualTo(checksum);
+    }
+
+    @Nonnull
+    private static String field(@Nonnull byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(@Nonnull byte[] header, int offset, int length) {
+        return Long.parseLong(field(header, offset, length).trim(), 8);
+    }
+
+    @Nonnull
+    private static String repeat(char value, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, value);
+        return new String(chars);
+    }
+}
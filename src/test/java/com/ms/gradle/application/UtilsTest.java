@@ -92,4 +92,10 @@ class UtilsTest {
         Assertions.assertThat(Utils.capitalize("őrTűz")).isEqualTo("ŐrTűz");
         Assertions.assertThat(Utils.capitalize("ŐrTűz")).isEqualTo("ŐrTűz");
     }
+
+    @Test
+    void testHex() {
+        Assertions.assertThat(Utils.hex(new byte[0])).isEmpty();
+        Assertions.assertThat(Utils.hex(new byte[] {0, 9, 10, 15, 16, 127, -128, -1})).isEqualTo("00090a0f107f80ff");
+    }
 }
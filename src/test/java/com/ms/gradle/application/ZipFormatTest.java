@@ -0,0 +1,378 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link ZipFormat}.
+ */
+class ZipFormatTest {
+
+    private static final byte[] CONTENT = "Hello, hello, hello, hello!".getBytes(StandardCharsets.UTF_8);
+
+    @Nonnull
+    @SuppressFBWarnings(value = "NP_NONNULL_FIELD_NOT_INITIALIZED_IN_CONSTRUCTOR",
+            justification = "@TempDir is not supported on constructor parameters")
+    private Path tempDir;
+
+    @BeforeEach
+    void beforeEach(@TempDir Path tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    @Test
+    void testWriteAndTransfer() throws IOException {
+        // `ZipOutputStream` uses data descriptors for DEFLATED entries, but not for STORED ones
+        Path source = tempDir.resolve("source.zip");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(source))) {
+            output.putNextEntry(new ZipEntry("deflated.txt"));
+            output.write(CONTENT);
+            ZipEntry storedEntry = new ZipEntry("stored.txt");
+            CRC32 crc = new CRC32();
+            crc.update(CONTENT);
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(CONTENT.length);
+            storedEntry.setCrc(crc.getValue());
+            output.putNextEntry(storedEntry);
+            output.write(CONTENT);
+        }
+
+        Path target = tempDir.resolve("target.zip");
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(target,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            List<ZipFormat.Entry> sourceEntries = ZipFormat.readCentralDirectory(sourceChannel);
+            Assertions.assertThat(sourceEntries.stream().map(ZipFormat.Entry::getName))
+                    .containsExactly("deflated.txt", "stored.txt");
+            Assertions.assertThat(sourceEntries).noneMatch(ZipFormat.Entry::isDirectory);
+
+            ZipFormat.Writer writer = new ZipFormat.Writer(targetChannel);
+            writer.writeDirectory("dir/", ZipFormat.CONSTANT_DOS_TIME);
+            writer.writeFile("dir/deflated.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED, CONTENT);
+            writer.writeFile("dir/stored.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_STORED, CONTENT);
+            for (ZipFormat.Entry entry : sourceEntries) {
+                writer.transfer(sourceChannel, entry);
+            }
+            writer.close();
+        }
+
+        try (ZipFile zipFile = new ZipFile(target.toFile())) {
+            Assertions.assertThat(zipFile.stream().map(ZipEntry::getName)).containsExactly(
+                    "dir/", "dir/deflated.txt", "dir/stored.txt", "deflated.txt", "stored.txt");
+            Assertions.assertThat(zipFile.getEntry("dir/").isDirectory()).isTrue();
+            try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.READ)) {
+                Assertions.assertThat(ZipFormat.readCentralDirectory(targetChannel).get(0).isDirectory()).isTrue();
+            }
+            for (String name : new String[] {"dir/deflated.txt", "dir/stored.txt", "deflated.txt", "stored.txt"}) {
+                ZipEntry entry = zipFile.getEntry(name);
+                Assertions.assertThat(entry.getMethod())
+                        .isEqualTo(name.contains("deflated") ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(entry))).containsExactly(CONTENT);
+            }
+        }
+
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.READ)) {
+            List<ZipFormat.Entry> sourceEntries = ZipFormat.readCentralDirectory(sourceChannel);
+            List<ZipFormat.Entry> targetEntries = ZipFormat.readCentralDirectory(targetChannel);
+            for (int i = 0; i < sourceEntries.size(); i++) {
+                ZipFormat.Entry sourceEntry = sourceEntries.get(i);
+                ZipFormat.Entry targetEntry = targetEntries.get(i + 3);
+                Assertions.assertThat(targetEntry.getName()).isEqualTo(sourceEntry.getName());
+                Assertions.assertThat(targetEntry.getMethod()).isEqualTo(sourceEntry.getMethod());
+                Assertions.assertThat(targetEntry.getDosTime()).isEqualTo(sourceEntry.getDosTime());
+                Assertions.assertThat(targetEntry.getCrc()).isEqualTo(sourceEntry.getCrc());
+                Assertions.assertThat(targetEntry.getCompressedSize()).isEqualTo(sourceEntry.getCompressedSize());
+                Assertions.assertThat(targetEntry.getSize()).isEqualTo(sourceEntry.getSize());
+                Assertions.assertThat(targetEntry.getFlags() & (1 << 3)).isEqualTo(0);
+            }
+        }
+    }
+
+    @Test
+    void testReadAndRewriteStoredContent() throws IOException {
+        Path source = tempDir.resolve("source.zip");
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            writer.writeFile("deflated.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_DEFLATED, CONTENT);
+            writer.writeFile("stored.txt", ZipFormat.CONSTANT_DOS_TIME, ZipFormat.METHOD_STORED, CONTENT);
+            writer.close();
+        }
+
+        Path target = tempDir.resolve("target.zip");
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(target,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            List<ZipFormat.Entry> sourceEntries = ZipFormat.readCentralDirectory(sourceChannel);
+            ZipFormat.Entry deflatedEntry = sourceEntries.get(0);
+            ZipFormat.Entry storedEntry = sourceEntries.get(1);
+            Assertions.assertThatThrownBy(() -> ZipFormat.readStoredContent(sourceChannel, deflatedEntry))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Entry is not stored: deflated.txt");
+            byte[] content = ZipFormat.readStoredContent(sourceChannel, storedEntry);
+            Assertions.assertThat(content).containsExactly(CONTENT);
+
+            ZipFormat.Writer writer = new ZipFormat.Writer(targetChannel);
+            Assertions.assertThatThrownBy(() -> writer.writeFile(storedEntry, 1, content))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Unsupported method: 1");
+            byte[] data = ZipFormat.deflate(content, 0, content.length, true);
+            writer.writeFile(storedEntry, ZipFormat.METHOD_DEFLATED, data);
+            writer.writeFile(deflatedEntry, ZipFormat.METHOD_STORED, content);
+            writer.close();
+        }
+
+        try (ZipFile zipFile = new ZipFile(target.toFile())) {
+            Assertions.assertThat(zipFile.stream().map(ZipEntry::getName))
+                    .containsExactly("stored.txt", "deflated.txt");
+            Assertions.assertThat(zipFile.getEntry("stored.txt").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            Assertions.assertThat(zipFile.getEntry("deflated.txt").getMethod()).isEqualTo(ZipEntry.STORED);
+            for (ZipEntry entry : new ZipEntry[] {zipFile.getEntry("stored.txt"), zipFile.getEntry("deflated.txt")}) {
+                Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(entry))).containsExactly(CONTENT);
+            }
+        }
+
+        // Apart from the compression, the metadata of the entries stays the same
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.READ)) {
+            List<ZipFormat.Entry> sourceEntries = ZipFormat.readCentralDirectory(sourceChannel);
+            List<ZipFormat.Entry> targetEntries = ZipFormat.readCentralDirectory(targetChannel);
+            for (int i = 0; i < sourceEntries.size(); i++) {
+                ZipFormat.Entry sourceEntry = sourceEntries.get(i);
+                ZipFormat.Entry targetEntry = targetEntries.get(1 - i);
+                Assertions.assertThat(targetEntry.getName()).isEqualTo(sourceEntry.getName());
+                Assertions.assertThat(targetEntry.getMethod()).isNotEqualTo(sourceEntry.getMethod());
+                Assertions.assertThat(targetEntry.getDosTime()).isEqualTo(sourceEntry.getDosTime());
+                Assertions.assertThat(targetEntry.getCrc()).isEqualTo(sourceEntry.getCrc());
+                Assertions.assertThat(targetEntry.getSize()).isEqualTo(sourceEntry.getSize());
+            }
+        }
+    }
+
+    @Test
+    void testReplaceFile() throws IOException {
+        byte[] otherContent = "Bye!".getBytes(StandardCharsets.UTF_8);
+        Path target = tempDir.resolve("target.zip");
+        Path expected = tempDir.resolve("expected.zip");
+        writePadded(target, CONTENT);
+        writePadded(expected, otherContent);
+        Assertions.assertThat(Files.size(target)).isEqualTo(Files.size(expected));
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            List<ZipFormat.Entry> entries = ZipFormat.readCentralDirectory(channel);
+            ZipFormat.CompressedFile file = new ZipFormat.CompressedFile("file.txt", 0, ZipFormat.METHOD_STORED,
+                    otherContent);
+            Assertions.assertThat(entries.get(1).hasSameMetadata(file.toEntry(), false)).isTrue();
+            Assertions.assertThat(entries.get(1).hasSameMetadata(file.toEntry(), true)).isFalse();
+            Assertions.assertThat(entries.get(0).hasSameMetadata(ZipFormat.directoryEntry("dir/", 0), true)).isTrue();
+            Assertions.assertThat(ZipFormat.replaceFile(channel, entries, 1, file, 128)).isTrue();
+            Assertions.assertThatThrownBy(() -> ZipFormat.replaceFile(channel, entries, 0, file, 128))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Entry name mismatch: file.txt");
+
+            // Doesn't fit in the same number of blocks
+            ZipFormat.CompressedFile largeFile = new ZipFormat.CompressedFile("file.txt", 0, ZipFormat.METHOD_STORED,
+                    new byte[100]);
+            Assertions.assertThat(ZipFormat.replaceFile(channel, entries, 1, largeFile, 128)).isFalse();
+        }
+        Assertions.assertThat(target).hasSameBinaryContentAs(expected);
+
+        try (ZipFile zipFile = new ZipFile(target.toFile())) {
+            Assertions.assertThat(IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("file.txt"))))
+                    .containsExactly(otherContent);
+        }
+    }
+
+    private static void writePadded(@Nonnull Path path, @Nonnull byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            writer.writeDirectory("dir/", 0);
+            writer.writeFile(new ZipFormat.CompressedFile("file.txt", 0, ZipFormat.METHOD_STORED, content), 128);
+            writer.close();
+        }
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("target.zip"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            Assertions.assertThatThrownBy(() -> writer.writeDirectory("dir", 0))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Directory name must end with '/': dir");
+            Assertions.assertThatThrownBy(() -> writer.writeFile("file/", 0, ZipFormat.METHOD_STORED, CONTENT))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("File name must not end with '/': file/");
+            Assertions.assertThatThrownBy(() -> writer.writeFile("file", 0, 12, CONTENT))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Unsupported method: 12");
+            ZipFormat.CompressedFile file = new ZipFormat.CompressedFile("file", 0, ZipFormat.METHOD_STORED, CONTENT);
+            Assertions.assertThatThrownBy(() -> writer.writeFile(file, 0x20000))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessage("Block size is too large: 131072");
+        }
+    }
+
+    @Test
+    void testTooManyEntries() throws IOException {
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("target.zip"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            for (int i = 0; i < 0xFFFF; i++) {
+                writer.writeDirectory(i + "/", 0);
+            }
+            Assertions.assertThatThrownBy(() -> writer.writeDirectory("last/", 0))
+                    .isInstanceOf(ZipException.class)
+                    .hasMessage("Archive is too large, ZIP64 archives are not supported");
+        }
+    }
+
+    @Test
+    void testTooLarge() throws IOException {
+        // Sparse files make it possible to test this without actually writing gigabytes of data
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("target.zip"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            ZipFormat.Writer writer = new ZipFormat.Writer(channel);
+            channel.position(0xFFFFFFFFL);
+            Assertions.assertThatThrownBy(() -> writer.writeDirectory("dir/", 0))
+                    .isInstanceOf(ZipException.class)
+                    .hasMessage("Archive is too large, ZIP64 archives are not supported");
+            channel.position(0xFFFFFFF0L);
+            writer.writeDirectory("dir/", 0);
+            Assertions.assertThatThrownBy(writer::close)
+                    .isInstanceOf(ZipException.class)
+                    .hasMessage("Archive is too large, ZIP64 archives are not supported");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestsShouldIncludeAssert") // Delegating to a method asserting the failure
+    void testInvalidArchives() throws IOException {
+        expectInvalid(new byte[0], ZipException.class, "End of central directory record not found");
+        expectInvalid(new byte[100], ZipException.class, "End of central directory record not found");
+        expectInvalid(concat(zip64Locator(), endOfCentralDirectory(0, 0, 0)),
+                ZipException.class, "ZIP64 archives are not supported");
+        expectInvalid(endOfCentralDirectory(1, 46, 100),
+                ZipException.class, "Invalid central directory location");
+        expectInvalid(concat(new byte[4], endOfCentralDirectory(1, 4, 0)),
+                ZipException.class, "Invalid central directory record");
+        expectInvalid(concat(new byte[46], endOfCentralDirectory(1, 46, 0)),
+                ZipException.class, "Invalid central directory record");
+        expectInvalid(concat(centralHeader("a", 10, 0, 0), endOfCentralDirectory(1, 47, 0)),
+                ZipException.class, "Invalid central directory record");
+        expectInvalid(concat(centralHeader("a", 0, 0xFFFFFFFF, 0), endOfCentralDirectory(1, 47, 0)),
+                ZipException.class, "ZIP64 archives are not supported");
+        expectInvalid(concat(centralHeader("a", 0, 0, 0xFFFFFFFF), endOfCentralDirectory(1, 47, 0)),
+                ZipException.class, "ZIP64 archives are not supported");
+    }
+
+    @Test
+    void testInvalidLocalRecords() throws IOException {
+        expectInvalidTransfer(concat(centralHeader("a", 0, 0, 1000), endOfCentralDirectory(1, 47, 0)),
+                EOFException.class, "Unexpected end of ZIP archive");
+        expectInvalidTransfer(concat(new byte[30], centralHeader("a", 0, 0, 0), endOfCentralDirectory(1, 47, 30)),
+                ZipException.class, "Invalid local header for entry a");
+        Path invalid = Files.write(tempDir.resolve("invalid.zip"),
+                concat(new byte[30], centralHeader("a", 0, 0, 0), endOfCentralDirectory(1, 47, 30)));
+        try (FileChannel channel = FileChannel.open(invalid, StandardOpenOption.READ)) {
+            ZipFormat.Entry entry = ZipFormat.readCentralDirectory(channel).get(0);
+            Assertions.assertThatThrownBy(() -> ZipFormat.readStoredContent(channel, entry))
+                    .isInstanceOf(ZipException.class).hasMessage("Invalid local header for entry a");
+        }
+        expectInvalidTransfer(concat(localHeader("a", 1000), centralHeader("a", 0, 1000, 0),
+                        endOfCentralDirectory(1, 47, 31)),
+                EOFException.class, "Unexpected end of ZIP archive");
+    }
+
+    private void expectInvalid(@Nonnull byte[] archive, @Nonnull Class<? extends IOException> exceptionType,
+            @Nonnull String message) throws IOException {
+        Path source = Files.write(Files.createTempFile(tempDir, "invalid", ".zip"), archive);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            Assertions.assertThatThrownBy(() -> ZipFormat.readCentralDirectory(channel))
+                    .isInstanceOf(exceptionType).hasMessage(message);
+        }
+    }
+
+    private void expectInvalidTransfer(@Nonnull byte[] archive, @Nonnull Class<? extends IOException> exceptionType,
+            @Nonnull String message) throws IOException {
+        Path source = Files.write(Files.createTempFile(tempDir, "invalid", ".zip"), archive);
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel targetChannel = FileChannel.open(Files.createTempFile(tempDir, "target", ".zip"),
+                        StandardOpenOption.WRITE)) {
+            ZipFormat.Entry entry = ZipFormat.readCentralDirectory(sourceChannel).get(0);
+            ZipFormat.Writer writer = new ZipFormat.Writer(targetChannel);
+            Assertions.assertThatThrownBy(() -> writer.transfer(sourceChannel, entry))
+                    .isInstanceOf(exceptionType).hasMessage(message);
+        }
+    }
+
+    @Nonnull
+    private static byte[] localHeader(@Nonnull String name, int compressedSize) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        return buffer(30 + nameBytes.length)
+                .putInt(0x04034b50).putShort((short) 10).putShort((short) 0).putShort((short) 0).putInt(0).putInt(0)
+                .putInt(compressedSize).putInt(0).putShort((short) nameBytes.length).putShort((short) 0)
+                .put(nameBytes).array();
+    }
+
+    @Nonnull
+    private static byte[] centralHeader(@Nonnull String name, int extraSize, int compressedSize, int offset) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        return buffer(46 + nameBytes.length)
+                .putInt(0x02014b50).putShort((short) 10).putShort((short) 10).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt(0).putInt(compressedSize).putInt(0).putShort((short) nameBytes.length)
+                .putShort((short) extraSize).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt(offset).put(nameBytes).array();
+    }
+
+    @Nonnull
+    private static byte[] zip64Locator() {
+        return buffer(20).putInt(0x07064b50).array();
+    }
+
+    @Nonnull
+    private static byte[] endOfCentralDirectory(int entryCount, int directorySize, int directoryOffset) {
+        return buffer(22).putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) entryCount)
+                .putShort((short) entryCount).putInt(directorySize).putInt(directoryOffset).putShort((short) 0).array();
+    }
+
+    @Nonnull
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Nonnull
+    private static byte[] concat(@Nonnull byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+}
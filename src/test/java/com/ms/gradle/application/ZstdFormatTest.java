@@ -0,0 +1,677 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link ZstdFormat}.
+ */
+class ZstdFormatTest {
+
+    private static final String[] WORDS = {
+        "application", "distribution", "gradle", "plugin", "archive", "compression", "the", "a", "of", "to", "and",
+        "in", "is", "for", "with", "class", "jar", "lib", "main", "task", "public", "static", "final", "void", "int",
+        "return", "new", "import", "package", "java", "util", "Zstandard", "frame", "block", "literal", "sequence",
+    };
+
+    @Test
+    void testCompress() {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("empty", new byte[0]);
+        contents.put("short", "Hello, hello, hello, hello!".getBytes(StandardCharsets.UTF_8));
+        contents.put("sentences", ("The quick brown fox jumps over the lazy dog. The quick brown cat jumps over the " +
+                "lazy fox. The lazy dog sleeps, and the quick brown fox jumps over the sleeping dog.")
+                .getBytes(StandardCharsets.UTF_8));
+        contents.put("letters", letters(40_000));
+        contents.put("repeated", repeated((byte) 'a', 300_000));
+        contents.put("noise", noise(1000, 1));
+        // Several blocks, of which only the last one is marked as such
+        contents.put("largeNoise", noise(200_000, 6));
+        contents.put("text", text(400_000));
+        contents.put("binary", concat(noise(6000, 2), noise(6000, 2), text(20_000), noise(100, 3), noise(100, 3)));
+        contents.put("tokens", tokens(182));
+        for (int level : new int[] {ZstdFormat.MIN_LEVEL, 3, 9, ZstdFormat.MAX_LEVEL}) {
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                // The content doesn't need to start at the beginning of the array, nor end at its end
+                byte[] padded = concat(noise(7, 4), content.getValue(), noise(5, 5));
+                byte[] frame = ZstdFormat.compress(padded, 7, content.getValue().length, level);
+                Assertions.assertThat(Decoder.decompress(frame))
+                        .as("%s at level %s", content.getKey(), level)
+                        .containsExactly(content.getValue());
+                Assertions.assertThat(ZstdFormat.compress(padded, 7, content.getValue().length, level))
+                        .as("Deterministic")
+                        .containsExactly(frame);
+            }
+        }
+
+        // Incompressible content is stored (after the frame and block headers, and before the checksum), compressible
+        // content shrinks, more so at higher levels
+        Assertions.assertThat(ZstdFormat.compress(contents.get("noise"), 0, 1000, 3)).hasSize(7 + 3 + 1000 + 4);
+        Assertions.assertThat(ZstdFormat.compress(contents.get("repeated"), 0, 300_000, 3).length).isLessThan(100);
+        byte[] text = contents.get("text");
+        int fastSize = ZstdFormat.compress(text, 0, text.length, ZstdFormat.MIN_LEVEL).length;
+        int defaultSize = ZstdFormat.compress(text, 0, text.length, 3).length;
+        int smallSize = ZstdFormat.compress(text, 0, text.length, ZstdFormat.MAX_LEVEL).length;
+        Assertions.assertThat(fastSize).isLessThan(text.length / 3);
+        Assertions.assertThat(defaultSize).isLessThan(fastSize);
+        Assertions.assertThat(smallSize).isLessThan(defaultSize);
+    }
+
+    @Test
+    void testConcatenatedFrames() {
+        byte[] text = text(100_000);
+        byte[] frames = concat(ZstdFormat.compress(text, 0, 60_000, 3), ZstdFormat.compress(text, 60_000, 0, 3),
+                ZstdFormat.compress(text, 60_000, 40_000, 3));
+        Assertions.assertThat(Decoder.decompress(frames)).containsExactly(text);
+    }
+
+    @Test
+    void testCompressInvalidLevel() {
+        byte[] content = new byte[1];
+        Assertions.assertThatThrownBy(() -> ZstdFormat.compress(content, 0, 1, ZstdFormat.MIN_LEVEL - 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("compressionLevel must be between 1 and 19: 0");
+        Assertions.assertThatThrownBy(() -> ZstdFormat.compress(content, 0, 1, ZstdFormat.MAX_LEVEL + 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("compressionLevel must be between 1 and 19: 20");
+    }
+
+    @Test
+    void testXxh64() {
+        Assertions.assertThat(ZstdFormat.xxh64("abc".getBytes(StandardCharsets.US_ASCII), 0, 3))
+                .isEqualTo(0x44BC2CF5AD770999L);
+        byte[] content = new byte[110];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7 + 3);
+        }
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 0)).isEqualTo(0xEF46DB3751D8E999L);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 1)).isEqualTo(0x1F25C8D0BC1F4BB6L);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 5)).isEqualTo(0xC7608EFDDB7051FEL);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 31)).isEqualTo(0xA2AA5F33CC4A6119L);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 32)).isEqualTo(0x23C3C17EF790FD97L);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 37)).isEqualTo(0xE32EF63802F5A3FDL);
+        Assertions.assertThat(ZstdFormat.xxh64(content, 0, 100)).isEqualTo(0xA61F8D4C170FE531L);
+
+        // Only the given range counts
+        byte[] shifted = concat(noise(10, 6), content);
+        Assertions.assertThat(ZstdFormat.xxh64(shifted, 10, 100)).isEqualTo(0xA61F8D4C170FE531L);
+    }
+
+    @Test
+    void testHuffmanLengths() {
+        Assertions.assertThat(ZstdFormat.huffmanLengths(new int[] {4, 0, 1, 1, 2}, 4, 11))
+                .containsExactly(1, 0, 3, 3, 2);
+
+        // Fibonacci frequencies make the deepest tree, whose codes have to be limited
+        int[] frequencies = new int[20];
+        frequencies[0] = 1;
+        frequencies[1] = 1;
+        for (int i = 2; i < frequencies.length; i++) {
+            frequencies[i] = frequencies[i - 1] + frequencies[i - 2];
+        }
+        for (int maxBits : new int[] {5, 8, 11}) {
+            int[] lengths = ZstdFormat.huffmanLengths(frequencies, frequencies.length - 1, maxBits);
+            long kraft = 0;
+            for (int length : lengths) {
+                Assertions.assertThat(length).isBetween(1, maxBits);
+                kraft += 1L << (maxBits - length);
+            }
+            Assertions.assertThat(kraft).isEqualTo(1L << maxBits);
+            // More frequent symbols never get longer codes
+            for (int i = 1; i < lengths.length; i++) {
+                Assertions.assertThat(lengths[i]).isLessThanOrEqualTo(lengths[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    void testNormalize() {
+        Assertions.assertThat(ZstdFormat.normalize(new int[] {6, 0, 2, 0}, 2, 8, 9)).containsExactly(24, 0, 8);
+
+        // Many rare symbols take more than their share of the table, which the others make up for
+        int[] frequencies = new int[32];
+        Arrays.fill(frequencies, 0, 16, 100);
+        Arrays.fill(frequencies, 16, 32, 1);
+        int[] distribution = ZstdFormat.normalize(frequencies, 31, 1616, 5);
+        Assertions.assertThat(IntStream.of(distribution).sum()).isEqualTo(64);
+        Assertions.assertThat(Arrays.stream(distribution, 0, 16)).allMatch(probability -> probability >= 1);
+        Assertions.assertThat(Arrays.stream(distribution, 16, 32)).containsOnly(1);
+    }
+
+    @Nonnull
+    private static byte[] concat(@Nonnull byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.write(part, 0, part.length);
+        }
+        return output.toByteArray();
+    }
+
+    @Nonnull
+    private static byte[] repeated(byte value, int length) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, value);
+        return content;
+    }
+
+    /**
+     * Creates content that can't be compressed (with a xorshift generator).
+     */
+    @Nonnull
+    private static byte[] noise(int length, int seed) {
+        byte[] content = new byte[length];
+        int state = seed;
+        for (int i = 0; i < length; i++) {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+            content[i] = (byte) state;
+        }
+        return content;
+    }
+
+    /**
+     * Creates text from randomly chosen letters, which has few matches but compresses well with Huffman codes.
+     */
+    @Nonnull
+    private static byte[] letters(int length) {
+        byte[] content = noise(length, 8);
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + (content[i] & 0xFF) % 26);
+        }
+        return content;
+    }
+
+    /**
+     * Creates text from randomly chosen words.
+     */
+    @Nonnull
+    private static byte[] text(int length) {
+        byte[] indexes = noise(length, 7);
+        StringBuilder text = new StringBuilder(length + 20);
+        for (int i = 0; text.length() < length; i++) {
+            text.append(WORDS[(indexes[i] & 0xFF) % WORDS.length]).append(i % 13 == 12 ? ".\n" : " ");
+        }
+        return text.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Creates content made of 4-byte tokens, in which every token repeats but no pair of tokens does (a de Bruijn
+     * sequence of the tokens), which makes for as many sequences as a block can hold.
+     */
+    @Nonnull
+    private static byte[] tokens(int count) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(count * count * 4);
+        for (int first = 0; first < count; first++) {
+            writeToken(output, first);
+            for (int second = first + 1; second < count; second++) {
+                writeToken(output, first);
+                writeToken(output, second);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeToken(@Nonnull ByteArrayOutputStream output, int token) {
+        output.write(token);
+        output.write(255 - token);
+        output.write(token * 7);
+        output.write(token * 13);
+    }
+
+    /**
+     * Decodes the subset of the Zstandard format that {@link ZstdFormat} writes, as specified by RFC 8878. Anything
+     * else fails the test.
+     */
+    static final class Decoder {
+
+        private static final int[] LITERALS_LENGTH_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14,
+            15, 16,
+        };
+        private static final int[] MATCH_LENGTH_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1,
+            2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+        };
+        private static final int[] LITERALS_LENGTH_BASELINES = baselines(0, LITERALS_LENGTH_BITS);
+        private static final int[] MATCH_LENGTH_BASELINES = baselines(3, MATCH_LENGTH_BITS);
+        private static final int[] LITERALS_LENGTH_DISTRIBUTION = {
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1,
+            -1,
+        };
+        private static final int[] MATCH_LENGTH_DISTRIBUTION = {
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1,
+        };
+        private static final int[] OFFSET_DISTRIBUTION = {
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1,
+        };
+
+        @Nonnull
+        private final byte[] input;
+        private int position;
+        @Nonnull
+        private byte[] output = new byte[1024];
+        private int size;
+        private int frameStart;
+        @Nonnull
+        private final int[] repeatOffsets = new int[3];
+
+        private Decoder(@Nonnull byte[] input) {
+            this.input = input;
+        }
+
+        /**
+         * Decompresses a stream of concatenated frames.
+         *
+         * @param input The compressed stream.
+         * @return The decompressed content.
+         */
+        @Nonnull
+        static byte[] decompress(@Nonnull byte[] input) {
+            Decoder decoder = new Decoder(input);
+            do {
+                decoder.decodeFrame();
+            } while (decoder.position < input.length);
+            return Arrays.copyOf(decoder.output, decoder.size);
+        }
+
+        @Nonnull
+        private static int[] baselines(int first, @Nonnull int... bits) {
+            int[] baselines = new int[bits.length];
+            baselines[0] = first;
+            for (int code = 1; code < bits.length; code++) {
+                baselines[code] = baselines[code - 1] + (1 << bits[code - 1]);
+            }
+            return baselines;
+        }
+
+        private void decodeFrame() {
+            Assertions.assertThat(readLittleEndian(4)).as("Magic number").isEqualTo(0xFD2FB528L);
+            int descriptor = input[position++] & 0xFF;
+            // Single segment, with a content checksum, without a dictionary
+            Assertions.assertThat(descriptor & 0x2F).as("Frame header descriptor").isEqualTo(0x24);
+            int contentSizeFlag = descriptor >>> 6;
+            long contentSize = contentSizeFlag == 1 ?
+                    readLittleEndian(2) + 256 :
+                    readLittleEndian(contentSizeFlag == 0 ? 1 : 1 << contentSizeFlag);
+            frameStart = size;
+            repeatOffsets[0] = 1;
+            repeatOffsets[1] = 4;
+            repeatOffsets[2] = 8;
+            boolean last;
+            do {
+                int header = (int) readLittleEndian(3);
+                last = (header & 1) != 0;
+                int type = (header >>> 1) & 3;
+                int blockSize = header >>> 3;
+                Assertions.assertThat(blockSize).isLessThanOrEqualTo(128 * 1024);
+                if (type == 0) {
+                    append(input, position, blockSize);
+                    position += blockSize;
+                } else {
+                    Assertions.assertThat(type).as("Block type").isEqualTo(2);
+                    int blockEnd = position + blockSize;
+                    byte[] literals = decodeLiterals();
+                    decodeSequences(blockEnd, literals);
+                    Assertions.assertThat(position).isEqualTo(blockEnd);
+                }
+            } while (!last);
+            Assertions.assertThat((long) size - frameStart).as("Frame content size").isEqualTo(contentSize);
+            Assertions.assertThat(readLittleEndian(4)).as("Content checksum")
+                    .isEqualTo(ZstdFormat.xxh64(output, frameStart, size - frameStart) & 0xFFFFFFFFL);
+        }
+
+        @Nonnull
+        private byte[] decodeLiterals() {
+            int first = input[position] & 0xFF;
+            int type = first & 3;
+            int sizeFormat = (first >>> 2) & 3;
+            if (type < 2) {
+                int regeneratedSize;
+                if ((sizeFormat & 1) == 0) {
+                    regeneratedSize = first >>> 3;
+                    position++;
+                } else {
+                    regeneratedSize = (int) (readLittleEndian(sizeFormat == 1 ? 2 : 3) >>> 4);
+                }
+                byte[] literals;
+                if (type == 0) {
+                    literals = Arrays.copyOfRange(input, position, position + regeneratedSize);
+                    position += regeneratedSize;
+                } else {
+                    literals = new byte[regeneratedSize];
+                    Arrays.fill(literals, input[position++]);
+                }
+                return literals;
+            }
+            Assertions.assertThat(type).as("Literals block type").isEqualTo(2);
+            int sizeBits = sizeFormat < 2 ? 10 : sizeFormat == 2 ? 14 : 18;
+            long header = readLittleEndian(sizeFormat < 2 ? 3 : sizeFormat + 2);
+            int regeneratedSize = (int) (header >>> 4) & ((1 << sizeBits) - 1);
+            int compressedSize = (int) (header >>> (4 + sizeBits)) & ((1 << sizeBits) - 1);
+            int end = position + compressedSize;
+
+            // Tree description, with the weights written directly
+            int headerByte = input[position++] & 0xFF;
+            Assertions.assertThat(headerByte).as("Huffman tree description").isGreaterThanOrEqualTo(128);
+            int[] weights = new int[headerByte - 127 + 1];
+            int total = 0;
+            for (int symbol = 0; symbol < weights.length - 1; symbol++) {
+                int pair = input[position + symbol / 2] & 0xFF;
+                weights[symbol] = symbol % 2 == 0 ? pair >>> 4 : pair & 15;
+                total += weights[symbol] > 0 ? 1 << (weights[symbol] - 1) : 0;
+            }
+            position += weights.length / 2;
+            int maxBits = 32 - Integer.numberOfLeadingZeros(total);
+            int rest = (1 << maxBits) - total;
+            Assertions.assertThat(Integer.bitCount(rest)).as("Weight of the last symbol").isEqualTo(1);
+            weights[weights.length - 1] = Integer.numberOfTrailingZeros(rest) + 1;
+            byte[] tableSymbols = new byte[1 << maxBits];
+            int[] tableLengths = new int[1 << maxBits];
+            int cell = 0;
+            for (int weight = 1; weight <= maxBits; weight++) {
+                for (int symbol = 0; symbol < weights.length; symbol++) {
+                    for (int i = 0; weights[symbol] == weight && i < 1 << (weight - 1); i++) {
+                        tableSymbols[cell] = (byte) symbol;
+                        tableLengths[cell++] = maxBits + 1 - weight;
+                    }
+                }
+            }
+
+            byte[] literals = new byte[regeneratedSize];
+            int[] streamEnds = {end, end, end, end};
+            int streamCount = 1;
+            if (sizeFormat > 0) {
+                streamCount = 4;
+                int streamEnd = position + 6;
+                for (int i = 0; i < 3; i++) {
+                    streamEnd += (int) readLittleEndian(2);
+                    streamEnds[i] = streamEnd;
+                }
+            }
+            int segmentSize = streamCount == 1 ? regeneratedSize : (regeneratedSize + 3) / 4;
+            for (int stream = 0; stream < streamCount; stream++) {
+                BitReader reader = new BitReader(input, position, streamEnds[stream]);
+                for (int i = stream * segmentSize; i < Math.min((stream + 1) * segmentSize, regeneratedSize); i++) {
+                    int index = (int) reader.peek(maxBits);
+                    literals[i] = tableSymbols[index];
+                    reader.read(tableLengths[index]);
+                }
+                Assertions.assertThat(reader.isFinished()).as("End of Huffman stream").isTrue();
+                position = streamEnds[stream];
+            }
+            return literals;
+        }
+
+        private void decodeSequences(int blockEnd, @Nonnull byte[] literals) {
+            int first = input[position++] & 0xFF;
+            int count;
+            if (first < 128) {
+                count = first;
+            } else if (first < 255) {
+                count = ((first - 128) << 8) + (input[position++] & 0xFF);
+            } else {
+                count = (int) readLittleEndian(2) + 0x7F00;
+            }
+            int literalsPosition = 0;
+            if (count > 0) {
+                int modes = input[position++] & 0xFF;
+                Assertions.assertThat(modes & 3).as("Reserved bits").isEqualTo(0);
+                DecodingTable literalsLengthTable = readTable(modes >>> 6, 6, LITERALS_LENGTH_DISTRIBUTION);
+                DecodingTable offsetTable = readTable((modes >>> 4) & 3, 5, OFFSET_DISTRIBUTION);
+                DecodingTable matchLengthTable = readTable((modes >>> 2) & 3, 6, MATCH_LENGTH_DISTRIBUTION);
+
+                BitReader reader = new BitReader(input, position, blockEnd);
+                int literalsLengthState = (int) reader.read(literalsLengthTable.accuracyLog);
+                int offsetState = (int) reader.read(offsetTable.accuracyLog);
+                int matchLengthState = (int) reader.read(matchLengthTable.accuracyLog);
+                for (int sequence = 0; sequence < count; sequence++) {
+                    int offsetCode = offsetTable.symbols[offsetState];
+                    int matchLengthCode = matchLengthTable.symbols[matchLengthState];
+                    int literalsLengthCode = literalsLengthTable.symbols[literalsLengthState];
+                    int offsetValue = (1 << offsetCode) + (int) reader.read(offsetCode);
+                    int matchLength = MATCH_LENGTH_BASELINES[matchLengthCode] +
+                            (int) reader.read(MATCH_LENGTH_BITS[matchLengthCode]);
+                    int literalsLength = LITERALS_LENGTH_BASELINES[literalsLengthCode] +
+                            (int) reader.read(LITERALS_LENGTH_BITS[literalsLengthCode]);
+                    if (sequence < count - 1) {
+                        literalsLengthState = literalsLengthTable.nextState(reader, literalsLengthState);
+                        matchLengthState = matchLengthTable.nextState(reader, matchLengthState);
+                        offsetState = offsetTable.nextState(reader, offsetState);
+                    }
+
+                    int offset = offset(offsetValue, literalsLength);
+                    append(literals, literalsPosition, literalsLength);
+                    literalsPosition += literalsLength;
+                    Assertions.assertThat(offset).as("Offset").isBetween(1, size - frameStart);
+                    for (int i = 0; i < matchLength; i++) {
+                        append(output, size - offset, 1);
+                    }
+                }
+                Assertions.assertThat(reader.isFinished()).as("End of sequences bitstream").isTrue();
+                position = blockEnd;
+            }
+            append(literals, literalsPosition, literals.length - literalsPosition);
+        }
+
+        @Nonnull
+        private DecodingTable readTable(int mode, int predefinedAccuracyLog, @Nonnull int... predefinedDistribution) {
+            if (mode == 0) {
+                return new DecodingTable(predefinedAccuracyLog, predefinedDistribution);
+            }
+            if (mode == 1) {
+                int[] distribution = new int[(input[position++] & 0xFF) + 1];
+                distribution[distribution.length - 1] = 1;
+                return new DecodingTable(0, distribution);
+            }
+            Assertions.assertThat(mode).as("Symbol compression mode").isEqualTo(2);
+
+            // Forward bitstream, from the lowest bit of the first byte
+            long bitPosition = position * 8L;
+            int accuracyLog = (int) readBits(bitPosition, 4) + 5;
+            bitPosition += 4;
+            int remaining = (1 << accuracyLog) + 1;
+            int threshold = 1 << accuracyLog;
+            int bitCount = accuracyLog + 1;
+            List<Integer> distribution = new ArrayList<>();
+            boolean previousZero = false;
+            while (remaining > 1) {
+                if (previousZero) {
+                    int repeat;
+                    do {
+                        repeat = (int) readBits(bitPosition, 2);
+                        bitPosition += 2;
+                        for (int i = 0; i < repeat; i++) {
+                            distribution.add(0);
+                        }
+                    } while (repeat == 3);
+                }
+                int max = 2 * threshold - 1 - remaining;
+                int value = (int) readBits(bitPosition, bitCount - 1);
+                if (value < max) {
+                    bitPosition += bitCount - 1;
+                } else {
+                    value = (int) readBits(bitPosition, bitCount);
+                    if (value >= threshold) {
+                        value -= max;
+                    }
+                    bitPosition += bitCount;
+                }
+                int probability = value - 1;
+                distribution.add(probability);
+                remaining -= Math.abs(probability);
+                previousZero = probability == 0;
+                while (remaining < threshold) {
+                    bitCount--;
+                    threshold >>= 1;
+                }
+            }
+            Assertions.assertThat(remaining).as("Sum of probabilities").isEqualTo(1);
+            position = (int) ((bitPosition + 7) / 8);
+            return new DecodingTable(accuracyLog, distribution.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private long readBits(long bitPosition, int count) {
+            long value = 0;
+            for (int i = count - 1; i >= 0; i--) {
+                long bit = bitPosition + i;
+                value = (value << 1) | ((input[(int) (bit / 8)] >>> (bit % 8)) & 1);
+            }
+            return value;
+        }
+
+        /**
+         * Resolves an offset value into the actual offset, and updates the repeat offsets.
+         */
+        private int offset(int offsetValue, int literalsLength) {
+            int offset;
+            if (offsetValue > 3) {
+                offset = offsetValue - 3;
+                repeatOffsets[2] = repeatOffsets[1];
+            } else {
+                int repeat = offsetValue - 1 + (literalsLength == 0 ? 1 : 0);
+                if (repeat == 0) {
+                    return repeatOffsets[0];
+                }
+                offset = repeat == 3 ? repeatOffsets[0] - 1 : repeatOffsets[repeat];
+                if (repeat > 1) {
+                    repeatOffsets[2] = repeatOffsets[1];
+                }
+            }
+            repeatOffsets[1] = repeatOffsets[0];
+            repeatOffsets[0] = offset;
+            return offset;
+        }
+
+        private long readLittleEndian(int length) {
+            long value = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                value = (value << 8) | (input[position + i] & 0xFF);
+            }
+            position += length;
+            return value;
+        }
+
+        private void append(@Nonnull byte[] bytes, int offset, int length) {
+            if (size + length > output.length) {
+                output = Arrays.copyOf(output, Math.max(output.length * 2, size + length));
+            }
+            System.arraycopy(bytes, offset, output, size, length);
+            size += length;
+        }
+    }
+
+    /**
+     * An FSE decoding table, built from a normalized distribution as specified by RFC 8878.
+     */
+    private static final class DecodingTable {
+
+        private final int accuracyLog;
+        @Nonnull
+        private final int[] symbols;
+        @Nonnull
+        private final int[] bitCounts;
+        @Nonnull
+        private final int[] baselines;
+
+        DecodingTable(int accuracyLog, @Nonnull int... distribution) {
+            int tableSize = 1 << accuracyLog;
+            this.accuracyLog = accuracyLog;
+            this.symbols = new int[tableSize];
+            this.bitCounts = new int[tableSize];
+            this.baselines = new int[tableSize];
+            int[] nextStates = new int[distribution.length];
+            int highThreshold = tableSize - 1;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                if (distribution[symbol] == -1) {
+                    symbols[highThreshold--] = symbol;
+                    nextStates[symbol] = 1;
+                } else {
+                    nextStates[symbol] = distribution[symbol];
+                }
+            }
+            int step = (tableSize >> 1) + (tableSize >> 3) + 3;
+            int position = 0;
+            for (int symbol = 0; symbol < distribution.length; symbol++) {
+                for (int i = 0; i < distribution[symbol]; i++) {
+                    symbols[position] = symbol;
+                    do {
+                        position = (position + step) & (tableSize - 1);
+                    } while (position > highThreshold);
+                }
+            }
+            for (int state = 0; state < tableSize; state++) {
+                int next = nextStates[symbols[state]]++;
+                bitCounts[state] = accuracyLog - (31 - Integer.numberOfLeadingZeros(next));
+                baselines[state] = (next << bitCounts[state]) - tableSize;
+            }
+        }
+
+        int nextState(@Nonnull BitReader reader, int state) {
+            return baselines[state] + (int) reader.read(bitCounts[state]);
+        }
+    }
+
+    /**
+     * Reads a bitstream backwards, from the bit before the marker bit at its end.
+     */
+    private static final class BitReader {
+
+        @Nonnull
+        private final byte[] bytes;
+        private final int start;
+        private int bitPosition;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly") // The reader only reads the compressed frame
+        BitReader(@Nonnull byte[] bytes, int start, int end) {
+            int last = bytes[end - 1] & 0xFF;
+            Assertions.assertThat(last).as("Marker bit").isNotZero();
+            this.bytes = bytes;
+            this.start = start;
+            this.bitPosition = (end - 1 - start) * 8 + 31 - Integer.numberOfLeadingZeros(last);
+        }
+
+        /**
+         * Returns the next bits without consuming them, with zeros past the start of the stream.
+         */
+        long peek(int count) {
+            long value = 0;
+            for (int i = 1; i <= count; i++) {
+                int bit = bitPosition - i;
+                value = (value << 1) | (bit >= 0 ? (bytes[start + bit / 8] >>> (bit % 8)) & 1 : 0);
+            }
+            return value;
+        }
+
+        long read(int count) {
+            long value = peek(count);
+            bitPosition -= count;
+            Assertions.assertThat(bitPosition).as("Bits left").isNotNegative();
+            return value;
+        }
+
+        boolean isFinished() {
+            return bitPosition == 0;
+        }
+    }
+}
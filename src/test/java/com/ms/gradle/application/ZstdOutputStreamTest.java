@@ -0,0 +1,118 @@
+/*
+ * Morgan Stanley makes this available to you under the Apache License, Version 2.0 (the "License"). You may obtain a
+ * copy of the License at http://www.apache.org/licenses/LICENSE-2.0. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.ms.gradle.application;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Unit tests for {@link ZstdOutputStream}.
+ */
+class ZstdOutputStreamTest {
+
+    private static final int FRAME_SIZE = ZstdOutputStream.FRAME_CONTENT_SIZE;
+
+    @Test
+    void testFrames() throws IOException {
+        byte[] content = IntStream.range(0, 300_000)
+                .mapToObj(i -> "Line " + i * 7919 % 10007 + "\n")
+                .collect(Collectors.joining())
+                .getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThat(content.length).isGreaterThan(2 * FRAME_SIZE);
+
+        // The content is split into frames of a fixed size, whatever the number of threads
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int offset = 0; offset < content.length; offset += FRAME_SIZE) {
+            byte[] frame = ZstdFormat.compress(content, offset, Math.min(FRAME_SIZE, content.length - offset), 3);
+            expected.write(frame);
+        }
+        for (int threads : new int[] {1, 2, 8}) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (ZstdOutputStream stream = new ZstdOutputStream(output, 3, threads, "Test")) {
+                // Both single bytes and arrays, across the boundaries of the frames
+                stream.write(content[0]);
+                stream.write(content, 1, 1000);
+                for (int offset = 1001; offset < content.length; offset += 100_000) {
+                    stream.write(content, offset, Math.min(100_000, content.length - offset));
+                }
+            }
+            Assertions.assertThat(output.toByteArray()).containsExactly(expected.toByteArray());
+        }
+        Assertions.assertThat(ZstdFormatTest.Decoder.decompress(expected.toByteArray())).containsExactly(content);
+    }
+
+    @Test
+    void testFullFrame() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZstdOutputStream stream = new ZstdOutputStream(output, ZstdFormat.MAX_LEVEL, 2, "Test")) {
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                stream.write(i % 251);
+            }
+        }
+        // No empty frame follows the content
+        byte[] content = new byte[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        Assertions.assertThat(output.toByteArray())
+                .containsExactly(ZstdFormat.compress(content, 0, FRAME_SIZE, ZstdFormat.MAX_LEVEL));
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZstdOutputStream stream = new ZstdOutputStream(output, 3, 1, "Test");
+        stream.close();
+        byte[] frame = output.toByteArray();
+        Assertions.assertThat(frame).containsExactly(ZstdFormat.compress(new byte[0], 0, 0, 3));
+
+        // Closing again does nothing
+        stream.close();
+        Assertions.assertThat(output.toByteArray()).containsExactly(frame);
+    }
+
+    @Test
+    void testFailure() {
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int value) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        Assertions.assertThatThrownBy(() -> {
+            try (ZstdOutputStream stream = new ZstdOutputStream(output, 3, 1, "Test")) {
+                stream.write(new byte[3 * FRAME_SIZE]);
+            }
+        }).isInstanceOf(IOException.class).hasMessage("Disk full");
+    }
+
+    @Test
+    void testInvalidArguments() {
+        OutputStream output = new ByteArrayOutputStream();
+        Assertions.assertThatThrownBy(() -> newStream(output, 0, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("compressionLevel must be between 1 and 19: 0");
+        Assertions.assertThatThrownBy(() -> newStream(output, 3, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("compressionThreads must be positive: 0");
+    }
+
+    private static void newStream(@Nonnull OutputStream output, int level, int threads) throws IOException {
+        new ZstdOutputStream(output, level, threads, "Test").close();
+    }
+}
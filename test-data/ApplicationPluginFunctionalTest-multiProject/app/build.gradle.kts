@@ -0,0 +1,23 @@
+plugins {
+    id("com.ms.gradle.application")
+}
+
+group = "com.ms.test"
+version = "1.0"
+
+dependencies {
+    implementation(project(":lib"))
+}
+
+applications.main {
+    mainClass.set("com.ms.test.app.PrintGreeting")
+}
+
+applications.register("other") {
+    fromSourceSet(sourceSets.main)
+    mainClass.set("com.ms.test.app.PrintGreeting")
+}
+
+applicationSuites.register("suite") {
+    applicationNames.set(listOf("main", "other"))
+}
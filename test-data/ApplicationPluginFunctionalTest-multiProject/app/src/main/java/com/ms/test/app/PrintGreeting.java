@@ -0,0 +1,9 @@
+package com.ms.test.app;
+
+import com.ms.test.lib.Greeting;
+
+public class PrintGreeting {
+    public static void main(String[] args) {
+        System.out.println(Greeting.asMessage());
+    }
+}
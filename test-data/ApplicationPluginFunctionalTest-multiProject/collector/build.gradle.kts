@@ -0,0 +1,30 @@
+import com.ms.gradle.application.Application
+import com.ms.gradle.application.ApplicationName
+
+plugins {
+    base
+    id("com.ms.gradle.application") apply false
+}
+
+// Consumes the application JAR of the main application of another project, through its outgoing variant
+val collected by configurations.creating {
+    isCanBeConsumed = false
+    isCanBeResolved = true
+    isTransitive = false
+    attributes {
+        attribute(Usage.USAGE_ATTRIBUTE, objects.named(Usage.JAVA_RUNTIME))
+        attribute(LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE,
+                objects.named(Application.LIBRARY_ELEMENTS_APPLICATION_JAR))
+        attribute(ApplicationName.APPLICATION_NAME_ATTRIBUTE,
+                objects.named(Application.MAIN_APPLICATION_NAME))
+    }
+}
+
+dependencies {
+    collected(project(":app"))
+}
+
+tasks.register<Sync>("collectApplications") {
+    from(collected)
+    into(layout.buildDirectory.dir("applications"))
+}
@@ -0,0 +1,6 @@
+plugins {
+    `java-library`
+}
+
+group = "com.ms.test"
+version = "1.0"
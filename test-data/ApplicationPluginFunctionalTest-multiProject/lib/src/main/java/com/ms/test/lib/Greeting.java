@@ -0,0 +1,7 @@
+package com.ms.test.lib;
+
+public class Greeting {
+    public static String asMessage() {
+        return "Hello from another project";
+    }
+}
@@ -0,0 +1,15 @@
+import com.ms.gradle.application.ApplicationName
+
+plugins {
+    id("com.ms.gradle.application-aggregation")
+}
+
+// Aggregates applications of other projects into one distribution, sharing a single copy of their dependencies
+dependencies {
+    "aggregatedApplications"(project(":app"))
+    "aggregatedApplications"(project(":app")) {
+        attributes {
+            attribute(ApplicationName.APPLICATION_NAME_ATTRIBUTE, objects.named("other"))
+        }
+    }
+}
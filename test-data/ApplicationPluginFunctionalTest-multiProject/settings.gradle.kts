@@ -0,0 +1,3 @@
+rootProject.name = "multiProject"
+
+include("lib", "app", "collector", "platform")
@@ -33,7 +33,7 @@ applications.main {
     mainClass.set("com.ms.test.app.PrintTimestamp")
 }
 
-applications.create("simple") {
+applications.register("simple") {
     fromSourceSet(sourceSets.main)
     mainClass.set("com.ms.test.app.PrintTimestamp")
 }
@@ -64,6 +64,31 @@ applications.create("complex") {
     }
 }
 
+applications.register("transfer") {
+    fromSourceSet(sourceSets.main)
+    mainClass.set("com.ms.test.app.PrintTimestamp")
+    applicationJar {
+        packagingMode.set(com.ms.gradle.application.ApplicationJar.PackagingMode.TRANSFER)
+    }
+}
+
+applications.create("parallel") {
+    fromSourceSet(sourceSets.main)
+    mainClass.set("com.ms.test.app.PrintTimestamp")
+    applicationJar {
+        parallelCompression.set(true)
+        compressionThreads.set(2)
+    }
+}
+
+applications.create("launcher") {
+    fromSourceSet(sourceSets.main)
+    mainClass.set("com.ms.test.app.PrintTimestamp")
+    applicationJar {
+        packagingMode.set(com.ms.gradle.application.ApplicationJar.PackagingMode.LAUNCHER)
+    }
+}
+
 val manualApplicationJar by tasks.creating(com.ms.gradle.application.ApplicationJar::class) {
     fromSourceSet(sourceSets.main)
     mainClass.set("com.ms.test.app.PrintTimestamp")